@@ -0,0 +1,181 @@
+package api;
+
+/**
+ * The obstacle-avoiding wander from {@code MouseSong}, with its thresholds
+ * and timings as parameters so they can be tuned.
+ * <p>
+ * Cactus drives forward while both sides are clear, pivots away from
+ * anything very close, and turns in place away from anything else within
+ * the near distance. Each turn counts toward a limit; past it Cactus spins
+ * until one side opens up, to get out of corners. Clear driving slowly pays
+ * the count back.
+ * <p>
+ * The parameters are, in order, with their indices and defaults (the values
+ * {@code MouseSong} has always used):
+ * <ul>
+ * <li>{@code NEAR_CM}: go forward if both sides are farther (20cm)</li>
+ * <li>{@code CLOSE_CM}: back off if either side is nearer (10cm)</li>
+ * <li>{@code BACKOFF_MS}: how long to back off (500ms)</li>
+ * <li>{@code TURN_MS}: how long to turn (25ms)</li>
+ * <li>{@code MAX_TURNS}: turns before turning around (20)</li>
+ * <li>{@code PERIOD_MS}: the pause after each step (75ms)</li>
+ * <li>{@code CLEAR_CM}: stop turning around once a side is farther
+ * (30cm)</li>
+ * </ul>
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class AvoidController implements Controller {
+    /** Parameter: go forward if both sides are farther than this (cm). */
+    public static final int NEAR_CM = 0;
+    /** Parameter: back off if either side is nearer than this (cm). */
+    public static final int CLOSE_CM = 1;
+    /** Parameter: the time (in ms) to back off for. */
+    public static final int BACKOFF_MS = 2;
+    /** Parameter: the time (in ms) to turn for. */
+    public static final int TURN_MS = 3;
+    /** Parameter: the number of turns before turning around. */
+    public static final int MAX_TURNS = 4;
+    /** Parameter: the pause (in ms) after each step. */
+    public static final int PERIOD_MS = 5;
+    /** Parameter: the distance (in cm) that ends a turn-around. */
+    public static final int CLEAR_CM = 6;
+
+    /** The names of the parameters. */
+    public static final String[] NAMES = {
+        "nearCm", "closeCm", "backoffMs", "turnMs", "maxTurns", "periodMs",
+        "clearCm"
+    };
+    /** The default value of each parameter. */
+    public static final float[] DEFAULTS = {20, 10, 500, 25, 20, 75, 30};
+    /** The smallest sensible value of each parameter. */
+    public static final float[] MIN = {10, 5, 50, 5, 2, 10, 15};
+    /** The largest sensible value of each parameter. */
+    public static final float[] MAX = {60, 30, 1500, 300, 60, 300, 80};
+
+    /** Go forward if both sides are farther than this (cm). */
+    private final float nearCm;
+    /** Back off if either side is nearer than this (cm). */
+    private final float closeCm;
+    /** The time (in ms) to back off for. */
+    private final int backoffMs;
+    /** The time (in ms) to turn for. */
+    private final int turnMs;
+    /** The number of turns before turning around. */
+    private final int maxTurns;
+    /** The pause (in ms) after each step. */
+    private final int periodMs;
+    /** The distance (in cm) that ends a turn-around. */
+    private final float clearCm;
+
+    /** The number of turns not yet paid back. */
+    private int turns = 0;
+    /** Whether Cactus is to turn around after the current move. */
+    private boolean turnAroundNext = false;
+    /** Whether Cactus is turning around. */
+    private boolean turningAround = false;
+    /** The speed (in percent) for the left wheel. */
+    private int left = 0;
+    /** The speed (in percent) for the right wheel. */
+    private int right = 0;
+
+    /**
+     * Creates a controller.
+     * @param params The parameters, indexed by the constants above.
+     */
+    public AvoidController(float[] params) {
+        if (params.length != DEFAULTS.length)
+            throw new IllegalArgumentException("Need " + DEFAULTS.length
+                    + " parameters");
+        nearCm = params[NEAR_CM];
+        closeCm = params[CLOSE_CM];
+        backoffMs = Math.round(params[BACKOFF_MS]);
+        turnMs = Math.round(params[TURN_MS]);
+        maxTurns = Math.round(params[MAX_TURNS]);
+        periodMs = Math.round(params[PERIOD_MS]);
+        clearCm = params[CLEAR_CM];
+    }
+
+    public int step(long t, float leftCm, float rightCm) {
+        if (leftCm < 0)
+            leftCm = Float.POSITIVE_INFINITY;
+        if (rightCm < 0)
+            rightCm = Float.POSITIVE_INFINITY;
+
+        if (turnAroundNext) {
+            turnAroundNext = false;
+            turningAround = true;
+            drive(-100, 100);
+        }
+        if (turningAround) {
+            if (leftCm < clearCm && rightCm < clearCm)
+                return 0;
+            turningAround = false;
+            return periodMs;
+        }
+
+        int wait = periodMs;
+        if (leftCm > nearCm && rightCm > nearCm) {
+            drive(100, 100);
+            turns = turns > 0 ? turns - 1 : 0;
+        } else if (leftCm < closeCm || rightCm < closeCm) {
+            ++turns;
+            // Pivot on the wheel nearer the obstacle
+            if (leftCm < rightCm)
+                drive(0, -100);
+            else
+                drive(-100, 0);
+            wait += backoffMs;
+        } else {
+            ++turns;
+            if (leftCm < rightCm)
+                drive(100, -100);
+            else
+                drive(-100, 100);
+            wait += turnMs;
+        }
+
+        if (turns > maxTurns) {
+            // Finish this move, then spin until a side opens up
+            turns = 0;
+            turnAroundNext = true;
+            return wait - periodMs;
+        }
+        return wait;
+    }
+
+    /**
+     * Gives whether Cactus is turning around to get out of a corner.
+     * @return {@code true} while turning around.
+     */
+    public boolean turningAround() {
+        return turningAround;
+    }
+
+    public int leftCommand() {
+        return left;
+    }
+
+    public int rightCommand() {
+        return right;
+    }
+
+    public void reset() {
+        turns = 0;
+        turnAroundNext = false;
+        turningAround = false;
+        left = 0;
+        right = 0;
+    }
+
+    /**
+     * Sets the wheel speeds.
+     * @param l The speed (in percent) for the left wheel.
+     * @param r The speed (in percent) for the right wheel.
+     */
+    private void drive(int l, int r) {
+        left = l;
+        right = r;
+    }
+}
@@ -0,0 +1,210 @@
+package api;
+
+/**
+ * Steers Cactus toward an IR beacon seen by the {@link IRCamera}, and falls
+ * back to avoiding obstacles with the IR range sensors when the beacon is
+ * lost.
+ * <p>
+ * Each call to {@link #step(Blob[], long, float, float)} takes one camera
+ * frame and the latest range readings and chooses a speed for each wheel,
+ * which are then given to {@link Motor#setSpeed(int)}. The controller does
+ * not touch the hardware itself, so it can be driven by a simulated camera.
+ * In order of priority it:
+ * <ol>
+ * <li>stops once the beacon looks big enough ({@code ARRIVED}),</li>
+ * <li>turns away from anything closer than {@code AVOID_CM}
+ * ({@code AVOIDING}),</li>
+ * <li>steers in proportion to the beacon's offset from the center of the
+ * image ({@code HOMING}),</li>
+ * <li>spins toward the side the beacon was last seen on for
+ * {@code SEARCH_MS} after losing it ({@code SEARCHING}), and</li>
+ * <li>otherwise drives forward, steering away from the nearer wall
+ * ({@code WANDERING}).</li>
+ * </ol>
+ * The ranges are floats (in cm), as the range sensors give them, and so is
+ * the math that leans away from walls; the steering toward the beacon and
+ * the wheel speeds are integer math.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class BeaconHoming {
+    /** Mode: steering toward the beacon. */
+    public static final int HOMING = 0;
+    /** Mode: turning away from an obstacle. */
+    public static final int AVOIDING = 1;
+    /** Mode: spinning to find a beacon that was just lost. */
+    public static final int SEARCHING = 2;
+    /** Mode: no beacon; driving around obstacles until one is seen. */
+    public static final int WANDERING = 3;
+    /** Mode: at the beacon. */
+    public static final int ARRIVED = 4;
+
+    /** The speed (in percent) to drive at when nothing is in the way. */
+    public static final int CRUISE = 60;
+    /** The speed (in percent) to turn at when avoiding or searching. */
+    public static final int TURN = 40;
+    /** The steering (in percent) when the beacon is at the edge of view. */
+    public static final int STEER_GAIN = 60;
+    /** The apparent beacon size at which Cactus has arrived. */
+    public static final int ARRIVED_SIZE = 10;
+    /** The distance (in cm) under which Cactus turns away from obstacles. */
+    public static final float AVOID_CM = 15;
+    /** The distance (in cm) under which Cactus steers away from walls. */
+    public static final float CLEAR_CM = 30;
+    /** The time (in ms) to search for a lost beacon before wandering. */
+    public static final int SEARCH_MS = 4000;
+
+    /** The tracker following the beacon through the camera frames. */
+    private final BeaconTracker tracker = new BeaconTracker();
+
+    /** The current mode. */
+    private int mode = WANDERING;
+    /** The speed (in percent) for the left wheel. */
+    private int left = 0;
+    /** The speed (in percent) for the right wheel. */
+    private int right = 0;
+    /** Whether the beacon was being tracked on the last step. */
+    private boolean wasTracking = false;
+    /** The time (in ms) at which to give up searching. */
+    private long searchUntil = 0;
+    /** The direction to search in (1 for left, -1 for right). */
+    private int searchDirection = 1;
+
+    /**
+     * Chooses the wheel speeds for one camera frame.
+     * @param blobs The blobs from the camera.
+     * @param t The time (in ms) at which the frame was captured.
+     * @param leftCm The distance (in cm) to the nearest object on the left,
+     * or a negative number if there is no reading.
+     * @param rightCm The distance (in cm) to the nearest object on the right,
+     * or a negative number if there is no reading.
+     * @return The new mode.
+     */
+    public int step(Blob[] blobs, long t, float leftCm, float rightCm) {
+        boolean seen = tracker.update(blobs, t);
+        boolean tracking = tracker.tracking();
+        if (wasTracking && !tracking) {
+            searchUntil = t + SEARCH_MS;
+            searchDirection = tracker.offset() >= 0 ? 1 : -1;
+        }
+        wasTracking = tracking;
+
+        if (leftCm < 0)
+            leftCm = Float.POSITIVE_INFINITY;
+        if (rightCm < 0)
+            rightCm = Float.POSITIVE_INFINITY;
+
+        if (seen && tracker.size() >= ARRIVED_SIZE) {
+            drive(0, 0);
+            return mode = ARRIVED;
+        }
+        if (leftCm < AVOID_CM || rightCm < AVOID_CM) {
+            // Spin away from the nearer obstacle
+            if (leftCm < rightCm)
+                drive(TURN, -TURN);
+            else
+                drive(-TURN, TURN);
+            return mode = AVOIDING;
+        }
+        if (tracking) {
+            steer(tracker.offset() * STEER_GAIN / (IRCamera.WIDTH / 2));
+            return mode = HOMING;
+        }
+        if (t < searchUntil) {
+            drive(-searchDirection * TURN, searchDirection * TURN);
+            return mode = SEARCHING;
+        }
+        // Lean away from the nearer wall, harder the closer it is
+        int turn = 0;
+        if (leftCm < CLEAR_CM && leftCm <= rightCm)
+            turn = -(int) ((CLEAR_CM - leftCm) * STEER_GAIN / CLEAR_CM);
+        else if (rightCm < CLEAR_CM)
+            turn = (int) ((CLEAR_CM - rightCm) * STEER_GAIN / CLEAR_CM);
+        steer(turn);
+        return mode = WANDERING;
+    }
+
+    /** Forgets the beacon and starts over in {@code WANDERING} mode. */
+    public void reset() {
+        tracker.reset();
+        mode = WANDERING;
+        left = 0;
+        right = 0;
+        wasTracking = false;
+        searchUntil = 0;
+    }
+
+    /**
+     * Gives the mode chosen by the last step.
+     * @return The mode.
+     */
+    public int mode() {
+        return mode;
+    }
+
+    /**
+     * Gives the speed chosen for the left wheel.
+     * @return The speed (in percent, -100 to 100).
+     */
+    public int leftCommand() {
+        return left;
+    }
+
+    /**
+     * Gives the speed chosen for the right wheel.
+     * @return The speed (in percent, -100 to 100).
+     */
+    public int rightCommand() {
+        return right;
+    }
+
+    /**
+     * Gives the tracker following the beacon.
+     * @return The tracker.
+     */
+    public BeaconTracker tracker() {
+        return tracker;
+    }
+
+    /**
+     * Gives a short name for a mode, for displays and logs.
+     * @param mode The mode.
+     * @return The name of the mode.
+     */
+    public static String name(int mode) {
+        switch (mode) {
+            case HOMING:
+                return "homing";
+            case AVOIDING:
+                return "avoiding";
+            case SEARCHING:
+                return "searching";
+            case WANDERING:
+                return "wandering";
+            case ARRIVED:
+                return "arrived";
+            default:
+                return "?";
+        }
+    }
+
+    /**
+     * Drives forward while turning, slowing down for sharp turns.
+     * @param turn The turn (in percent, positive to the left).
+     */
+    private void steer(int turn) {
+        int speed = CRUISE - (turn < 0 ? -turn : turn) / 2;
+        drive(speed - turn, speed + turn);
+    }
+
+    /**
+     * Sets the wheel speeds, limited to -100 to 100.
+     * @param l The speed (in percent) for the left wheel.
+     * @param r The speed (in percent) for the right wheel.
+     */
+    private void drive(int l, int r) {
+        left = l > 100 ? 100 : l < -100 ? -100 : l;
+        right = r > 100 ? 100 : r < -100 ? -100 : r;
+    }
+}
@@ -0,0 +1,139 @@
+package api;
+
+/**
+ * Follows an IR beacon through the blobs reported by the {@link IRCamera}.
+ * <p>
+ * Each frame the largest blob close to where the beacon was last seen is
+ * taken to be the beacon; if none is close, the largest blob anywhere is.
+ * The beacon is lost once it has been missing for {@code LOST_AFTER} frames
+ * in a row. All math is integer math.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class BeaconTracker {
+    /** The number of frames without the beacon before it is lost. */
+    public static final int LOST_AFTER = 5;
+    /** The farthest (in pixels) the beacon can move between frames. */
+    public static final int GATE = 160;
+
+    /** The field of view of the camera in fixed-point radians. */
+    private static final int FOV = Fixed.fromFloat(IRCamera.FIELD_OF_VIEW);
+
+    /** Whether the beacon is being tracked. */
+    private boolean tracking = false;
+    /** The number of frames in a row the beacon has been missing. */
+    private int missed = 0;
+    /** The x-coordinate (in pixels) the beacon was last seen at. */
+    private int x = IRCamera.WIDTH / 2;
+    /** The y-coordinate (in pixels) the beacon was last seen at. */
+    private int y = IRCamera.HEIGHT / 2;
+    /** The size of the beacon when it was last seen. */
+    private int size = 0;
+    /** The time (in ms) the beacon was last seen. */
+    private long lastSeen;
+
+    /**
+     * Updates the tracker with a new frame.
+     * @param blobs The blobs from the frame.
+     * @param t The time (in ms) at which the frame was captured.
+     * @return {@code true} if the beacon was seen in this frame.
+     */
+    public boolean update(Blob[] blobs, long t) {
+        int best = -1;
+        int bestSize = -1;
+        boolean bestNear = false;
+        for (int i = 0; i < blobs.length; ++i) {
+            Blob b = blobs[i];
+            if (b.x >= IRCamera.EMPTY || b.y >= IRCamera.EMPTY)
+                continue;
+            int dx = b.x - x;
+            int dy = b.y - y;
+            boolean near = tracking && dx < GATE && dx > -GATE
+                    && dy < GATE && dy > -GATE;
+            // A blob near the last position beats any blob that is not
+            if ((near && !bestNear) || (near == bestNear && b.size > bestSize)) {
+                best = i;
+                bestSize = b.size;
+                bestNear = near;
+            }
+        }
+        if (best < 0) {
+            if (++missed >= LOST_AFTER)
+                tracking = false;
+            return false;
+        }
+        x = blobs[best].x;
+        y = blobs[best].y;
+        size = blobs[best].size;
+        lastSeen = t;
+        missed = 0;
+        tracking = true;
+        return true;
+    }
+
+    /** Forgets the beacon. */
+    public void reset() {
+        tracking = false;
+        missed = 0;
+        x = IRCamera.WIDTH / 2;
+        y = IRCamera.HEIGHT / 2;
+        size = 0;
+    }
+
+    /**
+     * Gives whether the beacon is being tracked.
+     * @return {@code true} unless the beacon has been lost.
+     */
+    public boolean tracking() {
+        return tracking;
+    }
+
+    /**
+     * Gives the horizontal offset of the beacon from the center of the image.
+     * @return The offset (in pixels, positive to the left).
+     */
+    public int offset() {
+        return IRCamera.WIDTH / 2 - x;
+    }
+
+    /**
+     * Gives the bearing to the beacon.
+     * @return The bearing (in fixed-point radians, positive to the left).
+     */
+    public int bearingFixed() {
+        return Fixed.mul(Fixed.ratio(offset(), IRCamera.WIDTH), FOV);
+    }
+
+    /**
+     * Gives the apparent size of the beacon, which grows as it gets closer.
+     * @return The size reported by the camera (0-15).
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gives the x-coordinate the beacon was last seen at.
+     * @return The x-coordinate (in pixels).
+     */
+    public int x() {
+        return x;
+    }
+
+    /**
+     * Gives the y-coordinate the beacon was last seen at.
+     * @return The y-coordinate (in pixels).
+     */
+    public int y() {
+        return y;
+    }
+
+    /**
+     * Gives the time the beacon was last seen.
+     * @return The time (in ms).
+     */
+    public long lastSeen() {
+        return lastSeen;
+    }
+}
@@ -29,6 +29,15 @@ public abstract class CactusBase extends Robot {
     public static final byte RIGHT_TACHO_PORT = 5;
     /** The port number of the laser diode. */
     public static final byte LASER_PORT = 1;
+    /** The baud rate of the link to other robots on COM2. */
+    public static final int LINK_BAUD = 38400;
+    /** The baud rate of the telemetry stream on COM1. */
+    public static final int TELEMETRY_BAUD = 115200;
+    /** The longest time (in ms) a single I2C transfer may take. */
+    public static final int I2C_DEADLINE = 50;
+    /** The longest time (in ms) a tachometer may go without sampling. */
+    public static final int TACHO_DEADLINE
+            = 4 * SamplePolicy.MAX_TACHO_INTERVAL;
 
 
     /** The Infrared proximity sensor that tracks Cactus' left wheel. */
@@ -43,33 +52,80 @@ public abstract class CactusBase extends Robot {
     public static final DisplayOutputStream display
             = new DisplayOutputStream(IntelliBrain.getLcdDisplay());
 
+    /** The sensor calibration stored in EEPROM. */
+    public static final Calibration calibration
+            = Calibration.load(IntelliBrain.getCpuEEPROM());
+
     /** Cactus' left continuous servomotor. */
-    public static final Motor leftMotor = new Motor(1, Motor.LEFT);
+    public static final Motor leftMotor = new Motor(1, Motor.LEFT,
+            calibration.tachoThreshold(Motor.LEFT));
 
     /** Cactus' right continuous servomotor. */
-    public static final Motor rightMotor = new Motor(2, Motor.RIGHT);
+    public static final Motor rightMotor = new Motor(2, Motor.RIGHT,
+            calibration.tachoThreshold(Motor.RIGHT));
 
     /** The Infrared Range Sensor that detects objects to Cactus' left. */
     public static final RangeFinder leftIR
-            = new SharpGP2D12(IntelliBrain.getAnalogInput(LEFT_IR_PORT), null);
+            = rangeFinder(LEFT_IR_PORT, Motor.LEFT);
 
     /** The Infrared Range Sensor that detects objects to Cactus' right. */
     public static final RangeFinder rightIR
-            = new SharpGP2D12(IntelliBrain.getAnalogInput(RIGHT_IR_PORT), null);
+            = rangeFinder(RIGHT_IR_PORT, Motor.RIGHT);
+
+    /** Failure-tracking reader for leftIR. */
+    public static final RangeSensor leftRange = new RangeSensor(leftIR);
+
+    /** Failure-tracking reader for rightIR. */
+    public static final RangeSensor rightRange = new RangeSensor(rightIR);
 
     /** The laser diode on the front of Cactus. */
     public static final LaserDiode laser = new LaserDiode(LASER_PORT);
 
+    /**
+     * Halts the motors and turns off the laser if the tachometers, the I2C
+     * bus or a {@link CactusProgram} loop stall.
+     */
+    public static final Watchdog watchdog
+            = new Watchdog(leftMotor, rightMotor, laser);
+    static {
+        leftMotor.watch(watchdog, TACHO_DEADLINE);
+        rightMotor.watch(watchdog, TACHO_DEADLINE);
+    }
+
+    /**
+     * Runs the periodic work of the tachometers and the wheel bus, and
+     * keeps track of how much of the CPU each class of work takes.
+     */
+    public static final Scheduler scheduler = Scheduler.system();
+
+    /** Delivers the ticks of both wheels to any {@link TachoListener}s. */
+    public static final WheelBus wheels = new WheelBus();
+    static {
+        leftMotor.publish(wheels);
+        rightMotor.publish(wheels);
+    }
+
+    /** Estimates the charge left and throttles Cactus as it runs down. */
+    public static final PowerMonitor power
+            = new PowerMonitor(IntelliBrain.getBatteryInput(), null, 0,
+            IntelliBrain.getCpuEEPROM());
+
     /** The "Buzzer" on the IntelliBrain PCB. */
     public static final Speaker buzzer = IntelliBrain.getBuzzer();
 
+    /** The I2C bus shared by the camera and any other I2C devices. */
+    public static final I2CBus i2c = new I2CBus(IntelliBrain.getI2CMaster());
+    static {
+        i2c.watch(watchdog, I2C_DEADLINE);
+    }
+
     /** The PixArt IR camera on Cactus. */
     public static final IRCamera camera;
     // initialize the camera safely
     static {
         IRCamera cInit;
         try {
-            cInit = new IRCamera(IntelliBrain.getI2CMaster());
+            cInit = new IRCamera(i2c);
         } catch (IOException ex) {
             cInit = null;
             System.err.println("Camera not initialized");
@@ -77,6 +133,9 @@ public abstract class CactusBase extends Robot {
         camera = cInit;
     }
 
+    /** The estimate of Cactus' state, fed by the sensor helper methods. */
+    public static final StateEstimator estimator = new StateEstimator();
+
     /**
      * The display to which data from the print methods will go.
      * Defaults to {@code display}.
@@ -84,31 +143,217 @@ public abstract class CactusBase extends Robot {
     static volatile DisplayOutputStream stdout = display;
 
     /**
-     * Gets the distance to the nearest object as determined by leftIR.
+     * The bytes of each string being printed, so none are allocated. Its
+     * lock is held for the whole of each print, so prints from different
+     * threads do not interleave.
+     */
+    private static final byte[] printBuffer = new byte[32];
+
+    /**
+     * Creates the RangeFinder for an IR sensor, using its calibrated table if
+     * there is one and the stock GP2D12 curve otherwise.
+     * @param port The analog port the sensor is connected to.
+     * @param side The side of the sensor ({@code Motor.LEFT} or
+     * {@code Motor.RIGHT}).
+     * @return The RangeFinder for the sensor.
+     */
+    private static RangeFinder rangeFinder(int port, int side) {
+        RangeTable table = calibration.table(side);
+        if (table == null)
+            return new SharpGP2D12(IntelliBrain.getAnalogInput(port), null);
+        return new CalibratedRangeFinder(
+                IntelliBrain.getAnalogInput(port), table);
+    }
+
+    /**
+     * Reads leftIR without throwing. The distance is left in
+     * {@code leftRange.value()}, which falls back to the last good reading
+     * if this one fails.
+     * @return The status of the reading (see {@link RangeSensor}).
+     */
+    public static int readLeft() {
+        return read(leftRange, Motor.LEFT);
+    }
+
+    /**
+     * Reads rightIR without throwing. The distance is left in
+     * {@code rightRange.value()}, which falls back to the last good reading
+     * if this one fails.
+     * @return The status of the reading (see {@link RangeSensor}).
+     */
+    public static int readRight() {
+        return read(rightRange, Motor.RIGHT);
+    }
+
+    /**
+     * Reads a range sensor and feeds good readings to {@code estimator}.
+     * @param sensor The sensor to read.
+     * @param side The side of the sensor.
+     * @return The status of the reading.
+     */
+    private static int read(RangeSensor sensor, int side) {
+        int status = sensor.read();
+        if (status == RangeSensor.OK)
+            estimator.range(sensor.lastGoodTime(), side, sensor.value());
+        return status;
+    }
+
+    /**
+     * Reads a range sensor unless its last reading can be reused (see
+     * {@link SamplePolicy#rangeValidity(float)}), and feeds new good
+     * readings to {@code estimator}.
+     * @param sensor The sensor to read.
+     * @param side The side of the sensor.
+     * @return The status of the reading.
+     */
+    private static int reuse(RangeSensor sensor, int side) {
+        int reads = sensor.reads();
+        int status = sensor.read(SamplePolicy.rangeValidity(speed()));
+        if (status == RangeSensor.OK && sensor.reads() != reads)
+            estimator.range(sensor.lastGoodTime(), side, sensor.value());
+        return status;
+    }
+
+    /**
+     * Gives the speed Cactus is expected to move at: the faster of the two
+     * wheels (see {@link Motor#expectedSpeed()}).
+     * @return The speed (in cm/s).
+     */
+    private static float speed() {
+        float speed = leftMotor.expectedSpeed();
+        float r = rightMotor.expectedSpeed();
+        return r > speed ? r : speed;
+    }
+
+    /**
+     * Gets the distance to the nearest object as determined by leftIR. A
+     * reading recent enough to still hold is reused rather than pinging the
+     * sensor again (see {@link SamplePolicy#rangeValidity(float)}).
      * @throws SensorFailure If no reading can be made.
      * @return The distance (in cm) to the nearest object on the left
      */
     public static float leftCM() throws SensorFailure {
-        leftIR.ping();
-        float ret = leftIR.getDistanceCm();
         // SensorFailure if failed reading
-        if (ret == -1)
+        if (reuse(leftRange, Motor.LEFT) != RangeSensor.OK)
             throw SENSOR_FAIL;
-        return ret;
+        return leftRange.value();
     }
 
     /**
-     * Gets the distance to the nearest object as determined by rightIR.
+     * Gets the distance to the nearest object as determined by rightIR,
+     * reusing a recent reading like {@link #leftCM()}.
      * @throws SensorFailure If no reading can be made.
      * @return The distance (in cm) to the nearest object on the right.
      */
     public static float rightCM() throws SensorFailure {
-        rightIR.ping();
-        float ret = rightIR.getDistanceCm();
         // SensorFailure if failed reading
-        if (ret == -1)
+        if (reuse(rightRange, Motor.RIGHT) != RangeSensor.OK)
+            throw SENSOR_FAIL;
+        return rightRange.value();
+    }
+
+    /**
+     * Gets the distance to the nearest object as determined by leftIR, in
+     * fixed-point, reusing a recent reading like {@link #leftCM()}. Avoids
+     * floating point math if leftIR is calibrated.
+     * @throws SensorFailure If no reading can be made.
+     * @return The distance (in fixed-point cm) to the nearest object on the
+     * left.
+     */
+    public static int leftCMFixed() throws SensorFailure {
+        if (reuse(leftRange, Motor.LEFT) != RangeSensor.OK)
+            throw SENSOR_FAIL;
+        return leftRange.valueFixed();
+    }
+
+    /**
+     * Gets the distance to the nearest object as determined by rightIR, in
+     * fixed-point, reusing a recent reading like {@link #leftCM()}. Avoids
+     * floating point math if rightIR is calibrated.
+     * @throws SensorFailure If no reading can be made.
+     * @return The distance (in fixed-point cm) to the nearest object on the
+     * right.
+     */
+    public static int rightCMFixed() throws SensorFailure {
+        if (reuse(rightRange, Motor.RIGHT) != RangeSensor.OK)
             throw SENSOR_FAIL;
-        return ret;
+        return rightRange.valueFixed();
+    }
+
+    /**
+     * Feeds the current tick counts of both wheels to {@code estimator}.
+     * Should be called at least as often as the tachometers refresh.
+     */
+    public static void updateOdometry() {
+        long now = System.currentTimeMillis();
+        estimator.wheelTicks(now, Motor.LEFT, leftMotor.ticks());
+        estimator.wheelTicks(now, Motor.RIGHT, rightMotor.ticks());
+    }
+
+    /**
+     * Feeds the motor speeds and laser power to {@code power}, and applies
+     * its throttle to the top speed of the motors and the laser power. The
+     * IR interval is scaled by {@link #irInterval()}.
+     */
+    public static void updatePower() {
+        power.update(System.currentTimeMillis(), leftMotor.speed(),
+                rightMotor.speed(), laser.getPowerFixed());
+        int limit = power.speedLimit();
+        leftMotor.setSpeedLimit(limit);
+        rightMotor.setSpeedLimit(limit);
+        laser.setLimit(power.laserLimit());
+    }
+
+    /**
+     * Opens the link to other robots on COM2 (COM1 is left for the
+     * debugger).
+     * @param id The id of this robot.
+     * @return The link.
+     * @throws IOException If the port cannot be set up.
+     */
+    public static Link openLink(int id) throws IOException {
+        return Link.open(id, IntelliBrain.getCom2(), LINK_BAUD);
+    }
+
+    /**
+     * Opens a telemetry stream to the host on COM1, the port the debugger
+     * uses, once the program is running.
+     * @return The telemetry stream.
+     * @throws IOException If the port cannot be set up.
+     */
+    public static Telemetry openTelemetry() throws IOException {
+        return new Telemetry(Link.open(0, IntelliBrain.getCom1(),
+                TELEMETRY_BAUD));
+    }
+
+    /**
+     * Sends a telemetry sample of the IR distances, wheel ticks and motor
+     * speeds. Never blocks; the sample is dropped if the link is busy.
+     * @param telemetry The telemetry stream.
+     * @param loopMs The time (in ms) taken by the last control loop.
+     * @return {@code false} if the sample was dropped.
+     */
+    public static boolean sendTelemetry(Telemetry telemetry, int loopMs) {
+        return telemetry.send(System.currentTimeMillis(), leftRange.value(),
+                rightRange.value(), leftMotor.ticks(), rightMotor.ticks(),
+                leftMotor.speed(), rightMotor.speed(), loopMs);
+    }
+
+    /**
+     * Gives the number of milliseconds to wait before the IR sensors are worth
+     * reading again, based on how fast Cactus is moving and how close the
+     * nearest object is (see {@link SamplePolicy}). Waits up to twice as long
+     * as the battery runs low (see {@link PowerMonitor#irScale()}).
+     * @return The interval (in ms) until the next IR reading.
+     */
+    public static int irInterval() {
+        float speed = speed();
+        float distance = estimator.leftRange();
+        float r = estimator.rightRange();
+        if (r < distance)
+            distance = r;
+        return Fixed.toInt(SamplePolicy.irInterval(speed, distance)
+                * power.irScale());
     }
 
     /**
@@ -130,21 +375,23 @@ public abstract class CactusBase extends Robot {
      * @param end The Character to append to the end.
      */
     public static void print(String s, Character end) {
-        boolean flushBuffer = false;
-        try {
-            if (s != null) {
-                flushBuffer = true;
-                stdout.write(s.getBytes());
+        synchronized (printBuffer) {
+            boolean flushBuffer = false;
+            try {
+                if (s != null) {
+                    flushBuffer = true;
+                    write(s);
+                }
+                if (end != null) {
+                    flushBuffer = true;
+                    stdout.write((int) end.charValue());
+                }
+            } catch (java.io.IOException ex) {
+                throw new RuntimeException(ex.getMessage());
+            } finally {
+                if (flushBuffer)
+                    stdout.flush();
             }
-            if (end != null) {
-                flushBuffer = true;
-                stdout.write((int) end.charValue());
-            }
-        } catch (java.io.IOException ex) {
-            throw new RuntimeException(ex.getMessage());
-        } finally {
-            if (flushBuffer)
-                stdout.flush();
         }
     }
 
@@ -153,22 +400,48 @@ public abstract class CactusBase extends Robot {
      * @param s The String to print.
      */
     public static void print(String s) {
-        try {
-            if (s != null)
-                stdout.write(s.getBytes());
-            stdout.write((int) '\n');
-        } catch (java.io.IOException ex) {
-            throw new RuntimeException(ex.getMessage());
-        } finally {
-            if (s != null)
-                stdout.flush();
+        synchronized (printBuffer) {
+            try {
+                if (s != null)
+                    write(s);
+                stdout.write((int) '\n');
+            } catch (java.io.IOException ex) {
+                throw new RuntimeException(ex.getMessage());
+            } finally {
+                if (s != null)
+                    stdout.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes a string to {@code stdout} through {@code printBuffer}, since
+     * {@code getBytes()} would allocate a copy of it on every print. The
+     * caller holds the lock on {@code printBuffer}.
+     * @param s The string.
+     * @throws java.io.IOException If the display cannot be written.
+     */
+    private static void write(String s) throws java.io.IOException {
+        int length = s.length();
+        for (int i = 0; i < length; i += printBuffer.length) {
+            int end = i + printBuffer.length;
+            if (end > length)
+                end = length;
+            // RoboJDE's String has no charAt or getChars, so this is its only
+            // copy that does not allocate. The JDK deprecates it for dropping
+            // the high byte of each char, which the ASCII display cannot show
+            // anyway.
+            s.getBytes(i, end, printBuffer, 0);
+            stdout.write(printBuffer, 0, end - i);
         }
     }
 
     /** Prints a newline to {@code stdout}. */
     public static void print() {
-        stdout.write((int) '\n');
-        stdout.flush();
+        synchronized (printBuffer) {
+            stdout.write((int) '\n');
+            stdout.flush();
+        }
     }
 
     /** Prints a welcome message to {@code stdout}. */
@@ -0,0 +1,266 @@
+package api;
+
+/**
+ * A program for Cactus, run by one shared main loop.
+ * <p>
+ * {@link #start()} calls {@link #init()} once, then calls
+ * {@link #step(long)} at a fixed rate until {@link #stop()} is called or a
+ * step throws, and finally stops both motors and calls {@link #shutdown()}.
+ * Before each step the loop reads the IR range sensors when they are due
+ * (see {@link CactusBase#irInterval()}), updates the odometry and applies
+ * the battery throttle (see {@link CactusBase#updatePower()}), so steps
+ * only need to read {@code leftRange}, {@code rightRange} and
+ * {@code estimator}. A step that runs long delays the next one rather than
+ * causing a burst of steps to catch up.
+ * <p>
+ * The loop beats a {@link Watchdog} channel on every pass. If a pass takes
+ * longer than the deadline, or a step throws, the watchdog halts the motors
+ * and turns off the laser. The program then ends, or if it has restarts left
+ * (see {@link #setRestarts(int)}), waits {@code RESTART_DELAY} ms, calls
+ * {@link #init()} again and carries on. A trip caused by the tachometers or
+ * the I2C bus is handled the same way.
+ * <p>
+ * The loop runs at the {@link Scheduler}'s control priority, below the
+ * tachometers and above the background work, and the time it spends is
+ * charged to the control class (see {@link Scheduler#share(int)}).
+ * <p>
+ * A program is started from its {@code main}:
+ * <pre>
+ * public static void main(String args[]) {
+ *     try {
+ *         new MyProgram().start();
+ *     } catch (Throwable t) {
+ *         print(t.getMessage());
+ *     }
+ * }
+ * </pre>
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public abstract class CactusProgram extends CactusBase {
+    /** The default number of ms between steps. */
+    public static final int DEFAULT_PERIOD = 20;
+    /** The shortest default watchdog deadline (in ms) of the loop. */
+    public static final int MIN_DEADLINE = 100;
+    /** The time (in ms) to wait with the motors halted before a restart. */
+    public static final int RESTART_DELAY = 1000;
+
+    /** The number of ms between steps. */
+    private final int period;
+    /** The watchdog channel of the loop. */
+    private final int watchChannel;
+    /** The number of times the loop may still be restarted after a fault. */
+    private int restarts = 0;
+    /** Whether the main loop should keep running. */
+    private volatile boolean running = false;
+    /** The time (in ms) the IR sensors are next due to be read. */
+    private long nextRange = 0;
+    /** The time (in ms) taken by the last pass of the loop. */
+    private int loopTime;
+    /** The number of steps that ran past the start of the next one. */
+    private int overruns;
+    /** The number of steps taken. */
+    private int steps;
+
+    /** Creates a program that steps every {@code DEFAULT_PERIOD} ms. */
+    protected CactusProgram() {
+        this(DEFAULT_PERIOD);
+    }
+
+    /**
+     * Creates a program that steps at a fixed rate, with a watchdog deadline
+     * of three periods or {@code MIN_DEADLINE}, whichever is longer.
+     * @param period The number of ms between steps.
+     */
+    protected CactusProgram(int period) {
+        this(period, Math.max(3 * period, MIN_DEADLINE));
+    }
+
+    /**
+     * Creates a program that steps at a fixed rate.
+     * @param period The number of ms between steps.
+     * @param deadline The longest time (in ms) a pass of the loop may take
+     * before the watchdog trips.
+     */
+    protected CactusProgram(int period, int deadline) {
+        if (period <= 0)
+            throw new IllegalArgumentException("Period must be positive");
+        if (deadline <= period)
+            throw new IllegalArgumentException(
+                    "Deadline must be longer than the period");
+        this.period = period;
+        this.watchChannel = watchdog.channel("Main loop", deadline);
+    }
+
+    /**
+     * Called once before the first step. Does nothing by default.
+     * @throws Exception If the program cannot start.
+     */
+    protected void init() throws Exception {
+    }
+
+    /**
+     * Called once per period with fresh sensor readings.
+     * @param now The time (in ms) the loop pass started.
+     * @throws Exception If the program cannot go on.
+     */
+    protected abstract void step(long now) throws Exception;
+
+    /**
+     * Called once after the loop ends, with the motors already stopped.
+     * Does nothing by default.
+     */
+    protected void shutdown() {
+    }
+
+    /**
+     * Runs the program on the calling thread until it stops.
+     * @throws Exception If {@link #init()} or {@link #step(long)} throws.
+     */
+    public final void start() throws Exception {
+        running = true;
+        Thread.currentThread().setPriority(
+                Scheduler.priority(Scheduler.CONTROL));
+        try {
+            init();
+            long next = System.currentTimeMillis();
+            while (running) {
+                long now = System.currentTimeMillis();
+                watchdog.beat(watchChannel);
+                Exception failure = null;
+                try {
+                    if (now >= nextRange) {
+                        readLeft();
+                        readRight();
+                        nextRange = now + irInterval();
+                    }
+                    updateOdometry();
+                    updatePower();
+                    step(now);
+                    ++steps;
+                } catch (Exception ex) {
+                    failure = ex;
+                    watchdog.trip(watchChannel, ex.getMessage() != null
+                            ? ex.getMessage() : "failed");
+                }
+
+                if (watchdog.tripped()) {
+                    if (restarts <= 0) {
+                        if (failure != null)
+                            throw failure;
+                        throw new RuntimeException(watchdog.fault() + " "
+                                + watchdog.reason());
+                    }
+                    --restarts;
+                    watchdog.idle(watchChannel);
+                    sleepFor(RESTART_DELAY);
+                    watchdog.reset();
+                    init();
+                    next = System.currentTimeMillis();
+                    continue;
+                }
+
+                long end = System.currentTimeMillis();
+                loopTime = (int) (end - now);
+                scheduler.charge(Scheduler.CONTROL, loopTime);
+                next += period;
+                if (next <= end) {
+                    ++overruns;
+                    next = end;
+                } else {
+                    sleepFor(next - end);
+                }
+            }
+        } finally {
+            running = false;
+            watchdog.idle(watchChannel);
+            leftMotor.stop();
+            rightMotor.stop();
+            shutdown();
+        }
+    }
+
+    /**
+     * Sets how many times the loop is restarted after a watchdog trip before
+     * the program gives up. Defaults to 0.
+     * @param restarts The number of restarts allowed.
+     */
+    public final void setRestarts(int restarts) {
+        if (restarts < 0)
+            throw new IllegalArgumentException("Restarts must be >= 0");
+        this.restarts = restarts;
+    }
+
+    /** Ends the loop after the current step. May be called from any thread. */
+    public final void stop() {
+        running = false;
+    }
+
+    /**
+     * Gives whether the loop is running.
+     * @return {@code true} from {@link #start()} until the loop ends.
+     */
+    public final boolean running() {
+        return running;
+    }
+
+    /**
+     * Has the IR sensors read on the next pass of the loop, whether or not
+     * they are due.
+     */
+    protected final void readRangesNow() {
+        nextRange = 0;
+    }
+
+    /**
+     * Gives the distance from the latest left IR reading.
+     * @return The distance (in cm), or -1 if the reading failed (as it does
+     * when nothing is in range).
+     */
+    public static float leftDistance() {
+        return leftRange.status() == RangeSensor.OK ? leftRange.value() : -1;
+    }
+
+    /**
+     * Gives the distance from the latest right IR reading.
+     * @return The distance (in cm), or -1 if the reading failed (as it does
+     * when nothing is in range).
+     */
+    public static float rightDistance() {
+        return rightRange.status() == RangeSensor.OK ? rightRange.value() : -1;
+    }
+
+    /**
+     * Gives the number of ms between steps.
+     * @return The period (in ms).
+     */
+    public final int period() {
+        return period;
+    }
+
+    /**
+     * Gives the time taken by the last pass of the loop, sensor reads
+     * included.
+     * @return The time (in ms).
+     */
+    public final int loopTime() {
+        return loopTime;
+    }
+
+    /**
+     * Gives the number of steps that ran past the start of the next one.
+     * @return The number of overruns.
+     */
+    public final int overruns() {
+        return overruns;
+    }
+
+    /**
+     * Gives the number of steps taken.
+     * @return The number of steps.
+     */
+    public final int steps() {
+        return steps;
+    }
+}
@@ -0,0 +1,76 @@
+package api;
+
+import com.ridgesoft.robotics.AnalogInput;
+import com.ridgesoft.robotics.RangeFinder;
+
+/**
+ * A RangeFinder for an analog IR range sensor that converts its readings with
+ * a calibrated {@link RangeTable} instead of the stock GP2D12 curve.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public class CalibratedRangeFinder implements RangeFinder {
+    /** The number of cm per inch. */
+    private static final float CM_PER_INCH = 2.54f;
+
+    /** The analog input the sensor is connected to. */
+    private final AnalogInput input;
+    /** The table used to convert samples to distances. */
+    private final RangeTable table;
+    /** The sample taken by the last ping. */
+    private volatile int sample;
+
+    /**
+     * Creates a CalibratedRangeFinder.
+     * @param input The analog input the sensor is connected to.
+     * @param table The table used to convert samples to distances.
+     */
+    public CalibratedRangeFinder(AnalogInput input, RangeTable table) {
+        if (input == null || table == null)
+            throw new IllegalArgumentException("Cannot pass a null argument");
+        this.input = input;
+        this.table = table;
+    }
+
+    /** Samples the sensor. */
+    public void ping() {
+        sample = input.sample();
+    }
+
+    /**
+     * Gives the distance measured by the last ping.
+     * @return The distance (in cm), or -1 if out of range.
+     */
+    public float getDistanceCm() {
+        return table.cm(sample);
+    }
+
+    /**
+     * Gives the distance measured by the last ping.
+     * @return The distance (in inches), or -1 if out of range.
+     */
+    public float getDistanceInches() {
+        float cm = table.cm(sample);
+        return cm < 0 ? -1 : cm / CM_PER_INCH;
+    }
+
+    /**
+     * Gives the distance measured by the last ping, without any floating
+     * point math.
+     * @return The distance (in fixed-point cm), or -1 if out of range.
+     */
+    public int getDistanceFixed() {
+        short tenths = table.tenthsCm(sample);
+        return tenths == RangeTable.NO_READING ? -1
+                : Fixed.ratio(tenths, 10);
+    }
+
+    /**
+     * Gives the raw sample taken by the last ping.
+     * @return The raw analog sample.
+     */
+    public int sample() {
+        return sample;
+    }
+}
@@ -0,0 +1,186 @@
+package api;
+
+import com.ridgesoft.io.EEPROM;
+import java.io.IOException;
+
+/**
+ * The calibration data for Cactus' sensors: a {@link RangeTable} for each IR
+ * range sensor and a threshold for each wheel's tachometer.
+ * <p>
+ * Calibrations are stored in EEPROM in a compact form (only the calibration
+ * points, not the expanded tables) protected by a checksum, and are loaded
+ * when the VM starts. If no valid calibration is stored, the stock GP2D12
+ * conversion and {@code Motor.DEFAULT_TACHO_THRESHOLD} are used instead.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Calibration {
+    /** The EEPROM address at which calibrations are stored. */
+    public static final int ADDRESS = 0;
+
+    /** Marks the start of a stored calibration. */
+    private static final byte MAGIC_0 = 'C';
+    /** Marks the start of a stored calibration. */
+    private static final byte MAGIC_1 = 'B';
+    /** The version of the storage format. */
+    private static final byte FORMAT_VERSION = 1;
+    /** The size of the header: magic, version and payload length. */
+    private static final int HEADER_SIZE = 5;
+    /** The size of the fixed part of the payload: flags and thresholds. */
+    private static final int FIXED_SIZE = 5;
+    /** The most EEPROM (in bytes) a stored calibration can take. */
+    public static final int MAX_SIZE = HEADER_SIZE + FIXED_SIZE
+            + 2 * (1 + RangeTable.MAX_POINTS * 4) + 1;
+    /** Flag set if the left range table is present. */
+    private static final int HAS_LEFT = 0x01;
+    /** Flag set if the right range table is present. */
+    private static final int HAS_RIGHT = 0x02;
+
+    /** The range table of each IR sensor, or null if uncalibrated. */
+    private final RangeTable[] tables = new RangeTable[2];
+    /** The tachometer threshold of each wheel. */
+    private final int[] tachoThresholds = {
+        Motor.DEFAULT_TACHO_THRESHOLD, Motor.DEFAULT_TACHO_THRESHOLD
+    };
+
+    /** Creates an empty calibration, which uses the stock conversions. */
+    public Calibration() {
+    }
+
+    /**
+     * Gives the range table for an IR sensor.
+     * @param side The sensor ({@code Motor.LEFT} or {@code Motor.RIGHT}).
+     * @return The range table, or null if the sensor is uncalibrated.
+     */
+    public RangeTable table(int side) {
+        return tables[side];
+    }
+
+    /**
+     * Sets the range table for an IR sensor.
+     * @param side The sensor ({@code Motor.LEFT} or {@code Motor.RIGHT}).
+     * @param table The range table, or null to use the stock conversion.
+     */
+    public void setTable(int side, RangeTable table) {
+        tables[side] = table;
+    }
+
+    /**
+     * Gives the tachometer threshold for a wheel.
+     * @param side The wheel ({@code Motor.LEFT} or {@code Motor.RIGHT}).
+     * @return The raw sample below which the tachometer reads 0.
+     */
+    public int tachoThreshold(int side) {
+        return tachoThresholds[side];
+    }
+
+    /**
+     * Sets the tachometer threshold for a wheel.
+     * @param side The wheel ({@code Motor.LEFT} or {@code Motor.RIGHT}).
+     * @param threshold The raw sample below which the tachometer reads 0.
+     */
+    public void setTachoThreshold(int side, int threshold) {
+        if (threshold <= 0 || threshold > RangeTable.MAX_SAMPLE)
+            throw new IllegalArgumentException("Threshold out of range");
+        tachoThresholds[side] = threshold;
+    }
+
+    /**
+     * Loads the calibration stored in EEPROM.
+     * @param eeprom The EEPROM to read from, may be null.
+     * @return The stored calibration, or an empty calibration if there is
+     * none or it is corrupt.
+     */
+    public static Calibration load(EEPROM eeprom) {
+        Calibration c = new Calibration();
+        if (eeprom == null)
+            return c;
+        try {
+            byte[] header = new byte[HEADER_SIZE];
+            eeprom.read(ADDRESS, header);
+            if (header[0] != MAGIC_0 || header[1] != MAGIC_1
+                    || header[2] != FORMAT_VERSION)
+                return c;
+            int length = ((header[3] & 0xFF) << 8) | (header[4] & 0xFF);
+            if (length < FIXED_SIZE
+                    || ADDRESS + HEADER_SIZE + length + 1 > eeprom.size())
+                return c;
+            byte[] buf = new byte[length + 1];
+            eeprom.read(ADDRESS + HEADER_SIZE, buf);
+            if (checksum(buf, 0, length) != buf[length])
+                return c;
+
+            int flags = buf[0];
+            c.tachoThresholds[Motor.LEFT]
+                    = ((buf[1] & 0xFF) << 8) | (buf[2] & 0xFF);
+            c.tachoThresholds[Motor.RIGHT]
+                    = ((buf[3] & 0xFF) << 8) | (buf[4] & 0xFF);
+            int off = FIXED_SIZE;
+            if ((flags & HAS_LEFT) != 0) {
+                c.tables[Motor.LEFT] = new RangeTable(buf, off);
+                off += c.tables[Motor.LEFT].size();
+            }
+            if ((flags & HAS_RIGHT) != 0)
+                c.tables[Motor.RIGHT] = new RangeTable(buf, off);
+        } catch (IOException ex) {
+            return new Calibration();
+        } catch (RuntimeException ex) {
+            // Corrupt data
+            return new Calibration();
+        }
+        return c;
+    }
+
+    /**
+     * Stores this calibration in EEPROM.
+     * @param eeprom The EEPROM to write to.
+     * @throws IOException If the write fails.
+     */
+    public void save(EEPROM eeprom) throws IOException {
+        int length = FIXED_SIZE;
+        int flags = 0;
+        if (tables[Motor.LEFT] != null) {
+            flags |= HAS_LEFT;
+            length += tables[Motor.LEFT].size();
+        }
+        if (tables[Motor.RIGHT] != null) {
+            flags |= HAS_RIGHT;
+            length += tables[Motor.RIGHT].size();
+        }
+        byte[] buf = new byte[HEADER_SIZE + length + 1];
+        buf[0] = MAGIC_0;
+        buf[1] = MAGIC_1;
+        buf[2] = FORMAT_VERSION;
+        buf[3] = (byte) (length >> 8);
+        buf[4] = (byte) length;
+        int off = HEADER_SIZE;
+        buf[off++] = (byte) flags;
+        buf[off++] = (byte) (tachoThresholds[Motor.LEFT] >> 8);
+        buf[off++] = (byte) tachoThresholds[Motor.LEFT];
+        buf[off++] = (byte) (tachoThresholds[Motor.RIGHT] >> 8);
+        buf[off++] = (byte) tachoThresholds[Motor.RIGHT];
+        if (tables[Motor.LEFT] != null)
+            off = tables[Motor.LEFT].write(buf, off);
+        if (tables[Motor.RIGHT] != null)
+            off = tables[Motor.RIGHT].write(buf, off);
+        buf[off] = checksum(buf, HEADER_SIZE, length);
+        if (ADDRESS + buf.length > eeprom.size())
+            throw new IOException("Calibration does not fit in EEPROM");
+        eeprom.write(ADDRESS, buf);
+    }
+
+    /**
+     * Computes the checksum of a payload.
+     * @param buf The buffer holding the payload.
+     * @param off The offset of the payload in the buffer.
+     * @param length The number of bytes in the payload.
+     * @return The sum of the bytes of the payload.
+     */
+    private static byte checksum(byte[] buf, int off, int length) {
+        byte sum = 0;
+        for (int i = off; i < off + length; ++i)
+            sum += buf[i];
+        return sum;
+    }
+}
@@ -0,0 +1,41 @@
+package api;
+
+/**
+ * A reactive navigation controller that turns IR range readings into wheel
+ * speeds one step at a time.
+ * <p>
+ * Controllers never sleep or touch the hardware: each step returns how long
+ * to wait before the next one, and the caller applies the commands and does
+ * the waiting. That way the same controller runs on Cactus and in a
+ * simulator, where a run of many minutes takes milliseconds.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public interface Controller {
+    /**
+     * Chooses the wheel speeds for the latest range readings.
+     * @param t The current time (in ms).
+     * @param leftCm The distance (in cm) to the nearest object on the left,
+     * or a negative number if there is no reading.
+     * @param rightCm The distance (in cm) to the nearest object on the right,
+     * or a negative number if there is no reading.
+     * @return The number of ms to hold the commands before the next step.
+     */
+    int step(long t, float leftCm, float rightCm);
+
+    /**
+     * Gives the speed chosen for the left wheel.
+     * @return The speed (in percent, -100 to 100).
+     */
+    int leftCommand();
+
+    /**
+     * Gives the speed chosen for the right wheel.
+     * @return The speed (in percent, -100 to 100).
+     */
+    int rightCommand();
+
+    /** Starts over as if no step had been taken. */
+    void reset();
+}
@@ -0,0 +1,77 @@
+package api;
+
+/**
+ * Busy-wait delays shorter than a millisecond.
+ * <p>
+ * The only clock on the IntelliBrain counts whole milliseconds and
+ * {@code Thread.sleep} cannot sleep for less than one, so sub-millisecond
+ * delays are made by spinning a loop whose speed is measured when the class
+ * is loaded, the same way an operating system calibrates its delay loop.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Delay {
+    /** The number of ms to spend calibrating the delay loop. */
+    private static final int CALIBRATION_MS = 20;
+
+    /** The number of iterations of {@link #spin(int)} per millisecond. */
+    private static final int LOOPS_PER_MS;
+
+    /** Keeps the delay loop from being optimised away. */
+    private static volatile int sink;
+
+    static {
+        // Start on a clock edge so the whole interval is measured
+        long t = System.currentTimeMillis();
+        long start;
+        while ((start = System.currentTimeMillis()) == t)
+            ;
+        int loops = 0;
+        long end = start + CALIBRATION_MS;
+        while (System.currentTimeMillis() < end) {
+            spin(100);
+            loops += 100;
+        }
+        LOOPS_PER_MS = loops / CALIBRATION_MS > 0 ? loops / CALIBRATION_MS : 1;
+    }
+
+    /** No instances. */
+    private Delay() {
+    }
+
+    /**
+     * Busy-waits for at least the specified number of microseconds. Delays
+     * of a millisecond or more should use {@code Thread.sleep} instead.
+     * @param micros The number of microseconds to wait.
+     */
+    public static void micros(int micros) {
+        if (micros <= 0)
+            return;
+        long loops = (long) micros * LOOPS_PER_MS / 1000 + 1;
+        while (loops > Integer.MAX_VALUE) {
+            spin(Integer.MAX_VALUE);
+            loops -= Integer.MAX_VALUE;
+        }
+        spin((int) loops);
+    }
+
+    /**
+     * Gives the measured speed of the delay loop.
+     * @return The number of loop iterations per millisecond.
+     */
+    public static int loopsPerMs() {
+        return LOOPS_PER_MS;
+    }
+
+    /**
+     * The delay loop.
+     * @param loops The number of iterations.
+     */
+    private static void spin(int loops) {
+        int x = 0;
+        for (int i = 0; i < loops; ++i)
+            x += i;
+        sink = x;
+    }
+}
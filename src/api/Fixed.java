@@ -0,0 +1,303 @@
+package api;
+
+/**
+ * Q16.16 fixed-point math for the control loop.
+ * <p>
+ * The IntelliBrain has no floating point unit, so every float operation is
+ * emulated in software. A fixed-point number is an {@code int} holding the
+ * value multiplied by 65536 ({@code ONE}), which keeps addition and
+ * comparison as cheap as integer math and multiplication and division down
+ * to a single long multiply or divide. Trigonometry and square roots use
+ * tables and integer algorithms built when the class is loaded.
+ * <p>
+ * Angles are fixed-point radians. Results saturate rather than overflow
+ * only where noted.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Fixed {
+    /** The number of fractional bits. */
+    public static final int FRACTION_BITS = 16;
+    /** The fixed-point value of 1. */
+    public static final int ONE = 1 << FRACTION_BITS;
+    /** The fixed-point value of 1/2. */
+    public static final int HALF = ONE >> 1;
+    /** The largest fixed-point value (~32768), used as "infinity". */
+    public static final int MAX_VALUE = Integer.MAX_VALUE;
+    /** The smallest fixed-point value (~-32768). */
+    public static final int MIN_VALUE = Integer.MIN_VALUE;
+    /** The fixed-point value of pi. */
+    public static final int PI = 205887;
+    /** The fixed-point value of pi/2. */
+    public static final int HALF_PI = PI >> 1;
+    /** The fixed-point value of 2 * pi. */
+    public static final int TWO_PI = PI << 1;
+
+    /** The number of bits used to index the sine table. */
+    private static final int SINE_BITS = 8;
+    /** The number of entries per quarter wave in the sine table. */
+    private static final int SINE_SIZE = 1 << SINE_BITS;
+    /** sin(i * pi / (2 * SINE_SIZE)) for i = 0 to SINE_SIZE. */
+    private static final int[] SINE = new int[SINE_SIZE + 1];
+
+    /** The number of bits used to index the arctangent table. */
+    private static final int ATAN_BITS = 8;
+    /** The number of entries in the arctangent table. */
+    private static final int ATAN_SIZE = 1 << ATAN_BITS;
+    /** atan(i / ATAN_SIZE) for i = 0 to ATAN_SIZE. */
+    private static final int[] ATAN = new int[ATAN_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= SINE_SIZE; ++i)
+            SINE[i] = (int) (Math.sin(i * Math.PI / (2 * SINE_SIZE)) * ONE
+                    + 0.5);
+        for (int i = 0; i <= ATAN_SIZE; ++i)
+            ATAN[i] = (int) (Math.atan((double) i / ATAN_SIZE) * ONE + 0.5);
+    }
+
+    /** No instances. */
+    private Fixed() {
+    }
+
+    /**
+     * Converts an integer to fixed-point.
+     * @param i The integer.
+     * @return The fixed-point value.
+     */
+    public static int fromInt(int i) {
+        return i << FRACTION_BITS;
+    }
+
+    /**
+     * Converts a fixed-point value to an integer, rounding toward negative
+     * infinity.
+     * @param f The fixed-point value.
+     * @return The integer part.
+     */
+    public static int toInt(int f) {
+        return f >> FRACTION_BITS;
+    }
+
+    /**
+     * Converts a fixed-point value to the nearest integer.
+     * @param f The fixed-point value.
+     * @return The rounded integer.
+     */
+    public static int round(int f) {
+        return (f + HALF) >> FRACTION_BITS;
+    }
+
+    /**
+     * Converts a float to fixed-point. Meant for constants and for the edges
+     * of the program, not the control loop.
+     * @param x The float.
+     * @return The fixed-point value, saturated.
+     */
+    public static int fromFloat(float x) {
+        if (x >= 32767.0f)
+            return MAX_VALUE;
+        if (x <= -32768.0f)
+            return MIN_VALUE;
+        return (int) (x * ONE);
+    }
+
+    /**
+     * Converts a fixed-point value to a float.
+     * @param f The fixed-point value.
+     * @return The float.
+     */
+    public static float toFloat(int f) {
+        return f / (float) ONE;
+    }
+
+    /**
+     * Creates a fixed-point value from a ratio of integers.
+     * @param numerator The numerator.
+     * @param denominator The denominator (non-zero).
+     * @return numerator / denominator in fixed-point.
+     */
+    public static int ratio(int numerator, int denominator) {
+        return (int) (((long) numerator << FRACTION_BITS) / denominator);
+    }
+
+    /**
+     * Multiplies two fixed-point values.
+     * @param a The first factor.
+     * @param b The second factor.
+     * @return a * b.
+     */
+    public static int mul(int a, int b) {
+        return (int) (((long) a * b) >> FRACTION_BITS);
+    }
+
+    /**
+     * Divides two fixed-point values.
+     * @param a The dividend.
+     * @param b The divisor (non-zero).
+     * @return a / b.
+     */
+    public static int div(int a, int b) {
+        return (int) (((long) a << FRACTION_BITS) / b);
+    }
+
+    /**
+     * Gives the absolute value of a fixed-point value.
+     * @param a The value.
+     * @return |a|.
+     */
+    public static int abs(int a) {
+        return a < 0 ? -a : a;
+    }
+
+    /**
+     * Clamps a fixed-point value to a range.
+     * @param a The value.
+     * @param min The lower bound.
+     * @param max The upper bound.
+     * @return a, limited to [min, max].
+     */
+    public static int clamp(int a, int min, int max) {
+        return a < min ? min : a > max ? max : a;
+    }
+
+    /**
+     * Gives the square root of a fixed-point value, using the bit-by-bit
+     * integer method (no division).
+     * @param a The value (negative values give 0).
+     * @return sqrt(a).
+     */
+    public static int sqrt(int a) {
+        if (a <= 0)
+            return 0;
+        // sqrt(a / ONE) * ONE == sqrt(a * ONE)
+        long n = (long) a << FRACTION_BITS;
+        long root = 0;
+        long bit = 1L << 46;
+        while (bit > n)
+            bit >>= 2;
+        while (bit != 0) {
+            if (n >= root + bit) {
+                n -= root + bit;
+                root = (root >> 1) + bit;
+            } else {
+                root >>= 1;
+            }
+            bit >>= 2;
+        }
+        return (int) root;
+    }
+
+    /**
+     * Gives the length of the vector (x, y) without overflowing for
+     * components up to ~23000.
+     * @param x The x component.
+     * @param y The y component.
+     * @return sqrt(x * x + y * y).
+     */
+    public static int hypot(int x, int y) {
+        x = abs(x);
+        y = abs(y);
+        if (x < y) {
+            int t = x;
+            x = y;
+            y = t;
+        }
+        if (x == 0)
+            return 0;
+        // x * sqrt(1 + (y/x)^2)
+        int r = div(y, x);
+        return mul(x, sqrt(ONE + mul(r, r)));
+    }
+
+    /**
+     * Gives the sine of a fixed-point angle, interpolated from a table.
+     * @param angle The angle (in fixed-point radians).
+     * @return sin(angle), accurate to about 1/20000.
+     */
+    public static int sin(int angle) {
+        angle = wrap(angle);
+        boolean negative = angle < 0;
+        if (negative)
+            angle = -angle;
+        if (angle > HALF_PI)
+            angle = PI - angle;
+        // index = angle / HALF_PI * SINE_SIZE, with 16 fractional bits
+        long pos = ((long) angle << SINE_BITS << FRACTION_BITS) / HALF_PI;
+        int i = (int) (pos >> FRACTION_BITS);
+        int frac = (int) (pos & (ONE - 1));
+        int s = i >= SINE_SIZE ? SINE[SINE_SIZE]
+                : SINE[i] + mul(SINE[i + 1] - SINE[i], frac);
+        return negative ? -s : s;
+    }
+
+    /**
+     * Gives the cosine of a fixed-point angle, interpolated from a table.
+     * @param angle The angle (in fixed-point radians).
+     * @return cos(angle).
+     */
+    public static int cos(int angle) {
+        return sin(wrap(angle) + HALF_PI);
+    }
+
+    /**
+     * Gives the angle of the vector (x, y), interpolated from a table.
+     * @param y The y component.
+     * @param x The x component.
+     * @return The angle (in fixed-point radians, -pi to pi).
+     */
+    public static int atan2(int y, int x) {
+        if (x == 0 && y == 0)
+            return 0;
+        int ax = abs(x);
+        int ay = abs(y);
+        int a;
+        if (ay <= ax)
+            a = atanUnit(div(ay, ax));
+        else
+            a = HALF_PI - atanUnit(div(ax, ay));
+        if (x < 0)
+            a = PI - a;
+        return y < 0 ? -a : a;
+    }
+
+    /**
+     * Wraps a fixed-point angle to the range -pi to pi.
+     * @param angle The angle (in fixed-point radians).
+     * @return The equivalent angle in the range -pi to pi.
+     */
+    public static int wrap(int angle) {
+        if (angle > PI || angle < -PI) {
+            angle %= TWO_PI;
+            if (angle > PI)
+                angle -= TWO_PI;
+            else if (angle < -PI)
+                angle += TWO_PI;
+        }
+        return angle;
+    }
+
+    /**
+     * Applies a first order low-pass filter.
+     * @param previous The previous output of the filter.
+     * @param input The new input.
+     * @param alpha The weight of the new input (0 to {@code ONE}).
+     * @return The new output of the filter.
+     */
+    public static int lowPass(int previous, int input, int alpha) {
+        return previous + mul(alpha, input - previous);
+    }
+
+    /**
+     * Gives the arctangent of a ratio between 0 and 1.
+     * @param r The ratio (0 to {@code ONE}).
+     * @return atan(r).
+     */
+    private static int atanUnit(int r) {
+        int pos = r << ATAN_BITS; // index with 16 fractional bits
+        int i = pos >>> FRACTION_BITS;
+        if (i >= ATAN_SIZE)
+            return ATAN[ATAN_SIZE];
+        return ATAN[i] + mul(ATAN[i + 1] - ATAN[i], pos & (ONE - 1));
+    }
+}
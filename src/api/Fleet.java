@@ -0,0 +1,255 @@
+package api;
+
+/**
+ * Coordinates a team of robots exploring one maze over a {@link Link}: each
+ * robot shares its pose, the walls it has found and the cells it has claimed
+ * to explore, and keeps a {@link SharedMap} of what everyone has found.
+ * <p>
+ * Call {@link #update(long)} from the main loop. It handles every message
+ * that has arrived, sends this robot's pose every {@code POSE_INTERVAL} ms,
+ * and sends new walls and claims in as few messages as the link has room
+ * for. The messages are
+ * <pre>
+ *   POSE    x, y (tenths of cm), heading (mrad)      6 bytes
+ *   WALLS   (cell, wall bits) for up to 16 cells     2 bytes per cell
+ *   CLAIMS  cell for up to 32 cells                  1 byte per cell
+ * </pre>
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Fleet {
+    /** Message type: the pose of the sender. */
+    public static final int POSE = 1;
+    /** Message type: walls of cells the sender has explored. */
+    public static final int WALLS = 2;
+    /** Message type: cells the sender has claimed to explore. */
+    public static final int CLAIMS = 3;
+
+    /** The largest number of robots whose poses are kept. */
+    public static final int MAX_ROBOTS = 8;
+    /** The number of ms between pose messages. */
+    public static final int POSE_INTERVAL = 500;
+    /**
+     * The longest time (in ms) new walls wait to fill a message before they
+     * are sent anyway.
+     */
+    public static final int WALL_INTERVAL = 1000;
+
+    /** The number of cells that fit in a walls message. */
+    private static final int CELLS_PER_MESSAGE = Message.MAX_LENGTH / 2;
+
+    /** The link to the other robots. */
+    private final Link link;
+    /** The map being built. */
+    private final SharedMap map;
+
+    /** The message being sent. */
+    private final Message out = new Message();
+    /** The message being received. */
+    private final Message in = new Message();
+
+    /** Whether each cell has been claimed here but not yet sent. */
+    private final boolean[] claimsDirty = new boolean[SharedMap.CELLS];
+    /** The number of claims not yet sent. */
+    private int claimCount;
+
+    /** This robot's pose: x (in cm). */
+    private float x;
+    /** This robot's pose: y (in cm). */
+    private float y;
+    /** This robot's pose: heading (in radians). */
+    private float heading;
+    /** The time (in ms) to send the next pose. */
+    private long nextPose;
+    /** The time (in ms) to send walls even if they do not fill a message. */
+    private long nextWalls;
+
+    /** The x-coordinate (in cm) of each robot. */
+    private final float[] poseX = new float[MAX_ROBOTS];
+    /** The y-coordinate (in cm) of each robot. */
+    private final float[] poseY = new float[MAX_ROBOTS];
+    /** The heading (in radians) of each robot. */
+    private final float[] poseHeading = new float[MAX_ROBOTS];
+    /** The time (in ms) each robot was last heard from, or -1. */
+    private final long[] lastHeard = new long[MAX_ROBOTS];
+
+    /**
+     * Creates a coordinator.
+     * @param link The link to the other robots.
+     * @param map The map to build.
+     */
+    public Fleet(Link link, SharedMap map) {
+        if (link == null || map == null)
+            throw new IllegalArgumentException("Cannot pass null");
+        this.link = link;
+        this.map = map;
+        for (int i = 0; i < MAX_ROBOTS; ++i)
+            lastHeard[i] = -1;
+    }
+
+    /**
+     * Gives the id of this robot.
+     * @return The id.
+     */
+    public int id() {
+        return link.id();
+    }
+
+    /**
+     * Gives the map being built.
+     * @return The map.
+     */
+    public SharedMap map() {
+        return map;
+    }
+
+    /**
+     * Gives the link to the other robots.
+     * @return The link.
+     */
+    public Link link() {
+        return link;
+    }
+
+    /**
+     * Sets the pose to send to the other robots.
+     * @param x The x-coordinate (in cm).
+     * @param y The y-coordinate (in cm).
+     * @param heading The heading (in radians).
+     */
+    public void setPose(float x, float y, float heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+    }
+
+    /**
+     * Claims a cell for this robot to explore, and tells the other robots.
+     * @param cell The index of the cell.
+     * @return {@code false} if another robot already owns the cell.
+     */
+    public boolean claim(int cell) {
+        if (!map.claim(cell, id()))
+            return false;
+        if (!claimsDirty[cell]) {
+            claimsDirty[cell] = true;
+            ++claimCount;
+        }
+        return true;
+    }
+
+    /**
+     * Handles every message that has arrived and sends whatever is due.
+     * @param now The current time (in ms).
+     */
+    public void update(long now) {
+        while (link.poll(in))
+            handle(in, now);
+        if (now >= nextPose && link.sendSpace() > 0) {
+            out.clear(POSE)
+                    .putShort(Math.round(x * 10))
+                    .putShort(Math.round(y * 10))
+                    .putShort(Math.round(heading * 1000));
+            link.send(out);
+            nextPose = now + POSE_INTERVAL;
+        }
+        while (claimCount > 0 && link.sendSpace() > 0) {
+            out.clear(CLAIMS);
+            for (int c = 0; c < SharedMap.CELLS && out.remaining() > 0; ++c) {
+                if (claimsDirty[c]) {
+                    claimsDirty[c] = false;
+                    --claimCount;
+                    out.putByte(c);
+                }
+            }
+            link.send(out);
+        }
+        // Claims go out at once so robots do not explore the same cells, but
+        // walls can wait to be packed into full messages
+        if (map.dirtyCount() < CELLS_PER_MESSAGE && now < nextWalls)
+            return;
+        nextWalls = now + WALL_INTERVAL;
+        while (map.dirtyCount() > 0 && link.sendSpace() > 0) {
+            out.clear(WALLS);
+            int c;
+            while (out.remaining() >= 2 && (c = map.nextDirty()) >= 0)
+                out.putByte(c).putByte(map.walls(c));
+            link.send(out);
+        }
+    }
+
+    /**
+     * Gives whether a robot has been heard from.
+     * @param robot The id of the robot.
+     * @return {@code true} if a pose has been received from the robot.
+     */
+    public boolean heard(int robot) {
+        return robot >= 0 && robot < MAX_ROBOTS && lastHeard[robot] >= 0;
+    }
+
+    /**
+     * Gives the time a robot was last heard from.
+     * @param robot The id of the robot.
+     * @return The time (in ms), or -1 if it has never been heard from.
+     */
+    public long lastHeard(int robot) {
+        return lastHeard[robot];
+    }
+
+    /**
+     * Gives the last x-coordinate received from a robot.
+     * @param robot The id of the robot.
+     * @return The x-coordinate (in cm).
+     */
+    public float poseX(int robot) {
+        return poseX[robot];
+    }
+
+    /**
+     * Gives the last y-coordinate received from a robot.
+     * @param robot The id of the robot.
+     * @return The y-coordinate (in cm).
+     */
+    public float poseY(int robot) {
+        return poseY[robot];
+    }
+
+    /**
+     * Gives the last heading received from a robot.
+     * @param robot The id of the robot.
+     * @return The heading (in radians).
+     */
+    public float poseHeading(int robot) {
+        return poseHeading[robot];
+    }
+
+    /**
+     * Handles a received message.
+     * @param m The message.
+     * @param now The current time (in ms).
+     */
+    private void handle(Message m, long now) {
+        int robot = m.source();
+        switch (m.type()) {
+            case POSE:
+                if (robot >= MAX_ROBOTS || m.length() < 6)
+                    return;
+                poseX[robot] = m.getShort(0) / 10.0f;
+                poseY[robot] = m.getShort(2) / 10.0f;
+                poseHeading[robot] = m.getShort(4) / 1000.0f;
+                lastHeard[robot] = now;
+                return;
+            case WALLS:
+                for (int i = 0; i + 1 < m.length(); i += 2)
+                    map.merge(m.getByte(i), m.getByte(i + 1));
+                return;
+            case CLAIMS:
+                for (int i = 0; i < m.length(); ++i)
+                    map.claim(m.getByte(i), robot);
+                return;
+            default:
+                // Unknown types are left to newer software
+        }
+    }
+}
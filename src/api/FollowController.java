@@ -0,0 +1,360 @@
+package api;
+
+/**
+ * Follows a wall at full speed by steering on where the wall will be rather
+ * than where it is.
+ * <p>
+ * The controller keeps the last few readings of the sensor on the followed
+ * side and fits a line to them to get how fast the wall is closing in, and
+ * so the angle to it (see {@link #wallAngle()}). It steers on the distance
+ * predicted a look-ahead time from now, which damps the weaving that comes
+ * from steering on a single reading. The wheel on the inside of a turn is
+ * slowed; the other stays at full speed. A reading that jumps by more than
+ * {@code JUMP_CM} is a different wall, and starts the history over.
+ * <p>
+ * Single failed readings are common where the sensor beam grazes the end of
+ * a wall, so for {@code GRACE_MS} after the last good reading the wall is
+ * taken to be where the history says it should be. After that, the wall is
+ * either out of range or too close to see, and the last good reading tells
+ * which. If it was under {@code NEAR_LIMIT_CM}, Cactus backs up and spins
+ * away. Otherwise it turns toward where the wall was to find it again
+ * (following it around corners), and backs away if that takes longer than
+ * {@code LOST_MS}, since it must have nosed into something. Anything closer
+ * than {@code CLOSE_CM} on the other side is turned away from.
+ * <p>
+ * The parameters are, in order, with their indices and defaults (found with
+ * {@code sim.Tuner --controller follow --search cmaes}):
+ * <ul>
+ * <li>{@code TARGET_CM}: the distance to keep from the wall (22cm)</li>
+ * <li>{@code GAIN}: the turn (in percent) per cm of predicted error (1)</li>
+ * <li>{@code LOOK_AHEAD_MS}: how far ahead to predict the wall (1000ms)</li>
+ * <li>{@code LOST_PERCENT}: the inside wheel speed while finding a lost
+ * wall (38%)</li>
+ * <li>{@code CLOSE_CM}: turn away from anything this close on the other
+ * side (21cm)</li>
+ * <li>{@code PERIOD_MS}: the pause after each step (40ms)</li>
+ * </ul>
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class FollowController implements Controller {
+    /** Parameter: the distance (in cm) to keep from the wall. */
+    public static final int TARGET_CM = 0;
+    /** Parameter: the turn (in percent) per cm of predicted error. */
+    public static final int GAIN = 1;
+    /** Parameter: how far ahead (in ms) to predict the wall. */
+    public static final int LOOK_AHEAD_MS = 2;
+    /** Parameter: the inside wheel speed (in percent) to find a lost wall. */
+    public static final int LOST_PERCENT = 3;
+    /** Parameter: turn away from anything this close (cm) on the other side. */
+    public static final int CLOSE_CM = 4;
+    /** Parameter: the pause (in ms) after each step. */
+    public static final int PERIOD_MS = 5;
+
+    /** The names of the parameters. */
+    public static final String[] NAMES = {
+        "targetCm", "gain", "lookAheadMs", "lostPercent", "closeCm",
+        "periodMs"
+    };
+    /** The default value of each parameter. */
+    public static final float[] DEFAULTS = {22, 1, 1000, 38, 21, 40};
+    /** The smallest sensible value of each parameter. */
+    public static final float[] MIN = {15, 0.5f, 0, -50, 10, 10};
+    /** The largest sensible value of each parameter. */
+    public static final float[] MAX = {60, 20, 1500, 80, 40, 200};
+
+    /** The number of readings kept. */
+    public static final int HISTORY = 8;
+    /** The oldest reading (in ms) used to fit the wall. */
+    public static final int WINDOW = 500;
+    /** A change (in cm) between readings that means a different wall. */
+    public static final float JUMP_CM = 15;
+    /** A reading this close (cm) before a failure means too close to see. */
+    public static final float NEAR_LIMIT_CM = 15;
+    /** The distance (in cm) assumed when the wall is too close to see. */
+    private static final float TOO_CLOSE_CM = 5;
+    /** How long (in ms) to predict the wall through failed readings. */
+    public static final int GRACE_MS = 150;
+    /**
+     * The longest (in ms) to turn toward a lost wall before deciding Cactus
+     * is nosed into something too close to see, and backing away.
+     */
+    public static final int LOST_MS = 1500;
+    /** How long (in ms) to back up to get away from a wall. */
+    public static final int BACKUP_MS = 500;
+    /** How long (in ms) to then spin away from the wall. */
+    public static final int SPIN_MS = 400;
+    /** The fastest (in cm/s) a wall can believably close in or fall away. */
+    private static final float MAX_RATE = 2 * Motor.MAX_CM_PER_SECOND;
+
+    /** The side of the followed wall ({@code Motor.LEFT} or {@code RIGHT}). */
+    private final int side;
+    /** The distance (in cm) to keep from the wall. */
+    private final float targetCm;
+    /** The turn (in percent) per cm of predicted error. */
+    private final float gain;
+    /** How far ahead (in ms) to predict the wall. */
+    private final float lookAhead;
+    /** The inside wheel speed (in percent) to find a lost wall. */
+    private final int lostPercent;
+    /** Turn away from anything this close (cm) on the other side. */
+    private final float closeCm;
+    /** The pause (in ms) after each step. */
+    private final int periodMs;
+
+    /** The readings of the followed side, oldest first from {@code head}. */
+    private final float[] ranges = new float[HISTORY];
+    /** The time (in ms) of each reading. */
+    private final long[] times = new long[HISTORY];
+    /** Where the next reading goes. */
+    private int head = 0;
+    /** The number of readings kept. */
+    private int count = 0;
+    /** The last good reading (in cm) of the other side, or -1. */
+    private float lastOther = -1;
+    /** The time (in ms) the wall was lost, or -1 if it is not lost. */
+    private long lostSince = -1;
+    /** The time (in ms) an escape from a wall ends, or -1 if none. */
+    private long escapeEnd = -1;
+
+    /** The rate (in cm/s) at which the wall is moving away. */
+    private float rate = 0;
+    /** The predicted distance (in cm) to the wall. */
+    private float predicted = -1;
+    /** The speed (in percent) for the left wheel. */
+    private int left = 0;
+    /** The speed (in percent) for the right wheel. */
+    private int right = 0;
+
+    /**
+     * Creates a controller that follows the wall on the right.
+     * @param params The parameters, indexed by the constants above.
+     */
+    public FollowController(float[] params) {
+        this(params, Motor.RIGHT);
+    }
+
+    /**
+     * Creates a controller.
+     * @param params The parameters, indexed by the constants above.
+     * @param side The side of the wall to follow ({@code Motor.LEFT} or
+     * {@code Motor.RIGHT}).
+     */
+    public FollowController(float[] params, int side) {
+        if (params.length != DEFAULTS.length)
+            throw new IllegalArgumentException("Need " + DEFAULTS.length
+                    + " parameters");
+        if (side != Motor.LEFT && side != Motor.RIGHT)
+            throw new IllegalArgumentException("Side must be LEFT or RIGHT");
+        this.side = side;
+        targetCm = params[TARGET_CM];
+        gain = params[GAIN];
+        lookAhead = params[LOOK_AHEAD_MS];
+        lostPercent = Math.round(params[LOST_PERCENT]);
+        closeCm = params[CLOSE_CM];
+        periodMs = Math.round(params[PERIOD_MS]);
+    }
+
+    public int step(long t, float leftCm, float rightCm) {
+        if (escapeEnd >= 0) {
+            if (t < escapeEnd) {
+                if (t < escapeEnd - SPIN_MS)
+                    left = right = -100;
+                else
+                    drive(-200);
+                return periodMs;
+            }
+            // Start over as if the walls had just come into view
+            escapeEnd = -1;
+            count = 0;
+            lastOther = -1;
+            lostSince = -1;
+        }
+
+        float wall = side == Motor.RIGHT ? rightCm : leftCm;
+        float other = side == Motor.RIGHT ? leftCm : rightCm;
+
+        if (other >= 0)
+            lastOther = other;
+        else if (lastOther >= 0 && lastOther < NEAR_LIMIT_CM)
+            other = TOO_CLOSE_CM;
+        boolean estimated = false;
+        if (wall < 0 && count > 0 && t - lastTime() <= GRACE_MS) {
+            wall = last() + rate * (t - lastTime()) / 1000;
+            estimated = true;
+        }
+        boolean tooClose = wall < 0 && count > 0 && last() < NEAR_LIMIT_CM;
+
+        // Turn toward the wall, or away from it if negative
+        int turn;
+        if (tooClose || (wall < 0 && lostSince >= 0
+                && t - lostSince >= LOST_MS)) {
+            // Nosed into something too close to see
+            predicted = -1;
+            rate = 0;
+            escapeEnd = t + BACKUP_MS + SPIN_MS;
+            left = right = -100;
+            return periodMs;
+        } else if (other >= 0 && other < closeCm) {
+            turn = -100;
+        } else if (wall < 0) {
+            predicted = -1;
+            rate = 0;
+            if (lostSince < 0)
+                lostSince = t;
+            turn = 100 - lostPercent;
+        } else {
+            lostSince = -1;
+            if (!estimated) {
+                record(t, wall);
+                rate = fit(t);
+                if (rate > MAX_RATE)
+                    rate = MAX_RATE;
+                else if (rate < -MAX_RATE)
+                    rate = -MAX_RATE;
+            }
+            predicted = wall + rate * lookAhead / 1000;
+            turn = Math.round(gain * (predicted - targetCm));
+            if (turn > 200)
+                turn = 200;
+            else if (turn < -200)
+                turn = -200;
+        }
+
+        drive(turn);
+        return periodMs;
+    }
+
+    /**
+     * Sets the wheel speeds for a turn, slowing only the inside wheel so
+     * Cactus keeps its speed.
+     * @param turn How hard to turn toward the wall (0-200), or away from it
+     * if negative.
+     */
+    private void drive(int turn) {
+        int inside = 100 - (turn < 0 ? -turn : turn);
+        boolean towardRight = (turn > 0) == (side == Motor.RIGHT);
+        left = towardRight ? 100 : inside;
+        right = towardRight ? inside : 100;
+        if (turn == 0)
+            left = right = 100;
+    }
+
+    /**
+     * Adds a reading to the history, unless it repeats the last one (as when
+     * the caller reuses a reading between sensor updates).
+     * @param t The time (in ms) of the reading.
+     * @param cm The distance (in cm).
+     */
+    private void record(long t, float cm) {
+        if (count > 0) {
+            float change = cm - last();
+            if (change == 0)
+                return;
+            if (change > JUMP_CM || change < -JUMP_CM)
+                count = 0;
+        }
+        ranges[head] = cm;
+        times[head] = t;
+        head = head == HISTORY - 1 ? 0 : head + 1;
+        if (count < HISTORY)
+            ++count;
+    }
+
+    /**
+     * Gives the latest reading in the history.
+     * @return The distance (in cm).
+     */
+    private float last() {
+        return ranges[head == 0 ? HISTORY - 1 : head - 1];
+    }
+
+    /**
+     * Gives the time of the latest reading in the history.
+     * @return The time (in ms).
+     */
+    private long lastTime() {
+        return times[head == 0 ? HISTORY - 1 : head - 1];
+    }
+
+    /**
+     * Fits a line to the recent readings by least squares.
+     * @param now The current time (in ms).
+     * @return The slope (in cm/s), or 0 if there are too few readings.
+     */
+    private float fit(long now) {
+        float st = 0, sr = 0, stt = 0, str = 0;
+        int n = 0;
+        int k = head;
+        for (int i = 0; i < count; ++i) {
+            k = k == 0 ? HISTORY - 1 : k - 1;
+            long age = now - times[k];
+            if (age > WINDOW)
+                break;
+            float x = -age;
+            st += x;
+            sr += ranges[k];
+            stt += x * x;
+            str += x * ranges[k];
+            ++n;
+        }
+        if (n < 2)
+            return 0;
+        float d = n * stt - st * st;
+        if (d == 0)
+            return 0;
+        return (n * str - st * sr) / d * 1000;
+    }
+
+    /**
+     * Gives the rate at which the followed wall is moving away, from the
+     * line fitted to the recent readings.
+     * @return The rate (in cm/s), negative when closing in.
+     */
+    public float wallRate() {
+        return rate;
+    }
+
+    /**
+     * Gives the angle between Cactus' heading and the followed wall, from
+     * the wall rate and the commanded forward speed.
+     * @return The angle (in radians), positive when heading away from the
+     * wall.
+     */
+    public float wallAngle() {
+        float speed = (left + right) * Motor.MAX_CM_PER_SECOND / 200;
+        if (speed <= 0)
+            return 0;
+        return Fixed.toFloat(Fixed.atan2(Fixed.fromFloat(rate),
+                Fixed.fromFloat(speed)));
+    }
+
+    /**
+     * Gives the distance to the followed wall predicted at the last step.
+     * @return The distance (in cm), or -1 if the wall is lost.
+     */
+    public float predicted() {
+        return predicted;
+    }
+
+    public int leftCommand() {
+        return left;
+    }
+
+    public int rightCommand() {
+        return right;
+    }
+
+    public void reset() {
+        head = 0;
+        count = 0;
+        lastOther = -1;
+        lostSince = -1;
+        escapeEnd = -1;
+        rate = 0;
+        predicted = -1;
+        left = 0;
+        right = 0;
+    }
+}
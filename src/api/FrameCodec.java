@@ -0,0 +1,188 @@
+package api;
+
+/**
+ * Packs {@link Message}s into frames for a byte stream and unpacks them
+ * again, one byte at a time. Each frame is
+ * <pre>
+ *   SYNC  LENGTH  SOURCE  TYPE|SEQUENCE  payload...  CRC-8
+ * </pre>
+ * and the CRC covers everything after the sync byte. A corrupt frame is
+ * dropped and its bytes are decoded again from the next sync byte, so a
+ * lost or damaged byte costs at most the frames it touches.
+ * <p>
+ * The same codec runs on the robot (in {@link Link}) and on the host, so
+ * the robot and host tools always agree on the format.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class FrameCodec {
+    /** The byte that starts every frame. */
+    public static final int SYNC = 0xA5;
+    /** The number of bytes a frame adds to its payload. */
+    public static final int OVERHEAD = 5;
+    /** The largest frame (in bytes). */
+    public static final int MAX_FRAME = Message.MAX_LENGTH + OVERHEAD;
+
+    /** The frame being received. */
+    private final byte[] rx = new byte[MAX_FRAME];
+    /** The number of bytes of the frame received so far. */
+    private int rxCount;
+    /** The last frame decoded. */
+    private final Message frame = new Message();
+    /** Whether a frame was completed by the byte being fed. */
+    private boolean ready;
+    /** The number of good frames decoded. */
+    private int frames;
+    /** The number of frames dropped because they were corrupt. */
+    private int corrupt;
+
+    /**
+     * Packs a message into a frame.
+     * @param m The message.
+     * @param source The id of the sender.
+     * @param sequence The sequence number (0-15).
+     * @param buf The buffer to write the frame to; must have room for
+     * {@code m.length() + OVERHEAD} bytes.
+     * @return The length of the frame.
+     */
+    public static int encode(Message m, int source, int sequence,
+            byte[] buf) {
+        buf[0] = (byte) SYNC;
+        buf[1] = (byte) m.length;
+        buf[2] = (byte) source;
+        buf[3] = (byte) (m.type << 4 | (sequence & 0x0F));
+        copy(m.data, 0, buf, 4, m.length);
+        int n = 4 + m.length;
+        buf[n] = (byte) crc(buf, 1, n - 1);
+        return n + 1;
+    }
+
+    /**
+     * Feeds one received byte to the decoder.
+     * @param b The byte (0-255).
+     * @return {@code true} if the byte completed a good frame, which can
+     * then be read with {@link #read(Message)}.
+     */
+    public boolean feed(int b) {
+        ready = false;
+        decode(b & 0xFF);
+        return ready;
+    }
+
+    /**
+     * Copies the last frame decoded into a message.
+     * @param m The message to copy into.
+     */
+    public void read(Message m) {
+        m.source = frame.source;
+        m.type = frame.type;
+        m.sequence = frame.sequence;
+        m.length = frame.length;
+        copy(frame.data, 0, m.data, 0, frame.length);
+    }
+
+    /**
+     * Gives the sender of the last frame decoded.
+     * @return The id of the sender.
+     */
+    public int source() {
+        return frame.source;
+    }
+
+    /**
+     * Gives the number of good frames decoded.
+     * @return The number of frames.
+     */
+    public int frames() {
+        return frames;
+    }
+
+    /**
+     * Gives the number of frames dropped because they were corrupt.
+     * @return The number of corrupt frames.
+     */
+    public int corrupt() {
+        return corrupt;
+    }
+
+    /**
+     * Runs one byte through the frame state machine.
+     * @param b The byte (0-255).
+     */
+    private void decode(int b) {
+        if (rxCount == 0) {
+            if (b == SYNC)
+                rx[rxCount++] = (byte) b;
+            return;
+        }
+        if (rxCount == 1 && b > Message.MAX_LENGTH) {
+            // A repeated sync byte may start the real frame
+            if (b != SYNC)
+                rxCount = 0;
+            return;
+        }
+        rx[rxCount++] = (byte) b;
+        int length = rx[1] & 0xFF;
+        if (rxCount < length + OVERHEAD)
+            return;
+        if ((rx[rxCount - 1] & 0xFF) != crc(rx, 1, rxCount - 2)) {
+            ++corrupt;
+            resync();
+            return;
+        }
+        rxCount = 0;
+        frame.source = rx[2] & 0xFF;
+        frame.type = (rx[3] >> 4) & 0x0F;
+        frame.sequence = rx[3] & 0x0F;
+        frame.length = length;
+        copy(rx, 4, frame.data, 0, length);
+        ++frames;
+        ready = true;
+    }
+
+    /**
+     * Drops the frame being received and decodes its bytes again from the
+     * next sync byte, in case a frame started inside it.
+     */
+    private void resync() {
+        int n = rxCount;
+        rxCount = 0;
+        // decode() only ever writes behind the byte being fed back
+        for (int i = 1; i < n; ++i)
+            decode(rx[i] & 0xFF);
+    }
+
+    /**
+     * Copies part of one buffer into another (the IntelliBrain has no
+     * {@code System.arraycopy}).
+     * @param src The buffer to copy from.
+     * @param srcOff The offset to copy from.
+     * @param dst The buffer to copy to.
+     * @param dstOff The offset to copy to.
+     * @param length The number of bytes to copy.
+     */
+    static void copy(byte[] src, int srcOff, byte[] dst, int dstOff,
+            int length) {
+        for (int i = 0; i < length; ++i)
+            dst[dstOff + i] = src[srcOff + i];
+    }
+
+    /**
+     * Computes the CRC-8 (polynomial 0x07) of part of a buffer.
+     * @param buf The buffer.
+     * @param off The offset to start at.
+     * @param length The number of bytes.
+     * @return The CRC (0-255).
+     */
+    private static int crc(byte[] buf, int off, int length) {
+        int crc = 0;
+        for (int i = off; i < off + length; ++i) {
+            crc ^= buf[i] & 0xFF;
+            for (int bit = 0; bit < 8; ++bit)
+                crc = (crc & 0x80) != 0 ? (crc << 1 ^ 0x07) & 0xFF
+                        : (crc << 1) & 0xFF;
+        }
+        return crc;
+    }
+}
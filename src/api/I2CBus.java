@@ -0,0 +1,557 @@
+package api;
+
+import com.ridgesoft.io.I2CMaster;
+import java.io.IOException;
+
+/**
+ * Shares the IntelliBrain's I2C bus between devices.
+ * <p>
+ * Devices {@link #attach(int, int, int) attach} to the bus with their address,
+ * bus frequency and the delay they need between transfers. Work is submitted
+ * as {@link Transaction}s, each a short batch of writes and reads, which a
+ * single bus thread carries out in order for each device. While one device
+ * is waiting out its delay the bus thread serves other devices, and callers
+ * never sleep unless they choose to {@link Transaction#await() await} a
+ * result.
+ * <p>
+ * The IntelliBrain's clock only counts milliseconds, so the bus keeps its
+ * own estimate of elapsed time in microseconds from the number of bytes it
+ * has clocked out at each device's frequency, and waits out short delays
+ * with {@link Delay}. Those delays are too short for the {@link Scheduler}'s
+ * wheel, so the bus keeps a thread of its own at control priority, and
+ * charges the time it spends transferring and waiting out short delays to
+ * the control class.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class I2CBus implements Runnable {
+    /** The maximum number of transactions waiting on the bus. */
+    public static final int QUEUE_SIZE = 16;
+
+    /** The number of bits clocked per byte (8 data bits and an ACK). */
+    private static final int BITS_PER_BYTE = 9;
+
+    /** The I2C port controller. */
+    private final I2CMaster master;
+
+    /** The transactions waiting to finish, in the order submitted. */
+    private final Transaction[] queue = new Transaction[QUEUE_SIZE];
+    /** The number of transactions in the queue. */
+    private int queued;
+
+    /** The frequency the master is currently set to (0 if unknown). */
+    private int currentFrequency = 0;
+
+    /** The estimated bus time (in us) since the bus was created. */
+    private long busTime;
+    /** The estimated time (in us) spent clocking data. */
+    private long activeTime;
+    /** The clock time (in ms) at which the bus was created. */
+    private final long created;
+    /** The scheduler the bus's time is charged to. */
+    private final Scheduler scheduler = Scheduler.system();
+
+    /** The number of transactions completed. */
+    private int completed;
+    /** The number of transactions that failed. */
+    private int failed;
+    /** The number of bytes transferred. */
+    private int bytes;
+    /** The largest number of transactions queued at once. */
+    private int maxQueued;
+
+    /** The watchdog to beat during transfers, or {@code null}. */
+    private volatile Watchdog watchdog = null;
+    /** The watchdog channel of the bus. */
+    private int watchChannel;
+
+    /**
+     * Creates a bus manager for the specified I2C port and starts its
+     * thread.
+     * @param master The I2C port controller.
+     */
+    public I2CBus(I2CMaster master) {
+        if (master == null)
+            throw new IllegalArgumentException("Cannot pass a null master");
+        this.master = master;
+        this.created = System.currentTimeMillis();
+        Thread busThread = new Thread(this, "I2C bus");
+        busThread.setDaemon(true);
+        busThread.setPriority(Scheduler.priority(Scheduler.CONTROL));
+        busThread.start();
+    }
+
+    /**
+     * Attaches a device to the bus.
+     * @param address The 8-bit write address of the device (the read address
+     * is {@code address | 1}).
+     * @param frequency The bus frequency (in Hz) to talk to the device at.
+     * @param gapMicros The default minimum delay (in us) between transfers
+     * to the device.
+     * @return The handle used to create transactions for the device.
+     */
+    public Device attach(int address, int frequency, int gapMicros) {
+        if (frequency <= 0)
+            throw new IllegalArgumentException("Frequency must be positive");
+        if (gapMicros < 0)
+            throw new IllegalArgumentException("Gap cannot be negative");
+        return new Device(this, address & 0xFE, frequency, gapMicros);
+    }
+
+    /**
+     * Queues a transaction. The transaction must not already be queued.
+     * @param t The transaction to queue.
+     * @throws IOException If the queue is full.
+     */
+    public void submit(Transaction t) throws IOException {
+        if (t.device.bus != this)
+            throw new IllegalArgumentException("Device is on another bus");
+        synchronized (this) {
+            if (t.state == Transaction.QUEUED)
+                throw new RuntimeException("Transaction already queued");
+            if (t.count == 0) {
+                t.finish(null);
+                return;
+            }
+            if (queued == QUEUE_SIZE)
+                throw new IOException("I2C queue full");
+            t.start();
+            queue[queued++] = t;
+            if (queued > maxQueued)
+                maxQueued = queued;
+            this.notify();
+        }
+    }
+
+    /**
+     * Gives the fraction of time the bus has spent clocking data.
+     * @return The estimated bus utilisation (0.0f-1.0f).
+     */
+    public synchronized float utilisation() {
+        long elapsed = (System.currentTimeMillis() - created) * 1000;
+        return elapsed <= 0 ? 0 : (float) activeTime / elapsed;
+    }
+
+    /**
+     * Gives the number of transactions completed (including failures).
+     * @return The number of transactions completed.
+     */
+    public synchronized int completed() {
+        return completed;
+    }
+
+    /**
+     * Gives the number of transactions that failed.
+     * @return The number of failed transactions.
+     */
+    public synchronized int failed() {
+        return failed;
+    }
+
+    /**
+     * Gives the number of bytes transferred.
+     * @return The number of bytes transferred.
+     */
+    public synchronized int bytes() {
+        return bytes;
+    }
+
+    /**
+     * Gives the largest number of transactions that have been queued at once.
+     * @return The high-water mark of the queue.
+     */
+    public synchronized int maxQueued() {
+        return maxQueued;
+    }
+
+    /** Runs the bus. */
+    public void run() {
+        while (true) {
+            Transaction t;
+            int wait;
+            synchronized (this) {
+                while (queued == 0) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException ex)
+                        { /* Do Nothing. */ }
+                }
+                syncClock();
+                // Pick the first transaction whose device is ready, and note
+                // how long until the soonest one will be otherwise
+                t = null;
+                wait = Integer.MAX_VALUE;
+                for (int i = 0; i < queued; ++i) {
+                    Transaction c = queue[i];
+                    if (c.device.busy != null && c.device.busy != c)
+                        continue; // one transaction per device at a time
+                    long remaining = c.device.readyAt - busTime;
+                    if (remaining <= 0) {
+                        t = c;
+                        break;
+                    }
+                    if (remaining < wait)
+                        wait = (int) remaining;
+                }
+            }
+            if (t == null && wait >= 1000) {
+                pause(wait);
+                continue;
+            }
+            // Transfers and short delays keep the CPU busy
+            long start = System.currentTimeMillis();
+            if (t == null)
+                pause(wait);
+            else
+                step(t);
+            scheduler.charge(Scheduler.CONTROL,
+                    (int) (System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Has a watchdog check that no single transfer on the bus hangs. The bus
+     * is only checked while a transfer is in progress.
+     * @param w The watchdog.
+     * @param deadline The longest time (in ms) a transfer may take.
+     */
+    public void watch(Watchdog w, int deadline) {
+        watchChannel = w.channel("I2C bus", deadline);
+        watchdog = w;
+    }
+
+    /**
+     * Carries out the next step of a transaction.
+     * @param t The transaction.
+     */
+    private void step(Transaction t) {
+        Device d = t.device;
+        int i = t.next;
+        byte[] buf = t.buffers[i];
+        IOException error = null;
+        Watchdog w = watchdog;
+        if (w != null)
+            w.beat(watchChannel);
+        try {
+            if (currentFrequency != d.frequency) {
+                master.setFrequency(d.frequency);
+                currentFrequency = d.frequency;
+            }
+            if (t.reads[i])
+                master.transfer(d.address | 1, null, buf);
+            else
+                master.transfer(d.address, buf, null);
+        } catch (IOException ex) {
+            error = ex;
+        }
+        if (w != null)
+            w.idle(watchChannel);
+        synchronized (this) {
+            long micros = (long) (buf.length + 1) * BITS_PER_BYTE * 1000000
+                    / d.frequency;
+            busTime += micros;
+            activeTime += micros;
+            bytes += buf.length;
+            d.readyAt = busTime + t.gaps[i];
+            if (error == null && ++t.next < t.count) {
+                d.busy = t;
+                return;
+            }
+            d.busy = null;
+            remove(t);
+            ++completed;
+            if (error != null)
+                ++failed;
+        }
+        t.finish(error);
+    }
+
+    /**
+     * Waits for a device to become ready.
+     * @param micros The number of microseconds to wait.
+     */
+    private void pause(int micros) {
+        if (micros < 1000) {
+            Delay.micros(micros);
+            synchronized (this) {
+                busTime += micros;
+            }
+        } else {
+            synchronized (this) {
+                try {
+                    // A new submission may be ready sooner
+                    this.wait((micros + 999) / 1000);
+                } catch (InterruptedException ex)
+                    { /* Do Nothing. */ }
+            }
+        }
+    }
+
+    /**
+     * Advances the bus time to at least the clock time, so that time spent
+     * idle or sleeping counts toward device delays.
+     */
+    private void syncClock() {
+        long clock = (System.currentTimeMillis() - created) * 1000;
+        if (busTime < clock)
+            busTime = clock;
+    }
+
+    /**
+     * Removes a transaction from the queue, keeping the rest in order.
+     * @param t The transaction to remove.
+     */
+    private void remove(Transaction t) {
+        for (int i = 0; i < queued; ++i)
+            if (queue[i] == t) {
+                for (int j = i + 1; j < queued; ++j)
+                    queue[j - 1] = queue[j];
+                queue[--queued] = null;
+                return;
+            }
+    }
+
+    /** A device attached to an {@link I2CBus}. */
+    public static final class Device {
+        /** The bus the device is attached to. */
+        private final I2CBus bus;
+        /** The 8-bit write address of the device. */
+        private final int address;
+        /** The bus frequency (in Hz) used for the device. */
+        private final int frequency;
+        /** The default minimum delay (in us) between transfers. */
+        private final int gap;
+        /** The bus time (in us) at which the device can be used again. */
+        private long readyAt;
+        /** The transaction currently in progress on the device. */
+        private Transaction busy;
+
+        /**
+         * Creates a device handle.
+         * @param bus The bus the device is attached to.
+         * @param address The 8-bit write address of the device.
+         * @param frequency The bus frequency (in Hz) used for the device.
+         * @param gap The default minimum delay (in us) between transfers.
+         */
+        private Device(I2CBus bus, int address, int frequency, int gap) {
+            this.bus = bus;
+            this.address = address;
+            this.frequency = frequency;
+            this.gap = gap;
+        }
+
+        /**
+         * Creates an empty transaction for this device. Transactions are
+         * meant to be created once and reused.
+         * @return The new transaction.
+         */
+        public Transaction transaction() {
+            return new Transaction(this);
+        }
+
+        /**
+         * Gives the bus the device is attached to.
+         * @return The bus.
+         */
+        public I2CBus bus() {
+            return bus;
+        }
+    }
+
+    /**
+     * A batch of writes and reads to one device, carried out in order with a
+     * delay after each.
+     */
+    public static final class Transaction {
+        /** The maximum number of transfers in a transaction. */
+        public static final int MAX_STEPS = 8;
+
+        /** State: not queued. */
+        private static final int IDLE = 0;
+        /** State: waiting on the bus. */
+        private static final int QUEUED = 1;
+        /** State: finished. */
+        private static final int DONE = 2;
+
+        /** The device the transaction is for. */
+        private final Device device;
+        /** The buffer of each transfer. */
+        private final byte[][] buffers = new byte[MAX_STEPS][];
+        /** Whether each transfer is a read (otherwise a write). */
+        private final boolean[] reads = new boolean[MAX_STEPS];
+        /** The delay (in us) after each transfer. */
+        private final int[] gaps = new int[MAX_STEPS];
+        /** The number of transfers. */
+        private int count;
+        /** The next transfer to carry out. */
+        private int next;
+        /** The state of the transaction. */
+        private volatile int state = IDLE;
+        /** The error from the last run, if any. */
+        private IOException error;
+        /** The time (in ms) the transaction last finished. */
+        private long finishTime;
+
+        /**
+         * Creates an empty transaction.
+         * @param device The device the transaction is for.
+         */
+        private Transaction(Device device) {
+            this.device = device;
+        }
+
+        /**
+         * Adds a write to the transaction, followed by the device's default
+         * delay.
+         * @param buf The data to write.
+         * @return This transaction.
+         */
+        public Transaction write(byte[] buf) {
+            return add(buf, false, device.gap);
+        }
+
+        /**
+         * Adds a write to the transaction.
+         * @param buf The data to write.
+         * @param gapMicros The delay (in us) to leave after the write.
+         * @return This transaction.
+         */
+        public Transaction write(byte[] buf, int gapMicros) {
+            return add(buf, false, gapMicros);
+        }
+
+        /**
+         * Adds a read to the transaction, followed by the device's default
+         * delay.
+         * @param buf The buffer to read into.
+         * @return This transaction.
+         */
+        public Transaction read(byte[] buf) {
+            return add(buf, true, device.gap);
+        }
+
+        /**
+         * Adds a read to the transaction.
+         * @param buf The buffer to read into.
+         * @param gapMicros The delay (in us) to leave after the read.
+         * @return This transaction.
+         */
+        public Transaction read(byte[] buf, int gapMicros) {
+            return add(buf, true, gapMicros);
+        }
+
+        /**
+         * Changes the delay after one of the transfers. Only allowed while
+         * the transaction is not queued.
+         * @param step The index of the transfer.
+         * @param gapMicros The delay (in us) to leave after the transfer.
+         */
+        public void setGap(int step, int gapMicros) {
+            if (state == QUEUED)
+                throw new RuntimeException("Transaction is queued");
+            if (step < 0 || step >= count)
+                throw new IllegalArgumentException("No such step");
+            gaps[step] = gapMicros < 0 ? 0 : gapMicros;
+        }
+
+        /**
+         * Gives the delay after one of the transfers.
+         * @param step The index of the transfer.
+         * @return The delay (in us) after the transfer.
+         */
+        public int gap(int step) {
+            return gaps[step];
+        }
+
+        /** Removes all transfers from the transaction. */
+        public void clear() {
+            if (state == QUEUED)
+                throw new RuntimeException("Transaction is queued");
+            for (int i = 0; i < count; ++i)
+                buffers[i] = null;
+            count = 0;
+        }
+
+        /**
+         * Queues this transaction on its device's bus.
+         * @throws IOException If the queue is full.
+         */
+        public void submit() throws IOException {
+            device.bus.submit(this);
+        }
+
+        /**
+         * Gives whether the transaction has finished since it was last
+         * submitted.
+         * @return {@code true} if the transaction is not waiting on the bus.
+         */
+        public boolean done() {
+            return state != QUEUED;
+        }
+
+        /**
+         * Gives when the transaction last finished, as seen by the bus
+         * thread rather than by whoever waits on it.
+         * @return The time (in ms).
+         */
+        public synchronized long finishTime() {
+            return finishTime;
+        }
+
+        /**
+         * Waits for the transaction to finish.
+         * @throws IOException If one of the transfers failed.
+         */
+        public void await() throws IOException {
+            synchronized (this) {
+                while (state == QUEUED)
+                    try {
+                        this.wait();
+                    } catch (InterruptedException ex)
+                        { /* Do Nothing. */ }
+            }
+            if (error != null)
+                throw error;
+        }
+
+        /**
+         * Adds a transfer.
+         * @param buf The buffer.
+         * @param read Whether the transfer is a read.
+         * @param gapMicros The delay (in us) after the transfer.
+         * @return This transaction.
+         */
+        private Transaction add(byte[] buf, boolean read, int gapMicros) {
+            if (state == QUEUED)
+                throw new RuntimeException("Transaction is queued");
+            if (buf == null)
+                throw new IllegalArgumentException("Cannot pass a null buffer");
+            if (count == MAX_STEPS)
+                throw new RuntimeException("Too many transfers");
+            buffers[count] = buf;
+            reads[count] = read;
+            gaps[count] = gapMicros < 0 ? 0 : gapMicros;
+            ++count;
+            return this;
+        }
+
+        /** Marks the transaction as queued. */
+        private void start() {
+            next = 0;
+            error = null;
+            state = QUEUED;
+        }
+
+        /**
+         * Marks the transaction as finished and wakes any waiting threads.
+         * @param ex The error, or null if the transaction succeeded.
+         */
+        private synchronized void finish(IOException ex) {
+            error = ex;
+            finishTime = System.currentTimeMillis();
+            state = DONE;
+            this.notifyAll();
+        }
+    }
+}
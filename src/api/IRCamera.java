@@ -7,11 +7,28 @@ import java.io.IOException;
 /**
  * A class that abstracts the PixArt IR sensor/camera (taken from a Wii(r)
  * remote) attached to an I2C port on Cactus.
+ * <p>
+ * The camera keeps track of the period between frames and the bus latency
+ * of each frame (from request to the last byte read). It can be held to a
+ * target frame rate with {@link #setFrameRate(int)}, and can shrink the
+ * delays it leaves between transfers (see {@link #setAdaptive(boolean)})
+ * for as long as the frames it reads back stay well formed.
  * @author Jacob
  * @version 0.0.3
  * @since 2.0.1
  */
 public final class IRCamera {
+    /** The horizontal resolution of the camera (in pixels). */
+    public static final int WIDTH = 1024;
+    /** The vertical resolution of the camera (in pixels). */
+    public static final int HEIGHT = 768;
+    /** The coordinate reported for a blob slot with nothing in it. */
+    public static final int EMPTY = 0x3FF;
+    /** The number of blob slots in a frame. */
+    public static final int BLOBS = 4;
+    /** The horizontal field of view of the camera (in radians). */
+    public static final float FIELD_OF_VIEW = 0.576f; // ~33 degrees
+
     /** Mode number for basic mode. */
     private static final byte BASIC_MODE = 0x01;
     /** Mode number for extended mode. */
@@ -41,103 +58,393 @@ public final class IRCamera {
     private static final int frequency = 400000; // 400kHz
 
     /** The address to send to the I2C bus when writing. */
-    private final int slaveWriteAddress = 0xB0;
+    private static final int slaveWriteAddress = 0xB0;
 
-    /** The address to send to the I2C bus when reading. */
-    private final int slaveReadAddress = 0xB1;
+    /** Microseconds to wait after each initialization write. */
+    private static final int INIT_GAP = 100;
+    /** Microseconds to wait after requesting a frame. */
+    private static final int REQUEST_GAP = 25;
+    /** Microseconds to wait between the two halves of a frame. */
+    private static final int READ_GAP = 380;
+    /** How much the gaps are shrunk at a time, in fixed-point. */
+    private static final int GAP_STEP = Fixed.ONE / 16;
+    /** The number of good frames in a row before the gaps are shrunk. */
+    private static final int PROBE_FRAMES = 32;
 
     /** first 8-byte read buffer for ext mode. */
-    private final static byte[] rb1 = new byte[18];
+    private final byte[] rb1 = new byte[18];
     /** second 4-byte read buffer for ext mode. */
-    private final static byte[] rb2 = new byte[18];
+    private final byte[] rb2 = new byte[18];
+
+    /** The high bits of x held by each value of a blob's third byte. */
+    private static final short[] X_HIGH = new short[256];
+    /** The high bits of y held by each value of a blob's third byte. */
+    private static final short[] Y_HIGH = new short[256];
+    static {
+        for (int b = 0; b < 256; ++b) {
+            X_HIGH[b] = (short) ((b & 0b00110000) << 4);
+            Y_HIGH[b] = (short) ((b & 0b11000000) << 2);
+        }
+    }
 
     /** 1-byte write buffer (yes i know this is silly). */
     private final static byte[] wb = {0x37}; // magic number!
 
-    /** I2C port controller. */
-    private final I2CMaster master;
+    /** The camera's handle on the I2C bus. */
+    private final I2CBus.Device device;
 
-    public IRCamera(I2CMaster master) throws IOException {
+    /** The transaction that fetches a frame into the read buffers. */
+    private final I2CBus.Transaction frame;
 
-        // Set the master (from the IntelliBrain controller)
-        this.master = master;
-        try {
-            init();
-        } catch (InterruptedException ex) {
-            throw new IOException(ex);
-        }
-    }
+    /** Whether a frame has been requested but not yet decoded. */
+    private boolean requested = false;
+    /** The time (in ms) the frame on its way was requested. */
+    private long requestTime;
+    /** The time (in ms) the last decoded frame was requested. */
+    private long frameTime;
+
+    /** The target number of ms between requests, or 0 for no target. */
+    private int targetPeriod = 0;
+    /** The time (in ms) the next frame is due to be requested. */
+    private long nextFrame;
+    /** The smoothed ms between requests, times 16 (0 if unknown). */
+    private int period16;
+    /** The smoothed bus latency (in ms) of a frame, times 16. */
+    private int latency16;
+    /** The number of frames decoded. */
+    private int frames;
+    /** The number of frames that were not well formed. */
+    private int badFrames;
+
+    /** Whether the gaps are shrunk while frames stay good. */
+    private boolean adaptive = false;
+    /** The fraction of the stock gaps in use, in fixed-point. */
+    private int gapScale = Fixed.ONE;
+    /** The scale below which a bad frame has been seen. */
+    private int gapFloor = 0;
+    /** The number of good frames in a row at the current scale. */
+    private int goodRun;
 
+    /**
+     * Creates a camera with a bus of its own. Use
+     * {@link #IRCamera(I2CBus)} if any other device shares the bus.
+     * @param master The I2C port controller.
+     * @throws IOException If the camera cannot be initialized.
+     */
+    public IRCamera(I2CMaster master) throws IOException {
+        this(new I2CBus(master));
+    }
 
+    /**
+     * Creates a camera on a shared I2C bus.
+     * @param bus The bus the camera is attached to.
+     * @throws IOException If the camera cannot be initialized.
+     */
+    public IRCamera(I2CBus bus) throws IOException {
+        this.device = bus.attach(slaveWriteAddress, frequency, 0);
+        this.frame = device.transaction()
+                .write(wb, REQUEST_GAP)
+                .read(rb1, READ_GAP)
+                .read(rb2, 0);
+        init();
+    }
 
     /** Initialize the camera and be ready to read data. */
-    private void init() throws IOException, InterruptedException {
+    private void init() throws IOException {
         // http://procrastineering.blogspot.com/2008_09_01_archive.html
+        I2CBus.Transaction t = device.transaction();
+        for (byte[] data : INIT_DATA)
+            t.write(data, INIT_GAP);
+        t.submit();
+        t.await();
+    }
+
+    /**
+     * Fetch data from the camera and update an array of 4 blobs.
+     * Waits for the frame if one is not already on its way.
+     * @param blobs The blobs to update
+     */
+    public void detect(Blob[] blobs) throws IOException {
+        receive();
+        decode(rb1, rb2, blobs);
+    }
+
+    /**
+     * Holds {@link #detect(Blob[])} to a frame rate, by waiting until each
+     * frame is due before requesting it.
+     * @param fps The number of frames per second, or 0 to go as fast as the
+     * bus allows.
+     */
+    public void setFrameRate(int fps) {
+        if (fps < 0)
+            throw new IllegalArgumentException("fps must be >= 0");
+        targetPeriod = fps == 0 ? 0 : 1000 / fps;
+        nextFrame = 0;
+    }
+
+    /**
+     * Has the camera shrink the delays between its transfers by
+     * {@code GAP_STEP} after each {@code PROBE_FRAMES} good frames in a row.
+     * A frame that is not well formed grows them again, never to shrink below
+     * that point, and is read again. Turning it off restores the stock
+     * delays, from the next frame requested if one is on its way now.
+     * @param on Whether to adapt the delays.
+     */
+    public void setAdaptive(boolean on) {
+        adaptive = on;
+        gapFloor = 0;
+        goodRun = 0;
+        // The gaps of a queued transaction cannot change; fetch() restores
+        // them before the next request
+        if (!on && !requested)
+            setGapScale(Fixed.ONE);
+    }
+
+    /**
+     * Gives the achieved frame rate.
+     * @return The number of frames per second, or 0 if unknown.
+     */
+    public float fps() {
+        return period16 == 0 ? 0 : 16000.0f / period16;
+    }
+
+    /**
+     * Gives the average time each frame spends on the bus, from request to
+     * the last byte read.
+     * @return The latency (in ms), to a sixteenth of a ms.
+     */
+    public float latency() {
+        return latency16 / 16.0f;
+    }
+
+    /**
+     * Gives the delay left between the two halves of a frame.
+     * @return The delay (in us).
+     */
+    public int readGap() {
+        return frame.gap(1);
+    }
 
-        master.setFrequency(frequency);
+    /**
+     * Gives the number of frames decoded.
+     * @return The number of frames.
+     */
+    public int frames() {
+        return frames;
+    }
+
+    /**
+     * Gives the number of frames that were not well formed.
+     * @return The number of frames.
+     */
+    public int badFrames() {
+        return badFrames;
+    }
+
+    /**
+     * Fetch data from the camera and decode all 4 blobs into flat arrays,
+     * without touching any {@link Blob}s. Waits for the frame if one is not
+     * already on its way.
+     * @param x The array to write the x-coordinates to.
+     * @param y The array to write the y-coordinates to.
+     * @param size The array to write the sizes to.
+     * @return A mask with bit {@code i} set if slot {@code i} holds a blob
+     * (its x-coordinate is not {@code EMPTY}).
+     */
+    public int detect(int[] x, int[] y, int[] size) throws IOException {
+        receive();
+        return decode(rb1, rb2, x, y, size);
+    }
 
-        for (byte[] data : INIT_DATA) {
-            write(data);
-            Thread.sleep(0, 100000); // wait 100us
+    /**
+     * Waits for the requested frame, requesting one when it is due if
+     * needed. A frame that is not well formed is read once more.
+     */
+    private void receive() throws IOException {
+        if (!requested) {
+            long wait = nextFrame - System.currentTimeMillis();
+            if (targetPeriod > 0 && wait > 0)
+                Robot.sleepFor(wait);
+            fetch();
+        }
+        for (int attempt = 0; ; ++attempt) {
+            if (attempt > 0)
+                fetch();
+            requested = false;
+            frame.await();
+            frameTime = requestTime;
+            int sample = (int) (frame.finishTime() - requestTime) << 4;
+            latency16 += frames == 0 ? sample : (sample - latency16) / 8;
+            ++frames;
+            if (wellFormed())
+                break;
+            ++badFrames;
+            if (!adaptive || attempt > 0)
+                break;
         }
+        if (adaptive && ++goodRun >= PROBE_FRAMES
+                && gapScale - GAP_STEP >= gapFloor && gapScale > GAP_STEP) {
+            goodRun = 0;
+            setGapScale(gapScale - GAP_STEP);
+        }
+    }
 
+    /**
+     * Checks that every slot of the frame just read is either empty or on
+     * the camera, and backs the gaps off if not.
+     * @return {@code true} if the frame is well formed.
+     */
+    private boolean wellFormed() {
+        if (slotOk(rb1, 0) && slotOk(rb1, 3) && slotOk(rb1, 6)
+                && slotOk(rb2, 0))
+            return true;
+        if (adaptive) {
+            goodRun = 0;
+            gapFloor = gapScale + GAP_STEP;
+            setGapScale(gapFloor < Fixed.ONE ? gapFloor : Fixed.ONE);
+        }
+        return false;
     }
 
     /**
-     * Fetch data from the camera and update an array of 4 blobs.
-     * @param blobs The blobs to update
+     * Checks one blob slot.
+     * @param buf The read holding the slot.
+     * @param off The offset of the slot in the read.
+     * @return {@code true} if the slot is empty or holds a blob on the
+     * camera.
      */
-    public void detect(Blob[] blobs) throws IOException {
-        read();
+    private static boolean slotOk(byte[] buf, int off) {
+        int b = buf[off + 2] & 0xFF;
+        int x = (buf[off] & 0xFF) | X_HIGH[b];
+        int y = (buf[off + 1] & 0xFF) | Y_HIGH[b];
+        return x == EMPTY ? y == EMPTY : y < HEIGHT;
+    }
+
+    /**
+     * Scales the delays after the request and the first read.
+     * @param scale The fraction of the stock delays, in fixed-point.
+     */
+    private void setGapScale(int scale) {
+        gapScale = scale;
+        frame.setGap(0, Fixed.toInt(REQUEST_GAP * scale));
+        frame.setGap(1, Fixed.toInt(READ_GAP * scale));
+    }
+
+    /**
+     * Decodes a frame into {@link Blob}s, as {@link #detect(Blob[])} does.
+     * @param first The first read of the frame, holding blobs 0-2.
+     * @param second The second read of the frame, holding blob 3.
+     * @param blobs The 4 blobs to update.
+     */
+    public static void decode(byte[] first, byte[] second, Blob[] blobs) {
         for (int i = 0; i < 3; ++i) {
             int off = i * 3; // The buffer offset
             blobs[i].x = 0;
-            blobs[i].x |= rb1[off + 0];
-            blobs[i].x |= (rb1[off + 2] & 0b00110000) << 4; // get the top 2 bits
+            blobs[i].x |= first[off + 0] & 0xFF;
+            blobs[i].x |= (first[off + 2] & 0b00110000) << 4; // get the top 2 bits
             blobs[i].y = 0;
-            blobs[i].y |= rb1[off + 1];
-            blobs[i].y |= (rb1[off + 2] & 0b11000000) << 2; // get the top 2 bits
-            blobs[i].size =(byte) (rb1[off + 2] & 0b00001111);
+            blobs[i].y |= first[off + 1] & 0xFF;
+            blobs[i].y |= (first[off + 2] & 0b11000000) << 2; // get the top 2 bits
+            blobs[i].size =(byte) (first[off + 2] & 0b00001111);
         }
         blobs[3].x = 0;
-        blobs[3].x |= rb2[0];
-        blobs[3].x |= (rb2[2] & 0b00110000) << 4; // get the top 2 bits
+        blobs[3].x |= second[0] & 0xFF;
+        blobs[3].x |= (second[2] & 0b00110000) << 4; // get the top 2 bits
         blobs[3].y = 0;
-        blobs[3].y |= rb2[1];
-        blobs[3].y |= (rb2[2] & 0b11000000) << 2; // get the top 2 bits
-        blobs[3].size =(byte) (rb2[2] & 0b00001111);
+        blobs[3].y |= second[1] & 0xFF;
+        blobs[3].y |= (second[2] & 0b11000000) << 2; // get the top 2 bits
+        blobs[3].size =(byte) (second[2] & 0b00001111);
     }
 
     /**
-     * Populates the read buffers with new data.
-     * @throws IOException if the thread is interrupted or the read fails
+     * Decodes a frame into flat arrays, as {@link #detect(int[], int[],
+     * int[])} does. The high bits of each coordinate are looked up from the
+     * blob's third byte rather than masked and shifted out of it.
+     * @param first The first read of the frame, holding blobs 0-2.
+     * @param second The second read of the frame, holding blob 3.
+     * @param x The array to write the x-coordinates to.
+     * @param y The array to write the y-coordinates to.
+     * @param size The array to write the sizes to.
+     * @return A mask with bit {@code i} set if slot {@code i} holds a blob.
      */
-    private void read() throws IOException {
-        try {
-            write(wb);
-            Thread.sleep(0, 25000); // Wait 25us
-            read(rb1);
-            Thread.sleep(0, 380000); // Wait 380us
-            read(rb2);
-        } catch (InterruptedException ex) {
-            throw new IOException(ex);
-        }
+    public static int decode(byte[] first, byte[] second, int[] x, int[] y,
+            int[] size) {
+        return slot(first, 0, 0, x, y, size)
+                | slot(first, 3, 1, x, y, size)
+                | slot(first, 6, 2, x, y, size)
+                | slot(second, 0, 3, x, y, size);
+    }
+
+    /**
+     * Decodes one blob slot into flat arrays.
+     * @param buf The read holding the slot.
+     * @param off The offset of the slot in the read.
+     * @param i The index of the slot.
+     * @param x The array to write the x-coordinate to.
+     * @param y The array to write the y-coordinate to.
+     * @param size The array to write the size to.
+     * @return {@code 1 << i} if the slot holds a blob, otherwise 0.
+     */
+    private static int slot(byte[] buf, int off, int i, int[] x, int[] y,
+            int[] size) {
+        int b = buf[off + 2] & 0xFF;
+        int bx = (buf[off] & 0xFF) | X_HIGH[b];
+        x[i] = bx;
+        y[i] = (buf[off + 1] & 0xFF) | Y_HIGH[b];
+        size[i] = b & 0b00001111;
+        // Without a branch, as empty slots come and go at random
+        int full = bx ^ EMPTY;
+        return ((full | -full) >>> 31) << i;
+    }
+
+    /**
+     * Starts fetching a frame in the background, so that a later call to
+     * {@link #detect(Blob[])} does not have to wait for the bus.
+     * Does nothing if a frame is already on its way, or if a frame rate is
+     * set and the next frame is not yet due.
+     * @throws IOException If the bus queue is full.
+     */
+    public void request() throws IOException {
+        if (requested || (targetPeriod > 0
+                && System.currentTimeMillis() < nextFrame))
+            return;
+        fetch();
     }
+
+    /**
+     * Submits the frame transaction and times it.
+     * @throws IOException If the bus queue is full.
+     */
+    private void fetch() throws IOException {
+        long now = System.currentTimeMillis();
+        int sample = (int) (now - requestTime) << 4;
+        if (frames > 0)
+            period16 += period16 == 0 ? sample : (sample - period16) / 8;
+        requestTime = now;
+        if (targetPeriod > 0)
+            nextFrame = nextFrame + targetPeriod > now
+                    ? nextFrame + targetPeriod : now + targetPeriod;
+        if (!adaptive && gapScale != Fixed.ONE)
+            setGapScale(Fixed.ONE);
+        frame.submit();
+        requested = true;
+    }
+
     /**
-     * Reads data into the read buffer.
-     * @param rb The buffer to populate
-     * @throws IOException If the read fails
+     * Gives when the last frame decoded by {@link #detect(Blob[])} was
+     * requested, which is within a bus transaction of when the camera
+     * reported it. Used to match frames with a {@link LaserModulator}.
+     * @return The time (in ms).
      */
-    private void read(byte[] rb) throws IOException {
-        master.transfer(slaveReadAddress, null, rb);
+    public long frameTime() {
+        return frameTime;
     }
 
     /**
-     * Writes the buffer to the camera
-     * @param wb The buffer to write
-     * @throws IOException If the write fails
+     * Gives whether a frame requested with {@link #request()} has arrived.
+     * @return {@code true} if {@link #detect(Blob[])} will not wait.
      */
-    private void write(byte[] wb) throws IOException {
-        master.transfer(slaveWriteAddress, wb, null);
+    public boolean ready() {
+        return requested && frame.done();
     }
 }
@@ -4,6 +4,13 @@ import com.ridgesoft.intellibrain.IntelliBrain;
 
 /**
  * A class that abstracts a laser diode connected to the Expansion port motors.
+ * <p>
+ * Powers that are set often, as by a {@link LaserModulator}, can be turned
+ * into port levels once with {@link #level(int)} and then set with
+ * {@link #setLevel(int)}, which does no checking or math.
+ * <p>
+ * Every command that sets the port holds the lock on the laser, as
+ * {@link Motor} does, so none can turn it back on after {@link #halt()}.
  * @author Jacob
  */
 public final class LaserDiode {
@@ -29,8 +36,17 @@ public final class LaserDiode {
      */
     private short currentPower;
 
-    /** The current percentage of power applied to the port. (0.0f-1.0f) */
-    private float currentPct;
+    /**
+     * The current fraction of power applied to the port, in fixed-point
+     * (0-{@code Fixed.ONE}), or -1 if it was set by level.
+     */
+    private int currentFixed;
+
+    /** Whether the laser ignores commands (see {@link #halt()}). */
+    private volatile boolean halted = false;
+
+    /** The highest level the port is set to (see {@link #setLimit(int)}). */
+    private volatile int maxLevel = MAX_POWER;
 
 
     /**
@@ -54,72 +70,129 @@ public final class LaserDiode {
     }
 
     /**
-     * Checks that an argument is within a specified range.
-     * Takes 6 compares for valid arguments.
-     *
-     * @param value The argument to test
-     * @param lowerBound The lower bound of the range
-     * @param upperBound The upper bound of the range
-     * @param inclusive {@code true} if the range should be
-     * [lowerBound, upperBound], {@code false} if it should be
-     * (lowerBound, upperBound).
+     * Sets the laser output power to the specified percentage (0.0f-1.0f).
+     * @param percent The percent power to set the laser port to (0.0f-1.0f).
      */
-    private static strictfp void rangeCheck(float value,
-            float lowerBound, float upperBound,
-            boolean inclusive) {
-        // Check that the range arguments make sense
-        if (lowerBound < upperBound)
-            throw new Error(
-                    "The lower bound cannot be lower than the upper bound");
-        if (lowerBound == upperBound && !inclusive)
-            throw new Error(
-                    "The lower bound cannot be equal to the upper bound");
-
-        // Check that the argument is in the specified range
-        if (inclusive) {
-            if (value < lowerBound)
-                throw new IllegalArgumentException(
-                        "The argument must be >= "
-                        + lowerBound);
-            if (value > upperBound)
-                throw new IllegalArgumentException(
-                        "The argument must be <= " + upperBound);
-        } else {
-            if (value <= lowerBound)
-                throw new IllegalArgumentException(
-                        "The argument must be > "
-                        + lowerBound);
-            if (value >= upperBound)
-                throw new IllegalArgumentException(
-                        "The argument must be < " + upperBound);
+    public void setPower(float percent) {
+        if (!(percent >= 0.0f && percent <= 1.0f))
+            throw new IllegalArgumentException(
+                    "The argument must be in [0.0, 1.0]");
+
+        synchronized (this) {
+            this.currentFixed = Fixed.fromFloat(percent);
+
+            if (percent == 0.0f)
+                this.currentPower = OFF_POWER;
+            else
+                this.currentPower
+                        = (short) (MIN_POWER + percent * POWER_RANGE);
+            if (currentPower > maxLevel) {
+                this.currentPower = (short) maxLevel;
+                this.currentFixed = -1;
+            }
+
+            if (!halted)
+                laserPort.setPower(currentPower);
         }
+    }
 
+    /**
+     * Sets the laser output power to the specified fraction in fixed-point,
+     * without any floating point math.
+     * @param fraction The fraction of full power (0-{@code Fixed.ONE}).
+     */
+    public void setPowerFixed(int fraction) {
+        int level = level(fraction);
+        synchronized (this) {
+            if (level > maxLevel) {
+                this.currentPower = (short) maxLevel;
+                this.currentFixed = -1;
+            } else {
+                this.currentPower = (short) level;
+                this.currentFixed = fraction;
+            }
+            if (!halted)
+                laserPort.setPower(currentPower);
+        }
     }
 
     /**
-     * A specialized version of rangeCheck that ensures arg is in between 0.0f
-     * and 1.0f, inclusive.
-     * @param value The value to check.
+     * Gives the port level for a fraction of full power, to pass to
+     * {@link #setLevel(int)} later.
+     * @param fraction The fraction of full power (0-{@code Fixed.ONE}).
+     * @return The port level.
      */
-    private static strictfp void percentageCheck(float value) {
-        rangeCheck(value, 0.0f, 1.0f, true);
+    public static int level(int fraction) {
+        if (fraction < 0 || fraction > Fixed.ONE)
+            throw new IllegalArgumentException(
+                    "The argument must be in [0, Fixed.ONE]");
+        if (fraction == 0)
+            return OFF_POWER;
+        return MIN_POWER + ((fraction * POWER_RANGE) >> Fixed.FRACTION_BITS);
     }
 
     /**
-     * Sets the laser output power to the specified percentage (0.0f-1.0f).
-     * @param percent The percent power to set the laser port to (0.0f-1.0f).
+     * Sets the laser to a port level from {@link #level(int)}. The level is
+     * not checked, other than against the limit.
+     * @param level The port level.
      */
-    public void setPower(float percent) {
-        percentageCheck(percent);
+    public void setLevel(int level) {
+        synchronized (this) {
+            if (level > maxLevel)
+                level = maxLevel;
+            this.currentPower = (short) level;
+            this.currentFixed = -1;
+            if (!halted)
+                laserPort.setPower(level);
+        }
+    }
+
+    /**
+     * Caps the power of every later command, as the battery runs low (see
+     * {@link PowerMonitor}). Lowers the power at once if it is above the cap.
+     * @param fraction The highest fraction of full power
+     * (0-{@code Fixed.ONE}).
+     */
+    public void setLimit(int fraction) {
+        int level = level(fraction);
+        synchronized (this) {
+            if (level == maxLevel)
+                return;
+            maxLevel = level;
+            if (currentPower > level)
+                setLevel(level);
+        }
+    }
 
-        this.currentPct = percent;
+    /**
+     * Gives whether the laser is on.
+     * @return {@code true} if the port is above the off power.
+     */
+    public boolean isOn() {
+        return !halted && currentPower != OFF_POWER;
+    }
 
-        if (currentPct == 0.0f)
-            this.currentPower = OFF_POWER;
-        else
-            this.currentPower = (short) (MIN_POWER + currentPct * POWER_RANGE);
+    /**
+     * Turns the laser off and ignores all commands until {@link #release()}.
+     * Used by the {@link Watchdog}.
+     */
+    public void halt() {
+        synchronized (this) {
+            halted = true;
+            currentPower = OFF_POWER;
+            currentFixed = 0;
+            laserPort.setPower(OFF_POWER);
+        }
+    }
 
-        laserPort.setPower(currentPower);
+    /**
+     * Lets the laser take commands again after {@link #halt()}. The laser
+     * stays off until it is next set.
+     */
+    public void release() {
+        synchronized (this) {
+            halted = false;
+        }
     }
 
     /**
@@ -127,6 +200,17 @@ public final class LaserDiode {
      * @return The current output power
      */
     public float getPower() {
-        return this.currentPct;
+        return Fixed.toFloat(getPowerFixed());
+    }
+
+    /**
+     * Returns the current output power in terms of the maximum, in
+     * fixed-point (0-{@code Fixed.ONE}).
+     * @return The current output power
+     */
+    public int getPowerFixed() {
+        if (currentFixed >= 0)
+            return currentFixed;
+        return Fixed.ratio(currentPower - MIN_POWER, POWER_RANGE);
     }
 }
@@ -0,0 +1,246 @@
+package api;
+
+/**
+ * Pulses a {@link LaserDiode} with a repeating pattern of power levels.
+ * <p>
+ * A pattern is a list of steps, each a power and a duration. Timed patterns
+ * are stepped by a sampling task on the {@link Scheduler}'s wheel, which
+ * stops itself while there is no timed pattern; a pattern without durations
+ * is stepped by calling {@link #advance()}, so that the laser can change in
+ * lockstep with camera frames. The powers are turned into port levels when
+ * the pattern is set, so each step only writes the port.
+ * <p>
+ * A timed step ends on the first tick of the wheel after its duration, so
+ * up to {@code Scheduler.TICK} ms late, but the next step is timed from when
+ * it should have ended, so the pattern keeps its rate.
+ * <p>
+ * The modulator remembers when the laser last turned on and off, so a
+ * camera frame can be tagged with whether the laser was on when it was
+ * taken (see {@link #wasOn(long)} and {@link IRCamera#frameTime()}):
+ * <pre>
+ * camera.detect(blobs);
+ * boolean lit = modulator.wasOn(camera.frameTime());
+ * </pre>
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class LaserModulator extends PeriodicTask {
+    /** The maximum number of steps in a pattern. */
+    public static final int MAX_STEPS = 16;
+    /** The number of on/off changes remembered for {@link #wasOn(long)}. */
+    public static final int HISTORY = 16;
+
+    /** The laser being driven. */
+    private final LaserDiode laser;
+
+    /** The port level of each step. */
+    private final int[] levels = new int[MAX_STEPS];
+    /** The duration (in ms) of each step. */
+    private final int[] durations = new int[MAX_STEPS];
+    /** The number of steps, or 0 if the laser is held off. */
+    private int steps = 0;
+    /** Whether the pattern is stepped by {@link #advance()}. */
+    private boolean manual = false;
+
+    /** The current step. */
+    private int phase = 0;
+    /** The number of times the pattern has been completed. */
+    private int cycles = 0;
+    /** The time (in ms) the current step ends, for timed patterns. */
+    private long phaseEnd;
+
+    /** Whether the laser is on. */
+    private boolean on = false;
+    /** The times (in ms) at which the laser last turned on or off. */
+    private final long[] changeTimes = new long[HISTORY];
+    /** Whether the laser turned on at each change. */
+    private final boolean[] changeOn = new boolean[HISTORY];
+    /** Where the next change is recorded in the history. */
+    private int changeHead = 0;
+    /** The number of changes in the history. */
+    private int changes = 0;
+
+    /**
+     * Creates a modulator with the laser held off.
+     * @param laser The laser to drive.
+     */
+    public LaserModulator(LaserDiode laser) {
+        if (laser == null)
+            throw new IllegalArgumentException("Cannot pass a null laser");
+        this.laser = laser;
+        laser.setLevel(LaserDiode.level(0));
+    }
+
+    /**
+     * Starts a pattern from its first step.
+     * @param powers The fraction of full power of each step, in fixed-point
+     * (0-{@code Fixed.ONE}).
+     * @param durations The duration (in ms) of each step, or {@code null} to
+     * step with {@link #advance()}.
+     */
+    public void setPattern(int[] powers, int[] durations) {
+        if (powers.length == 0 || powers.length > MAX_STEPS)
+            throw new IllegalArgumentException("Need 1 to " + MAX_STEPS
+                    + " steps");
+        if (durations != null && durations.length != powers.length)
+            throw new IllegalArgumentException(
+                    "Arrays must be of the same size");
+        // Checked first, so a bad pattern leaves the current one running
+        for (int i = 0; i < powers.length; ++i) {
+            if (powers[i] < 0 || powers[i] > Fixed.ONE)
+                throw new IllegalArgumentException(
+                        "Powers must be in [0, Fixed.ONE]");
+            if (durations != null && durations[i] <= 0)
+                throw new IllegalArgumentException(
+                        "Durations must be positive");
+        }
+        synchronized (this) {
+            for (int i = 0; i < powers.length; ++i) {
+                levels[i] = LaserDiode.level(powers[i]);
+                if (durations != null)
+                    this.durations[i] = durations[i];
+            }
+            steps = powers.length;
+            manual = durations == null;
+            phase = 0;
+            cycles = 0;
+            apply(System.currentTimeMillis());
+        }
+        if (durations != null)
+            Scheduler.system().wake(this, Scheduler.SAMPLING, durations[0]);
+    }
+
+    /**
+     * Pulses the laser on and off at a fixed rate.
+     * @param power The fraction of full power when on, in fixed-point.
+     * @param period The length (in ms) of one on/off cycle.
+     * @param duty The fraction of the period the laser is on, in
+     * fixed-point.
+     */
+    public void setDutyCycle(int power, int period, int duty) {
+        if (duty < 0 || duty > Fixed.ONE)
+            throw new IllegalArgumentException(
+                    "The duty must be in [0, Fixed.ONE]");
+        // In long math, as duty * period overflows an int past 32767 ms
+        int onMs = (int) (((long) duty * period + Fixed.HALF)
+                >> Fixed.FRACTION_BITS);
+        if (onMs <= 0) {
+            off();
+        } else if (onMs >= period) {
+            setPattern(new int[] {power}, new int[] {period});
+        } else {
+            setPattern(new int[] {power, 0},
+                    new int[] {onMs, period - onMs});
+        }
+    }
+
+    /** Turns the laser off and stops the pattern. */
+    public synchronized void off() {
+        steps = 0;
+        phase = 0;
+        levels[0] = LaserDiode.level(0);
+        apply(System.currentTimeMillis());
+    }
+
+    /**
+     * Moves a pattern set without durations on to its next step. Does
+     * nothing for a timed pattern.
+     */
+    public synchronized void advance() {
+        if (steps == 0 || !manual)
+            return;
+        next(System.currentTimeMillis());
+    }
+
+    /**
+     * Gives the current step of the pattern.
+     * @return The index of the step.
+     */
+    public synchronized int phase() {
+        return phase;
+    }
+
+    /**
+     * Gives the number of times the pattern has been completed.
+     * @return The number of cycles.
+     */
+    public synchronized int cycles() {
+        return cycles;
+    }
+
+    /**
+     * Gives whether the laser is on.
+     * @return {@code true} if the current step has any power and the laser
+     * is not halted.
+     */
+    public synchronized boolean isOn() {
+        return on;
+    }
+
+    /**
+     * Gives whether the laser was on at a recent time.
+     * @param t The time (in ms).
+     * @return {@code true} if the laser was on at that time, or
+     * {@code false} if it was off or the time is too long ago to know.
+     */
+    public synchronized boolean wasOn(long t) {
+        int k = changeHead;
+        for (int i = 0; i < changes; ++i) {
+            k = k == 0 ? HISTORY - 1 : k - 1;
+            if (changeTimes[k] <= t)
+                return changeOn[k];
+        }
+        return false;
+    }
+
+    /**
+     * Steps a timed pattern.
+     * @param now The current time (in ms).
+     * @return The number of ms until the current step ends, or 0 if there
+     * is no timed pattern.
+     */
+    protected synchronized int run(long now) {
+        if (steps == 0 || manual)
+            return 0;
+        while (now >= phaseEnd)
+            next(now);
+        return (int) (phaseEnd - now);
+    }
+
+    /**
+     * Moves on to the next step. Timed steps are scheduled from the end of
+     * the last one, so the pattern does not drift.
+     * @param now The current time (in ms).
+     */
+    private void next(long now) {
+        if (++phase == steps) {
+            phase = 0;
+            ++cycles;
+        }
+        long start = manual ? now : phaseEnd;
+        // Start over from now if the task fell a whole step behind
+        if (now - start > durations[phase])
+            start = now;
+        apply(start);
+    }
+
+    /**
+     * Writes the level of the current step to the laser.
+     * @param start The time (in ms) the step started.
+     */
+    private void apply(long start) {
+        laser.setLevel(levels[phase]);
+        phaseEnd = start + durations[phase];
+        // A halted laser stays off whatever the pattern says
+        boolean lit = laser.isOn();
+        if (lit != on || changes == 0) {
+            on = lit;
+            changeTimes[changeHead] = start;
+            changeOn[changeHead] = lit;
+            changeHead = changeHead == HISTORY - 1 ? 0 : changeHead + 1;
+            if (changes < HISTORY)
+                ++changes;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.comm.SerialPort;
+import javax.comm.UnsupportedCommOperationException;
+
+/**
+ * Exchanges {@link Message}s with other robots over a serial link, such as
+ * a radio modem on one of the IntelliBrain's COM ports.
+ * <p>
+ * The link is a broadcast medium: every robot hears every frame, and frames
+ * a robot hears from itself are ignored. Messages are framed by
+ * {@link FrameCodec}, so each costs its payload plus
+ * {@code FrameCodec.OVERHEAD} bytes.
+ * <p>
+ * {@link #send(Message)} and {@link #poll(Message)} never block: they copy
+ * into or out of fixed queues, which a background task on the
+ * {@link Scheduler}'s wheel empties and fills every {@code POLL_INTERVAL}
+ * ms. When a queue is full the send fails or the received message is
+ * dropped, and either is counted.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Link extends PeriodicTask {
+    /** The number of frames that can wait to be sent. */
+    public static final int SEND_QUEUE = 8;
+    /** The number of received messages that can wait to be polled. */
+    public static final int RECEIVE_QUEUE = 8;
+    /** The number of ms between passes of the link's task. */
+    public static final int POLL_INTERVAL = 5;
+
+    /** The id of this robot. */
+    private final int id;
+    /** The stream frames are received from. */
+    private final InputStream in;
+    /** The stream frames are sent to. */
+    private final OutputStream out;
+
+    /** The frames waiting to be sent. */
+    private final byte[][] sendQueue = new byte[SEND_QUEUE][FrameCodec.MAX_FRAME];
+    /** The length of each frame waiting to be sent. */
+    private final int[] sendLength = new int[SEND_QUEUE];
+    /** The index of the next frame to send. */
+    private int sendHead;
+    /** The number of frames waiting to be sent. */
+    private int sendCount;
+    /** The sequence number of the next message sent. */
+    private int sequence;
+
+    /** The messages waiting to be polled. */
+    private final Message[] receiveQueue = new Message[RECEIVE_QUEUE];
+    /** The index of the next message to poll. */
+    private int receiveHead;
+    /** The number of messages waiting to be polled. */
+    private int receiveCount;
+
+    /** The decoder for received frames. */
+    private final FrameCodec codec = new FrameCodec();
+    /** The buffer bytes are read into. */
+    private final byte[] readBuffer = new byte[FrameCodec.MAX_FRAME];
+
+    /** The number of frames sent. */
+    private int framesSent;
+    /** The number of bytes sent. */
+    private int bytesSent;
+    /** The number of frames received from other robots. */
+    private int framesReceived;
+    /** The number of sends that failed because the queue was full. */
+    private int sendOverruns;
+    /** The number of received messages dropped because nobody polled. */
+    private int receiveOverruns;
+    /** The last I/O error, or {@code null}. */
+    private volatile IOException error;
+    /** Whether the link has been closed. */
+    private volatile boolean closed;
+
+    /**
+     * Creates a link over a pair of streams and schedules its task.
+     * @param id The id of this robot (0-255).
+     * @param in The stream frames are received from.
+     * @param out The stream frames are sent to.
+     */
+    public Link(int id, InputStream in, OutputStream out) {
+        if (id < 0 || id > 255)
+            throw new IllegalArgumentException("Bad robot id: " + id);
+        if (in == null || out == null)
+            throw new IllegalArgumentException("Cannot pass a null stream");
+        this.id = id;
+        this.in = in;
+        this.out = out;
+        for (int i = 0; i < RECEIVE_QUEUE; ++i)
+            receiveQueue[i] = new Message();
+        Scheduler.system().schedule(this, Scheduler.BACKGROUND, 0);
+    }
+
+    /**
+     * Opens a link on a serial port at 8N1.
+     * @param id The id of this robot (0-255).
+     * @param port The serial port.
+     * @param baud The baud rate.
+     * @return The link.
+     * @throws IOException If the port cannot be set up.
+     */
+    public static Link open(int id, SerialPort port, int baud)
+            throws IOException {
+        try {
+            port.setSerialPortParams(baud, SerialPort.DATABITS_8,
+                    SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        } catch (UnsupportedCommOperationException ex) {
+            throw new IOException("Cannot set up " + port.getName());
+        }
+        return new Link(id, port.getInputStream(), port.getOutputStream());
+    }
+
+    /**
+     * Gives the id of this robot.
+     * @return The id.
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Queues a message to be sent. The message is copied, so it can be
+     * reused as soon as this returns.
+     * @param m The message.
+     * @return {@code false} if the send queue is full.
+     */
+    public synchronized boolean send(Message m) {
+        if (sendCount == SEND_QUEUE) {
+            ++sendOverruns;
+            return false;
+        }
+        int slot = (sendHead + sendCount) % SEND_QUEUE;
+        sendLength[slot] = FrameCodec.encode(m, id, sequence,
+                sendQueue[slot]);
+        ++sendCount;
+        sequence = (sequence + 1) & 0x0F;
+        return true;
+    }
+
+    /**
+     * Gives whether a message can be sent without the queue overflowing.
+     * @return The number of free slots in the send queue.
+     */
+    public synchronized int sendSpace() {
+        return SEND_QUEUE - sendCount;
+    }
+
+    /**
+     * Takes the oldest received message, if there is one.
+     * @param m The message to copy it into.
+     * @return {@code false} if no message was waiting.
+     */
+    public synchronized boolean poll(Message m) {
+        if (receiveCount == 0)
+            return false;
+        Message r = receiveQueue[receiveHead];
+        m.source = r.source;
+        m.type = r.type;
+        m.sequence = r.sequence;
+        m.length = r.length;
+        FrameCodec.copy(r.data, 0, m.data, 0, r.length);
+        receiveHead = (receiveHead + 1) % RECEIVE_QUEUE;
+        --receiveCount;
+        return true;
+    }
+
+    /**
+     * Gives the number of frames sent.
+     * @return The number of frames sent.
+     */
+    public synchronized int framesSent() {
+        return framesSent;
+    }
+
+    /**
+     * Gives the number of bytes sent, including framing.
+     * @return The number of bytes sent.
+     */
+    public synchronized int bytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Gives the number of good frames received from other robots.
+     * @return The number of frames received.
+     */
+    public synchronized int framesReceived() {
+        return framesReceived;
+    }
+
+    /**
+     * Gives the number of frames dropped because they were corrupt.
+     * @return The number of corrupt frames.
+     */
+    public synchronized int corrupt() {
+        return codec.corrupt();
+    }
+
+    /**
+     * Gives the number of sends that failed because the queue was full.
+     * @return The number of failed sends.
+     */
+    public synchronized int sendOverruns() {
+        return sendOverruns;
+    }
+
+    /**
+     * Gives the number of received messages dropped because the receive
+     * queue was full.
+     * @return The number of dropped messages.
+     */
+    public synchronized int receiveOverruns() {
+        return receiveOverruns;
+    }
+
+    /**
+     * Gives the last I/O error on the link.
+     * @return The error, or {@code null} if there has been none.
+     */
+    public IOException error() {
+        return error;
+    }
+
+    /**
+     * Stops the link's task after its current pass. Frames still queued
+     * are not sent, and the streams are left open for their owner to close.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Sends the frames queued so far and receives whatever has arrived.
+     * @param now The current time (in ms).
+     * @return {@code POLL_INTERVAL}, or 0 once closed.
+     */
+    protected int run(long now) {
+        if (closed)
+            return 0;
+        try {
+            // At most a queue's worth each way, so a busy link cannot keep
+            // the background thread to itself
+            for (int i = 0; i < SEND_QUEUE; ++i)
+                if (!transmit())
+                    break;
+            for (int i = 0; i < RECEIVE_QUEUE; ++i)
+                if (!receive())
+                    break;
+        } catch (IOException ex) {
+            error = ex;
+        }
+        return POLL_INTERVAL;
+    }
+
+    /**
+     * Sends the oldest queued frame.
+     * @return {@code true} if a frame was sent.
+     * @throws IOException If the frame cannot be written.
+     */
+    private boolean transmit() throws IOException {
+        byte[] f;
+        int n;
+        synchronized (this) {
+            if (sendCount == 0)
+                return false;
+            f = sendQueue[sendHead];
+            n = sendLength[sendHead];
+        }
+        // The slot is not reused until it is released below
+        out.write(f, 0, n);
+        out.flush();
+        synchronized (this) {
+            sendHead = (sendHead + 1) % SEND_QUEUE;
+            --sendCount;
+            ++framesSent;
+            bytesSent += n;
+        }
+        return true;
+    }
+
+    /**
+     * Reads whatever bytes have arrived and decodes them.
+     * @return {@code true} if any bytes were read.
+     * @throws IOException If the stream cannot be read.
+     */
+    private boolean receive() throws IOException {
+        int n = in.available();
+        if (n <= 0)
+            return false;
+        if (n > readBuffer.length)
+            n = readBuffer.length;
+        n = in.read(readBuffer, 0, n);
+        for (int i = 0; i < n; ++i)
+            if (codec.feed(readBuffer[i]) && codec.source() != id)
+                deliver();
+        return n > 0;
+    }
+
+    /** Queues the frame just decoded to be polled. */
+    private synchronized void deliver() {
+        ++framesReceived;
+        if (receiveCount == RECEIVE_QUEUE) {
+            ++receiveOverruns;
+            return;
+        }
+        codec.read(receiveQueue[(receiveHead + receiveCount) % RECEIVE_QUEUE]);
+        ++receiveCount;
+    }
+}
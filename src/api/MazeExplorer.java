@@ -0,0 +1,146 @@
+package api;
+
+import com.ridgesoft.robotics.AnalogInput;
+
+/**
+ * Explores a maze the way {@code MouseMaze} does: a
+ * {@link FollowController} follows the walls, and since the side sensors
+ * cannot see a wall straight ahead, the front sensors watch for one, and
+ * Cactus spins toward the side with more room before it runs into it.
+ * <p>
+ * Cactus can still catch a shoulder on the end of a wall that none of its
+ * sensors looks at, and push against it for as long as it keeps seeing the
+ * walls it follows. So the explorer also watches the tachometers with a
+ * {@link StallDetector}, and when the wheels slip it backs up for
+ * {@code FollowController.BACKUP_MS} and spins toward the side with more
+ * room for {@code FollowController.SPIN_MS}, then follows the walls afresh.
+ * <p>
+ * Unlike the other controllers, this one reads sensors of its own: the
+ * front pair, through a {@link RangeArray}, once per step. They are only
+ * {@link AnalogInput}s, so a simulator passes inputs it sets itself. The
+ * tick counts are given with {@link #wheelTicks(int, int)}; without them
+ * stalls are not seen.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class MazeExplorer implements Controller {
+    /** The distance (in cm) of a wall ahead that Cactus turns away from. */
+    public static final float FRONT_CM = 15;
+    /** The speed (in percent) of each wheel turning away from a wall ahead. */
+    public static final int SPIN_PERCENT = 60;
+
+    /** The wall follower. */
+    private final FollowController walls;
+    /** The front sensors, read together. */
+    private final RangeArray front;
+    /** Sees the wheels slip. */
+    private final StallDetector stall = new StallDetector();
+    /** The pause (in ms) after each step of an escape. */
+    private final int periodMs;
+    /** Whether tick counts have been given since the last reset. */
+    private boolean ticked = false;
+    /** Whether the stall detector has been started since the last reset. */
+    private boolean counting = false;
+    /** The latest tick counts. */
+    private int leftTicks, rightTicks;
+    /** The time (in ms) the escape from a stall ends, or -1 if none. */
+    private long escapeEnd = -1;
+    /** The left wheel speed (in percent) of the spin of the escape. */
+    private int spin;
+    /** The speed (in percent) for the left wheel. */
+    private int left = 0;
+    /** The speed (in percent) for the right wheel. */
+    private int right = 0;
+
+    /**
+     * Creates an explorer.
+     * @param params The parameters of the {@link FollowController}.
+     * @param front The analog inputs of the front sensors.
+     */
+    public MazeExplorer(float[] params, AnalogInput[] front) {
+        walls = new FollowController(params);
+        this.front = new RangeArray(front, null, Fixed.HALF, FRONT_CM);
+        periodMs = Math.round(params[FollowController.PERIOD_MS]);
+    }
+
+    /**
+     * Gives the explorer the tick counts of the wheels, to see stalls by.
+     * Call it before each step.
+     * @param left The tick count of the left wheel.
+     * @param right The tick count of the right wheel.
+     */
+    public void wheelTicks(int left, int right) {
+        leftTicks = left;
+        rightTicks = right;
+        ticked = true;
+    }
+
+    public int step(long t, float leftCm, float rightCm) {
+        if (ticked && !counting) {
+            stall.start(t, leftTicks, rightTicks);
+            counting = true;
+        } else if (counting && stall.stalled(t, leftTicks, rightTicks)
+                && escapeEnd < 0) {
+            // Pushing against something none of the sensors sees
+            escapeEnd = t + FollowController.BACKUP_MS
+                    + FollowController.SPIN_MS;
+            spin = toLeft(leftCm, rightCm) ? -SPIN_PERCENT : SPIN_PERCENT;
+        }
+        if (escapeEnd >= 0) {
+            if (t < escapeEnd) {
+                if (t < escapeEnd - FollowController.SPIN_MS) {
+                    left = right = -100;
+                } else {
+                    left = spin;
+                    right = -spin;
+                }
+                stall.hold(left, right);
+                return periodMs;
+            }
+            escapeEnd = -1;
+            walls.reset();
+            front.reset();
+        }
+
+        int wait = walls.step(t, leftCm, rightCm);
+        left = walls.leftCommand();
+        right = walls.rightCommand();
+        front.sample();
+        if (front.near() != 0 && left + right > 0) {
+            left = toLeft(leftCm, rightCm) ? -SPIN_PERCENT : SPIN_PERCENT;
+            right = -left;
+        }
+        stall.hold(left, right);
+        return wait;
+    }
+
+    public int leftCommand() {
+        return left;
+    }
+
+    public int rightCommand() {
+        return right;
+    }
+
+    public void reset() {
+        walls.reset();
+        front.reset();
+        ticked = false;
+        counting = false;
+        escapeEnd = -1;
+        left = 0;
+        right = 0;
+    }
+
+    /**
+     * Gives whether to turn left, toward the side with more room.
+     * @param leftCm The left range (in cm), or a negative number if none.
+     * @param rightCm The right range (in cm), or a negative number if none.
+     * @return {@code true} to turn left.
+     */
+    private static boolean toLeft(float leftCm, float rightCm) {
+        // No reading on a side means nothing is there
+        return leftCm < 0 || (rightCm >= 0 && leftCm > rightCm);
+    }
+}
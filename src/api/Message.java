@@ -0,0 +1,158 @@
+package api;
+
+/**
+ * A message sent or received over a {@link Link}.
+ * <p>
+ * Messages are meant to be allocated once and reused: fill one with
+ * {@link #clear(int)} and the put methods and {@link Link#send(Message) send}
+ * it, or {@link Link#poll(Message) poll} into one and read it with the get
+ * methods. Multi-byte values are big-endian.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Message {
+    /** The largest payload (in bytes) a message can carry. */
+    public static final int MAX_LENGTH = 32;
+    /** The largest message type (types are 4 bits on the wire). */
+    public static final int MAX_TYPE = 15;
+
+    /** The id of the robot that sent the message. */
+    int source;
+    /** The type of the message. */
+    int type;
+    /** The sequence number of the message (4 bits). */
+    int sequence;
+    /** The payload. */
+    final byte[] data = new byte[MAX_LENGTH];
+    /** The number of bytes in the payload. */
+    int length;
+
+    /**
+     * Empties the message and sets its type.
+     * @param type The type of the message (0-15).
+     * @return This message.
+     */
+    public Message clear(int type) {
+        if (type < 0 || type > MAX_TYPE)
+            throw new IllegalArgumentException("Bad message type: " + type);
+        this.type = type;
+        this.length = 0;
+        return this;
+    }
+
+    /**
+     * Appends a byte to the payload.
+     * @param b The byte.
+     * @return This message.
+     */
+    public Message putByte(int b) {
+        if (length >= MAX_LENGTH)
+            throw new IndexOutOfBoundsException("Message full");
+        data[length++] = (byte) b;
+        return this;
+    }
+
+    /**
+     * Appends a 16-bit value to the payload.
+     * @param s The value.
+     * @return This message.
+     */
+    public Message putShort(int s) {
+        if (length + 2 > MAX_LENGTH)
+            throw new IndexOutOfBoundsException("Message full");
+        data[length++] = (byte) (s >> 8);
+        data[length++] = (byte) s;
+        return this;
+    }
+
+    /**
+     * Appends a 32-bit value to the payload.
+     * @param i The value.
+     * @return This message.
+     */
+    public Message putInt(int i) {
+        if (length + 4 > MAX_LENGTH)
+            throw new IndexOutOfBoundsException("Message full");
+        data[length++] = (byte) (i >> 24);
+        data[length++] = (byte) (i >> 16);
+        data[length++] = (byte) (i >> 8);
+        data[length++] = (byte) i;
+        return this;
+    }
+
+    /**
+     * Gives an unsigned byte of the payload.
+     * @param i The offset of the byte.
+     * @return The byte (0-255).
+     */
+    public int getByte(int i) {
+        if (i < 0 || i >= length)
+            throw new IndexOutOfBoundsException("No byte at " + i);
+        return data[i] & 0xFF;
+    }
+
+    /**
+     * Gives a signed 16-bit value from the payload.
+     * @param i The offset of the value.
+     * @return The value (-32768-32767).
+     */
+    public int getShort(int i) {
+        if (i < 0 || i + 2 > length)
+            throw new IndexOutOfBoundsException("No short at " + i);
+        return (short) ((data[i] << 8) | (data[i + 1] & 0xFF));
+    }
+
+    /**
+     * Gives a 32-bit value from the payload.
+     * @param i The offset of the value.
+     * @return The value.
+     */
+    public int getInt(int i) {
+        if (i < 0 || i + 4 > length)
+            throw new IndexOutOfBoundsException("No int at " + i);
+        return data[i] << 24 | (data[i + 1] & 0xFF) << 16
+                | (data[i + 2] & 0xFF) << 8 | (data[i + 3] & 0xFF);
+    }
+
+    /**
+     * Gives the number of payload bytes that can still be put.
+     * @return The free space (in bytes).
+     */
+    public int remaining() {
+        return MAX_LENGTH - length;
+    }
+
+    /**
+     * Gives the id of the robot that sent the message.
+     * @return The id of the sender.
+     */
+    public int source() {
+        return source;
+    }
+
+    /**
+     * Gives the type of the message.
+     * @return The type (0-15).
+     */
+    public int type() {
+        return type;
+    }
+
+    /**
+     * Gives the sequence number of the message, which counts up by one with
+     * each message a robot sends, so gaps show lost messages.
+     * @return The sequence number (0-15).
+     */
+    public int sequence() {
+        return sequence;
+    }
+
+    /**
+     * Gives the number of bytes in the payload.
+     * @return The length (in bytes).
+     */
+    public int length() {
+        return length;
+    }
+}
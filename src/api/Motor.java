@@ -20,6 +20,10 @@ public class Motor {
     public static final float CM_PER_TICK = 1.33f;
     /** The number of milliseconds to wait per tachometer refresh. */
     public static final int REFRESH_RATE = 100;
+    /** The approximate speed of the wheel (in cm/s) at full power. */
+    public static final float MAX_CM_PER_SECOND = 17.0f;
+    /** The uncalibrated raw sample below which the tachometer reads 0. */
+    public static final int DEFAULT_TACHO_THRESHOLD = 500;
 
     /** The number of milliseconds to wait after a failed sensor read. */
     private static final int RESAMPLE_RATE = 12;
@@ -40,14 +44,28 @@ public class Motor {
     protected final Servo s;
     /** Indicates whether to mirror the direction of this servo. */
     private final boolean invert;
-    /** The DirectionListener to notify when the direction changes. */
-    private TachoListener listener = null;
+    /** The bus to publish ticks on, or {@code null}. */
+    private volatile WheelBus bus = null;
 
     /** The position that the Servo is currently at. */
     private int currentPosition = MIDPOINT_VALUE;
 
+    /** Whether the motor ignores commands (see {@link #halt()}). */
+    private boolean halted = false;
+
+    /** The top speed (in percent) that commands are scaled to. */
+    private volatile int speedLimit = 100;
+
+    /** The watchdog to beat from the tachometer, or {@code null}. */
+    private volatile Watchdog watchdog = null;
+    /** The watchdog channel of the tachometer. */
+    private int watchChannel;
+
     private Tachometer tacho;
 
+    /** The raw sample below which the tachometer reads 0. */
+    private final int tachoThreshold;
+
     /**
      * Creates a Motor object from the specified servo. Defaults to the left
      * side.
@@ -66,16 +84,29 @@ public class Motor {
      * @param side The side on which the servo is mounted (see {@code LEFT} and {@code RIGHT}).
      */
     public Motor(int servoNumber, int side) {
+        this(servoNumber, side, DEFAULT_TACHO_THRESHOLD);
+    }
+
+    /**
+     * Create a Motor object representing a servo on the specified side of
+     * Cactus, with a calibrated tachometer.
+     *
+     * @param servoNumber Which servomotor to use.
+     * @param side The side on which the servo is mounted (see {@code LEFT} and {@code RIGHT}).
+     * @param tachoThreshold The raw sample below which the tachometer reads 0
+     * (see {@link Calibration}).
+     */
+    public Motor(int servoNumber, int side, int tachoThreshold) {
         this.s = IntelliBrain.getServo(servoNumber);
         this.invert = (side != 0);
+        this.tachoThreshold = tachoThreshold;
         tacho = new Tachometer();
 
         // Stop the motor initially
         this.move(MIDPOINT_VALUE);
         s.off();
-        Thread tachoThread = new Thread(tacho);
-        tachoThread.setDaemon(true);
-        tachoThread.start();
+        Scheduler.system().schedule(tacho, Scheduler.SAMPLING,
+                SamplePolicy.MAX_TACHO_INTERVAL);
     }
 
     /**
@@ -88,7 +119,7 @@ public class Motor {
 
     /** Moves the servo forward at its maximum rotational speed. */
     public void forward() {
-        this.move(SERVO_MAX_VALUE);
+        this.forward(100);
     }
 
     /**
@@ -106,12 +137,13 @@ public class Motor {
                     "percent must be >= 0\n(recieved: " + percent + ")");
         }
 
-        this.move(MIDPOINT_VALUE + MIDPOINT_VALUE * percent / 100);
+        this.move(MIDPOINT_VALUE + MIDPOINT_VALUE * percent * speedLimit
+                / 10000);
     }
 
     /** Moves the servo backward at its maximum rotational speed. */
     public void backward() {
-        this.move(0);
+        this.backward(100);
     }
 
     /**
@@ -129,7 +161,23 @@ public class Motor {
                     "percent must be >=0\n(recieved: " + percent + ")");
         }
 
-        this.move(MIDPOINT_VALUE - MIDPOINT_VALUE * percent / 100);
+        this.move(MIDPOINT_VALUE - MIDPOINT_VALUE * percent * speedLimit
+                / 10000);
+    }
+
+    /**
+     * Moves the servo at the specified signed speed.
+     *
+     * @param percent The speed to spin the motor at (-100-100)%, negative
+     * being backward. 0 stops the motor.
+     */
+    public void setSpeed(int percent) {
+        if (percent > 0)
+            forward(percent);
+        else if (percent < 0)
+            backward(-percent);
+        else
+            stop();
     }
 
     /**
@@ -140,7 +188,7 @@ public class Motor {
      */
     private void move(int value) {
         synchronized (this) {
-            if (value == currentPosition)
+            if (halted || value == currentPosition)
                 return;
             else
                 currentPosition = value;
@@ -156,14 +204,127 @@ public class Motor {
         s.off();
     }
 
+    /**
+     * Stops the motor and ignores all commands until {@link #release()}.
+     * Used by the {@link Watchdog} so that a stalled loop cannot drive the
+     * motor once it wakes up.
+     */
+    public void halt() {
+        synchronized (this) {
+            halted = true;
+            currentPosition = MIDPOINT_VALUE;
+            s.setPosition(MIDPOINT_VALUE);
+            s.off();
+        }
+    }
+
+    /** Lets the motor take commands again after {@link #halt()}. */
+    public void release() {
+        synchronized (this) {
+            halted = false;
+        }
+    }
+
+    /**
+     * Gives whether the motor is halted.
+     * @return {@code true} if the motor is ignoring commands.
+     */
+    public synchronized boolean halted() {
+        return halted;
+    }
+
+    /**
+     * Scales every later command down to a top speed, as the battery runs
+     * low (see {@link PowerMonitor}). Both motors should be given the same
+     * limit, so that turns keep their shape.
+     * @param percent The top speed (0-100)%.
+     */
+    public void setSpeedLimit(int percent) {
+        if (percent < 0 || percent > 100)
+            throw new IllegalArgumentException(
+                    "percent must be in [0, 100]\n(recieved: " + percent + ")");
+        speedLimit = percent;
+    }
+
+    /**
+     * Gives the top speed that commands are scaled to.
+     * @return The top speed (0-100)%.
+     */
+    public int speedLimit() {
+        return speedLimit;
+    }
+
+    /**
+     * Has the tachometer beat a watchdog channel on every sample.
+     * @param w The watchdog.
+     * @param deadline The longest time (in ms) allowed between samples.
+     */
+    public void watch(Watchdog w, int deadline) {
+        watchChannel = w.channel(invert ? "Right tacho" : "Left tacho",
+                deadline);
+        watchdog = w;
+    }
+
+    /**
+     * Has the tachometer publish every tick on a bus.
+     * @param b The bus.
+     */
+    public void publish(WheelBus b) {
+        if (b == null)
+            throw new IllegalArgumentException("Cannot pass a null bus");
+        bus = b;
+    }
+
     /**
      * Gives the speed of the motor as a percentage from -100 to 100.
      * @return the speed of the motor.
      */
     public int speed() {
-        if (currentPosition == MIDPOINT_VALUE)
+        return (currentPosition - MIDPOINT_VALUE) * 100 / MIDPOINT_VALUE;
+    }
+
+    /**
+     * Gives the speed of the motor as a fixed-point fraction, without the
+     * rounding of {@link #speed()}.
+     * @return the speed of the motor (-{@code Fixed.ONE} to
+     * {@code Fixed.ONE}).
+     */
+    public int speedFixed() {
+        return Fixed.ratio(currentPosition - MIDPOINT_VALUE, MIDPOINT_VALUE);
+    }
+
+    /**
+     * Gives the speed of the wheel as measured by the tachometer. If no tick
+     * has been seen for longer than the last tick period, the speed is taken
+     * to be at most one tick over the time since the last tick.
+     * @return the measured speed of the wheel (in cm/s, negative backward).
+     */
+    public float velocity() {
+        int period = tacho.tickPeriod;
+        if (period == 0)
             return 0;
-        return MIDPOINT_VALUE *100 / (MIDPOINT_VALUE - currentPosition);
+        long since = System.currentTimeMillis() - tacho.lastTickTime;
+        if (since > period)
+            period = since > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) since;
+        float v = CM_PER_TICK * 1000 / period;
+        return tacho.lastDirection < 0 ? -v : v;
+    }
+
+    /**
+     * Gives the speed the wheel is expected to move at: the larger of the
+     * measured speed and the commanded speed. Used to pick sample rates, where
+     * overestimating is safe and underestimating is not.
+     * @return the expected speed of the wheel (in cm/s, sign ignored).
+     */
+    public float expectedSpeed() {
+        float measured = velocity();
+        if (measured < 0)
+            measured = -measured;
+        int commanded = speed();
+        if (commanded < 0)
+            commanded = -commanded;
+        float expected = commanded * MAX_CM_PER_SECOND / 100;
+        return measured > expected ? measured : expected;
     }
 
     /**
@@ -174,7 +335,11 @@ public class Motor {
         return tacho.tickCount;
     }
 
-    private class Tachometer implements Runnable {
+    /**
+     * Samples the pseudo-tachometer on the scheduler's sampling thread, as
+     * often as the wheel's speed calls for (see {@link SamplePolicy}).
+     */
+    private class Tachometer extends PeriodicTask {
 
         /** The pseudo-tachometer sensor. */
         private final AnalogInput sensor;
@@ -185,6 +350,15 @@ public class Motor {
         /** The last recorded reading of the sensor. */
         private int prevReading;
 
+        /** The time (in ms) at which the last tick was seen. */
+        private volatile long lastTickTime;
+
+        /** The number of ms between the last two ticks (0 if unknown). */
+        private volatile int tickPeriod;
+
+        /** The direction of the last tick (1 forward, -1 backward). */
+        private volatile int lastDirection;
+
         public Tachometer() {
             if (invert)
                 this.sensor = IntelliBrain.getAnalogInput(
@@ -196,32 +370,40 @@ public class Motor {
 
         }
 
-        @Override
-        public void run() {
-            synchronized (this) {
-
-                while (true) {
-                    try {
-                        this.wait(REFRESH_RATE);
-                    } catch (InterruptedException ex)
-                        { /* Do Nothing. */ }
-                    int pos = currentPosition;
-                    int reading;
-                    if (pos < MIDPOINT_VALUE) {
-                        reading = sensed();
-                        if (reading != prevReading)
-                            --tickCount;
-                    } else if (pos > MIDPOINT_VALUE) {
-                        reading = sensed();
-                        if (reading != prevReading)
-                            ++tickCount;
-                    } else {
-                        continue;
-                    }
-                    prevReading = reading;
-                    listener.tick(reading);
+        protected int run(long now) {
+            Watchdog w = watchdog;
+            if (w != null)
+                w.beat(watchChannel);
+            int pos = currentPosition;
+            int reading;
+            int direction;
+            if (pos < MIDPOINT_VALUE) {
+                reading = sensed();
+                direction = -1;
+            } else if (pos > MIDPOINT_VALUE) {
+                reading = sensed();
+                direction = 1;
+            } else {
+                return SamplePolicy.tachoInterval(expectedSpeed());
+            }
+            if (reading != prevReading) {
+                tickCount += direction;
+                if (lastDirection == direction)
+                    tickPeriod = (int) (now - lastTickTime);
+                else
+                    tickPeriod = 0;
+                lastTickTime = now;
+                lastDirection = direction;
+                WheelBus b = bus;
+                if (b != null) {
+                    int period = tickPeriod;
+                    b.publish(side(), direction, now, tickCount,
+                            period == 0 ? 0 : direction * CM_PER_TICK
+                            * 1000 / period);
                 }
             }
+            prevReading = reading;
+            return SamplePolicy.tachoInterval(expectedSpeed());
         }
 
         /**
@@ -230,7 +412,7 @@ public class Motor {
          * milliseconds waited trying to obtain a successful reading
          */
         private int sensed() {
-            return sensor.sample() < 500 ? 0 : 1;
+            return sensor.sample() < tachoThreshold ? 0 : 1;
 //            synchronized (this) {
 //                int sample = sensor.sample();
 //                int sampleCount = 1;
@@ -252,4 +434,4 @@ public class Motor {
         }
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
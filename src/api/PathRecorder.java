@@ -0,0 +1,505 @@
+package api;
+
+/**
+ * Records the path Cactus drives as a list of segments, so that it can be
+ * driven again by a {@link PathReplay}.
+ * <p>
+ * A segment is the number of ticks each wheel turned, the average command
+ * each wheel was given while it did, and the IR ranges at its end, which
+ * let a replay correct for drift the tachometers cannot see. A segment ends
+ * once either wheel has turned {@code SEGMENT_TICKS}, or when either wheel's
+ * command changes direction, so each wheel turns only one way within a
+ * segment. Segments in which neither wheel turned are dropped. Each segment
+ * takes 8 bytes, so a long run fits in a few kB.
+ * <p>
+ * Once a maze is solved, {@link #shorten()} cuts out the dead ends it
+ * explored on the way and joins the short segments of straight drives, so
+ * that a replay only drives the way through, and at full speed.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class PathRecorder {
+    /** The default number of segments that can be recorded. */
+    public static final int DEFAULT_CAPACITY = 256;
+    /** The number of ticks of either wheel that end a segment. */
+    public static final int SEGMENT_TICKS = 4;
+    /** How close (in cm) the path must come back to itself to be cut. */
+    public static final float LOOP_CM = 10;
+    /** The shortest distance (in cm) driven around a loop that is cut. */
+    public static final float MIN_LOOP_CM = 40;
+    /** How close (in radians) the headings must be for the path to be cut. */
+    public static final float LOOP_RAD = 0.5f;
+    /** How far (in cm) a run of segments may stray from a line to be joined. */
+    public static final float STRAIGHT_CM = 2;
+    /** The most ticks either wheel turns in a joined segment. */
+    public static final int JOIN_TICKS = 24;
+
+    /** The ticks turned by the left wheel in each segment. */
+    private final short[] leftTicks;
+    /** The ticks turned by the right wheel in each segment. */
+    private final short[] rightTicks;
+    /** The average left command (in percent) of each segment. */
+    private final byte[] leftCommands;
+    /** The average right command (in percent) of each segment. */
+    private final byte[] rightCommands;
+    /** The left range (in cm, 0 if none) at the end of each segment. */
+    private final byte[] leftRanges;
+    /** The right range (in cm, 0 if none) at the end of each segment. */
+    private final byte[] rightRanges;
+    /** The number of finished segments. */
+    private int segments;
+    /** Whether a segment ran out of room. */
+    private boolean full;
+
+    /** Whether recording has started. */
+    private boolean recording;
+    /** The tick counts at the start of the open segment. */
+    private int startLeft, startRight;
+    /** The sums of the commands given during the open segment. */
+    private int sumLeft, sumRight;
+    /** The number of commands given during the open segment. */
+    private int samples;
+    /** The direction (-1, 0 or 1) of each command in the open segment. */
+    private int dirLeft, dirRight;
+    /** The latest ranges (in cm, 0 if none). */
+    private int leftCm, rightCm;
+
+    /** Creates a recorder with room for {@code DEFAULT_CAPACITY} segments. */
+    public PathRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a recorder.
+     * @param capacity The number of segments there is room for.
+     */
+    public PathRecorder(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+        leftTicks = new short[capacity];
+        rightTicks = new short[capacity];
+        leftCommands = new byte[capacity];
+        rightCommands = new byte[capacity];
+        leftRanges = new byte[capacity];
+        rightRanges = new byte[capacity];
+    }
+
+    /**
+     * Throws away any recorded path and starts recording from here.
+     * @param left The current tick count of the left wheel.
+     * @param right The current tick count of the right wheel.
+     */
+    public void start(int left, int right) {
+        segments = 0;
+        full = false;
+        recording = true;
+        open(left, right);
+    }
+
+    /**
+     * Records the commands given in one step, how far the wheels have turned
+     * and the latest IR ranges. Should be called on every step, before the
+     * commands are applied. Does nothing before {@link #start(int, int)} or
+     * once full.
+     * @param leftCommand The speed (in percent) given to the left wheel.
+     * @param rightCommand The speed (in percent) given to the right wheel.
+     * @param left The current tick count of the left wheel.
+     * @param right The current tick count of the right wheel.
+     * @param leftCm The latest left range (in cm), or a negative number if
+     * there is no reading.
+     * @param rightCm The latest right range (in cm), or a negative number if
+     * there is no reading.
+     */
+    public void record(int leftCommand, int rightCommand, int left,
+            int right, float leftCm, float rightCm) {
+        if (!recording || full)
+            return;
+        this.leftCm = toByte(leftCm);
+        this.rightCm = toByte(rightCm);
+        int dl = sign(leftCommand);
+        int dr = sign(rightCommand);
+        boolean turned = (dirLeft != 0 && dl != 0 && dl != dirLeft)
+                || (dirRight != 0 && dr != 0 && dr != dirRight);
+        if (turned || abs(left - startLeft) >= SEGMENT_TICKS
+                || abs(right - startRight) >= SEGMENT_TICKS) {
+            close(left, right);
+            if (full)
+                return;
+        }
+        sumLeft += leftCommand;
+        sumRight += rightCommand;
+        ++samples;
+        if (dl != 0)
+            dirLeft = dl;
+        if (dr != 0)
+            dirRight = dr;
+    }
+
+    /**
+     * Ends the recording.
+     * @param left The current tick count of the left wheel.
+     * @param right The current tick count of the right wheel.
+     */
+    public void finish(int left, int right) {
+        if (recording && !full)
+            close(left, right);
+        recording = false;
+    }
+
+    /**
+     * Shortens the path for a replay:
+     * <ul>
+     * <li>Loops are cut out, as when Cactus went down a dead end and came back
+     * out. The path is dead reckoned from the ticks; wherever it drives at
+     * least {@code MIN_LOOP_CM} and comes back within {@code LOOP_CM} of a
+     * point with a heading within {@code LOOP_RAD}, everything in between is
+     * replaced by a spin in place to the later heading. Each point is cut to
+     * the last time the path comes back to it.</li>
+     * <li>Backing up is cut out, along with as much of the drive before it,
+     * wheel by wheel, as it undoes, so the replay stops short of the wall
+     * Cactus ran into rather than pushing against it.</li>
+     * <li>Runs of segments that stray no more than {@code STRAIGHT_CM} from a
+     * line are joined, up to {@code JOIN_TICKS} a wheel. A segment ends as
+     * soon as either wheel turns {@code SEGMENT_TICKS}, so a straight drive
+     * is recorded as 4 and 3 ticks, then 3 and 4; joined, both wheels drive
+     * at full speed rather than each in turn at three quarters.</li>
+     * </ul>
+     * @return The number of segments removed.
+     */
+    public int shorten() {
+        int n = segments;
+        cutLoops();
+        cutBackups();
+        join();
+        return n - segments;
+    }
+
+    /** Cuts loops out of the path, as {@link #shorten()} describes. */
+    private void cutLoops() {
+        int n = segments;
+        float[] xs = new float[n + 1];
+        float[] ys = new float[n + 1];
+        float[] hs = new float[n + 1];
+        float[] driven = new float[n + 1];
+        float wheelBase = StateEstimator.DEFAULT_WHEEL_BASE;
+        for (int i = 0; i < n; ++i) {
+            float dl = leftTicks[i] * Motor.CM_PER_TICK;
+            float dr = rightTicks[i] * Motor.CM_PER_TICK;
+            float h = hs[i] + (dr - dl) / (2 * wheelBase);
+            xs[i + 1] = xs[i] + (dl + dr) / 2 * (float) Math.cos(h);
+            ys[i + 1] = ys[i] + (dl + dr) / 2 * (float) Math.sin(h);
+            hs[i + 1] = hs[i] + (dr - dl) / wheelBase;
+            driven[i + 1] = driven[i] + (Math.abs(dl) + Math.abs(dr)) / 2;
+        }
+
+        // Segments are only ever moved back, so this works in place
+        int out = 0;
+        for (int i = 0; i < n; ) {
+            int cut = -1;
+            for (int j = n; j > i + 1 && cut < 0; --j) {
+                if (driven[j] - driven[i] < MIN_LOOP_CM)
+                    break;
+                float dx = xs[j] - xs[i];
+                float dy = ys[j] - ys[i];
+                if (dx * dx + dy * dy < LOOP_CM * LOOP_CM
+                        && Math.abs(wrap(hs[j] - hs[i])) < LOOP_RAD)
+                    cut = j;
+            }
+            if (cut < 0) {
+                move(i, out++);
+                ++i;
+                continue;
+            }
+            int spin = Math.round(wrap(hs[cut] - hs[i]) * wheelBase / 2
+                    / Motor.CM_PER_TICK);
+            if (spin != 0) {
+                leftTicks[out] = (short) -spin;
+                rightTicks[out] = (short) spin;
+                leftCommands[out] = (byte) (spin > 0 ? -100 : 100);
+                rightCommands[out] = (byte) (spin > 0 ? 100 : -100);
+                leftRanges[out] = 0;
+                rightRanges[out] = 0;
+                ++out;
+            }
+            i = cut;
+        }
+        segments = out;
+    }
+
+    /** Cuts backing up out of the path, as {@link #shorten()} describes. */
+    private void cutBackups() {
+        int out = 0;
+        for (int i = 0; i < segments; ++i) {
+            if (leftTicks[i] > 0 || rightTicks[i] > 0
+                    || (leftTicks[i] == 0 && rightTicks[i] == 0)) {
+                move(i, out++);
+                continue;
+            }
+            // Undo the drive before it, back to the last spin
+            int backLeft = -leftTicks[i];
+            int backRight = -rightTicks[i];
+            for (int j = out - 1; j >= 0 && (backLeft > 0 || backRight > 0)
+                    && leftTicks[j] >= 0 && rightTicks[j] >= 0; --j) {
+                int take = Math.min(backLeft, leftTicks[j]);
+                leftTicks[j] -= take;
+                backLeft -= take;
+                take = Math.min(backRight, rightTicks[j]);
+                rightTicks[j] -= take;
+                backRight -= take;
+            }
+            if (backLeft > 0 || backRight > 0) {
+                leftTicks[i] = (short) -backLeft;
+                rightTicks[i] = (short) -backRight;
+                move(i, out++);
+            }
+        }
+        // Drop the segments that were undone entirely
+        int kept = 0;
+        for (int i = 0; i < out; ++i)
+            if (leftTicks[i] != 0 || rightTicks[i] != 0)
+                move(i, kept++);
+        segments = kept;
+    }
+
+    /** Joins straight runs of segments, as {@link #shorten()} describes. */
+    private void join() {
+        int n = segments;
+        float[] xs = new float[n + 1];
+        float[] ys = new float[n + 1];
+        float wheelBase = StateEstimator.DEFAULT_WHEEL_BASE;
+        float h = 0;
+        for (int i = 0; i < n; ++i) {
+            float dl = leftTicks[i] * Motor.CM_PER_TICK;
+            float dr = rightTicks[i] * Motor.CM_PER_TICK;
+            float mid = h + (dr - dl) / (2 * wheelBase);
+            xs[i + 1] = xs[i] + (dl + dr) / 2 * (float) Math.cos(mid);
+            ys[i + 1] = ys[i] + (dl + dr) / 2 * (float) Math.sin(mid);
+            h += (dr - dl) / wheelBase;
+        }
+
+        // Segments are only ever moved back, so this works in place
+        int out = 0;
+        for (int i = 0; i < n; ) {
+            int end = i + 1;
+            while (end < n && joins(i, end, xs, ys))
+                ++end;
+            int left = 0, right = 0, sumLeft = 0, sumRight = 0;
+            for (int k = i; k < end; ++k) {
+                left += leftTicks[k];
+                right += rightTicks[k];
+                sumLeft += leftCommands[k] * abs(leftTicks[k]);
+                sumRight += rightCommands[k] * abs(rightTicks[k]);
+            }
+            leftTicks[out] = (short) left;
+            rightTicks[out] = (short) right;
+            leftCommands[out] = (byte) (left == 0 ? 0 : sumLeft / abs(left));
+            rightCommands[out] = (byte) (right == 0 ? 0
+                    : sumRight / abs(right));
+            leftRanges[out] = leftRanges[end - 1];
+            rightRanges[out] = rightRanges[end - 1];
+            ++out;
+            i = end;
+        }
+        segments = out;
+    }
+
+    /**
+     * Gives whether a segment can be joined to the run before it.
+     * @param first The first segment of the run.
+     * @param next The segment to join.
+     * @param xs The dead reckoned x (in cm) at the start of each segment.
+     * @param ys The dead reckoned y (in cm) at the start of each segment.
+     * @return {@code true} if each wheel turns one way over the run, neither
+     * turns more than {@code JOIN_TICKS}, and no point of the run strays
+     * more than {@code STRAIGHT_CM} from the line between its ends.
+     */
+    private boolean joins(int first, int next, float[] xs, float[] ys) {
+        int left = 0, right = 0, dirLeft = 0, dirRight = 0;
+        for (int k = first; k <= next; ++k) {
+            int dl = sign(leftTicks[k]);
+            int dr = sign(rightTicks[k]);
+            if ((dl != 0 && dirLeft != 0 && dl != dirLeft)
+                    || (dr != 0 && dirRight != 0 && dr != dirRight))
+                return false;
+            if (dl != 0)
+                dirLeft = dl;
+            if (dr != 0)
+                dirRight = dr;
+            left += leftTicks[k];
+            right += rightTicks[k];
+        }
+        if (abs(left) > JOIN_TICKS || abs(right) > JOIN_TICKS)
+            return false;
+        float dx = xs[next + 1] - xs[first];
+        float dy = ys[next + 1] - ys[first];
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        for (int k = first + 1; k <= next; ++k) {
+            float px = xs[k] - xs[first];
+            float py = ys[k] - ys[first];
+            float d = length < 0.01f ? (float) Math.sqrt(px * px + py * py)
+                    : Math.abs(dx * py - dy * px) / length;
+            if (d > STRAIGHT_CM)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives the number of recorded segments.
+     * @return The number of segments.
+     */
+    public int segments() {
+        return segments;
+    }
+
+    /**
+     * Gives whether the recording ran out of room, in which case only the
+     * start of the path was recorded.
+     * @return {@code true} if segments were lost.
+     */
+    public boolean full() {
+        return full;
+    }
+
+    /**
+     * Gives the ticks the left wheel turned in a segment.
+     * @param i The segment.
+     * @return The ticks (negative backward).
+     */
+    public int leftTicks(int i) {
+        return leftTicks[i];
+    }
+
+    /**
+     * Gives the ticks the right wheel turned in a segment.
+     * @param i The segment.
+     * @return The ticks (negative backward).
+     */
+    public int rightTicks(int i) {
+        return rightTicks[i];
+    }
+
+    /**
+     * Gives the average command given to the left wheel in a segment.
+     * @param i The segment.
+     * @return The speed (in percent, -100 to 100).
+     */
+    public int leftCommand(int i) {
+        return leftCommands[i];
+    }
+
+    /**
+     * Gives the average command given to the right wheel in a segment.
+     * @param i The segment.
+     * @return The speed (in percent, -100 to 100).
+     */
+    public int rightCommand(int i) {
+        return rightCommands[i];
+    }
+
+    /**
+     * Gives the left IR range at the end of a segment.
+     * @param i The segment.
+     * @return The distance (in cm), or -1 if there was no reading.
+     */
+    public int leftRange(int i) {
+        return leftRanges[i] == 0 ? -1 : leftRanges[i];
+    }
+
+    /**
+     * Gives the right IR range at the end of a segment.
+     * @param i The segment.
+     * @return The distance (in cm), or -1 if there was no reading.
+     */
+    public int rightRange(int i) {
+        return rightRanges[i] == 0 ? -1 : rightRanges[i];
+    }
+
+    /**
+     * Stores the open segment, unless neither wheel turned, and opens the
+     * next one.
+     * @param left The current tick count of the left wheel.
+     * @param right The current tick count of the right wheel.
+     */
+    private void close(int left, int right) {
+        if (left != startLeft || right != startRight) {
+            if (segments == leftTicks.length) {
+                full = true;
+                return;
+            }
+            leftTicks[segments] = (short) (left - startLeft);
+            rightTicks[segments] = (short) (right - startRight);
+            leftCommands[segments] = (byte) (samples == 0 ? 0
+                    : sumLeft / samples);
+            rightCommands[segments] = (byte) (samples == 0 ? 0
+                    : sumRight / samples);
+            leftRanges[segments] = (byte) leftCm;
+            rightRanges[segments] = (byte) rightCm;
+            ++segments;
+        }
+        open(left, right);
+    }
+
+    /**
+     * Opens a segment.
+     * @param left The current tick count of the left wheel.
+     * @param right The current tick count of the right wheel.
+     */
+    private void open(int left, int right) {
+        startLeft = left;
+        startRight = right;
+        sumLeft = 0;
+        sumRight = 0;
+        samples = 0;
+        dirLeft = 0;
+        dirRight = 0;
+    }
+
+    /**
+     * Copies a segment to an earlier place.
+     * @param from The segment to copy.
+     * @param to Where to copy it to.
+     */
+    private void move(int from, int to) {
+        leftTicks[to] = leftTicks[from];
+        rightTicks[to] = rightTicks[from];
+        leftCommands[to] = leftCommands[from];
+        rightCommands[to] = rightCommands[from];
+        leftRanges[to] = leftRanges[from];
+        rightRanges[to] = rightRanges[from];
+    }
+
+    /**
+     * Wraps an angle into [-pi, pi].
+     * @param a The angle (in radians).
+     * @return The same angle, wrapped.
+     */
+    private static float wrap(float a) {
+        while (a > Math.PI)
+            a -= 2 * Math.PI;
+        while (a < -Math.PI)
+            a += 2 * Math.PI;
+        return a;
+    }
+
+    /**
+     * Rounds a range so that it fits in a byte.
+     * @param cm The range (in cm), or a negative number if there is none.
+     * @return The range (1-127 cm), or 0 if there is none.
+     */
+    private static int toByte(float cm) {
+        if (cm < 0)
+            return 0;
+        int r = Math.round(cm);
+        return r < 1 ? 1 : r > 127 ? 127 : r;
+    }
+
+    private static int sign(int x) {
+        return x > 0 ? 1 : x < 0 ? -1 : 0;
+    }
+
+    private static int abs(int x) {
+        return x < 0 ? -x : x;
+    }
+}
@@ -0,0 +1,259 @@
+package api;
+
+/**
+ * Drives a path recorded by a {@link PathRecorder} again.
+ * <p>
+ * The replay is faster than exploring was, even where nothing was cut out:
+ * {@link PathRecorder#shorten()} joins the short segments that wall
+ * following records into long ones, so both wheels drive at close to
+ * {@code DEFAULT_SPEED} instead of one of them trailing, and takes out the
+ * loops, the dead ends and the backing up from walls. The replay also never
+ * stops to wait on the sensors.
+ * <p>
+ * Each segment is driven with the wheel that turns further at the replay
+ * speed and the other wheel in proportion, so the path keeps its shape. The
+ * tachometers keep the wheels in step: the number of ticks one wheel is
+ * ahead of where it should be, given how far the other has turned, is taken
+ * off its speed and added to the other's, {@code GAIN} percent per tick. A
+ * segment ends as soon as its leading wheel has turned its share, so the
+ * wheels never stop between segments. Each segment is measured from where
+ * the last one should have ended rather than where it did, so a wheel that
+ * falls behind in one segment makes it up in the next, and tick errors do
+ * not add up over the path.
+ * <p>
+ * The tachometers only count 16 ticks a turn, so a tick of error is several
+ * degrees of heading, and over a long path that drifts Cactus into walls.
+ * So wherever the recorded IR ranges and the current ones both see a wall
+ * closer than {@code TRUST_CM}, the replay also steers to match them,
+ * {@code RANGE_GAIN} percent per cm. This uses whatever readings are on
+ * hand, and never waits for the sensors.
+ * <p>
+ * The replay stalls when no wheel has turned for {@code STALL_MS}, or when a
+ * {@link StallDetector} sees the wheels slip, as they do against a wall.
+ * Driving on from there would only drift further from the path.
+ * <p>
+ * Like the {@link Controller}s, the replay never touches the hardware, so
+ * it runs the same on Cactus and in a simulator. All math is integer math.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class PathReplay {
+    /** Mode: driving the path. */
+    public static final int REPLAYING = 0;
+    /** Mode: at the end of the path. */
+    public static final int DONE = 1;
+    /** Mode: the wheels stopped turning before the end of the path. */
+    public static final int STALLED = 2;
+
+    /** The default replay speed (in percent). */
+    public static final int DEFAULT_SPEED = 100;
+    /** The correction (in percent) per tick a wheel is ahead. */
+    public static final int GAIN = 20;
+    /** The slowest command (in percent) a turning wheel is given. */
+    public static final int MIN_COMMAND = 15;
+    /** The correction (in percent) per cm a range is off its recording. */
+    public static final int RANGE_GAIN = 4;
+    /** The farthest range (in cm) that is steered by. */
+    public static final int TRUST_CM = 40;
+    /**
+     * The largest difference (in cm) from a recorded range that is steered
+     * by. Anything more is taken to be a different wall, as at an opening.
+     */
+    public static final int MATCH_CM = 12;
+    /** The time (in ms) without a tick after which the replay stalls. */
+    public static final int STALL_MS = 2000;
+
+    /** The path being driven. */
+    private final PathRecorder path;
+    /** The speed (in percent) of the faster wheel. */
+    private final int speed;
+    /** Sees the wheels slip. */
+    private final StallDetector stall = new StallDetector();
+
+    /** The current mode. */
+    private int mode = DONE;
+    /** The segment being driven. */
+    private int segment;
+    /** The tick counts the current segment should have started at. */
+    private int baseLeft, baseRight;
+    /** The tick counts at the last step, to see when the wheels turn. */
+    private int lastLeft, lastRight;
+    /** The time (in ms) either wheel last turned. */
+    private long lastMoved;
+    /** The commands chosen by the last step. */
+    private int leftCommand, rightCommand;
+
+    /**
+     * Creates a replay at {@code DEFAULT_SPEED}.
+     * @param path The recorded path.
+     */
+    public PathReplay(PathRecorder path) {
+        this(path, DEFAULT_SPEED);
+    }
+
+    /**
+     * Creates a replay.
+     * @param path The recorded path.
+     * @param speed The speed (in percent) of the faster wheel.
+     */
+    public PathReplay(PathRecorder path, int speed) {
+        if (path == null)
+            throw new IllegalArgumentException("Cannot pass a null path");
+        if (speed < MIN_COMMAND || speed > 100)
+            throw new IllegalArgumentException("speed must be in ["
+                    + MIN_COMMAND + ", 100]");
+        this.path = path;
+        this.speed = speed;
+    }
+
+    /**
+     * Starts driving the path from its first segment.
+     * @param t The current time (in ms).
+     * @param left The current tick count of the left wheel.
+     * @param right The current tick count of the right wheel.
+     */
+    public void start(long t, int left, int right) {
+        segment = 0;
+        baseLeft = lastLeft = left;
+        baseRight = lastRight = right;
+        lastMoved = t;
+        stall.start(t, left, right);
+        leftCommand = 0;
+        rightCommand = 0;
+        mode = REPLAYING;
+    }
+
+    /**
+     * Chooses the wheel speeds for the current tick counts and IR ranges.
+     * @param t The current time (in ms).
+     * @param left The current tick count of the left wheel.
+     * @param right The current tick count of the right wheel.
+     * @param leftCm The latest left range (in cm), or a negative number if
+     * there is no reading.
+     * @param rightCm The latest right range (in cm), or a negative number if
+     * there is no reading.
+     * @return The mode.
+     */
+    public int step(long t, int left, int right, float leftCm,
+            float rightCm) {
+        leftCommand = 0;
+        rightCommand = 0;
+        if (mode != REPLAYING)
+            return mode;
+        if (left != lastLeft || right != lastRight) {
+            lastLeft = left;
+            lastRight = right;
+            lastMoved = t;
+        } else if (t - lastMoved > STALL_MS) {
+            return mode = STALLED;
+        }
+        if (stall.stalled(t, left, right))
+            return mode = STALLED;
+
+        int wantLeft, wantRight, doneLeft, doneRight;
+        while (true) {
+            if (segment == path.segments())
+                return mode = DONE;
+            wantLeft = path.leftTicks(segment);
+            wantRight = path.rightTicks(segment);
+            doneLeft = wantLeft < 0 ? baseLeft - left : left - baseLeft;
+            doneRight = wantRight < 0 ? baseRight - right : right - baseRight;
+            if (wantLeft < 0)
+                wantLeft = -wantLeft;
+            if (wantRight < 0)
+                wantRight = -wantRight;
+            if (wantLeft >= wantRight ? doneLeft < wantLeft
+                    : doneRight < wantRight)
+                break;
+            baseLeft += path.leftTicks(segment);
+            baseRight += path.rightTicks(segment);
+            ++segment;
+        }
+
+        int most = wantLeft > wantRight ? wantLeft : wantRight;
+        // The ticks the left wheel is ahead of the line the segment draws
+        int ahead = (doneLeft * wantRight - doneRight * wantLeft) / most;
+        // The cm Cactus is too far right of its recorded path
+        int off = offset(leftCm, path.leftRange(segment))
+                - offset(rightCm, path.rightRange(segment));
+        int l = speed * wantLeft / most - GAIN * ahead - RANGE_GAIN * off;
+        int r = speed * wantRight / most + GAIN * ahead + RANGE_GAIN * off;
+        leftCommand = command(l, path.leftTicks(segment));
+        rightCommand = command(r, path.rightTicks(segment));
+        stall.hold(leftCommand, rightCommand);
+        return mode;
+    }
+
+    /**
+     * Gives the speed chosen for the left wheel.
+     * @return The speed (in percent, -100 to 100).
+     */
+    public int leftCommand() {
+        return leftCommand;
+    }
+
+    /**
+     * Gives the speed chosen for the right wheel.
+     * @return The speed (in percent, -100 to 100).
+     */
+    public int rightCommand() {
+        return rightCommand;
+    }
+
+    /**
+     * Gives the segment being driven.
+     * @return The index of the segment.
+     */
+    public int segment() {
+        return segment;
+    }
+
+    /**
+     * Gives the name of a mode, for printing.
+     * @param mode The mode.
+     * @return The name.
+     */
+    public static String name(int mode) {
+        switch (mode) {
+            case REPLAYING:
+                return "replaying";
+            case DONE:
+                return "done";
+            case STALLED:
+                return "stalled";
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * Compares a range with its recording.
+     * @param cm The current range (in cm), or a negative number if none.
+     * @param recorded The recorded range (in cm), or -1 if none.
+     * @return How much farther (in cm) the wall is than it was, or 0 if the
+     * two cannot be compared.
+     */
+    private static int offset(float cm, int recorded) {
+        if (cm < 0 || recorded < 0 || cm > TRUST_CM || recorded > TRUST_CM)
+            return 0;
+        int d = (int) cm - recorded;
+        return d > MATCH_CM || d < -MATCH_CM ? 0 : d;
+    }
+
+    /**
+     * Turns a wheel speed into a signed command.
+     * @param s The speed (in percent, 0 or less if the wheel should stop).
+     * @param ticks The ticks the wheel turns in the segment.
+     * @return The command (in percent).
+     */
+    private static int command(int s, int ticks) {
+        if (s <= 0 || ticks == 0)
+            return 0;
+        if (s < MIN_COMMAND)
+            s = MIN_COMMAND;
+        else if (s > 100)
+            s = 100;
+        return ticks < 0 ? -s : s;
+    }
+}
@@ -0,0 +1,35 @@
+package api;
+
+/**
+ * Work run over and over by a {@link Scheduler}, such as sampling a sensor.
+ * <p>
+ * Each run says how long to wait before the next one, so a task can speed
+ * up or slow down as it goes. The scheduler links tasks through fields of
+ * the task itself, so scheduling one never allocates.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public abstract class PeriodicTask {
+    /** The next task in the same slot or queue. */
+    PeriodicTask next;
+    /** The time (in ms since the scheduler was created) the task is due. */
+    long due;
+    /** The class of thread that runs the task. */
+    int group;
+    /** Whether the task is waiting in a scheduler. */
+    boolean scheduled;
+    /** The wheel slot the task waits in, or -1 while it is being run. */
+    int slot = -1;
+    /** Whether the task should run again as soon as its run ends. */
+    boolean woken;
+    /** Whether the task should be dropped instead of run. */
+    volatile boolean cancelled;
+
+    /**
+     * Does one run of the task.
+     * @param now The current time (in ms).
+     * @return The number of ms until the next run, or 0 or less to stop.
+     */
+    protected abstract int run(long now);
+}
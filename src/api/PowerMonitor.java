@@ -0,0 +1,346 @@
+package api;
+
+import com.ridgesoft.io.EEPROM;
+import com.ridgesoft.robotics.AnalogInput;
+import com.ridgesoft.robotics.DigitalInput;
+import java.io.IOException;
+
+/**
+ * Keeps track of how much charge is left in the battery pack, and turns it
+ * into a throttle that the motors, laser and sensors are scaled by so that a
+ * run lasts longer as the pack runs down.
+ * <p>
+ * The IntelliBrain only reports whether its battery is low, so the charge is
+ * estimated by counting the current drawn: a fixed amount for the board and
+ * sensors, plus an amount for each servo in proportion to its speed and for
+ * the laser in proportion to its power. If a voltage divider is wired to an
+ * analog port, the voltage (corrected for the sag caused by the draw) is
+ * used as well, and whichever is lower wins. Once the low battery input has
+ * been seen {@code LOW_SAMPLES} times in a row, the throttle is held at or
+ * below {@code LOW_THROTTLE}.
+ * <p>
+ * A pack lasts many runs, so the charge used is kept in EEPROM at
+ * {@code ADDRESS}, just past the {@link Calibration}, and carried over from
+ * one run to the next. It is saved every {@code SAVE_INTERVAL} ms on the
+ * {@link Scheduler}'s background thread, so the control loop never waits on
+ * the EEPROM. After charging or swapping the pack, call {@link #newPack()}
+ * (the {@code NewPack} program does). With nothing stored, the pack is
+ * taken to be full.
+ * <p>
+ * The throttle is {@code Fixed.ONE} until the estimated charge falls below
+ * {@code THROTTLE_BELOW}, and then falls in proportion down to
+ * {@code MIN_THROTTLE}. It only rises again by more than
+ * {@code HYSTERESIS}, so the policy does not flicker as the voltage
+ * recovers between loads. Scaling both wheels by the same top speed keeps
+ * the curvature of every turn, so controllers stay stable. No floating point
+ * math is done.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class PowerMonitor extends PeriodicTask {
+    /** The charge (in mAh) of a full pack. */
+    public static final int PACK_MAH = 2000;
+    /** The current (in mA) drawn by the board and sensors. */
+    public static final int IDLE_MA = 80;
+    /** The current (in mA) drawn by a servo at full speed. */
+    public static final int SERVO_MA = 180;
+    /** The current (in mA) drawn by the laser at full power. */
+    public static final int LASER_MA = 40;
+    /** The internal resistance (in milliohms) of the pack. */
+    public static final int PACK_MILLIOHMS = 300;
+    /** The voltage (in mV) of a full pack at rest. */
+    public static final int FULL_MV = 6000;
+    /** The voltage (in mV) of an empty pack at rest. */
+    public static final int EMPTY_MV = 4600;
+
+    /** The fraction of charge below which throttling starts. */
+    public static final int THROTTLE_BELOW = Fixed.ONE * 3 / 10;
+    /** The lowest throttle. */
+    public static final int MIN_THROTTLE = Fixed.ONE / 4;
+    /** The highest throttle once the low battery input is set. */
+    public static final int LOW_THROTTLE = Fixed.ONE / 4;
+    /** The number of low battery readings in a row that count. */
+    public static final int LOW_SAMPLES = 5;
+    /** How much the throttle must rise before it is raised. */
+    public static final int HYSTERESIS = Fixed.ONE / 20;
+    /** The top speed (in percent) at the lowest throttle. */
+    public static final int MIN_SPEED = 60;
+    /** The EEPROM address the charge used is kept at. */
+    public static final int ADDRESS = Calibration.ADDRESS
+            + Calibration.MAX_SIZE;
+    /** The number of ms between saves of the charge used. */
+    public static final int SAVE_INTERVAL = 30000;
+
+    /** Marks a stored charge. */
+    private static final byte MAGIC = 'P';
+    /** The size of a stored charge: magic, mAh used and checksum. */
+    private static final int RECORD_SIZE = 4;
+    /** The number of mA times ms in a mAh. */
+    private static final long MA_MS_PER_MAH = 3600000;
+
+    /** The low battery input. */
+    private final DigitalInput lowBattery;
+    /** The voltage divider, or {@code null} if there is none. */
+    private final AnalogInput divider;
+    /** The millivolts per count of the divider. */
+    private final int mvPerCount;
+    /** The EEPROM the charge used is kept in, or {@code null}. */
+    private final EEPROM eeprom;
+    /**
+     * The stored charge, as written to the EEPROM. Its lock is held from
+     * reading the charge used to saving it, so a save and a new pack do not
+     * overtake each other; {@link #update(long, int, int, int)} never takes
+     * it, so the control loop does not wait on the EEPROM.
+     */
+    private final byte[] record = new byte[RECORD_SIZE];
+    /** The charge used (in mAh) last saved, or -1 if none. */
+    private volatile int savedMah = -1;
+
+    /** The time (in ms) of the last update, or -1 before the first. */
+    private long lastUpdate = -1;
+    /** The estimated current (in mA) being drawn. */
+    private int drawMa;
+    /** The charge used, in mA times ms. */
+    private long usedMaMs;
+    /** The smoothed pack voltage (in mV) at rest, or -1 if unknown. */
+    private int restMv = -1;
+    /** The number of low battery readings in a row. */
+    private int lowCount;
+    /** Whether the low battery input has been seen. */
+    private boolean low;
+    /** The throttle (0-{@code Fixed.ONE}). */
+    private int throttle = Fixed.ONE;
+
+    /**
+     * Creates a power monitor that estimates charge from the current drawn.
+     * @param lowBattery The low battery input, which is set when the battery
+     * is low.
+     */
+    public PowerMonitor(DigitalInput lowBattery) {
+        this(lowBattery, null, 0, null);
+    }
+
+    /**
+     * Creates a power monitor that also reads the pack voltage.
+     * @param lowBattery The low battery input, which is set when the battery
+     * is low.
+     * @param divider The analog input wired to a voltage divider across the
+     * pack, or {@code null} if there is none.
+     * @param mvPerCount The millivolts of pack voltage per count of the
+     * divider input.
+     * @param eeprom The EEPROM to keep the charge used in, or {@code null}
+     * to start from a full pack every time.
+     */
+    public PowerMonitor(DigitalInput lowBattery, AnalogInput divider,
+            int mvPerCount, EEPROM eeprom) {
+        if (lowBattery == null)
+            throw new IllegalArgumentException("Cannot pass a null input");
+        if (divider != null && mvPerCount <= 0)
+            throw new IllegalArgumentException(
+                    "mvPerCount must be positive");
+        this.lowBattery = lowBattery;
+        this.divider = divider;
+        this.mvPerCount = mvPerCount;
+        this.eeprom = eeprom;
+        if (eeprom == null)
+            return;
+        try {
+            eeprom.read(ADDRESS, record);
+            if (record[0] == MAGIC && record[3] == checksum()) {
+                savedMah = (record[1] & 0xFF) << 8 | (record[2] & 0xFF);
+                usedMaMs = savedMah * MA_MS_PER_MAH;
+            }
+        } catch (IOException ex) {
+            // Count from a full pack
+        }
+        Scheduler.system().schedule(this, Scheduler.BACKGROUND,
+                SAVE_INTERVAL);
+    }
+
+    /**
+     * Updates the estimates and the throttle.
+     * @param now The current time (in ms).
+     * @param leftSpeed The speed (in percent) of the left motor.
+     * @param rightSpeed The speed (in percent) of the right motor.
+     * @param laserPower The power of the laser, in fixed-point
+     * (0-{@code Fixed.ONE}).
+     */
+    public synchronized void update(long now, int leftSpeed, int rightSpeed,
+            int laserPower) {
+        if (leftSpeed < 0)
+            leftSpeed = -leftSpeed;
+        if (rightSpeed < 0)
+            rightSpeed = -rightSpeed;
+        // Charge the last interval at the draw that was going on during it
+        if (lastUpdate >= 0 && now > lastUpdate)
+            usedMaMs += (long) drawMa * (now - lastUpdate);
+        lastUpdate = now;
+        drawMa = IDLE_MA + (leftSpeed + rightSpeed) * SERVO_MA / 100
+                + Fixed.toInt(laserPower * LASER_MA);
+
+        if (lowBattery.isSet()) {
+            if (++lowCount >= LOW_SAMPLES)
+                low = true;
+        } else {
+            lowCount = 0;
+        }
+
+        int t = charge();
+        t = t >= THROTTLE_BELOW ? Fixed.ONE
+                : MIN_THROTTLE + (int) ((long) (Fixed.ONE - MIN_THROTTLE)
+                        * t / THROTTLE_BELOW);
+        if (divider != null) {
+            int mv = divider.sample() * mvPerCount
+                    + drawMa * PACK_MILLIOHMS / 1000;
+            restMv = restMv < 0 ? mv : restMv + (mv - restMv) / 8;
+            int v = Fixed.clamp(Fixed.ratio(restMv - EMPTY_MV,
+                    FULL_MV - EMPTY_MV), 0, Fixed.ONE);
+            v = MIN_THROTTLE + Fixed.mul(Fixed.ONE - MIN_THROTTLE, v);
+            if (v < t)
+                t = v;
+        }
+        if (low && t > LOW_THROTTLE)
+            t = LOW_THROTTLE;
+
+        if (t < throttle || t > throttle + HYSTERESIS)
+            throttle = t;
+    }
+
+    /**
+     * Gives the estimated fraction of charge left.
+     * @return The charge, in fixed-point (0-{@code Fixed.ONE}).
+     */
+    public synchronized int charge() {
+        long full = PACK_MAH * MA_MS_PER_MAH;
+        if (usedMaMs >= full)
+            return 0;
+        return (int) ((full - usedMaMs) * Fixed.ONE / full);
+    }
+
+    /**
+     * Gives the estimated current being drawn.
+     * @return The current (in mA).
+     */
+    public synchronized int drawMa() {
+        return drawMa;
+    }
+
+    /**
+     * Gives the estimated charge used so far.
+     * @return The charge (in mAh).
+     */
+    public synchronized int usedMah() {
+        return (int) (usedMaMs / MA_MS_PER_MAH);
+    }
+
+    /**
+     * Starts counting from a full pack, as after the pack is charged or
+     * swapped, and saves that at once.
+     */
+    public void newPack() {
+        synchronized (record) {
+            synchronized (this) {
+                usedMaMs = 0;
+                lowCount = 0;
+                low = false;
+                throttle = Fixed.ONE;
+            }
+            if (eeprom != null)
+                save(0);
+        }
+    }
+
+    /**
+     * Saves the charge used, if it has changed.
+     * @param now The current time (in ms).
+     * @return The number of ms until the next save.
+     */
+    protected int run(long now) {
+        synchronized (record) {
+            int mah = usedMah();
+            if (mah != savedMah)
+                save(mah);
+        }
+        return SAVE_INTERVAL;
+    }
+
+    /**
+     * Writes the charge used to the EEPROM.
+     * @param mah The charge used (in mAh).
+     */
+    private void save(int mah) {
+        if (mah > 0xFFFF)
+            mah = 0xFFFF;
+        synchronized (record) {
+            record[0] = MAGIC;
+            record[1] = (byte) (mah >> 8);
+            record[2] = (byte) mah;
+            record[3] = checksum();
+            try {
+                eeprom.write(ADDRESS, record);
+                savedMah = mah;
+            } catch (IOException ex) {
+                // Try again at the next save
+            }
+        }
+    }
+
+    /**
+     * Computes the checksum of the stored charge.
+     * @return The sum of the bytes before the checksum.
+     */
+    private byte checksum() {
+        return (byte) (record[0] + record[1] + record[2]);
+    }
+
+    /**
+     * Gives the pack voltage at rest, from the divider.
+     * @return The voltage (in mV), or -1 if there is no divider.
+     */
+    public synchronized int restMv() {
+        return restMv;
+    }
+
+    /**
+     * Gives whether the low battery input has been seen.
+     * @return {@code true} if the battery is low.
+     */
+    public synchronized boolean low() {
+        return low;
+    }
+
+    /**
+     * Gives the throttle that the policy below is based on.
+     * @return The throttle, in fixed-point ({@code MIN_THROTTLE} to
+     * {@code Fixed.ONE}).
+     */
+    public synchronized int throttle() {
+        return throttle;
+    }
+
+    /**
+     * Gives the top speed the motors should be limited to.
+     * @return The speed (in percent, {@code MIN_SPEED} to 100).
+     */
+    public synchronized int speedLimit() {
+        return MIN_SPEED + Fixed.toInt((100 - MIN_SPEED) * throttle);
+    }
+
+    /**
+     * Gives the power the laser should be limited to. Falls faster than the
+     * throttle, since the laser is the easiest load to go without.
+     * @return The power, in fixed-point (0-{@code Fixed.ONE}).
+     */
+    public synchronized int laserLimit() {
+        return Fixed.mul(throttle, throttle);
+    }
+
+    /**
+     * Gives how much longer the IR sensors should wait between readings.
+     * @return The factor, in fixed-point ({@code Fixed.ONE} to twice that).
+     */
+    public synchronized int irScale() {
+        return Fixed.ONE + (Fixed.ONE - throttle);
+    }
+}
@@ -0,0 +1,196 @@
+package api;
+
+import com.ridgesoft.robotics.AnalogInput;
+
+/**
+ * Any number of analog IR range sensors read as one, such as the front pair
+ * of Mouse2.0.
+ * <p>
+ * Each {@link #sample()} reads every sensor first, back to back so the
+ * readings are as close in time as they can be, and then converts and
+ * filters them all in a second loop over plain arrays. The result is a
+ * compact description of what is in front of the sensors: the filtered
+ * distance seen by each sensor, a mask of the sensors that see something
+ * nearer than the limit, and the nearest one. A sensor costs one more pass
+ * of each loop, not a call through a {@code RangeFinder} of its own.
+ * <p>
+ * Each sensor converts through its own {@link RangeTable}, so each can be
+ * calibrated on its own; a sensor with no table uses the stock GP2D12 curve.
+ * A sensor that gets no reading starts its filter over on the next one, so a
+ * wall that comes into range is seen at once rather than faded in.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class RangeArray {
+    /** The most sensors an array can hold, one bit of a mask each. */
+    public static final int MAX_SENSORS = 32;
+    /** The index given when no sensor sees anything. */
+    public static final int NONE = -1;
+
+    /** The sensors. */
+    private final AnalogInput[] inputs;
+    /** The table of each sensor. */
+    private final RangeTable[] tables;
+    /** The weight (fixed-point, 0 to {@code Fixed.ONE}) of a new reading. */
+    private final int alpha;
+    /** The distance (in fixed-point cm) under which a sensor sees a wall. */
+    private final int limit;
+    /** The raw samples of the last pass. */
+    private final int[] samples;
+    /** The filtered distance (in fixed-point cm) of each sensor, or -1. */
+    private final int[] distances;
+    /** The mask of the sensors with a reading. */
+    private int seen;
+    /** The mask of the sensors nearer than the limit. */
+    private int near;
+    /** The sensor that sees the nearest thing, or {@code NONE}. */
+    private int nearest = NONE;
+
+    /**
+     * Creates a RangeArray.
+     * @param inputs The analog inputs the sensors are connected to.
+     * @param tables The table of each sensor, or {@code null} to use the
+     * stock curve for all of them. A {@code null} entry uses the stock curve
+     * for that sensor.
+     * @param alpha The weight (fixed-point, 0 to {@code Fixed.ONE}) of each
+     * new reading in the filtered distance; {@code Fixed.ONE} turns the
+     * filter off.
+     * @param limitCm The distance (in cm) under which a sensor counts as
+     * near.
+     */
+    public RangeArray(AnalogInput[] inputs, RangeTable[] tables, int alpha,
+            float limitCm) {
+        if (inputs == null || inputs.length == 0
+                || inputs.length > MAX_SENSORS)
+            throw new IllegalArgumentException("Need 1 to 32 inputs");
+        if (tables != null && tables.length != inputs.length)
+            throw new IllegalArgumentException(
+                    "Arrays must be of the same size");
+        if (alpha <= 0 || alpha > Fixed.ONE)
+            throw new IllegalArgumentException("Bad filter weight");
+        int n = inputs.length;
+        this.inputs = new AnalogInput[n];
+        this.tables = new RangeTable[n];
+        for (int i = 0; i < n; ++i) {
+            if (inputs[i] == null)
+                throw new IllegalArgumentException("Cannot pass a null input");
+            this.inputs[i] = inputs[i];
+            RangeTable t = tables == null ? null : tables[i];
+            this.tables[i] = t != null ? t : RangeTable.stock();
+        }
+        this.alpha = alpha;
+        limit = Fixed.fromFloat(limitCm);
+        samples = new int[n];
+        distances = new int[n];
+        for (int i = 0; i < n; ++i)
+            distances[i] = -1;
+    }
+
+    /**
+     * Reads every sensor, then updates the distances, the masks and the
+     * nearest sensor.
+     */
+    public void sample() {
+        int n = samples.length;
+        for (int i = 0; i < n; ++i)
+            samples[i] = inputs[i].sample();
+        int seenMask = 0;
+        int nearMask = 0;
+        int best = NONE;
+        int bestDistance = Fixed.MAX_VALUE;
+        for (int i = 0; i < n; ++i) {
+            short tenths = tables[i].tenthsCm(samples[i]);
+            if (tenths == RangeTable.NO_READING) {
+                distances[i] = -1;
+                continue;
+            }
+            // At most a few thousand tenths, so this cannot overflow
+            int d = tenths * Fixed.ONE / 10;
+            int previous = distances[i];
+            if (previous >= 0)
+                d = Fixed.lowPass(previous, d, alpha);
+            distances[i] = d;
+            seenMask |= 1 << i;
+            if (d < limit)
+                nearMask |= 1 << i;
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = i;
+            }
+        }
+        seen = seenMask;
+        near = nearMask;
+        nearest = best;
+    }
+
+    /** Forgets the filtered distances, as after Cactus is moved. */
+    public void reset() {
+        for (int i = 0; i < distances.length; ++i)
+            distances[i] = -1;
+        seen = 0;
+        near = 0;
+        nearest = NONE;
+    }
+
+    /**
+     * Gives the number of sensors.
+     * @return The number of sensors.
+     */
+    public int size() {
+        return samples.length;
+    }
+
+    /**
+     * Gives the filtered distance seen by a sensor on the last pass.
+     * @param i The index of the sensor.
+     * @return The distance (in fixed-point cm), or -1 if it had no reading.
+     */
+    public int distanceFixed(int i) {
+        return distances[i];
+    }
+
+    /**
+     * Gives the raw sample a sensor took on the last pass.
+     * @param i The index of the sensor.
+     * @return The raw analog sample.
+     */
+    public int sample(int i) {
+        return samples[i];
+    }
+
+    /**
+     * Gives which sensors had a reading on the last pass.
+     * @return A mask with bit {@code i} set if sensor {@code i} saw
+     * something.
+     */
+    public int seen() {
+        return seen;
+    }
+
+    /**
+     * Gives which sensors saw something nearer than the limit on the last
+     * pass.
+     * @return A mask with bit {@code i} set if sensor {@code i} is near.
+     */
+    public int near() {
+        return near;
+    }
+
+    /**
+     * Gives the sensor that saw the nearest thing on the last pass.
+     * @return The index of the sensor, or {@code NONE}.
+     */
+    public int nearest() {
+        return nearest;
+    }
+
+    /**
+     * Gives the nearest distance seen on the last pass.
+     * @return The distance (in fixed-point cm), or -1 if no sensor saw
+     * anything.
+     */
+    public int nearestFixed() {
+        return nearest == NONE ? -1 : distances[nearest];
+    }
+}
@@ -0,0 +1,255 @@
+package api;
+
+import com.ridgesoft.robotics.RangeFinder;
+
+/**
+ * Reads an IR range sensor without throwing on failed readings, and keeps
+ * statistics about how often the sensor fails.
+ * <p>
+ * {@link #read()} returns a status code and leaves the distance in
+ * {@link #value()}. When a reading fails, the value falls back to the last
+ * good reading. After {@code DEGRADE_AFTER} consecutive failures the sensor
+ * is considered degraded until {@code RECOVER_AFTER} consecutive good
+ * readings are made. {@link #read(int)} reuses a recent reading instead of
+ * pinging again, since the sensor only measures every ~38ms. Nothing here
+ * allocates memory.
+ * <p>
+ * A RangeSensor should only be read from one thread.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class RangeSensor {
+    /** Status: the reading succeeded. */
+    public static final int OK = 0;
+    /** Status: the reading failed; the value is the last good reading. */
+    public static final int FAILED = 1;
+    /**
+     * Status: the reading failed and the sensor has failed too many times in
+     * a row; the value is the last good reading, which may be stale.
+     */
+    public static final int DEGRADED = 2;
+    /** Status: the reading failed and there has never been a good one. */
+    public static final int NO_DATA = 3;
+
+    /** The number of consecutive failures before the sensor is degraded. */
+    public static final int DEGRADE_AFTER = 5;
+    /** The number of consecutive good readings to leave degraded mode. */
+    public static final int RECOVER_AFTER = 3;
+
+    /** The sensor being read. */
+    private final RangeFinder finder;
+    /** The sensor, if it can give readings without float math. */
+    private final CalibratedRangeFinder calibrated;
+
+    /** The last good distance (in cm). */
+    private float value = -1;
+    /** The last good distance (in fixed-point cm). */
+    private int valueFixed = -1;
+    /** The time (in ms) of the last good reading. */
+    private long lastGoodTime;
+    /** The time (in ms) of the last reading, good or not. */
+    private long lastReadTime;
+    /** The status of the last reading. */
+    private int status = NO_DATA;
+    /** Whether the sensor is in degraded mode. */
+    private boolean degraded = false;
+
+    /** The total number of readings. */
+    private int reads;
+    /** The total number of failed readings. */
+    private int failures;
+    /** The number of failures since the last good reading. */
+    private int consecutiveFailures;
+    /** The longest run of consecutive failures. */
+    private int maxConsecutiveFailures;
+    /** The number of good readings since the last failure. */
+    private int consecutiveGood;
+    /** The number of times the sensor has entered degraded mode. */
+    private int degradations;
+    /** The number of readings reused instead of pinging. */
+    private int reuses;
+
+    /**
+     * Creates a RangeSensor for the specified sensor.
+     * @param finder The sensor to read.
+     */
+    public RangeSensor(RangeFinder finder) {
+        if (finder == null)
+            throw new IllegalArgumentException("Cannot pass a null sensor");
+        this.finder = finder;
+        this.calibrated = finder instanceof CalibratedRangeFinder
+                ? (CalibratedRangeFinder) finder : null;
+    }
+
+    /**
+     * Pings the sensor and records the result.
+     * @return The status of the reading ({@code OK}, {@code FAILED},
+     * {@code DEGRADED} or {@code NO_DATA}).
+     */
+    public int read() {
+        finder.ping();
+        lastReadTime = System.currentTimeMillis();
+        ++reads;
+        if (calibrated != null) {
+            int fixed = calibrated.getDistanceFixed();
+            if (fixed >= 0)
+                return good(fixed, calibrated.getDistanceCm());
+        } else {
+            float cm = finder.getDistanceCm();
+            if (cm >= 0)
+                return good(Fixed.fromFloat(cm), cm);
+        }
+        return failed();
+    }
+
+    /**
+     * Gives the last reading if it is recent enough, and otherwise pings the
+     * sensor. A failed reading is reused too, as the next ping would most
+     * likely fail the same way.
+     * @param maxAge The oldest (in ms) a reading may be to be reused (see
+     * {@link SamplePolicy#rangeValidity(float)}).
+     * @return The status of the reading, as from {@link #read()}.
+     */
+    public int read(int maxAge) {
+        if (lastReadTime != 0
+                && System.currentTimeMillis() - lastReadTime < maxAge) {
+            ++reuses;
+            return status;
+        }
+        return read();
+    }
+
+    /**
+     * Gives the distance from the last good reading.
+     * @return The distance (in cm), or -1 if there has never been one.
+     */
+    public float value() {
+        return value;
+    }
+
+    /**
+     * Gives the distance from the last good reading in fixed-point.
+     * @return The distance (in fixed-point cm), or -1 if there has never
+     * been one.
+     */
+    public int valueFixed() {
+        return valueFixed;
+    }
+
+    /**
+     * Gives the status of the last reading.
+     * @return The status returned by the last call to {@link #read()}.
+     */
+    public int status() {
+        return status;
+    }
+
+    /**
+     * Gives whether the sensor is in degraded mode.
+     * @return {@code true} if the sensor has failed too often recently.
+     */
+    public boolean degraded() {
+        return degraded;
+    }
+
+    /**
+     * Gives the time of the last good reading.
+     * @return The time (in ms) of the last good reading.
+     */
+    public long lastGoodTime() {
+        return lastGoodTime;
+    }
+
+    /**
+     * Gives the total number of readings.
+     * @return The number of calls to {@link #read()}.
+     */
+    public int reads() {
+        return reads;
+    }
+
+    /**
+     * Gives the number of readings reused by {@link #read(int)} instead of
+     * pinging the sensor.
+     * @return The number of readings reused.
+     */
+    public int reuses() {
+        return reuses;
+    }
+
+    /**
+     * Gives the total number of failed readings.
+     * @return The number of readings that failed.
+     */
+    public int failures() {
+        return failures;
+    }
+
+    /**
+     * Gives the number of failures since the last good reading.
+     * @return The current run of consecutive failures.
+     */
+    public int consecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Gives the longest run of consecutive failures.
+     * @return The longest run of consecutive failures.
+     */
+    public int maxConsecutiveFailures() {
+        return maxConsecutiveFailures;
+    }
+
+    /**
+     * Gives the number of times the sensor has entered degraded mode.
+     * @return The number of times the sensor has been degraded.
+     */
+    public int degradations() {
+        return degradations;
+    }
+
+    /** Resets the failure statistics (but not the last good value). */
+    public void resetStatistics() {
+        reads = 0;
+        reuses = 0;
+        failures = 0;
+        maxConsecutiveFailures = consecutiveFailures;
+        degradations = 0;
+    }
+
+    /**
+     * Records a good reading.
+     * @param fixed The distance (in fixed-point cm).
+     * @param cm The distance (in cm).
+     * @return {@code OK}.
+     */
+    private int good(int fixed, float cm) {
+        valueFixed = fixed;
+        value = cm;
+        lastGoodTime = System.currentTimeMillis();
+        consecutiveFailures = 0;
+        if (degraded && ++consecutiveGood >= RECOVER_AFTER)
+            degraded = false;
+        return status = OK;
+    }
+
+    /**
+     * Records a failed reading.
+     * @return The status of the reading.
+     */
+    private int failed() {
+        ++failures;
+        consecutiveGood = 0;
+        if (++consecutiveFailures > maxConsecutiveFailures)
+            maxConsecutiveFailures = consecutiveFailures;
+        if (!degraded && consecutiveFailures >= DEGRADE_AFTER) {
+            degraded = true;
+            ++degradations;
+        }
+        if (valueFixed < 0)
+            return status = NO_DATA;
+        return status = degraded ? DEGRADED : FAILED;
+    }
+}
@@ -0,0 +1,215 @@
+package api;
+
+/**
+ * A piecewise-linear lookup table that converts raw analog samples from an IR
+ * range sensor into distances.
+ * <p>
+ * The table is built from a handful of calibration points (a raw sample and
+ * the distance it was measured at) and then expanded into one entry per
+ * {@code 1 << SHIFT} sample values, so that a conversion is a single array
+ * lookup with no floating point math.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class RangeTable {
+    /** The maximum value of a raw analog sample. */
+    public static final int MAX_SAMPLE = 1023;
+    /** The number of low bits of a sample dropped when indexing the table. */
+    public static final int SHIFT = 2;
+    /** The maximum number of calibration points in a table. */
+    public static final int MAX_POINTS = 16;
+    /** The value in the table marking samples out of the calibrated range. */
+    public static final short NO_READING = -1;
+
+    /** Distances are stored in the table in tenths of a cm. */
+    private static final float SCALE = 10.0f;
+    /** The raw samples of the stock GP2D12 curve, at 5V full scale. */
+    private static final int[] STOCK_SAMPLES = {
+        72, 78, 88, 104, 127, 174, 260, 501
+    };
+    /** The distances (in cm) of the stock GP2D12 curve. */
+    private static final float[] STOCK_CM = {80, 70, 60, 50, 40, 30, 20, 10};
+    /** The stock GP2D12 curve, or {@code null} until first used. */
+    private static RangeTable stock;
+
+    /** The raw samples of the calibration points, in increasing order. */
+    private final short[] samples;
+    /** The distances (in tenths of a cm) of the calibration points. */
+    private final short[] distances;
+    /** The expanded table, indexed by {@code sample >> SHIFT}. */
+    private final short[] table = new short[(MAX_SAMPLE >> SHIFT) + 1];
+
+    /**
+     * Creates a table from calibration points. The points may be given in any
+     * order; samples outside the range of the points convert to
+     * {@code NO_READING}.
+     * @param rawSamples The raw samples of the calibration points.
+     * @param cm The distances (in cm) at which the samples were taken.
+     */
+    public RangeTable(int[] rawSamples, float[] cm) {
+        if (rawSamples.length != cm.length)
+            throw new IllegalArgumentException(
+                    "Arrays must be of the same size");
+        if (rawSamples.length < 2 || rawSamples.length > MAX_POINTS)
+            throw new IllegalArgumentException(
+                    "A table needs 2 to 16 points");
+        int n = rawSamples.length;
+        samples = new short[n];
+        distances = new short[n];
+        for (int i = 0; i < n; ++i) {
+            if (rawSamples[i] < 0 || rawSamples[i] > MAX_SAMPLE)
+                throw new IllegalArgumentException("Sample out of range");
+            if (cm[i] < 0)
+                throw new IllegalArgumentException(
+                        "Distances must be positive");
+            samples[i] = (short) rawSamples[i];
+            distances[i] = (short) (cm[i] * SCALE + 0.5f);
+        }
+        sort();
+        expand();
+    }
+
+    /**
+     * Creates a table from points stored by {@link #write(byte[], int)}.
+     * @param buf The buffer holding the points.
+     * @param off The offset of the points in the buffer.
+     */
+    public RangeTable(byte[] buf, int off) {
+        int n = buf[off] & 0xFF;
+        if (n < 2 || n > MAX_POINTS)
+            throw new IllegalArgumentException("Corrupt range table");
+        samples = new short[n];
+        distances = new short[n];
+        for (int i = 0; i < n; ++i) {
+            int p = off + 1 + i * 4;
+            samples[i] = (short) (((buf[p] & 0xFF) << 8) | (buf[p + 1] & 0xFF));
+            distances[i]
+                    = (short) (((buf[p + 2] & 0xFF) << 8) | (buf[p + 3] & 0xFF));
+        }
+        sort();
+        expand();
+    }
+
+    /**
+     * Gives the typical GP2D12 curve from its datasheet, for sensors that
+     * have not been calibrated. The table is created on first use and
+     * shared.
+     * @return The table.
+     */
+    public static synchronized RangeTable stock() {
+        if (stock == null)
+            stock = new RangeTable(STOCK_SAMPLES, STOCK_CM);
+        return stock;
+    }
+
+    /**
+     * Converts a raw sample to a distance.
+     * @param sample The raw analog sample.
+     * @return The distance (in cm), or -1 if the sample is out of the
+     * calibrated range.
+     */
+    public float cm(int sample) {
+        short d = table[(sample & MAX_SAMPLE) >> SHIFT];
+        return d == NO_READING ? -1 : d / SCALE;
+    }
+
+    /**
+     * Converts a raw sample to a distance without any floating point math.
+     * @param sample The raw analog sample.
+     * @return The distance (in tenths of a cm), or {@code NO_READING}.
+     */
+    public short tenthsCm(int sample) {
+        return table[(sample & MAX_SAMPLE) >> SHIFT];
+    }
+
+    /**
+     * Converts a distance to the raw sample that reads as it: the inverse
+     * of {@link #cm(int)}, for simulating a sensor.
+     * @param cm The distance (in cm).
+     * @return The raw analog sample, or 0 if the distance is out of the
+     * calibrated range.
+     */
+    public int sample(float cm) {
+        int tenths = (int) (cm * SCALE + 0.5f);
+        for (int i = 0; i + 1 < samples.length; ++i) {
+            int d0 = distances[i];
+            int d1 = distances[i + 1];
+            if (tenths < Math.min(d0, d1) || tenths > Math.max(d0, d1))
+                continue;
+            return d1 == d0 ? samples[i] : samples[i]
+                    + (samples[i + 1] - samples[i]) * (tenths - d0)
+                    / (d1 - d0);
+        }
+        return 0;
+    }
+
+    /**
+     * Gives the number of bytes needed to store this table.
+     * @return The number of bytes {@link #write(byte[], int)} will use.
+     */
+    public int size() {
+        return 1 + samples.length * 4;
+    }
+
+    /**
+     * Stores the calibration points of this table.
+     * @param buf The buffer to write to.
+     * @param off The offset to start writing at.
+     * @return The offset just past the written points.
+     */
+    public int write(byte[] buf, int off) {
+        buf[off++] = (byte) samples.length;
+        for (int i = 0; i < samples.length; ++i) {
+            buf[off++] = (byte) (samples[i] >> 8);
+            buf[off++] = (byte) samples[i];
+            buf[off++] = (byte) (distances[i] >> 8);
+            buf[off++] = (byte) distances[i];
+        }
+        return off;
+    }
+
+    /** Sorts the calibration points by sample (insertion sort, n <= 16). */
+    private void sort() {
+        for (int i = 1; i < samples.length; ++i) {
+            short s = samples[i];
+            short d = distances[i];
+            int j = i - 1;
+            while (j >= 0 && samples[j] > s) {
+                samples[j + 1] = samples[j];
+                distances[j + 1] = distances[j];
+                --j;
+            }
+            samples[j + 1] = s;
+            distances[j + 1] = d;
+        }
+    }
+
+    /** Fills the expanded table by interpolating between the points. */
+    private void expand() {
+        int seg = 0;
+        int last = samples.length - 1;
+        for (int i = 0; i < table.length; ++i) {
+            int lo = i << SHIFT;
+            int hi = lo + (1 << SHIFT) - 1;
+            if (hi < samples[0] || lo > samples[last]) {
+                table[i] = NO_READING;
+                continue;
+            }
+            // The sample at the center of this bucket, within the points
+            int s = lo + (1 << SHIFT) / 2;
+            if (s < samples[0])
+                s = samples[0];
+            else if (s > samples[last])
+                s = samples[last];
+            while (seg < last - 1 && s > samples[seg + 1])
+                ++seg;
+            int s0 = samples[seg];
+            int s1 = samples[seg + 1];
+            int d0 = distances[seg];
+            int d1 = distances[seg + 1];
+            table[i] = s1 == s0 ? (short) d0
+                    : (short) (d0 + (d1 - d0) * (s - s0) / (s1 - s0));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package api;
+
+/**
+ * Decides how often the IR range sensors and the tachometers should be read,
+ * based on how fast Cactus is moving and how close the nearest object is.
+ * <p>
+ * A stopped robot far from any wall only needs an occasional reading, while a
+ * robot driving at full speed toward a wall needs every reading the sensors
+ * can produce. The intervals given here scale between those two extremes.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class SamplePolicy {
+    /**
+     * The shortest interval (in ms) between IR readings. The GP2D12 only
+     * produces a new measurement every ~38ms, so reading faster is wasted.
+     */
+    public static final int MIN_IR_INTERVAL = 40;
+    /** The time (in ms) the GP2D12 takes to produce a new measurement. */
+    public static final int GP2D12_PERIOD = 38;
+    /** The longest time (in ms) an IR reading is reused. */
+    public static final int MAX_RANGE_AGE = 100;
+    /** The longest interval (in ms) between IR readings. */
+    public static final int MAX_IR_INTERVAL = 400;
+    /** The shortest interval (in ms) between tachometer readings. */
+    public static final int MIN_TACHO_INTERVAL = 5;
+    /** The longest interval (in ms) between tachometer readings. */
+    public static final int MAX_TACHO_INTERVAL = Motor.REFRESH_RATE;
+
+    /** The fraction of the distance to an object to travel between pings. */
+    private static final float PROXIMITY_FRACTION = 0.25f;
+    /** The shortest distance (in cm) to travel between pings. */
+    private static final float MIN_TRAVEL = 1.0f;
+    /** The longest distance (in cm) to travel between pings. */
+    private static final float MAX_TRAVEL = 5.0f;
+    /** The farthest distance (in cm) to travel on one IR reading. */
+    private static final float REUSE_TRAVEL = 0.5f;
+    /** The number of tachometer readings to take per tick. */
+    private static final int SAMPLES_PER_TICK = 3;
+
+    /** No instances. */
+    private SamplePolicy() {
+    }
+
+    /**
+     * Gives the number of milliseconds to wait between IR readings.
+     * The interval is chosen so that Cactus travels no more than a quarter
+     * of the distance to the nearest object (and no more than
+     * {@code MAX_TRAVEL} cm) between readings.
+     * @param speed The speed of Cactus (in cm/s, sign ignored).
+     * @param distance The distance to the nearest object (in cm), or a
+     * negative number if it is unknown.
+     * @return The interval (in ms), between {@code MIN_IR_INTERVAL} and
+     * {@code MAX_IR_INTERVAL}.
+     */
+    public static int irInterval(float speed, float distance) {
+        if (speed < 0)
+            speed = -speed;
+        if (speed == 0)
+            return MAX_IR_INTERVAL;
+        float travel = distance < 0 ? MIN_TRAVEL : distance * PROXIMITY_FRACTION;
+        if (travel < MIN_TRAVEL)
+            travel = MIN_TRAVEL;
+        else if (travel > MAX_TRAVEL)
+            travel = MAX_TRAVEL;
+        return clamp((int) (travel * 1000 / speed),
+                MIN_IR_INTERVAL, MAX_IR_INTERVAL);
+    }
+
+    /**
+     * Gives the number of milliseconds an IR reading can be reused for
+     * instead of pinging the sensor again. No new measurement exists until
+     * {@code GP2D12_PERIOD} has passed, and after that a reading is reused
+     * until Cactus could have moved {@code REUSE_TRAVEL} cm since it was
+     * taken, or until it is {@code MAX_RANGE_AGE} ms old, in case the
+     * object moved instead.
+     * @param speed The speed of Cactus (in cm/s, sign ignored).
+     * @return The age (in ms), between {@code GP2D12_PERIOD} and
+     * {@code MAX_RANGE_AGE}.
+     */
+    public static int rangeValidity(float speed) {
+        if (speed < 0)
+            speed = -speed;
+        if (speed == 0)
+            return MAX_RANGE_AGE;
+        return clamp((int) (REUSE_TRAVEL * 1000 / speed), GP2D12_PERIOD,
+                MAX_RANGE_AGE);
+    }
+
+    /**
+     * Gives the number of milliseconds to wait between tachometer readings.
+     * The wheel is sampled {@code SAMPLES_PER_TICK} times per expected tick
+     * so that no tick is missed.
+     * @param speed The speed of the wheel (in cm/s, sign ignored).
+     * @return The interval (in ms), between {@code MIN_TACHO_INTERVAL} and
+     * {@code MAX_TACHO_INTERVAL}.
+     */
+    public static int tachoInterval(float speed) {
+        if (speed < 0)
+            speed = -speed;
+        if (speed == 0)
+            return MAX_TACHO_INTERVAL;
+        return clamp((int) (Motor.CM_PER_TICK * 1000
+                / (speed * SAMPLES_PER_TICK)),
+                MIN_TACHO_INTERVAL, MAX_TACHO_INTERVAL);
+    }
+
+    /**
+     * Clamps a value to a range.
+     * @param value The value to clamp.
+     * @param min The lower bound.
+     * @param max The upper bound.
+     * @return The clamped value.
+     */
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : value > max ? max : value;
+    }
+}
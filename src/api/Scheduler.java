@@ -0,0 +1,504 @@
+package api;
+
+/**
+ * Runs all of Cactus' periodic work off one timer wheel, on a small fixed
+ * set of threads with set priorities.
+ * <p>
+ * Work belongs to one of three classes, each with its own priority:
+ * <ul>
+ * <li>{@code SAMPLING} ({@code MAX_PRIORITY}): catching edges, like the
+ * tachometers, and timing the laser modulator's pulses. These tasks run on
+ * the "Sampling" thread, which also turns the wheel, as soon as they are
+ * due.</li>
+ * <li>{@code CONTROL} ({@code NORM_PRIORITY + 1}): the control loop of a
+ * {@link CactusProgram}, on the thread that starts it, and the I2C bus, on
+ * its own thread. Neither is periodic work the wheel can time: the loop
+ * restarts and rethrows on its caller's thread, and the bus waits out gaps
+ * shorter than a tick. So no task can be scheduled in this class; the two
+ * charge their time to it instead (see {@link #charge(int, int)}).</li>
+ * <li>{@code BACKGROUND} ({@code MIN_PRIORITY}): delivering wheel ticks,
+ * the battery monitor, and the serial link, which carries telemetry out.
+ * These tasks run on the "Background" thread.</li>
+ * </ul>
+ * The watchdog keeps a thread of its own at {@code MAX_PRIORITY}, as it
+ * must notice if the wheel itself stalls, and charges its checks to the
+ * sampling class.
+ * <p>
+ * The wheel has {@code SLOTS} slots of {@code TICK} ms each, and a task
+ * waits in the slot of the first tick after it is due, so scheduling a task
+ * and finding the due ones take the same time however many tasks there
+ * are. A task runs up to a tick late, but its next run is timed from when
+ * it was due, so it keeps its rate on average.
+ * The wheel thread sleeps until the next slot that holds a task. Background
+ * tasks are handed to their thread as they come due, and each thread is
+ * only started once it has work. A task that stops itself when it runs out
+ * of work is started again with {@link #wake(PeriodicTask, int, int)}.
+ * <p>
+ * The time spent on each class's work, run as tasks or charged, is added
+ * up, so its share of the CPU can be seen (see {@link #share(int)}). The
+ * clock only counts whole ms, so a run shorter than a ms counts as 0 or 1,
+ * but over many runs the total comes out right on average.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Scheduler {
+    /** Class: sampling sensor edges. */
+    public static final int SAMPLING = 0;
+    /** Class: control work. */
+    public static final int CONTROL = 1;
+    /** Class: work that can wait. */
+    public static final int BACKGROUND = 2;
+    /** The number of classes of work. */
+    public static final int GROUPS = 3;
+
+    /** The number of ms per slot of the wheel. */
+    public static final int TICK = SamplePolicy.MIN_TACHO_INTERVAL;
+    /** The number of slots in the wheel. A power of two. */
+    public static final int SLOTS = 64;
+
+    /** The scheduler shared by everything on Cactus. */
+    private static Scheduler system;
+
+    /** The tasks waiting in each slot of the wheel. */
+    private final PeriodicTask[] slots = new PeriodicTask[SLOTS];
+    /** The number of tasks on the wheel. */
+    private int waiting;
+    /** The last tick whose slot was emptied of due tasks. */
+    private long tick;
+    /** The clock time (in ms) at which the scheduler was created. */
+    private final long created;
+    /**
+     * The thread of each class, or {@code null} until it has work. Control
+     * work has none.
+     */
+    private final Worker[] workers = new Worker[GROUPS];
+
+    /** The ms spent running each class's tasks since the metrics reset. */
+    private final int[] busy = new int[GROUPS];
+    /** The number of task runs in each class. */
+    private final int[] runs = new int[GROUPS];
+    /** The longest (in ms) a task of each class ran past its due time. */
+    private final int[] late = new int[GROUPS];
+    /** The number of runs in each class that threw. */
+    private final int[] errors = new int[GROUPS];
+    /** The clock time (in ms) the metrics were last reset. */
+    private long since;
+
+    /** A thread that runs the tasks of one class. */
+    private final class Worker implements Runnable {
+        /** The class of the tasks. */
+        final int group;
+        /** The oldest task ready to run, or {@code null}. */
+        PeriodicTask head;
+        /** The newest task ready to run. */
+        PeriodicTask tail;
+
+        Worker(int group) {
+            this.group = group;
+            Thread t = new Thread(this,
+                    group == SAMPLING ? "Sampling" : "Background");
+            t.setDaemon(true);
+            t.setPriority(priority(group));
+            t.start();
+        }
+
+        /**
+         * Queues a task that has come due.
+         * @param task The task.
+         */
+        synchronized void ready(PeriodicTask task) {
+            task.next = null;
+            if (head == null)
+                head = task;
+            else
+                tail.next = task;
+            tail = task;
+            this.notify();
+        }
+
+        /** Runs tasks as they are queued, or turns the wheel. */
+        public void run() {
+            if (group == SAMPLING) {
+                turn();
+                return;
+            }
+            while (true) {
+                PeriodicTask task;
+                synchronized (this) {
+                    while (head == null) {
+                        try {
+                            this.wait();
+                        } catch (InterruptedException ex) {
+                            // Look again
+                        }
+                    }
+                    task = head;
+                    head = task.next;
+                }
+                execute(task);
+            }
+        }
+    }
+
+    /** Creates a scheduler with no tasks. */
+    public Scheduler() {
+        created = System.currentTimeMillis();
+        since = created;
+    }
+
+    /**
+     * Gives the scheduler shared by everything on Cactus, creating it on
+     * first use.
+     * @return The scheduler.
+     */
+    public static synchronized Scheduler system() {
+        if (system == null)
+            system = new Scheduler();
+        return system;
+    }
+
+    /**
+     * Gives the priority of the threads of a class.
+     * @param group The class.
+     * @return The thread priority.
+     */
+    public static int priority(int group) {
+        switch (group) {
+            case SAMPLING:
+                return Thread.MAX_PRIORITY;
+            case CONTROL:
+                return Thread.NORM_PRIORITY + 1;
+            default:
+                return Thread.MIN_PRIORITY;
+        }
+    }
+
+    /**
+     * Gives the name of a class, for printing.
+     * @param group The class.
+     * @return The name.
+     */
+    public static String name(int group) {
+        switch (group) {
+            case SAMPLING:
+                return "sampling";
+            case CONTROL:
+                return "control";
+            case BACKGROUND:
+                return "background";
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * Schedules a task's first run. It then runs again as often as it asks.
+     * @param task The task, which must not already be scheduled.
+     * @param group The class of the task.
+     * @param delay The number of ms until the first run.
+     */
+    public void schedule(PeriodicTask task, int group, int delay) {
+        check(task, group, delay);
+        synchronized (this) {
+            if (task.scheduled)
+                throw new RuntimeException("Task already scheduled");
+            start(task, group, System.currentTimeMillis() - created + delay);
+        }
+    }
+
+    /**
+     * Has a task run within a delay, as when new work comes for a task that
+     * stopped itself, or runs less often, while it had none. A task waiting
+     * on the wheel is moved up if it is due later, one being run runs again
+     * as soon as it ends, and one not scheduled is scheduled.
+     * @param task The task.
+     * @param group The class of the task.
+     * @param delay The most ms until it runs.
+     */
+    public void wake(PeriodicTask task, int group, int delay) {
+        check(task, group, delay);
+        synchronized (this) {
+            long due = System.currentTimeMillis() - created + delay;
+            task.cancelled = false;
+            if (!task.scheduled) {
+                start(task, group, due);
+            } else if (task.slot < 0) {
+                task.woken = true;
+            } else if (task.due > due) {
+                remove(task);
+                insert(task, due);
+            }
+        }
+    }
+
+    /**
+     * Stops a task. A run already under way finishes.
+     * @param task The task.
+     */
+    public void cancel(PeriodicTask task) {
+        task.cancelled = true;
+    }
+
+    /**
+     * Adds time spent on a class's work outside of its tasks, as by the
+     * control loop.
+     * @param group The class.
+     * @param ms The time (in ms).
+     */
+    public synchronized void charge(int group, int ms) {
+        busy[group] += ms;
+    }
+
+    /**
+     * Gives the share of the CPU taken by a class since the metrics were
+     * reset.
+     * @param group The class.
+     * @return The share (in percent).
+     */
+    public synchronized int share(int group) {
+        long elapsed = System.currentTimeMillis() - since;
+        return elapsed <= 0 ? 0 : (int) (busy[group] * 100L / elapsed);
+    }
+
+    /**
+     * Gives the time spent running a class's tasks since the metrics were
+     * reset.
+     * @param group The class.
+     * @return The time (in ms).
+     */
+    public synchronized int busy(int group) {
+        return busy[group];
+    }
+
+    /**
+     * Gives the number of task runs in a class since the metrics were reset.
+     * @param group The class.
+     * @return The number of runs.
+     */
+    public synchronized int runs(int group) {
+        return runs[group];
+    }
+
+    /**
+     * Gives the longest a task of a class started after it was due, since
+     * the metrics were reset.
+     * @param group The class.
+     * @return The time (in ms).
+     */
+    public synchronized int late(int group) {
+        return late[group];
+    }
+
+    /**
+     * Gives the number of runs in a class that threw, since the metrics were
+     * reset. A task that throws is not run again.
+     * @param group The class.
+     * @return The number of errors.
+     */
+    public synchronized int errors(int group) {
+        return errors[group];
+    }
+
+    /** Starts the metrics over. */
+    public synchronized void resetMetrics() {
+        for (int g = 0; g < GROUPS; ++g) {
+            busy[g] = 0;
+            runs[g] = 0;
+            late[g] = 0;
+            errors[g] = 0;
+        }
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks the arguments of a call to schedule a task.
+     * @param task The task.
+     * @param group The class of the task.
+     * @param delay The number of ms until it runs.
+     */
+    private static void check(PeriodicTask task, int group, int delay) {
+        if (task == null)
+            throw new IllegalArgumentException("Cannot pass a null task");
+        if (group != SAMPLING && group != BACKGROUND)
+            throw new IllegalArgumentException("Cannot schedule class "
+                    + group);
+        if (delay < 0)
+            throw new IllegalArgumentException("Delay cannot be negative");
+    }
+
+    /**
+     * Schedules a task that is not scheduled, starting the threads it needs.
+     * @param task The task.
+     * @param group The class of the task.
+     * @param due The time (in ms since {@code created}) it is due.
+     */
+    private void start(PeriodicTask task, int group, long due) {
+        task.group = group;
+        task.cancelled = false;
+        task.woken = false;
+        task.scheduled = true;
+        if (workers[group] == null)
+            workers[group] = new Worker(group);
+        if (workers[SAMPLING] == null)
+            workers[SAMPLING] = new Worker(SAMPLING);
+        insert(task, due);
+    }
+
+    /**
+     * Puts a task in the slot of the tick it is due in.
+     * @param task The task.
+     * @param due The time (in ms since {@code created}) it is due.
+     */
+    private void insert(PeriodicTask task, long due) {
+        // The first tick that starts at or after the due time, but never a
+        // slot the wheel has already passed
+        long t = (due + TICK - 1) / TICK;
+        if (t <= tick)
+            t = tick + 1;
+        task.due = due;
+        int slot = (int) (t & (SLOTS - 1));
+        task.slot = slot;
+        task.next = slots[slot];
+        slots[slot] = task;
+        ++waiting;
+        this.notify();
+    }
+
+    /**
+     * Takes a task waiting on the wheel out of its slot.
+     * @param task The task.
+     */
+    private void remove(PeriodicTask task) {
+        PeriodicTask prev = null;
+        for (PeriodicTask t = slots[task.slot]; t != task; t = t.next)
+            prev = t;
+        if (prev == null)
+            slots[task.slot] = task.next;
+        else
+            prev.next = task.next;
+        task.slot = -1;
+        --waiting;
+    }
+
+    /**
+     * Turns the wheel forever on the sampling thread: runs the sampling
+     * tasks that are due and hands the rest to their threads, then sleeps
+     * until the next slot with a task in it.
+     */
+    private void turn() {
+        while (true) {
+            PeriodicTask due = null;
+            synchronized (this) {
+                long now = System.currentTimeMillis() - created;
+                long target = now / TICK;
+                // After a long stall, one pass over the wheel is enough
+                if (target - tick > SLOTS)
+                    tick = target - SLOTS;
+                while (tick < target) {
+                    ++tick;
+                    int slot = (int) (tick & (SLOTS - 1));
+                    PeriodicTask prev = null;
+                    PeriodicTask task = slots[slot];
+                    while (task != null) {
+                        PeriodicTask next = task.next;
+                        if ((task.due + TICK - 1) / TICK <= tick) {
+                            if (prev == null)
+                                slots[slot] = next;
+                            else
+                                prev.next = next;
+                            task.slot = -1;
+                            --waiting;
+                            if (task.group == SAMPLING) {
+                                task.next = due;
+                                due = task;
+                            } else {
+                                workers[task.group].ready(task);
+                            }
+                        } else {
+                            prev = task;
+                        }
+                        task = next;
+                    }
+                }
+                if (due == null) {
+                    try {
+                        this.wait(sleep(now));
+                    } catch (InterruptedException ex) {
+                        // Turn early
+                    }
+                    continue;
+                }
+            }
+            while (due != null) {
+                PeriodicTask next = due.next;
+                execute(due);
+                due = next;
+            }
+        }
+    }
+
+    /**
+     * Gives how long the wheel can sleep.
+     * @param now The time (in ms since {@code created}).
+     * @return The time (in ms) until the next slot with a task in it, or 0
+     * to sleep until a task is scheduled.
+     */
+    private long sleep(long now) {
+        if (waiting == 0)
+            return 0;
+        for (int i = 1; i <= SLOTS; ++i) {
+            if (slots[(int) ((tick + i) & (SLOTS - 1))] != null) {
+                long wait = (tick + i) * TICK - now;
+                return wait < 1 ? 1 : wait;
+            }
+        }
+        return TICK;
+    }
+
+    /**
+     * Runs a task and schedules its next run.
+     * @param task The task.
+     */
+    private void execute(PeriodicTask task) {
+        if (task.cancelled) {
+            synchronized (this) {
+                task.scheduled = false;
+                task.woken = false;
+            }
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int delay;
+        boolean failed = false;
+        try {
+            delay = task.run(start);
+        } catch (RuntimeException ex) {
+            delay = 0;
+            failed = true;
+        }
+        long end = System.currentTimeMillis();
+        synchronized (this) {
+            int g = task.group;
+            busy[g] += (int) (end - start);
+            ++runs[g];
+            int lateness = (int) (start - created - task.due);
+            if (lateness > late[g])
+                late[g] = lateness;
+            if (failed)
+                ++errors[g];
+            boolean again = task.woken;
+            task.woken = false;
+            if ((delay > 0 || again) && !task.cancelled) {
+                // Keep to the task's rate, unless it has fallen behind or
+                // was woken while it ran
+                long due = again ? 0 : task.due + delay;
+                if (due < end - created)
+                    due = end - created;
+                insert(task, due);
+            } else {
+                task.scheduled = false;
+            }
+        }
+    }
+}
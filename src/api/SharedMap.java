@@ -0,0 +1,201 @@
+package api;
+
+/**
+ * A maze map that several robots build together: which walls each cell
+ * has, which cells have been explored, and which robot has claimed each
+ * cell for exploring.
+ * <p>
+ * The maze is {@code SIZE} by {@code SIZE} cells, and each cell is one byte:
+ * four wall bits and a known bit. Cells explored locally are marked dirty
+ * until they have been {@link #nextDirty() handed out} to be sent to the
+ * other robots; cells {@link #merge(int, int) merged} from other robots are
+ * not, so nothing is sent twice.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class SharedMap {
+    /** The width and height of the maze (in cells). */
+    public static final int SIZE = 16;
+    /** The number of cells in the maze. */
+    public static final int CELLS = SIZE * SIZE;
+
+    /** Wall bit: the wall toward +y. */
+    public static final int NORTH = 0x1;
+    /** Wall bit: the wall toward +x. */
+    public static final int EAST = 0x2;
+    /** Wall bit: the wall toward -y. */
+    public static final int SOUTH = 0x4;
+    /** Wall bit: the wall toward -x. */
+    public static final int WEST = 0x8;
+    /** All four wall bits. */
+    public static final int WALLS = 0xF;
+    /** The bit set once a cell has been explored. */
+    public static final int KNOWN = 0x10;
+    /** The owner of a cell nobody has claimed. */
+    public static final int NOBODY = -1;
+
+    /** The walls and known bit of each cell. */
+    private final byte[] cells = new byte[CELLS];
+    /** Whether each cell has changed since it was last handed out. */
+    private final boolean[] dirty = new boolean[CELLS];
+    /** The number of dirty cells. */
+    private int dirtyCount;
+    /** Where to start looking for the next dirty cell. */
+    private int dirtyCursor;
+    /** The id of the robot exploring each cell, or {@code NOBODY}. */
+    private final short[] owners = new short[CELLS];
+    /** The number of known cells. */
+    private int knownCount;
+
+    /** Creates an empty map. */
+    public SharedMap() {
+        for (int i = 0; i < CELLS; ++i)
+            owners[i] = NOBODY;
+    }
+
+    /**
+     * Gives the index of a cell.
+     * @param x The column of the cell.
+     * @param y The row of the cell.
+     * @return The index of the cell (0-255).
+     */
+    public static int cell(int x, int y) {
+        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE)
+            throw new IllegalArgumentException(
+                    "No cell (" + x + ", " + y + ")");
+        return x << 4 | y;
+    }
+
+    /**
+     * Gives the column of a cell.
+     * @param cell The index of the cell.
+     * @return The column.
+     */
+    public static int x(int cell) {
+        return cell >> 4;
+    }
+
+    /**
+     * Gives the row of a cell.
+     * @param cell The index of the cell.
+     * @return The row.
+     */
+    public static int y(int cell) {
+        return cell & 0x0F;
+    }
+
+    /**
+     * Records the walls of a cell this robot has explored.
+     * @param cell The index of the cell.
+     * @param walls The wall bits of the cell.
+     */
+    public synchronized void explore(int cell, int walls) {
+        if (set(cell, walls) && !dirty[cell]) {
+            dirty[cell] = true;
+            ++dirtyCount;
+        }
+    }
+
+    /**
+     * Records the walls of a cell another robot has explored.
+     * @param cell The index of the cell.
+     * @param walls The wall bits of the cell.
+     */
+    public synchronized void merge(int cell, int walls) {
+        set(cell, walls);
+    }
+
+    /**
+     * Gives the wall bits of a cell.
+     * @param cell The index of the cell.
+     * @return The wall bits, or 0 if the cell is unknown.
+     */
+    public synchronized int walls(int cell) {
+        return cells[cell] & WALLS;
+    }
+
+    /**
+     * Gives whether a cell has been explored.
+     * @param cell The index of the cell.
+     * @return {@code true} if the walls of the cell are known.
+     */
+    public synchronized boolean known(int cell) {
+        return (cells[cell] & KNOWN) != 0;
+    }
+
+    /**
+     * Gives the number of cells explored.
+     * @return The number of known cells.
+     */
+    public synchronized int knownCount() {
+        return knownCount;
+    }
+
+    /**
+     * Claims a cell for a robot to explore. Where two robots claim the same
+     * cell, the robot with the lower id keeps it, so every robot settles on
+     * the same owner whatever order the claims arrive in.
+     * @param cell The index of the cell.
+     * @param robot The id of the robot.
+     * @return {@code true} if the robot now owns the cell.
+     */
+    public synchronized boolean claim(int cell, int robot) {
+        if (owners[cell] == NOBODY || robot < owners[cell])
+            owners[cell] = (short) robot;
+        return owners[cell] == robot;
+    }
+
+    /**
+     * Gives the robot exploring a cell.
+     * @param cell The index of the cell.
+     * @return The id of the robot, or {@code NOBODY}.
+     */
+    public synchronized int owner(int cell) {
+        return owners[cell];
+    }
+
+    /**
+     * Gives the number of cells explored here but not yet handed out.
+     * @return The number of dirty cells.
+     */
+    public synchronized int dirtyCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * Hands out a cell explored here that has not been sent, and marks it
+     * clean.
+     * @return The index of the cell, or -1 if there is none.
+     */
+    public synchronized int nextDirty() {
+        if (dirtyCount == 0)
+            return -1;
+        for (int i = 0; i < CELLS; ++i) {
+            int c = (dirtyCursor + i) % CELLS;
+            if (dirty[c]) {
+                dirty[c] = false;
+                --dirtyCount;
+                dirtyCursor = c + 1;
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the walls of a cell.
+     * @param cell The index of the cell.
+     * @param walls The wall bits of the cell.
+     * @return {@code true} if the cell changed.
+     */
+    private boolean set(int cell, int walls) {
+        int value = KNOWN | (walls & WALLS);
+        if (cells[cell] == value)
+            return false;
+        if ((cells[cell] & KNOWN) == 0)
+            ++knownCount;
+        cells[cell] = (byte) value;
+        return true;
+    }
+}
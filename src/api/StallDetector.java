@@ -0,0 +1,90 @@
+package api;
+
+/**
+ * Tells when the wheels turn much less than their commands say they should,
+ * as when Cactus pushes against a wall. The tachometers still count then,
+ * only slower, as the wheels slip, so a count that stops is not enough.
+ * <p>
+ * Over each {@code WINDOW_MS}, the ticks both wheels turned, either way, are
+ * compared with the ticks the commands held over that time would turn them
+ * at {@link Motor#MAX_CM_PER_SECOND}. Ticks are summed on every call, so a
+ * wheel that reverses within a window does not look stalled. All math is
+ * integer math.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class StallDetector {
+    /** The time (in ms) over which the ticks are compared with commands. */
+    public static final int WINDOW_MS = 1000;
+    /** The share (in percent) of the commanded ticks that is a stall. */
+    public static final int PERCENT = 50;
+    /** The ticks both wheels turn in 1000 s at full speed. */
+    private static final long TICKS_PER_KS
+            = (long) (1000 * Motor.MAX_CM_PER_SECOND / Motor.CM_PER_TICK);
+
+    /** The time (in ms) of the last call. */
+    private long lastTime;
+    /** The tick counts at the last call. */
+    private int lastLeft, lastRight;
+    /** The time (in ms) the current window started. */
+    private long windowStart;
+    /** The ticks both wheels turned, either way, in the window. */
+    private int turned;
+    /** The sum of both commands (in percent) times their ms in the window. */
+    private long commanded;
+    /** The sum of both commands (in percent) held since the last call. */
+    private int held;
+
+    /**
+     * Starts a new window, with no commands held.
+     * @param t The current time (in ms).
+     * @param left The current tick count of the left wheel.
+     * @param right The current tick count of the right wheel.
+     */
+    public void start(long t, int left, int right) {
+        lastTime = windowStart = t;
+        lastLeft = left;
+        lastRight = right;
+        turned = 0;
+        commanded = 0;
+        held = 0;
+    }
+
+    /**
+     * Adds the ticks turned and the commands held since the last call, and
+     * at the end of a window compares them. The commands count only until
+     * this call; give the next ones with {@link #hold(int, int)}.
+     * @param t The current time (in ms).
+     * @param left The current tick count of the left wheel.
+     * @param right The current tick count of the right wheel.
+     * @return Whether the window just ended with the wheels turning less
+     * than {@code PERCENT} of the ticks their commands should have.
+     */
+    public boolean stalled(long t, int left, int right) {
+        turned += Math.abs(left - lastLeft) + Math.abs(right - lastRight);
+        commanded += held * (t - lastTime);
+        lastLeft = left;
+        lastRight = right;
+        lastTime = t;
+        held = 0;
+        if (t - windowStart < WINDOW_MS)
+            return false;
+        boolean slow = turned * 100L
+                < commanded * TICKS_PER_KS / 100000000 * PERCENT;
+        windowStart = t;
+        turned = 0;
+        commanded = 0;
+        return slow;
+    }
+
+    /**
+     * Sets the commands held until the next call of
+     * {@link #stalled(long, int, int)}.
+     * @param left The speed (in percent) of the left wheel.
+     * @param right The speed (in percent) of the right wheel.
+     */
+    public void hold(int left, int right) {
+        held = Math.abs(left) + Math.abs(right);
+    }
+}
@@ -0,0 +1,454 @@
+package api;
+
+/**
+ * An extended Kalman filter that fuses the wheel tachometers, the IR range
+ * sensors and the IR camera into a single estimate of Cactus' state.
+ * <p>
+ * Measurements may arrive at any rate and in any order. Each one carries the
+ * time (in milliseconds) at which it was taken; the filter predicts its state
+ * forward to that time before applying the measurement. Measurements older
+ * than the filter's current time are applied at the current time rather than
+ * rewinding the filter.
+ * <p>
+ * The state vector is {x, y, heading, v, omega, left, right} where x and y
+ * are in cm, heading is in radians, v is in cm/s, omega is in rad/s and left
+ * and right are the distances (in cm) to the nearest objects seen by
+ * {@code leftIR} and {@code rightIR}.
+ * <p>
+ * All matrices are allocated when the filter is created, so no measurement or
+ * query allocates memory. Every query is constant time.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public class StateEstimator {
+    /** Index of the x-coordinate in the state vector. */
+    public static final int X = 0;
+    /** Index of the y-coordinate in the state vector. */
+    public static final int Y = 1;
+    /** Index of the heading in the state vector. */
+    public static final int HEADING = 2;
+    /** Index of the forward velocity in the state vector. */
+    public static final int VELOCITY = 3;
+    /** Index of the angular velocity in the state vector. */
+    public static final int OMEGA = 4;
+    /** Index of the distance seen by {@code leftIR} in the state vector. */
+    public static final int LEFT_RANGE = 5;
+    /** Index of the distance seen by {@code rightIR} in the state vector. */
+    public static final int RIGHT_RANGE = 6;
+    /** The number of elements in the state vector. */
+    public static final int N = 7;
+
+    /** The default distance between the wheels of Cactus (in cm). */
+    public static final float DEFAULT_WHEEL_BASE = 13.0f;
+    /** The horizontal field of view of the PixArt camera (in radians). */
+    public static final float CAMERA_FOV = IRCamera.FIELD_OF_VIEW;
+    /** The horizontal resolution of the PixArt camera (in pixels). */
+    public static final int CAMERA_WIDTH = IRCamera.WIDTH;
+
+    /** Variance of a single GP2D12 reading (cm^2). */
+    private static final float IR_VARIANCE = 4.0f;
+    /** Variance of a wheel velocity derived from the tachometer ((cm/s)^2). */
+    private static final float WHEEL_VARIANCE = 100.0f;
+    /** Variance of a bearing taken from the camera (rad^2). */
+    private static final float BEARING_VARIANCE = 0.0004f;
+    /** Linear acceleration noise density ((cm/s^2)^2 per second). */
+    private static final float ACCEL_NOISE = 400.0f;
+    /** Angular acceleration noise density ((rad/s^2)^2 per second). */
+    private static final float ALPHA_NOISE = 4.0f;
+    /** Range noise density, for objects that move or appear (cm^2/s). */
+    private static final float RANGE_NOISE = 25.0f;
+    /** The variance a range takes on when it is unknown. */
+    private static final float UNKNOWN_RANGE_VARIANCE = 10000.0f;
+    /** The longest interval (in ms) the filter will predict over at once. */
+    private static final int MAX_PREDICT_INTERVAL = 1000;
+
+    /** The distance between the wheels of Cactus (in cm). */
+    private final float wheelBase;
+
+    /** The state vector. */
+    private final float[] s = new float[N];
+    /** The covariance matrix (row-major). */
+    private final float[] p = new float[N * N];
+    /** The state transition Jacobian (row-major). */
+    private final float[] f = new float[N * N];
+    /** Scratch space for the covariance prediction. */
+    private final float[] tmp = new float[N * N];
+    /** The measurement row for scalar updates. */
+    private final float[] h = new float[N];
+    /** The product P * transpose(h). */
+    private final float[] ph = new float[N];
+
+    /** The time (in ms) of the current estimate. */
+    private long time;
+    /** Whether the filter has received its first measurement. */
+    private boolean started = false;
+
+    /** The last tick count of each wheel. */
+    private final int[] lastTicks = new int[2];
+    /** The time (in ms) of the last tick count of each wheel. */
+    private final long[] lastTickTime = new long[2];
+    /** Whether a tick count has been recorded for each wheel. */
+    private final boolean[] haveTicks = new boolean[2];
+
+    /** The x-coordinate of the beacon (in cm). */
+    private float beaconX;
+    /** The y-coordinate of the beacon (in cm). */
+    private float beaconY;
+    /** Whether the position of the beacon is known. */
+    private boolean haveBeacon = false;
+
+    /** Creates a StateEstimator with the default wheel base. */
+    public StateEstimator() {
+        this(DEFAULT_WHEEL_BASE);
+    }
+
+    /**
+     * Creates a StateEstimator for a robot with the specified wheel base.
+     * @param wheelBase The distance between the wheels (in cm).
+     */
+    public StateEstimator(float wheelBase) {
+        if (wheelBase <= 0)
+            throw new IllegalArgumentException("Wheel base must be positive");
+        this.wheelBase = wheelBase;
+        reset(0, 0, 0);
+    }
+
+    /**
+     * Resets the filter to the specified pose, which is assumed to be exact.
+     * Cactus is assumed to be stopped and the ranges are unknown.
+     * @param x The x-coordinate (in cm).
+     * @param y The y-coordinate (in cm).
+     * @param heading The heading (in radians).
+     */
+    public synchronized void reset(float x, float y, float heading) {
+        for (int i = 0; i < N * N; ++i)
+            p[i] = 0;
+        for (int i = 0; i < N; ++i)
+            s[i] = 0;
+        s[X] = x;
+        s[Y] = y;
+        s[HEADING] = heading;
+        p[VELOCITY * N + VELOCITY] = 1.0f;
+        p[OMEGA * N + OMEGA] = 0.01f;
+        p[LEFT_RANGE * N + LEFT_RANGE] = UNKNOWN_RANGE_VARIANCE;
+        p[RIGHT_RANGE * N + RIGHT_RANGE] = UNKNOWN_RANGE_VARIANCE;
+        haveTicks[Motor.LEFT] = false;
+        haveTicks[Motor.RIGHT] = false;
+        started = false;
+    }
+
+    /**
+     * Sets the position of the IR beacon that the camera tracks, which allows
+     * camera bearings to correct the pose.
+     * @param x The x-coordinate of the beacon (in cm).
+     * @param y The y-coordinate of the beacon (in cm).
+     */
+    public synchronized void setBeacon(float x, float y) {
+        beaconX = x;
+        beaconY = y;
+        haveBeacon = true;
+    }
+
+    /**
+     * Applies a reading of one of the range sensors.
+     * Failed readings (negative distances) are ignored.
+     * @param t The time (in ms) at which the reading was taken.
+     * @param side The sensor ({@code Motor.LEFT} or {@code Motor.RIGHT}).
+     * @param cm The distance that was read (in cm).
+     */
+    public synchronized void range(long t, int side, float cm) {
+        if (cm < 0)
+            return;
+        advance(t);
+        int i = side == Motor.LEFT ? LEFT_RANGE : RIGHT_RANGE;
+        clearH();
+        h[i] = 1;
+        update(cm - s[i], IR_VARIANCE);
+    }
+
+    /**
+     * Applies a reading of one of the wheel tachometers. The velocity of the
+     * wheel is derived from the change in ticks since the previous reading of
+     * the same wheel, so the first reading of each wheel only records a
+     * baseline.
+     * @param t The time (in ms) at which the ticks were counted.
+     * @param side The wheel ({@code Motor.LEFT} or {@code Motor.RIGHT}).
+     * @param ticks The cumulative tick count of the wheel.
+     */
+    public synchronized void wheelTicks(long t, int side, int ticks) {
+        if (!haveTicks[side] || t <= lastTickTime[side]) {
+            haveTicks[side] = true;
+            lastTicks[side] = ticks;
+            lastTickTime[side] = t;
+            return;
+        }
+        float wheelSpeed = (ticks - lastTicks[side]) * Motor.CM_PER_TICK
+                * 1000.0f / (t - lastTickTime[side]);
+        lastTicks[side] = ticks;
+        lastTickTime[side] = t;
+
+        advance(t);
+        // wheel speed = v -/+ omega * wheelBase / 2
+        clearH();
+        h[VELOCITY] = 1;
+        h[OMEGA] = side == Motor.LEFT ? -wheelBase / 2 : wheelBase / 2;
+        update(wheelSpeed - (s[VELOCITY] + h[OMEGA] * s[OMEGA]),
+                WHEEL_VARIANCE);
+    }
+
+    /**
+     * Applies a bearing to the beacon taken from the camera. Ignored if the
+     * position of the beacon has not been set.
+     * @param t The time (in ms) at which the frame was captured.
+     * @param bearing The bearing to the beacon relative to the heading
+     * (in radians, positive to the left).
+     */
+    public synchronized void bearing(long t, float bearing) {
+        if (!haveBeacon)
+            return;
+        advance(t);
+        float dx = beaconX - s[X];
+        float dy = beaconY - s[Y];
+        float r2 = dx * dx + dy * dy;
+        if (r2 < 1.0f)
+            return; // too close for the bearing to mean anything
+        float predicted = (float) Math.atan2(dy, dx) - s[HEADING];
+        clearH();
+        h[X] = dy / r2;
+        h[Y] = -dx / r2;
+        h[HEADING] = -1;
+        update(wrap(bearing - predicted), BEARING_VARIANCE);
+    }
+
+    /**
+     * Applies a blob seen by the camera as a bearing to the beacon.
+     * Empty blobs are ignored.
+     * @param t The time (in ms) at which the frame was captured.
+     * @param blob The blob that represents the beacon.
+     */
+    public void blob(long t, Blob blob) {
+        if (blob.x >= IRCamera.EMPTY)
+            return; // no blob in this slot
+        bearing(t, (CAMERA_WIDTH / 2 - blob.x) * CAMERA_FOV / CAMERA_WIDTH);
+    }
+
+    /**
+     * Gives the x-coordinate of Cactus.
+     * @return The x-coordinate (in cm).
+     */
+    public synchronized float x() {
+        return s[X];
+    }
+
+    /**
+     * Gives the y-coordinate of Cactus.
+     * @return The y-coordinate (in cm).
+     */
+    public synchronized float y() {
+        return s[Y];
+    }
+
+    /**
+     * Gives the heading of Cactus.
+     * @return The heading (in radians, -pi to pi).
+     */
+    public synchronized float heading() {
+        return s[HEADING];
+    }
+
+    /**
+     * Gives the forward velocity of Cactus.
+     * @return The forward velocity (in cm/s).
+     */
+    public synchronized float velocity() {
+        return s[VELOCITY];
+    }
+
+    /**
+     * Gives the angular velocity of Cactus.
+     * @return The angular velocity (in rad/s, positive to the left).
+     */
+    public synchronized float omega() {
+        return s[OMEGA];
+    }
+
+    /**
+     * Gives the distance to the nearest object seen by {@code leftIR}.
+     * @return The distance (in cm).
+     */
+    public synchronized float leftRange() {
+        return s[LEFT_RANGE];
+    }
+
+    /**
+     * Gives the distance to the nearest object seen by {@code rightIR}.
+     * @return The distance (in cm).
+     */
+    public synchronized float rightRange() {
+        return s[RIGHT_RANGE];
+    }
+
+    /**
+     * Gives an element of the state vector extrapolated to the specified
+     * time, without changing the filter.
+     * @param i The index of the element (see {@code X} through
+     * {@code RIGHT_RANGE}).
+     * @param t The time (in ms) of interest.
+     * @return The extrapolated element.
+     */
+    public synchronized float predict(int i, long t) {
+        float dt = started && t > time ? (t - time) / 1000.0f : 0;
+        switch (i) {
+            case X:
+                return s[X] + s[VELOCITY] * (float) Math.cos(s[HEADING]) * dt;
+            case Y:
+                return s[Y] + s[VELOCITY] * (float) Math.sin(s[HEADING]) * dt;
+            case HEADING:
+                return wrap(s[HEADING] + s[OMEGA] * dt);
+            case LEFT_RANGE:
+            case RIGHT_RANGE:
+                return s[i] - s[VELOCITY] * dt;
+            default:
+                return s[i];
+        }
+    }
+
+    /**
+     * Gives the variance of an element of the state vector.
+     * @param i The index of the element (see {@code X} through
+     * {@code RIGHT_RANGE}).
+     * @return The variance of the element.
+     */
+    public synchronized float variance(int i) {
+        return p[i * N + i];
+    }
+
+    /**
+     * Gives the time of the current estimate.
+     * @return The time (in ms) of the last applied measurement.
+     */
+    public synchronized long time() {
+        return time;
+    }
+
+    /**
+     * Predicts the state forward to the specified time.
+     * @param t The time (in ms) to predict to.
+     */
+    private void advance(long t) {
+        if (!started) {
+            started = true;
+            time = t;
+            return;
+        }
+        if (t <= time)
+            return;
+        long interval = t - time;
+        time = t;
+        if (interval > MAX_PREDICT_INTERVAL)
+            interval = MAX_PREDICT_INTERVAL;
+        float dt = interval / 1000.0f;
+
+        float v = s[VELOCITY];
+        float c = (float) Math.cos(s[HEADING]);
+        float sn = (float) Math.sin(s[HEADING]);
+
+        // Jacobian of the constant velocity model
+        for (int i = 0; i < N * N; ++i)
+            f[i] = 0;
+        for (int i = 0; i < N; ++i)
+            f[i * N + i] = 1;
+        f[X * N + HEADING] = -v * sn * dt;
+        f[X * N + VELOCITY] = c * dt;
+        f[Y * N + HEADING] = v * c * dt;
+        f[Y * N + VELOCITY] = sn * dt;
+        f[HEADING * N + OMEGA] = dt;
+        f[LEFT_RANGE * N + VELOCITY] = -dt;
+        f[RIGHT_RANGE * N + VELOCITY] = -dt;
+
+        // State
+        s[X] += v * c * dt;
+        s[Y] += v * sn * dt;
+        s[HEADING] = wrap(s[HEADING] + s[OMEGA] * dt);
+        s[LEFT_RANGE] -= v * dt;
+        s[RIGHT_RANGE] -= v * dt;
+
+        // tmp = F * P
+        for (int r = 0; r < N; ++r)
+            for (int col = 0; col < N; ++col) {
+                float sum = 0;
+                for (int k = 0; k < N; ++k)
+                    sum += f[r * N + k] * p[k * N + col];
+                tmp[r * N + col] = sum;
+            }
+        // P = tmp * transpose(F)
+        for (int r = 0; r < N; ++r)
+            for (int col = 0; col < N; ++col) {
+                float sum = 0;
+                for (int k = 0; k < N; ++k)
+                    sum += tmp[r * N + k] * f[col * N + k];
+                p[r * N + col] = sum;
+            }
+
+        // Process noise
+        p[VELOCITY * N + VELOCITY] += ACCEL_NOISE * dt;
+        p[OMEGA * N + OMEGA] += ALPHA_NOISE * dt;
+        p[LEFT_RANGE * N + LEFT_RANGE] += RANGE_NOISE * dt;
+        p[RIGHT_RANGE * N + RIGHT_RANGE] += RANGE_NOISE * dt;
+        if (p[LEFT_RANGE * N + LEFT_RANGE] > UNKNOWN_RANGE_VARIANCE)
+            p[LEFT_RANGE * N + LEFT_RANGE] = UNKNOWN_RANGE_VARIANCE;
+        if (p[RIGHT_RANGE * N + RIGHT_RANGE] > UNKNOWN_RANGE_VARIANCE)
+            p[RIGHT_RANGE * N + RIGHT_RANGE] = UNKNOWN_RANGE_VARIANCE;
+    }
+
+    /** Zeroes the measurement row. */
+    private void clearH() {
+        for (int i = 0; i < N; ++i)
+            h[i] = 0;
+    }
+
+    /**
+     * Applies a scalar measurement using the measurement row {@code h}.
+     * @param innovation The measured value minus the predicted value.
+     * @param variance The variance of the measurement.
+     */
+    private void update(float innovation, float variance) {
+        // ph = P * transpose(h), S = h * ph + R
+        float sum = variance;
+        for (int r = 0; r < N; ++r) {
+            float acc = 0;
+            for (int k = 0; k < N; ++k)
+                if (h[k] != 0)
+                    acc += p[r * N + k] * h[k];
+            ph[r] = acc;
+            sum += h[r] * acc;
+        }
+        if (sum <= 0)
+            return;
+        float inv = 1.0f / sum;
+
+        // x += K * innovation, P -= K * transpose(ph), where K = ph / S
+        for (int r = 0; r < N; ++r) {
+            float k = ph[r] * inv;
+            s[r] += k * innovation;
+            for (int col = 0; col < N; ++col)
+                p[r * N + col] -= k * ph[col];
+        }
+        s[HEADING] = wrap(s[HEADING]);
+    }
+
+    /**
+     * Wraps an angle to the range -pi to pi.
+     * @param a The angle (in radians).
+     * @return The equivalent angle in the range -pi to pi.
+     */
+    private static float wrap(float a) {
+        final float twoPi = (float) (2 * Math.PI);
+        while (a > Math.PI)
+            a -= twoPi;
+        while (a < -Math.PI)
+            a += twoPi;
+        return a;
+    }
+}
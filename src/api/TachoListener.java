@@ -1,15 +1,15 @@
-
 package api;
 
 /**
- * Something that detects changes to the motor
+ * Something that listens to the wheel tachometers through a
+ * {@link WheelBus}.
  * @author Jacob
  */
 public interface TachoListener {
     /**
-     * Called when the wheel makes 1/{@value Motor#TICKS_PER_ROTATION} of a
-     * revolution.
-     * @param power the speed of the motor (-100% to 100%)
+     * Called when a wheel makes 1/{@value Motor#TICKS_PER_ROTATION} of a
+     * revolution. Called on the bus thread, never on a tachometer thread.
+     * @param event The tick. Only valid until this method returns.
      */
-    public void tick(int ticks);
+    public void tick(WheelEvent event);
 }
@@ -0,0 +1,121 @@
+package api;
+
+/**
+ * Streams samples of Cactus' sensors and motors to a host over a
+ * {@link Link}, for the host's telemetry dashboard.
+ * <p>
+ * Each sample is one {@code SAMPLE} message; the offsets of its fields are
+ * given by the constants below. Distances are in tenths of a cm (-10 for no
+ * reading), tick counts are the low 16 bits of the running counts, and
+ * motor commands are signed percents. A sample is 16 bytes, so 21 on the
+ * wire: about 550 samples per second at 115200 baud.
+ * <p>
+ * Sending never blocks. When the link cannot keep up, samples are dropped
+ * and counted.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Telemetry {
+    /** Message type: a telemetry sample. */
+    public static final int SAMPLE = 8;
+
+    /** Offset of the time (in ms, 32 bits). */
+    public static final int TIME = 0;
+    /** Offset of the left IR distance (in tenths of a cm, 16 bits). */
+    public static final int LEFT_RANGE = 4;
+    /** Offset of the right IR distance (in tenths of a cm, 16 bits). */
+    public static final int RIGHT_RANGE = 6;
+    /** Offset of the left tick count (16 bits). */
+    public static final int LEFT_TICKS = 8;
+    /** Offset of the right tick count (16 bits). */
+    public static final int RIGHT_TICKS = 10;
+    /** Offset of the left motor command (in percent, 8 bits). */
+    public static final int LEFT_COMMAND = 12;
+    /** Offset of the right motor command (in percent, 8 bits). */
+    public static final int RIGHT_COMMAND = 13;
+    /** Offset of the time taken by the last control loop (in ms, 16 bits). */
+    public static final int LOOP_TIME = 14;
+    /** The length of a sample (in bytes). */
+    public static final int LENGTH = 16;
+
+    /** The largest 16-bit field value. */
+    private static final int MAX_SHORT = 32767;
+
+    /** The link to the host. */
+    private final Link link;
+    /** The message being sent. */
+    private final Message sample = new Message();
+    /** The number of samples sent. */
+    private int sent;
+    /** The number of samples dropped. */
+    private int dropped;
+
+    /**
+     * Creates a telemetry stream.
+     * @param link The link to the host.
+     */
+    public Telemetry(Link link) {
+        if (link == null)
+            throw new IllegalArgumentException("Cannot pass a null link");
+        this.link = link;
+    }
+
+    /**
+     * Queues a sample to be sent.
+     * @param t The time (in ms) of the sample.
+     * @param leftCm The left IR distance (in cm), or -1 for none.
+     * @param rightCm The right IR distance (in cm), or -1 for none.
+     * @param leftTicks The left tick count.
+     * @param rightTicks The right tick count.
+     * @param leftCommand The left motor command (in percent).
+     * @param rightCommand The right motor command (in percent).
+     * @param loopMs The time (in ms) taken by the last control loop.
+     * @return {@code false} if the sample was dropped.
+     */
+    public boolean send(long t, float leftCm, float rightCm, int leftTicks,
+            int rightTicks, int leftCommand, int rightCommand, int loopMs) {
+        sample.clear(SAMPLE)
+                .putInt((int) t)
+                .putShort(tenths(leftCm))
+                .putShort(tenths(rightCm))
+                .putShort(leftTicks)
+                .putShort(rightTicks)
+                .putByte(leftCommand)
+                .putByte(rightCommand)
+                .putShort(loopMs > MAX_SHORT ? MAX_SHORT : loopMs);
+        if (link.send(sample)) {
+            ++sent;
+            return true;
+        }
+        ++dropped;
+        return false;
+    }
+
+    /**
+     * Gives the number of samples sent.
+     * @return The number of samples queued on the link.
+     */
+    public int sent() {
+        return sent;
+    }
+
+    /**
+     * Gives the number of samples dropped because the link was full.
+     * @return The number of dropped samples.
+     */
+    public int dropped() {
+        return dropped;
+    }
+
+    /**
+     * Converts a distance to tenths of a cm.
+     * @param cm The distance (in cm), or a negative number for none.
+     * @return The distance (in tenths of a cm), or -10 for none.
+     */
+    private static int tenths(float cm) {
+        if (cm < 0)
+            return -10;
+        return cm * 10 > MAX_SHORT ? MAX_SHORT : (int) (cm * 10);
+    }
+}
@@ -0,0 +1,96 @@
+package api;
+
+/**
+ * The maze navigator from {@code MouseMaze}, with its thresholds and timing
+ * as parameters so they can be tuned.
+ * <p>
+ * Cactus drives forward, and veers right by slowing its right wheel when
+ * the left wall comes too close, unless there is a wall close on the right
+ * to keep it straight.
+ * <p>
+ * The parameters are, in order, with their indices and defaults (the values
+ * {@code MouseMaze} has always used):
+ * <ul>
+ * <li>{@code FOLLOW_CM}: a right wall nearer than this keeps Cactus
+ * straight (20cm)</li>
+ * <li>{@code CLOSE_CM}: a left wall nearer than this makes Cactus veer
+ * right (10cm)</li>
+ * <li>{@code SLOW_PERCENT}: the right wheel speed while veering (32%)</li>
+ * <li>{@code PERIOD_MS}: the pause after each step (75ms)</li>
+ * </ul>
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class WallController implements Controller {
+    /** Parameter: a right wall nearer than this (cm) keeps Cactus straight. */
+    public static final int FOLLOW_CM = 0;
+    /** Parameter: a left wall nearer than this (cm) makes Cactus veer. */
+    public static final int CLOSE_CM = 1;
+    /** Parameter: the right wheel speed (in percent) while veering. */
+    public static final int SLOW_PERCENT = 2;
+    /** Parameter: the pause (in ms) after each step. */
+    public static final int PERIOD_MS = 3;
+
+    /** The names of the parameters. */
+    public static final String[] NAMES = {
+        "followCm", "closeCm", "slowPercent", "periodMs"
+    };
+    /** The default value of each parameter. */
+    public static final float[] DEFAULTS = {20, 10, 32, 75};
+    /** The smallest sensible value of each parameter. */
+    public static final float[] MIN = {10, 5, -100, 10};
+    /** The largest sensible value of each parameter. */
+    public static final float[] MAX = {60, 40, 100, 300};
+
+    /** A right wall nearer than this (cm) keeps Cactus straight. */
+    private final float followCm;
+    /** A left wall nearer than this (cm) makes Cactus veer. */
+    private final float closeCm;
+    /** The right wheel speed (in percent) while veering. */
+    private final int slowPercent;
+    /** The pause (in ms) after each step. */
+    private final int periodMs;
+
+    /** The speed (in percent) for the right wheel. */
+    private int right = 0;
+    /** Whether a step has been taken. */
+    private boolean started = false;
+
+    /**
+     * Creates a controller.
+     * @param params The parameters, indexed by the constants above.
+     */
+    public WallController(float[] params) {
+        if (params.length != DEFAULTS.length)
+            throw new IllegalArgumentException("Need " + DEFAULTS.length
+                    + " parameters");
+        followCm = params[FOLLOW_CM];
+        closeCm = params[CLOSE_CM];
+        slowPercent = Math.round(params[SLOW_PERCENT]);
+        periodMs = Math.round(params[PERIOD_MS]);
+    }
+
+    public int step(long t, float leftCm, float rightCm) {
+        if (leftCm < 0)
+            leftCm = Float.POSITIVE_INFINITY;
+        if (rightCm < 0)
+            rightCm = Float.POSITIVE_INFINITY;
+        started = true;
+        right = rightCm >= followCm && leftCm < closeCm ? slowPercent : 100;
+        return periodMs;
+    }
+
+    public int leftCommand() {
+        return started ? 100 : 0;
+    }
+
+    public int rightCommand() {
+        return right;
+    }
+
+    public void reset() {
+        right = 0;
+        started = false;
+    }
+}
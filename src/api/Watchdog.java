@@ -0,0 +1,218 @@
+package api;
+
+/**
+ * Stops Cactus when a thread stops making progress.
+ * <p>
+ * Each monitored thread gets a channel with a deadline and calls
+ * {@link #beat(int)} as it makes progress. A channel is only checked between
+ * a beat and the next {@link #idle(int)}, so threads that wait for work (like
+ * the I2C bus) mark themselves idle while waiting. If an armed channel goes
+ * longer than its deadline without a beat, or {@link #trip(int, String)} is
+ * called, the watchdog trips: both motors are halted and the laser is turned
+ * off, and the fault is printed. A channel is seen to miss its deadline
+ * within {@code CHECK_INTERVAL} ms of it passing.
+ * <p>
+ * The halted motors and laser ignore commands until {@link #reset()}, so a
+ * loop that comes back from a stall cannot drive off before it has noticed
+ * the trip.
+ * Beating never allocates or locks, so it is cheap enough to call on every
+ * pass of a fast loop; a single volatile write makes each beat seen by the
+ * watchdog's thread.
+ * <p>
+ * The watchdog checks on a thread of its own, rather than on the
+ * {@link Scheduler}'s wheel, so that it still trips if the wheel stalls. The
+ * checks are charged to the sampling class, whose priority they share.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Watchdog implements Runnable {
+    /** The maximum number of channels. */
+    public static final int MAX_CHANNELS = 8;
+    /** The number of ms between checks of the channels. */
+    public static final int CHECK_INTERVAL = 10;
+
+    /** The motors to halt on a trip. */
+    private final Motor left, right;
+    /** The laser to turn off on a trip. */
+    private final LaserDiode laser;
+    /** The clock time (in ms) at which the watchdog was created. */
+    private final long created;
+
+    /** The name of each channel. */
+    private final String[] names = new String[MAX_CHANNELS];
+    /** The deadline (in ms) of each channel. */
+    private final int[] deadlines = new int[MAX_CHANNELS];
+    /**
+     * The time (in ms since {@code created}) of the last beat on each
+     * channel. Kept as ints so that beats are written atomically.
+     */
+    private final int[] beats = new int[MAX_CHANNELS];
+    /** Whether each channel is being checked. */
+    private final boolean[] armed = new boolean[MAX_CHANNELS];
+    /**
+     * The channel that last beat or went idle. Written after the beats and
+     * arm flags and read before them, so the checks see every change that
+     * came before; array elements cannot be volatile themselves.
+     */
+    private volatile int published;
+    /** The number of channels. */
+    private volatile int channels;
+
+    /** The channel that caused the trip, or -1 if not tripped. */
+    private volatile int fault = -1;
+    /** What went wrong on the faulted channel. */
+    private volatile String reason;
+    /** The number of times the watchdog has tripped. */
+    private int trips;
+    /** The scheduler the checks are charged to. */
+    private final Scheduler scheduler = Scheduler.system();
+
+    /**
+     * Creates a watchdog and starts its thread.
+     * @param left The left motor.
+     * @param right The right motor.
+     * @param laser The laser, or {@code null} if there is none.
+     */
+    public Watchdog(Motor left, Motor right, LaserDiode laser) {
+        if (left == null || right == null)
+            throw new IllegalArgumentException("Cannot pass a null motor");
+        this.left = left;
+        this.right = right;
+        this.laser = laser;
+        this.created = System.currentTimeMillis();
+        Thread t = new Thread(this, "Watchdog");
+        t.setDaemon(true);
+        t.setPriority(Scheduler.priority(Scheduler.SAMPLING));
+        t.start();
+    }
+
+    /**
+     * Adds a channel. The channel starts idle.
+     * @param name The name to report if the channel misses its deadline.
+     * @param deadline The longest time (in ms) allowed between beats.
+     * @return The channel.
+     */
+    public synchronized int channel(String name, int deadline) {
+        if (deadline <= 0)
+            throw new IllegalArgumentException("Deadline must be positive");
+        if (channels == MAX_CHANNELS)
+            throw new RuntimeException("Too many watchdog channels");
+        names[channels] = name;
+        deadlines[channels] = deadline;
+        return channels++;
+    }
+
+    /**
+     * Records progress on a channel and arms it.
+     * @param channel The channel.
+     */
+    public void beat(int channel) {
+        beats[channel] = (int) (System.currentTimeMillis() - created);
+        armed[channel] = true;
+        published = channel;
+    }
+
+    /**
+     * Stops checking a channel until its next beat.
+     * @param channel The channel.
+     */
+    public void idle(int channel) {
+        armed[channel] = false;
+        published = channel;
+    }
+
+    /**
+     * Trips the watchdog at once, as when a loop throws. Does nothing if it
+     * has already tripped.
+     * @param channel The channel at fault.
+     * @param why What went wrong.
+     */
+    public void trip(int channel, String why) {
+        synchronized (this) {
+            if (fault >= 0)
+                return;
+            fault = channel;
+            reason = why;
+            ++trips;
+        }
+        left.halt();
+        right.halt();
+        if (laser != null)
+            laser.halt();
+        CactusBase.print(names[channel] + ": " + why);
+    }
+
+    /**
+     * Gives whether the watchdog has tripped since the last reset.
+     * @return {@code true} if the motors are halted.
+     */
+    public boolean tripped() {
+        return fault >= 0;
+    }
+
+    /**
+     * Gives the name of the channel that caused the trip.
+     * @return The name, or {@code null} if not tripped.
+     */
+    public String fault() {
+        int f = fault;
+        return f < 0 ? null : names[f];
+    }
+
+    /**
+     * Gives what went wrong on the faulted channel.
+     * @return The reason, or {@code null} if not tripped.
+     */
+    public String reason() {
+        return fault < 0 ? null : reason;
+    }
+
+    /**
+     * Gives the number of times the watchdog has tripped.
+     * @return The number of trips.
+     */
+    public synchronized int trips() {
+        return trips;
+    }
+
+    /**
+     * Clears a trip and lets the motors be driven again. Every channel is
+     * treated as having just beaten.
+     */
+    public void reset() {
+        synchronized (this) {
+            int now = (int) (System.currentTimeMillis() - created);
+            for (int i = 0; i < channels; ++i)
+                beats[i] = now;
+            fault = -1;
+            reason = null;
+        }
+        left.release();
+        right.release();
+        if (laser != null)
+            laser.release();
+    }
+
+    /** Checks the channels. */
+    public void run() {
+        while (true) {
+            Robot.sleepFor(CHECK_INTERVAL);
+            if (fault >= 0)
+                continue;
+            long start = System.currentTimeMillis();
+            int now = (int) (start - created);
+            int n = channels;
+            // Read first, so the beats and idles published before it show
+            int last = published;
+            for (int i = 0; i < n; ++i) {
+                if (armed[i] && now - beats[i] > deadlines[i]) {
+                    trip(i, "stalled");
+                    break;
+                }
+            }
+            scheduler.charge(Scheduler.SAMPLING,
+                    (int) (System.currentTimeMillis() - start));
+        }
+    }
+}
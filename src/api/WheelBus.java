@@ -0,0 +1,207 @@
+package api;
+
+/**
+ * Delivers wheel ticks from the tachometers to any number of
+ * {@link TachoListener}s.
+ * <p>
+ * Each tachometer thread writes its ticks into a ring of preallocated
+ * {@link WheelEvent}s for its side, and only ever moves the head of that
+ * ring, while the bus thread only moves the tail. So publishing takes no
+ * lock and never waits on a listener: a slow listener only makes the bus
+ * fall behind, and once a ring is full further ticks are counted as dropped
+ * rather than blocking edge detection. Every {@code DRAIN_INTERVAL} ms the
+ * bus hands all waiting ticks of both wheels to each listener, in the order
+ * they were seen, on the {@link Scheduler}'s background thread.
+ * <p>
+ * Only one motor may publish on each side.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class WheelBus extends PeriodicTask {
+    /**
+     * The number of ticks each side can hold waiting for delivery. A power
+     * of two, so the ring indices can wrap around.
+     */
+    public static final int CAPACITY = 32;
+    /** The maximum number of listeners. */
+    public static final int MAX_LISTENERS = 8;
+    /** The number of ms between deliveries. */
+    public static final int DRAIN_INTERVAL = 20;
+
+    /** The events of each side. */
+    private final WheelEvent[][] rings = new WheelEvent[2][CAPACITY];
+    // Fields rather than arrays, since array elements cannot be volatile
+    /** The number of events ever published on the left. */
+    private volatile int headLeft;
+    /** The number of events ever published on the right. */
+    private volatile int headRight;
+    /** The number of events ever delivered on the left. */
+    private volatile int tailLeft;
+    /** The number of events ever delivered on the right. */
+    private volatile int tailRight;
+
+    /** The listeners, replaced whole when one is added or removed. */
+    private volatile TachoListener[] listeners = new TachoListener[0];
+
+    /** The number of ticks dropped because a ring was full. */
+    private volatile int dropped;
+    /** The number of ticks delivered. */
+    private int delivered;
+    /** The number of times a listener threw. */
+    private int errors;
+
+    /** Creates a bus with no listeners and starts delivering. */
+    public WheelBus() {
+        for (int s = 0; s < 2; ++s)
+            for (int i = 0; i < CAPACITY; ++i)
+                rings[s][i] = new WheelEvent();
+        Scheduler.system().schedule(this, Scheduler.BACKGROUND,
+                DRAIN_INTERVAL);
+    }
+
+    /**
+     * Adds a listener. Does nothing if it is already subscribed.
+     * @param l The listener.
+     */
+    public synchronized void subscribe(TachoListener l) {
+        if (l == null)
+            throw new IllegalArgumentException("Cannot pass a null listener");
+        TachoListener[] old = listeners;
+        for (int i = 0; i < old.length; ++i)
+            if (old[i] == l)
+                return;
+        if (old.length == MAX_LISTENERS)
+            throw new RuntimeException("Too many wheel listeners");
+        TachoListener[] list = new TachoListener[old.length + 1];
+        for (int i = 0; i < old.length; ++i)
+            list[i] = old[i];
+        list[old.length] = l;
+        listeners = list;
+    }
+
+    /**
+     * Removes a listener. Does nothing if it is not subscribed.
+     * @param l The listener.
+     */
+    public synchronized void unsubscribe(TachoListener l) {
+        TachoListener[] old = listeners;
+        for (int i = 0; i < old.length; ++i) {
+            if (old[i] == l) {
+                TachoListener[] list = new TachoListener[old.length - 1];
+                for (int j = 0, k = 0; j < old.length; ++j)
+                    if (j != i)
+                        list[k++] = old[j];
+                listeners = list;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records a tick. Called only by the tachometer thread of the motor on
+     * that side.
+     * @param side The side of the wheel.
+     * @param direction The direction of the tick (1 forward, -1 backward).
+     * @param time The time (in ms) of the tick.
+     * @param count The tick count after the tick.
+     * @param velocity The speed of the wheel (in cm/s).
+     */
+    void publish(int side, int direction, long time, int count,
+            float velocity) {
+        boolean isLeft = side == Motor.LEFT;
+        int head = isLeft ? headLeft : headRight;
+        if (head - (isLeft ? tailLeft : tailRight) == CAPACITY) {
+            ++dropped;
+            return;
+        }
+        WheelEvent e = rings[side][head & (CAPACITY - 1)];
+        e.side = side;
+        e.direction = direction;
+        e.time = time;
+        e.count = count;
+        e.velocity = velocity;
+        // Only now is the event visible to the bus thread
+        if (isLeft)
+            headLeft = head + 1;
+        else
+            headRight = head + 1;
+    }
+
+    /**
+     * Gives the number of ticks dropped because the listeners fell behind.
+     * @return The number of ticks.
+     */
+    public int dropped() {
+        return dropped;
+    }
+
+    /**
+     * Gives the number of ticks delivered.
+     * @return The number of ticks.
+     */
+    public synchronized int delivered() {
+        return delivered;
+    }
+
+    /**
+     * Gives the number of times a listener threw. The tick is still
+     * delivered to the other listeners.
+     * @return The number of errors.
+     */
+    public synchronized int errors() {
+        return errors;
+    }
+
+    /**
+     * Delivers waiting ticks.
+     * @param now The current time (in ms).
+     * @return The time (in ms) until the next delivery.
+     */
+    protected int run(long now) {
+        drain();
+        return DRAIN_INTERVAL;
+    }
+
+    /**
+     * Delivers the ticks that were waiting when called, merging both sides
+     * by time.
+     */
+    private void drain() {
+        int leftEnd = headLeft;
+        int rightEnd = headRight;
+        int left = tailLeft;
+        int right = tailRight;
+        TachoListener[] list = listeners;
+        int n = 0, failures = 0;
+        while (left != leftEnd || right != rightEnd) {
+            WheelEvent e;
+            if (right == rightEnd || (left != leftEnd
+                    && rings[Motor.LEFT][left & (CAPACITY - 1)].time
+                    <= rings[Motor.RIGHT][right & (CAPACITY - 1)].time)) {
+                e = rings[Motor.LEFT][left & (CAPACITY - 1)];
+                ++left;
+            } else {
+                e = rings[Motor.RIGHT][right & (CAPACITY - 1)];
+                ++right;
+            }
+            for (int i = 0; i < list.length; ++i) {
+                try {
+                    list[i].tick(e);
+                } catch (RuntimeException ex) {
+                    ++failures;
+                }
+            }
+            ++n;
+            // Free each slot as soon as it is delivered
+            tailLeft = left;
+            tailRight = right;
+        }
+        if (n > 0) {
+            synchronized (this) {
+                delivered += n;
+                errors += failures;
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package api;
+
+/**
+ * A tick of one wheel's tachometer, as delivered by a {@link WheelBus}.
+ * <p>
+ * Events are reused by the bus, so a listener must copy out any field it
+ * wants to keep once {@link TachoListener#tick(WheelEvent)} returns.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class WheelEvent {
+    /** The wheel that ticked ({@code Motor.LEFT} or {@code Motor.RIGHT}). */
+    public int side;
+
+    /** The direction of the tick (1 forward, -1 backward). */
+    public int direction;
+
+    /** The time (in ms) at which the tick was seen. */
+    public long time;
+
+    /** The tick count of the wheel after the tick. */
+    public int count;
+
+    /**
+     * The speed of the wheel over the last two ticks (in cm/s, negative
+     * backward), or 0 if the wheel has just started or changed direction.
+     */
+    public float velocity;
+}
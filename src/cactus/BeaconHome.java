@@ -0,0 +1,72 @@
+package cactus;
+
+import api.BeaconHoming;
+import api.Blob;
+import api.CactusProgram;
+
+/**
+ * Drives Cactus to an IR beacon using the {@link api.IRCamera}, avoiding
+ * obstacles with the IR range sensors along the way and wandering until the
+ * beacon comes back into view if it is lost.
+ * <p>
+ * The program steps once per camera frame. The next frame is requested as
+ * soon as the last one is decoded, so the bus fetches it while the main loop
+ * waits for the next step.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class BeaconHome extends CactusProgram {
+    /** The number of ms between camera frames. */
+    public static final int FRAME_INTERVAL = 20;
+    /** The number of times to restart after a camera or loop fault. */
+    public static final int RESTARTS = 3;
+
+    /** The blobs from the latest camera frame. */
+    private final Blob[] blobs = {
+        new Blob(), new Blob(), new Blob(), new Blob()
+    };
+
+    /** The homing controller. */
+    private final BeaconHoming homing = new BeaconHoming();
+
+    /** The mode of the controller at the last step. */
+    private int mode = -1;
+
+    /** Creates the program, stepping once per camera frame. */
+    public BeaconHome() {
+        super(FRAME_INTERVAL);
+    }
+
+    public static void main(String args[]) {
+        try {
+            BeaconHome program = new BeaconHome();
+            program.setRestarts(RESTARTS);
+            program.start();
+        } catch (Throwable t) {
+            print(t.getMessage());
+        }
+    }
+
+    protected void init() {
+        if (camera == null)
+            throw new RuntimeException("No camera");
+        homing.reset();
+        mode = -1;
+        printWelcome();
+        sleepFor(3000);
+    }
+
+    protected void step(long now) throws java.io.IOException {
+        camera.detect(blobs);
+        camera.request();
+
+        int m = homing.step(blobs, now, leftDistance(), rightDistance());
+        leftMotor.setSpeed(homing.leftCommand());
+        rightMotor.setSpeed(homing.rightCommand());
+        if (m != mode) {
+            mode = m;
+            print(BeaconHoming.name(m));
+        }
+    }
+}
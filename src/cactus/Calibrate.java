@@ -0,0 +1,139 @@
+package cactus;
+
+import api.CactusBase;
+import api.Calibration;
+import api.Motor;
+import api.RangeTable;
+import api.SamplePolicy;
+import com.ridgesoft.intellibrain.IntelliBrain;
+import com.ridgesoft.robotics.AnalogInput;
+import com.ridgesoft.robotics.PushButton;
+
+/**
+ * Calibrates Cactus' IR range sensors and tachometers and stores the result
+ * in EEPROM, where {@link CactusBase} loads it at startup.
+ * <p>
+ * For each reference distance, place a flat target that distance in front of
+ * both IR sensors and press START. Then lift Cactus off the ground and press
+ * START again to spin the wheels for the tachometer sweep.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Calibrate extends CactusBase {
+    /** The distances (in cm) the IR sensors are calibrated at. */
+    public static final int[] REFERENCE_CM = {
+        10, 15, 20, 25, 30, 40, 50, 60, 70, 80
+    };
+    /** The number of samples averaged per reference distance. */
+    public static final int SAMPLES = 16;
+    /** The number of ms between IR samples (the GP2D12 update period). */
+    public static final int SAMPLE_INTERVAL = 40;
+    /** The number of ms to spin the wheels for the tachometer sweep. */
+    public static final int SWEEP_DURATION = 4000;
+    /** The smallest swing between tachometer extremes that is trusted. */
+    public static final int MIN_TACHO_SWING = 100;
+
+    /** The button used to step through the calibration. */
+    private static final PushButton start = IntelliBrain.getStartButton();
+
+    public static void main(String args[]) {
+        try {
+            run();
+        } catch (Throwable t) {
+            print(t.getMessage());
+        }
+    }
+
+    public static void run() throws java.io.IOException {
+        print("  Calibration");
+        print(" Press START");
+        waitStart();
+
+        Calibration c = new Calibration();
+        calibrateRange(c);
+        calibrateTacho(c);
+
+        c.save(IntelliBrain.getCpuEEPROM());
+        print("Calibration");
+        print("  saved!");
+    }
+
+    /**
+     * Measures both IR sensors at each reference distance.
+     * @param c The calibration to store the tables in.
+     */
+    private static void calibrateRange(Calibration c) {
+        AnalogInput left = IntelliBrain.getAnalogInput(LEFT_IR_PORT);
+        AnalogInput right = IntelliBrain.getAnalogInput(RIGHT_IR_PORT);
+        int[] leftRaw = new int[REFERENCE_CM.length];
+        int[] rightRaw = new int[REFERENCE_CM.length];
+        float[] cm = new float[REFERENCE_CM.length];
+
+        for (int i = 0; i < REFERENCE_CM.length; ++i) {
+            print("Target at " + REFERENCE_CM[i] + "cm");
+            print(" Press START");
+            waitStart();
+            int leftSum = 0, rightSum = 0;
+            for (int n = 0; n < SAMPLES; ++n) {
+                leftSum += left.sample();
+                rightSum += right.sample();
+                sleepFor(SAMPLE_INTERVAL);
+            }
+            leftRaw[i] = leftSum / SAMPLES;
+            rightRaw[i] = rightSum / SAMPLES;
+            cm[i] = REFERENCE_CM[i];
+        }
+        c.setTable(Motor.LEFT, new RangeTable(leftRaw, cm));
+        c.setTable(Motor.RIGHT, new RangeTable(rightRaw, cm));
+    }
+
+    /**
+     * Spins both wheels and sets each tachometer threshold halfway between
+     * the extremes seen.
+     * @param c The calibration to store the thresholds in.
+     */
+    private static void calibrateTacho(Calibration c) {
+        AnalogInput[] inputs = {
+            IntelliBrain.getAnalogInput(LEFT_TACHO_PORT),
+            IntelliBrain.getAnalogInput(RIGHT_TACHO_PORT)
+        };
+        int[] min = {RangeTable.MAX_SAMPLE, RangeTable.MAX_SAMPLE};
+        int[] max = {0, 0};
+
+        print("Lift wheels and");
+        print(" press START");
+        waitStart();
+        leftMotor.forward();
+        rightMotor.forward();
+        long end = System.currentTimeMillis() + SWEEP_DURATION;
+        while (System.currentTimeMillis() < end) {
+            for (int side = 0; side < 2; ++side) {
+                int sample = inputs[side].sample();
+                if (sample < min[side])
+                    min[side] = sample;
+                if (sample > max[side])
+                    max[side] = sample;
+            }
+            sleepFor(SamplePolicy.MIN_TACHO_INTERVAL);
+        }
+        leftMotor.stop();
+        rightMotor.stop();
+
+        for (int side = 0; side < 2; ++side) {
+            if (max[side] - min[side] < MIN_TACHO_SWING) {
+                print(side == Motor.LEFT
+                        ? "Left tacho weak" : "Right tacho weak");
+                sleepFor(1000);
+                continue;
+            }
+            c.setTachoThreshold(side, (min[side] + max[side]) / 2);
+        }
+    }
+
+    /** Waits for START to be pressed and released. */
+    private static void waitStart() {
+        start.waitPressed();
+        start.waitReleased();
+    }
+}
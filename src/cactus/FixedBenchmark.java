@@ -0,0 +1,150 @@
+package cactus;
+
+import api.Fixed;
+
+/**
+ * Compares the cost of one iteration of a typical control loop (odometry,
+ * range filtering and steering toward a goal) done in float math against the
+ * same iteration done with {@link Fixed}.
+ * <p>
+ * Runs on the robot or on a host JVM; results go to {@code System.out}.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class FixedBenchmark {
+    /** The number of loop iterations to time. */
+    public static final int ITERATIONS = 1000;
+    /** The number of timed rounds for each kind of math. */
+    public static final int ROUNDS = 5;
+
+    /** The wheel base of Cactus (in cm). */
+    private static final float WHEEL_BASE = 13.0f;
+    /** The x-coordinate of the goal (in cm). */
+    private static final float GOAL_X = 200.0f;
+    /** The y-coordinate of the goal (in cm). */
+    private static final float GOAL_Y = 150.0f;
+    /** The weight of new range readings in the low-pass filter. */
+    private static final float ALPHA = 0.25f;
+    /** The proportional steering gain. */
+    private static final float GAIN = 0.5f;
+
+    /** Keeps results alive so the loops are not optimised away. */
+    private static volatile int sink;
+
+    public static void main(String args[]) {
+        long floatTime = Long.MAX_VALUE;
+        long fixedTime = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; ++r) {
+            long start = System.currentTimeMillis();
+            sink = floatLoop(ITERATIONS);
+            long t = System.currentTimeMillis() - start;
+            if (t < floatTime)
+                floatTime = t;
+
+            start = System.currentTimeMillis();
+            sink = fixedLoop(ITERATIONS);
+            t = System.currentTimeMillis() - start;
+            if (t < fixedTime)
+                fixedTime = t;
+        }
+        System.out.println("Control loop x" + ITERATIONS + " (best of "
+                + ROUNDS + ")");
+        System.out.println("float: " + floatTime + "ms ("
+                + floatTime * 1000 / ITERATIONS + "us/loop)");
+        System.out.println("fixed: " + fixedTime + "ms ("
+                + fixedTime * 1000 / ITERATIONS + "us/loop)");
+        System.out.println("saving: " + (floatTime - fixedTime) * 1000
+                / ITERATIONS + "us/loop");
+    }
+
+    /**
+     * Runs the control loop in float math.
+     * @param n The number of iterations.
+     * @return A value derived from the final state.
+     */
+    private static int floatLoop(int n) {
+        float x = 0, y = 0, heading = 0;
+        float left = 40, right = 40;
+        float steer = 0;
+        for (int i = 0; i < n; ++i) {
+            // Synthetic inputs
+            int dl = i & 1;
+            int dr = (i >> 1) & 1;
+            float rawLeft = 20 + (i & 31);
+            float rawRight = 20 + ((i >> 2) & 31);
+
+            // Odometry
+            float dLeft = dl * 1.33f;
+            float dRight = dr * 1.33f;
+            float d = (dLeft + dRight) / 2;
+            heading += (dRight - dLeft) / WHEEL_BASE;
+            x += d * (float) Math.cos(heading);
+            y += d * (float) Math.sin(heading);
+
+            // Range filter
+            left += ALPHA * (rawLeft - left);
+            right += ALPHA * (rawRight - right);
+
+            // Steering
+            float dx = GOAL_X - x;
+            float dy = GOAL_Y - y;
+            float dist = (float) Math.sqrt(dx * dx + dy * dy);
+            float bearing = (float) Math.atan2(dy, dx) - heading;
+            steer = GAIN * bearing * (dist < 50 ? dist / 50 : 1)
+                    * (left < right ? left : right) / 40;
+        }
+        return (int) (x + y + steer);
+    }
+
+    /**
+     * Runs the control loop in fixed-point math.
+     * @param n The number of iterations.
+     * @return A value derived from the final state.
+     */
+    private static int fixedLoop(int n) {
+        final int cmPerTick = Fixed.fromFloat(1.33f);
+        final int invWheelBase = Fixed.div(Fixed.ONE,
+                Fixed.fromFloat(WHEEL_BASE));
+        final int goalX = Fixed.fromFloat(GOAL_X);
+        final int goalY = Fixed.fromFloat(GOAL_Y);
+        final int alpha = Fixed.fromFloat(ALPHA);
+        final int gain = Fixed.fromFloat(GAIN);
+        final int fifty = Fixed.fromInt(50);
+        final int forty = Fixed.fromInt(40);
+
+        int x = 0, y = 0, heading = 0;
+        int left = Fixed.fromInt(40), right = Fixed.fromInt(40);
+        int steer = 0;
+        for (int i = 0; i < n; ++i) {
+            // Synthetic inputs
+            int dl = i & 1;
+            int dr = (i >> 1) & 1;
+            int rawLeft = Fixed.fromInt(20 + (i & 31));
+            int rawRight = Fixed.fromInt(20 + ((i >> 2) & 31));
+
+            // Odometry
+            int dLeft = dl * cmPerTick;
+            int dRight = dr * cmPerTick;
+            int d = (dLeft + dRight) >> 1;
+            heading = Fixed.wrap(heading
+                    + Fixed.mul(dRight - dLeft, invWheelBase));
+            x += Fixed.mul(d, Fixed.cos(heading));
+            y += Fixed.mul(d, Fixed.sin(heading));
+
+            // Range filter
+            left = Fixed.lowPass(left, rawLeft, alpha);
+            right = Fixed.lowPass(right, rawRight, alpha);
+
+            // Steering
+            int dx = goalX - x;
+            int dy = goalY - y;
+            int dist = Fixed.hypot(dx, dy);
+            int bearing = Fixed.atan2(dy, dx) - heading;
+            int scale = dist < fifty ? Fixed.div(dist, fifty) : Fixed.ONE;
+            steer = Fixed.mul(Fixed.mul(Fixed.mul(gain, bearing), scale),
+                    Fixed.div(left < right ? left : right, forty));
+        }
+        return Fixed.toInt(x + y + steer);
+    }
+}
@@ -1,241 +1,160 @@
 package cactus;
 
-import com.ridgesoft.robotics.*;
+import api.CactusProgram;
+import api.FollowController;
+import api.MazeExplorer;
+import api.PathRecorder;
+import api.PathReplay;
 import com.ridgesoft.intellibrain.IntelliBrain;
-import com.ridgesoft.intellibrain.*;
-import com.ridgesoft.robotics.sensors.*;
-import com.ridgesoft.io.*;
-import com.ridgesoft.vm.VM;
+import com.ridgesoft.robotics.AnalogInput;
+import com.ridgesoft.robotics.PushButton;
 
 /**
- * A class that makes Mouse2.0 sing nyan cat and move while avoiding obstacles.
+ * A class that makes Mouse2.0 find its way through a maze.
+ * <p>
+ * Cactus explores with a {@link MazeExplorer} while recording its path: it
+ * follows the walls, and the two front sensors watch for a wall straight
+ * ahead, which the side sensors cannot see.
+ * <p>
+ * Press START once Cactus has reached the goal; the dead ends are cut out of
+ * the path. Then put Cactus back at the start and press START again, and it
+ * drives the path at full speed without waiting on the sensors. Each later
+ * press of START runs it again. A restart after a fault keeps the path: it
+ * explores on from where it stopped, or waits for START to replay.
  * @author Jacob Van Buren
  * @author Nicolas Firbas
  */
-public final class MouseSong {
+public final class MouseMaze extends CactusProgram {
 
-	public static final AnalogInput leftWheelInput = IntelliBrain.getAnalogInput(4);
-	public static final AnalogInput rightWheelInput = IntelliBrain.getAnalogInput(5);
-
-    public static final int
-        // Notes and frequencies
-        C = 523, C1 = 554,
-        D = 587, D1 = 311,
-        E = 330,
-        F = 698, F1 = 370,
-        G = 784, G1 = 415,
-        A = 440, A1 = 466,
-        B = 247,
-        //Note durations (quarter note / half note)
-        Q = 400/3, H = 800/3;
-
-	public static final int[] notes =   { F, G,C1, D, C,C1, C,A1,A1, C,C1, C,A1, C, D, F, G, D, F, C, D,A1, C,A1, D, F, G, D, F, C, D,A1,C1, D,C1, C,A1, C};
-	public static final int[] lengths = { H, H, Q, H, Q, Q, Q, H, H, H, H, Q, Q, Q, Q, Q, Q, Q, Q, Q, Q, Q, Q, Q, Q, H, H, Q, Q, Q, Q, Q, Q, Q, Q, Q, Q, Q};
-
-    public static final DisplayOutputStream display = new DisplayOutputStream(IntelliBrain.getLcdDisplay());
-
-    public static final Servo leftServo = IntelliBrain.getServo(1);
-    public static final Servo rightServo = IntelliBrain.getServo(2);
-
-    public static final Motor leftMotor = new Motor(leftServo);
-    public static final Motor rightMotor = new Motor(rightServo, true);
-
-    public static final RangeFinder leftIR = new SharpGP2D12(IntelliBrain.getAnalogInput(1), null);
-    public static final RangeFinder rightIR = new SharpGP2D12(IntelliBrain.getAnalogInput(2), null);
-    
     public static final AnalogInput front1 = IntelliBrain.getAnalogInput(6);
     public static final AnalogInput front2 = IntelliBrain.getAnalogInput(7);
-    
 
-    public static final Speaker buzzer = IntelliBrain.getBuzzer();
-    
-    public static final int MAX_ROT_COUNT = 20; // the maximum number of turns before cactus turns around
+    /** Mode: following the walls and recording the path. */
+    private static final int EXPLORING = 0;
+    /** Mode: stopped, waiting for START to replay the path. */
+    private static final int WAITING = 1;
+    /** Mode: driving the recorded path. */
+    private static final int REPLAYING = 2;
+
+    /** The button that ends exploring and starts each replay. */
+    private static final PushButton start = IntelliBrain.getStartButton();
+
+    /** The maze navigator. */
+    private final MazeExplorer explorer = new MazeExplorer(
+            FollowController.DEFAULTS, new AnalogInput[] {front1, front2});
+    /** The path taken through the maze. */
+    private final PathRecorder path = new PathRecorder();
+    /** Drives the path again. */
+    private final PathReplay replay = new PathReplay(path);
+    /** The current mode. */
+    private int mode = EXPLORING;
+    /** Whether START was down on the last step. */
+    private boolean wasPressed = false;
+    /** The time (in ms) until which the current commands are held. */
+    private long holdUntil = 0;
+    /** Whether the path has been started, so a restart keeps it. */
+    private boolean started = false;
 
     public static void main(String args[]) {
         try {
-            run();
+            new MouseMaze().start();
         } catch (Throwable t) {
             print(t.getMessage());
         }
     }
 
-    public static void navigate() {
-        while (true) {
-            leftIR.ping();
-			distL = leftIR.getDistanceCm();
-            rightIR.ping();
-            distR = rightIR.getDistanceCm();
-            if (distL < 0)
-                distL = Float.POSITIVE_INFINITY; 
-            if (distR < 0)
-                distR = Float.POSITIVE_INFINITY;
-            
-            if (distR < 20) {
-                rightMotor.forward();
-                leftMotor.forward();
-            } else {
-                if (distL < 10)
-                    // Slow the right motor
-                    rightMotor.forward(Motor.MIDPOINT_VALUE / 3);
-                    leftMotor.forward();
-                } else {
-                    leftMotor.forward();
-                    rightMotor.forward();
-                }
-            }
-            
-            // if (rotCount > MAX_ROT_COUNT) {
-                // turnAround();
-                // rotCount = 0;
-            // }
-
-            sleepFor(75);
+    protected void init() {
+        if (!started) {
+            printWelcome();
+            sleepFor(3000);
+            mode = EXPLORING;
+            path.start(leftMotor.ticks(), rightMotor.ticks());
+            started = true;
+        } else if (mode == REPLAYING) {
+            // The replay lost its place; start it again from START
+            endReplay(-1);
         }
-    
+        explorer.reset();
+        holdUntil = 0;
     }
-    
-    
-    public static void run() {
-        printWelcome();
-        sleepFor(3000);
-
-        // Sing nyan cat
-        //play(notes, lengths);
-
 
-        // Movement routine
-        float distL = 0xDEADBEEF, distR = 0xDEADBEEF;
-		leftIR.ping();
-		rightIR.ping();
+    protected void step(long now) {
+        boolean pressed = start.isPressed();
+        boolean clicked = pressed && !wasPressed;
+        wasPressed = pressed;
 
-        int rotCount = 0;
-         
-        
+        switch (mode) {
+            case EXPLORING:
+                if (clicked) {
+                    finishExploring();
+                    return;
+                }
+                if (now < holdUntil)
+                    return;
+                float leftCm = leftDistance();
+                float rightCm = rightDistance();
+                explorer.wheelTicks(leftMotor.ticks(), rightMotor.ticks());
+                holdUntil = now + explorer.step(now, leftCm, rightCm);
+                int left = explorer.leftCommand();
+                int right = explorer.rightCommand();
+                path.record(left, right, leftMotor.ticks(),
+                        rightMotor.ticks(), leftCm, rightCm);
+                leftMotor.setSpeed(left);
+                rightMotor.setSpeed(right);
+                break;
+            case WAITING:
+                if (clicked) {
+                    replay.start(now, leftMotor.ticks(), rightMotor.ticks());
+                    mode = REPLAYING;
+                }
+                break;
+            case REPLAYING:
+                int m = replay.step(now, leftMotor.ticks(),
+                        rightMotor.ticks(), leftDistance(), rightDistance());
+                if (m != PathReplay.REPLAYING || clicked) {
+                    endReplay(clicked ? -1 : m);
+                    return;
+                }
+                leftMotor.setSpeed(replay.leftCommand());
+                rightMotor.setSpeed(replay.rightCommand());
+                break;
+        }
     }
 
     /**
-     * Play a sequence of notes.
-     * @param notes The frequencies to play
-     * @param dur The durations of the notes
+     * Cuts the dead ends out of the path and waits for START. Runs once per
+     * exploration, so it is free to allocate.
      */
-    public static void play(int[] notes, int[] dur) {
-        if (notes.length != dur.length)
-            throw new IllegalArgumentException("Arrays must be of the same size");
-        for (int cactus = 0; cactus < notes.length; ++cactus)
-            buzzer.play(notes[cactus], dur[cactus]);
-    }
-
-    public static void sleepFor(long milliseconds) {
-        long end = System.currentTimeMillis() + milliseconds;
-        while (System.currentTimeMillis() < end);
-    }
-
-    public static void print(String s, Character end) {
-        try {
-            if (s != null)
-                display.write(s.getBytes());
-            if (end != null)
-                display.write((int)end.charValue());
-        } catch (java.io.IOException ex) {
-            throw new RuntimeException(ex.getMessage());
-        }
-        if (s != null || end != null)
-            display.flush();
+    private void finishExploring() {
+        path.finish(leftMotor.ticks(), rightMotor.ticks());
+        path.shorten();
+        stopMotors();
+        print("Path: " + path.segments() + " steps");
+        print("START to replay");
+        mode = WAITING;
     }
 
-    public static void print(String s) {
-        try {
-            if (s != null)
-                display.write(s.getBytes());
-            display.write((int)'\n');
-        } catch (java.io.IOException ex) {
-            throw new RuntimeException(ex.getMessage());
-        }
-        if (s != null)
-            display.flush();
+    /**
+     * Stops a replay and waits for START. Runs once per replay, so it is
+     * free to allocate.
+     * @param m The mode the replay ended in, or -1 if it was stopped.
+     */
+    private void endReplay(int m) {
+        stopMotors();
+        print(m < 0 ? "Replay stopped" : "Replay " + PathReplay.name(m));
+        print("START to replay");
+        mode = WAITING;
     }
 
-    public static void print() {
-        display.write((int)'\n');
-        display.flush();
+    /** Stops both motors. */
+    private static void stopMotors() {
+        leftMotor.stop();
+        rightMotor.stop();
     }
 
-    public static void turnAround() {
-        print("I'm turning this");
-        print("  robot around! ");
-        leftMotor.backward();
-        rightMotor.forward();
-        do {
-            leftIR.ping();
-            rightIR.ping();
-        } while (leftIR.getDistanceCm() < 30
-              && rightIR.getDistanceCm() < 30);
-        printWelcome();
-    }
-    
     public static void printWelcome() {
         // Greet the user
         print("  Cactus' Maze");
         print(" Solver v 1.0.0");
     }
 }
-
-
-class Motor {
-    public static final int SERVO_MAX_VALUE = 100;
-    public static final int MIDPOINT_VALUE = SERVO_MAX_VALUE / 2;
-    public static final int MAX_TRAVEL_SPEED = MIDPOINT_VALUE;
-
-    private final boolean invert;
-    protected final Servo s;
-
-    public Motor(Servo s) {
-        this(s, false);
-    }
-
-    public Motor(Servo s, boolean invert) {
-        this.s = s;
-        this.invert = invert;
-    }
-
-    public synchronized void forward() {
-        this.move(SERVO_MAX_VALUE);
-    }
-
-    public synchronized void forward(int value) {
-        if (value > MIDPOINT_VALUE)
-            throw new IllegalArgumentException("value must be less than " + SERVO_MAX_VALUE / 2);
-        if (value < 0)
-            throw new IllegalArgumentException("Value must be positive");
-
-        this.move(value + MIDPOINT_VALUE);
-    }
-
-    public synchronized void backward() {
-        this.move(0);
-    }
-
-    public synchronized void backward(int value) {
-        if (value > MIDPOINT_VALUE)
-            throw new IllegalArgumentException("value must be less than " + SERVO_MAX_VALUE / 2);
-        if (value < 0)
-            throw new IllegalArgumentException("Value must be positive");
-
-        this.move(MIDPOINT_VALUE - value);
-    }
-
-    public synchronized void move(int value) {
-        if (value > SERVO_MAX_VALUE)
-            throw new IllegalArgumentException("value must be less than " + SERVO_MAX_VALUE);
-        if (value < 0)
-            throw new IllegalArgumentException("Value must be positive");
-        s.setPosition(invert ? SERVO_MAX_VALUE - value : value);
-    }
-
-    public synchronized void stop() {
-        this.move(MIDPOINT_VALUE);
-        s.off();
-    }
-}
-
-
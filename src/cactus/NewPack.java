@@ -0,0 +1,34 @@
+package cactus;
+
+import api.CactusBase;
+import api.PowerMonitor;
+import com.ridgesoft.intellibrain.IntelliBrain;
+import com.ridgesoft.robotics.PushButton;
+
+/**
+ * Tells Cactus its battery pack was charged or swapped, so the
+ * {@link PowerMonitor} counts the charge used from a full pack again.
+ * <p>
+ * Shows the charge used on the old pack; press START to start the new one.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class NewPack extends CactusBase {
+    /** The button that confirms the new pack. */
+    private static final PushButton start = IntelliBrain.getStartButton();
+
+    public static void main(String args[]) {
+        try {
+            print("Used " + power.usedMah() + "mAh");
+            print("START: new pack");
+            start.waitPressed();
+            start.waitReleased();
+            power.newPack();
+            print("New pack");
+            print("  saved!");
+        } catch (Throwable t) {
+            print(t.getMessage());
+        }
+    }
+}
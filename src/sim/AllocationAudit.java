@@ -0,0 +1,809 @@
+package sim;
+
+import api.AvoidController;
+import api.Controller;
+import api.Fixed;
+import api.FollowController;
+import api.IRCamera;
+import api.MazeExplorer;
+import api.Motor;
+import api.PathRecorder;
+import api.PathReplay;
+import api.RangeArray;
+import api.StateEstimator;
+import api.WallController;
+import com.ridgesoft.robotics.AnalogInput;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Finds the heap allocations on the paths Cactus runs on every pass of its
+ * control loop. RoboJDE has a tiny heap and a slow collector, so anything
+ * those paths allocate soon costs a pause mid-maze.
+ * <p>
+ * The audit works in two parts:
+ * <ul>
+ * <li>It reads the compiled {@code api} and {@code cactus} classes and
+ * follows every call from each method in {@code HOT_PATHS}, listing each
+ * allocation it can reach by call site: {@code new}, new arrays, string
+ * concatenation, boxing and the {@code String} methods that return new
+ * objects. An allocation that can only lead to a {@code throw} is on an
+ * error path, and is left out. So are the methods in {@code ONE_OFF}, and
+ * anything only they call: they run on a hot path, but only once per mode
+ * change or fault.</li>
+ * <li>It runs the hot paths that need no hardware on the host, stepping the
+ * controllers through a {@link Maze}, and measures the bytes allocated per
+ * call with the JVM's per-thread allocation counter. Run it with
+ * {@code -Xint}, as the build does, or the JIT may optimize allocations away
+ * that RoboJDE would make.</li>
+ * </ul>
+ * Exits with status 1 if any hot path allocates, so the build can fail on
+ * it.
+ * <p>
+ * Usage: {@code AllocationAudit [--classes dir] [--hot class.method]...}
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class AllocationAudit {
+    /** The methods run on every pass of the control loop. */
+    public static final String[] HOT_PATHS = {
+        "api.CactusProgram.start", "cactus.MouseMaze.step",
+        "cactus.MouseSong.step", "cactus.BeaconHome.step",
+        "api.CactusBase.readLeft", "api.CactusBase.readRight",
+        "api.CactusBase.updateOdometry", "api.CactusBase.updatePower",
+        "api.CactusBase.irInterval", "api.CactusBase.leftCMFixed",
+        "api.CactusBase.rightCMFixed",
+        "api.Motor$Tachometer.run",
+        "api.WheelBus.publish", "api.WheelBus.drain",
+        "api.AvoidController.step", "api.WallController.step",
+        "api.FollowController.step", "api.MazeExplorer.step",
+        "api.PathRecorder.record",
+        "api.PathReplay.step", "api.IRCamera.decode([B[B[I[I[I)I",
+        "api.StateEstimator.wheelTicks", "api.StateEstimator.range",
+        "api.StateEstimator.predict", "api.PowerMonitor.update",
+        "api.CactusBase.print", "api.Scheduler.turn",
+        "api.Scheduler$Worker.run", "api.RangeArray.sample()V",
+        "api.LaserModulator.run", "api.Link.run"
+    };
+    /**
+     * The methods on hot paths that only run once per mode change or fault,
+     * and so may allocate, such as to print what happened.
+     */
+    public static final String[] ONE_OFF = {
+        "cactus.MouseMaze.finishExploring", "cactus.MouseMaze.endReplay",
+        "api.Watchdog.trip"
+    };
+    /** The number of calls of each probe before measuring. */
+    public static final int WARMUP = 200;
+    /** The number of calls of each probe measured. */
+    public static final int CALLS = 2000;
+
+    /** The methods of {@code java.lang.String} that return new objects. */
+    private static final Set<String> STRING_ALLOCATORS = new HashSet<String>(
+            java.util.Arrays.asList("getBytes", "toCharArray", "substring",
+            "concat", "replace", "toUpperCase", "toLowerCase", "trim",
+            "split", "format", "valueOf", "join", "subSequence"));
+
+    /** A method read from a class file. */
+    private static final class Method {
+        /** The class, with slashes, as in the class file. */
+        final String owner;
+        /** The name. */
+        final String name;
+        /** The descriptor. */
+        final String desc;
+        /** The bytecode, or {@code null} if the method is abstract. */
+        byte[] code;
+        /** The line number table as {start pc, line} pairs. */
+        int[] lines = new int[0];
+
+        Method(String owner, String name, String desc) {
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+        }
+
+        /**
+         * Gives the source line of an instruction.
+         * @param pc The offset of the instruction.
+         * @return The line, or 0 if unknown.
+         */
+        int line(int pc) {
+            int line = 0, best = -1;
+            for (int i = 0; i < lines.length; i += 2) {
+                if (lines[i] <= pc && lines[i] > best) {
+                    best = lines[i];
+                    line = lines[i + 1];
+                }
+            }
+            return line;
+        }
+
+        public String toString() {
+            return owner.replace('/', '.') + "." + name;
+        }
+    }
+
+    /** A class read from a class file. */
+    private static final class ClassInfo {
+        /** The name, with slashes. */
+        String name;
+        /** The superclass, with slashes. */
+        String parent;
+        /** The interfaces, with slashes. */
+        final List<String> interfaces = new ArrayList<String>();
+        /** The methods, by name and descriptor. */
+        final Map<String, Method> methods =
+                new LinkedHashMap<String, Method>();
+    }
+
+    /** A call or allocation found in a method. */
+    private static final class Site {
+        /** The method it is in. */
+        final Method in;
+        /** The offset of the instruction. */
+        final int pc;
+        /** What is allocated. */
+        final String what;
+
+        Site(Method in, int pc, String what) {
+            this.in = in;
+            this.pc = pc;
+            this.what = what;
+        }
+
+        public String toString() {
+            return in + ":" + in.line(pc) + " " + what;
+        }
+    }
+
+    /** Every class read, by name with slashes. */
+    private final Map<String, ClassInfo> classes =
+            new HashMap<String, ClassInfo>();
+
+    public static void main(String args[]) throws Exception {
+        String dir = null;
+        List<String> hot = new ArrayList<String>(
+                java.util.Arrays.asList(HOT_PATHS));
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--classes") && i + 1 < args.length)
+                dir = args[++i];
+            else if (args[i].equals("--hot") && i + 1 < args.length)
+                hot.add(args[++i]);
+            else
+                usage();
+        }
+        if (dir == null)
+            dir = new File(AllocationAudit.class.getProtectionDomain()
+                    .getCodeSource().getLocation().toURI()).getPath();
+
+        AllocationAudit audit = new AllocationAudit();
+        audit.read(new File(dir, "api"));
+        audit.read(new File(dir, "cactus"));
+        int failures = 0;
+        Set<Method> skip = new HashSet<Method>();
+        for (String m : ONE_OFF) {
+            List<Method> found = audit.find(m);
+            if (found.isEmpty()) {
+                System.out.println("  " + m + ": one-off not found");
+                ++failures;
+            }
+            skip.addAll(found);
+        }
+        System.out.println("Allocation sites reachable from hot paths:");
+        for (String root : hot) {
+            List<Method> roots = audit.find(root);
+            if (roots.isEmpty()) {
+                System.out.println("  " + root + ": not found");
+                ++failures;
+                continue;
+            }
+            List<String> sites = audit.reach(roots, skip);
+            System.out.println("  " + root + ": " + (sites.isEmpty()
+                    ? "none" : sites.size() + " site"
+                    + (sites.size() == 1 ? "" : "s")));
+            for (String s : sites)
+                System.out.println("      " + s);
+            failures += sites.size();
+        }
+
+        System.out.println("Bytes allocated per call on the host:");
+        failures += probes();
+        System.out.println(failures == 0 ? "No hot path allocates"
+                : failures + " allocation" + (failures == 1 ? "" : "s")
+                + " on hot paths");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /** Prints how to run the audit and exits. */
+    private static void usage() {
+        System.err.println("Usage: AllocationAudit [--classes dir]"
+                + " [--hot class.method]...");
+        System.exit(2);
+    }
+
+    /**
+     * Reads every class file under a directory.
+     * @param dir The directory.
+     * @throws IOException If a class file cannot be read.
+     */
+    private void read(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            if (f.isDirectory()) {
+                read(f);
+            } else if (f.getName().endsWith(".class")) {
+                DataInputStream in = new DataInputStream(
+                        new FileInputStream(f));
+                try {
+                    ClassInfo c = parse(in);
+                    classes.put(c.name, c);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the methods named by a hot path.
+     * @param root The class and method, with an optional descriptor, as in
+     * {@code api.IRCamera.decode([B[B[I[I[I)I}. Without a descriptor every
+     * overload is found.
+     * @return The methods.
+     */
+    private List<Method> find(String root) {
+        int paren = root.indexOf('(');
+        String path = paren < 0 ? root : root.substring(0, paren);
+        String desc = paren < 0 ? null : root.substring(paren);
+        int dot = path.lastIndexOf('.');
+        List<Method> found = new ArrayList<Method>();
+        ClassInfo c = classes.get(path.substring(0, dot).replace('.', '/'));
+        if (c == null)
+            return found;
+        String name = path.substring(dot + 1);
+        for (Method m : c.methods.values())
+            if (m.name.equals(name) && (desc == null || m.desc.equals(desc)))
+                found.add(m);
+        return found;
+    }
+
+    /**
+     * Lists the allocations reachable from some methods, following calls
+     * into any class that was read.
+     * @param roots The methods.
+     * @param skip The methods not to follow calls into.
+     * @return The allocation sites, each with the call that reached it.
+     */
+    private List<String> reach(List<Method> roots, Set<Method> skip) {
+        List<String> sites = new ArrayList<String>();
+        Set<Method> seen = new HashSet<Method>(skip);
+        List<Method> queue = new ArrayList<Method>(roots);
+        Map<Method, Site> via = new HashMap<Method, Site>();
+        seen.addAll(roots);
+        for (int q = 0; q < queue.size(); ++q) {
+            Method m = queue.get(q);
+            if (m.code == null)
+                continue;
+            List<Site> calls = new ArrayList<Site>();
+            for (Site s : scan(m, calls)) {
+                Site from = via.get(m);
+                sites.add(s + (from == null ? "" : " (via " + from.in + ":"
+                        + from.in.line(from.pc) + ")"));
+            }
+            for (Site call : calls) {
+                for (Method target : resolve(call.what)) {
+                    if (seen.add(target)) {
+                        queue.add(target);
+                        via.put(target, call);
+                    }
+                }
+            }
+        }
+        return sites;
+    }
+
+    /**
+     * Finds the methods a call may run: the method it names, inherited if
+     * need be, and any override in a class that was read.
+     * @param ref The call as {@code owner.name desc}.
+     * @return The methods.
+     */
+    private List<Method> resolve(String ref) {
+        int space = ref.indexOf(' ');
+        int dot = ref.lastIndexOf('.', space);
+        String owner = ref.substring(0, dot);
+        String key = ref.substring(dot + 1, space) + ref.substring(space + 1);
+        List<Method> found = new ArrayList<Method>();
+        for (ClassInfo c = classes.get(owner); c != null;
+                c = classes.get(c.parent)) {
+            Method m = c.methods.get(key);
+            if (m != null) {
+                found.add(m);
+                break;
+            }
+        }
+        for (ClassInfo c : classes.values()) {
+            Method m = c.methods.get(key);
+            if (m != null && !c.name.equals(owner) && extendsFrom(c, owner)
+                    && !found.contains(m))
+                found.add(m);
+        }
+        return found;
+    }
+
+    /**
+     * Gives whether a class extends or implements another.
+     * @param c The class.
+     * @param owner The other class, with slashes.
+     * @return {@code true} if the class is a subtype.
+     */
+    private boolean extendsFrom(ClassInfo c, String owner) {
+        if (c == null)
+            return false;
+        if (c.name.equals(owner) || owner.equals(c.parent)
+                || c.interfaces.contains(owner))
+            return true;
+        for (String i : c.interfaces)
+            if (extendsFrom(classes.get(i), owner))
+                return true;
+        return extendsFrom(classes.get(c.parent), owner);
+    }
+
+    /**
+     * Lists the allocations in a method, and the calls it makes into classes
+     * that were read.
+     * @param m The method.
+     * @param calls Where to add the calls, as {@code owner.name desc}.
+     * @return The allocations that do not lead to a {@code throw}.
+     */
+    private List<Site> scan(Method m, List<Site> calls) {
+        List<Site> sites = new ArrayList<Site>();
+        byte[] code = m.code;
+        Object[] pool = pools.get(m);
+        for (int pc = 0; pc < code.length; pc += length(code, pc)) {
+            int op = code[pc] & 0xFF;
+            String what = null;
+            switch (op) {
+                case 0xBB: // new
+                    what = "new " + name((String) pool[u2(code, pc + 1)]);
+                    break;
+                case 0xBC: // newarray
+                    what = "new " + PRIMITIVES[code[pc + 1]] + "[]";
+                    break;
+                case 0xBD: // anewarray
+                    what = "new " + name((String) pool[u2(code, pc + 1)])
+                            + "[]";
+                    break;
+                case 0xC5: // multianewarray
+                    what = "new " + name((String) pool[u2(code, pc + 1)]);
+                    break;
+                case 0xBA: // invokedynamic
+                    what = "invokedynamic";
+                    break;
+                case 0xB6: // invokevirtual
+                case 0xB7: // invokespecial
+                case 0xB8: // invokestatic
+                case 0xB9: { // invokeinterface
+                    String[] ref = (String[]) pool[u2(code, pc + 1)];
+                    if (allocates(ref))
+                        what = name(ref[0]) + "." + ref[1] + "()";
+                    else if (classes.containsKey(ref[0])
+                            && !ref[1].equals("<init>"))
+                        calls.add(new Site(m, pc, ref[0] + "." + ref[1]
+                                + " " + ref[2]));
+                    break;
+                }
+                default:
+                    break;
+            }
+            if (what != null && !throwing(code, pc))
+                sites.add(new Site(m, pc, what));
+        }
+        return sites;
+    }
+
+    /**
+     * Gives whether a call allocates on its own: boxing, strings being
+     * built, and cloned arrays.
+     * @param ref The call as {owner, name, descriptor}.
+     * @return {@code true} if the call allocates.
+     */
+    private static boolean allocates(String[] ref) {
+        String owner = ref[0], name = ref[1];
+        if (owner.equals("java/lang/String"))
+            return STRING_ALLOCATORS.contains(name) && !ref[2].endsWith(")V");
+        if (owner.startsWith("["))
+            return name.equals("clone");
+        if (name.equals("toString") && ref[2].startsWith("()"))
+            return true;
+        if (owner.startsWith("java/lang/") && name.equals("valueOf"))
+            return true;
+        return owner.startsWith("java/lang/") && name.equals("toString");
+    }
+
+    /**
+     * Gives whether the code from an instruction on can only throw: it
+     * reaches an {@code athrow} without a branch or return.
+     * @param code The bytecode.
+     * @param pc The offset of the instruction.
+     * @return {@code true} if the instruction is on an error path.
+     */
+    private static boolean throwing(byte[] code, int pc) {
+        for (; pc < code.length; pc += length(code, pc)) {
+            int op = code[pc] & 0xFF;
+            if (op == 0xBF)
+                return true;
+            if ((op >= 0x99 && op <= 0xB1) || op == 0xC6 || op == 0xC7
+                    || op == 0xC8 || op == 0xC9)
+                return false;
+        }
+        return false;
+    }
+
+    /** The types of {@code newarray}, by code. */
+    private static final String[] PRIMITIVES = {null, null, null, null,
+        "boolean", "char", "float", "double", "byte", "short", "int", "long"};
+
+    /**
+     * Gives the length of an instruction.
+     * @param code The bytecode.
+     * @param pc The offset of the instruction.
+     * @return The length (in bytes).
+     */
+    private static int length(byte[] code, int pc) {
+        int op = code[pc] & 0xFF;
+        switch (op) {
+            case 0xAA: { // tableswitch
+                int p = (pc + 4) & ~3;
+                int low = s4(code, p + 4), high = s4(code, p + 8);
+                return p - pc + 12 + 4 * (high - low + 1);
+            }
+            case 0xAB: { // lookupswitch
+                int p = (pc + 4) & ~3;
+                return p - pc + 8 + 8 * s4(code, p + 4);
+            }
+            case 0xC4: // wide
+                return (code[pc + 1] & 0xFF) == 0x84 ? 6 : 4;
+            default:
+                return LENGTHS[op];
+        }
+    }
+
+    /** The lengths of the fixed-length instructions, by opcode. */
+    private static final int[] LENGTHS = new int[256];
+
+    static {
+        for (int op = 0; op < 256; ++op) {
+            int n = 1;
+            if (op == 0x10 || op == 0x12 || (op >= 0x15 && op <= 0x19)
+                    || (op >= 0x36 && op <= 0x3A) || op == 0xA9
+                    || op == 0xBC)
+                n = 2;
+            else if (op == 0x11 || op == 0x13 || op == 0x14 || op == 0x84
+                    || (op >= 0x99 && op <= 0xA8)
+                    || (op >= 0xB2 && op <= 0xB8) || op == 0xBB
+                    || op == 0xBD || op == 0xC0 || op == 0xC1 || op == 0xC6
+                    || op == 0xC7)
+                n = 3;
+            else if (op == 0xC5)
+                n = 4;
+            else if (op == 0xB9 || op == 0xBA || op == 0xC8 || op == 0xC9)
+                n = 5;
+            LENGTHS[op] = n;
+        }
+    }
+
+    /** The constant pool of each method's class, as read. */
+    private final Map<Method, Object[]> pools =
+            new HashMap<Method, Object[]>();
+
+    /**
+     * Reads a class file. Only what the audit needs is kept: class names
+     * and method references from the constant pool, and each method's code
+     * and line numbers.
+     * @param in The class file.
+     * @return The class.
+     * @throws IOException If the class file cannot be read.
+     */
+    private ClassInfo parse(DataInputStream in) throws IOException {
+        if (in.readInt() != 0xCAFEBABE)
+            throw new IOException("Not a class file");
+        in.readInt();
+        int count = in.readUnsignedShort();
+        Object[] raw = new Object[count];
+        int[] tags = new int[count];
+        for (int i = 1; i < count; ++i) {
+            int tag = tags[i] = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    raw[i] = in.readUTF();
+                    break;
+                case 7: case 8: case 16: case 19: case 20:
+                    raw[i] = in.readUnsignedShort();
+                    break;
+                case 15:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case 9: case 10: case 11: case 12: case 17: case 18:
+                    raw[i] = new int[] {in.readUnsignedShort(),
+                        in.readUnsignedShort()};
+                    break;
+                case 3: case 4:
+                    in.readInt();
+                    break;
+                case 5: case 6:
+                    in.readLong();
+                    ++i;
+                    break;
+                default:
+                    throw new IOException("Bad constant pool tag " + tag);
+            }
+        }
+        // Class entries become their names, method refs {owner, name, desc}
+        Object[] pool = new Object[count];
+        for (int i = 1; i < count; ++i) {
+            if (tags[i] == 1) {
+                pool[i] = raw[i];
+            } else if (tags[i] == 7) {
+                pool[i] = raw[(Integer) raw[i]];
+            } else if (tags[i] == 10 || tags[i] == 11) {
+                int[] ref = (int[]) raw[i];
+                int[] nat = (int[]) raw[ref[1]];
+                pool[i] = new String[] {(String) raw[(Integer) raw[ref[0]]],
+                    (String) raw[nat[0]], (String) raw[nat[1]]};
+            }
+        }
+
+        ClassInfo c = new ClassInfo();
+        in.readUnsignedShort();
+        c.name = (String) pool[in.readUnsignedShort()];
+        int parent = in.readUnsignedShort();
+        c.parent = parent == 0 ? null : (String) pool[parent];
+        int interfaces = in.readUnsignedShort();
+        for (int i = 0; i < interfaces; ++i)
+            c.interfaces.add((String) pool[in.readUnsignedShort()]);
+        int fields = in.readUnsignedShort();
+        for (int i = 0; i < fields; ++i) {
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+            skipAttributes(in);
+        }
+        int methods = in.readUnsignedShort();
+        for (int i = 0; i < methods; ++i) {
+            in.readUnsignedShort();
+            String methodName = (String) pool[in.readUnsignedShort()];
+            Method m = new Method(c.name, methodName,
+                    (String) pool[in.readUnsignedShort()]);
+            int attributes = in.readUnsignedShort();
+            for (int a = 0; a < attributes; ++a) {
+                String name = (String) pool[in.readUnsignedShort()];
+                int length = in.readInt();
+                if (!name.equals("Code")) {
+                    in.skipBytes(length);
+                    continue;
+                }
+                in.readUnsignedShort();
+                in.readUnsignedShort();
+                m.code = new byte[in.readInt()];
+                in.readFully(m.code);
+                in.skipBytes(8 * in.readUnsignedShort());
+                int codeAttributes = in.readUnsignedShort();
+                for (int b = 0; b < codeAttributes; ++b) {
+                    String sub = (String) pool[in.readUnsignedShort()];
+                    int subLength = in.readInt();
+                    if (!sub.equals("LineNumberTable")) {
+                        in.skipBytes(subLength);
+                        continue;
+                    }
+                    m.lines = new int[2 * in.readUnsignedShort()];
+                    for (int l = 0; l < m.lines.length; ++l)
+                        m.lines[l] = in.readUnsignedShort();
+                }
+            }
+            c.methods.put(m.name + m.desc, m);
+            pools.put(m, pool);
+        }
+        return c;
+    }
+
+    private static void skipAttributes(DataInputStream in)
+            throws IOException {
+        int attributes = in.readUnsignedShort();
+        for (int a = 0; a < attributes; ++a) {
+            in.readUnsignedShort();
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    private static String name(String internal) {
+        return internal.replace('/', '.');
+    }
+
+    private static int u2(byte[] code, int i) {
+        return (code[i] & 0xFF) << 8 | (code[i + 1] & 0xFF);
+    }
+
+    private static int s4(byte[] code, int i) {
+        return code[i] << 24 | (code[i + 1] & 0xFF) << 16
+                | (code[i + 2] & 0xFF) << 8 | (code[i + 3] & 0xFF);
+    }
+
+    /** A hot path that can run on the host. */
+    private abstract static class Probe {
+        /**
+         * Sets up a call, outside the measurement. Does nothing by default.
+         * @param i The number of the call.
+         */
+        void prepare(int i) {
+        }
+
+        /**
+         * Runs the hot path once.
+         * @param i The number of the call.
+         */
+        abstract void call(int i);
+    }
+
+    /**
+     * Runs the hot paths that need no hardware and prints the bytes each
+     * allocates per call.
+     * @return The number of hot paths that allocated.
+     */
+    private static int probes() {
+        Map<String, Probe> probes = new LinkedHashMap<String, Probe>();
+        probes.put("api.AvoidController.step", controller(
+                new AvoidController(AvoidController.DEFAULTS)));
+        probes.put("api.WallController.step", controller(
+                new WallController(WallController.DEFAULTS)));
+        probes.put("api.FollowController.step", controller(
+                new FollowController(FollowController.DEFAULTS)));
+
+        final PathRecorder path = new PathRecorder();
+        path.start(0, 0);
+        probes.put("api.PathRecorder.record", new Probe() {
+            void call(int i) {
+                path.record(60, i % 50 - 10, i, i / 2, 20, -1);
+            }
+        });
+        final PathReplay replay = new PathReplay(path);
+        replay.start(0, 0, 0);
+        probes.put("api.PathReplay.step", new Probe() {
+            void call(int i) {
+                replay.step(i * 20, i / 3, i / 4, 25, 30);
+            }
+        });
+
+        final byte[] first = new byte[18], second = new byte[18];
+        new Random(1).nextBytes(first);
+        new Random(2).nextBytes(second);
+        final int[] x = new int[IRCamera.BLOBS], y = new int[IRCamera.BLOBS];
+        final int[] size = new int[IRCamera.BLOBS];
+        probes.put("api.IRCamera.decode", new Probe() {
+            void call(int i) {
+                IRCamera.decode(first, second, x, y, size);
+            }
+        });
+
+        final StateEstimator estimator = new StateEstimator();
+        probes.put("api.StateEstimator", new Probe() {
+            void call(int i) {
+                estimator.wheelTicks(i * 20, Motor.LEFT, i / 2);
+                estimator.wheelTicks(i * 20, Motor.RIGHT, i / 3);
+                estimator.range(i * 20, i & 1, 20 + i % 30);
+                estimator.predict(0, i * 20 + 10);
+            }
+        });
+
+        final int[] wave = new int[1];
+        AnalogInput ramp = new AnalogInput() {
+            public int sample() {
+                return wave[0];
+            }
+
+            public int getMaximum() {
+                return 1023;
+            }
+        };
+        final RangeArray front = new RangeArray(
+                new AnalogInput[] {ramp, ramp, ramp}, null, Fixed.HALF, 15);
+        probes.put("api.RangeArray.sample", new Probe() {
+            void prepare(int i) {
+                wave[0] = i * 7 % 600;
+            }
+
+            void call(int i) {
+                front.sample();
+            }
+        });
+        final MazeExplorer explorer = new MazeExplorer(
+                FollowController.DEFAULTS, new AnalogInput[] {ramp, ramp});
+        probes.put("api.MazeExplorer.step", new Probe() {
+            void prepare(int i) {
+                wave[0] = i * 7 % 600;
+                explorer.wheelTicks(i / 2, i / 3);
+            }
+
+            void call(int i) {
+                explorer.step(i * 20, 20 + i % 30, 25);
+            }
+        });
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+        // What reading the counter itself costs, if anything
+        long before = threads.getCurrentThreadAllocatedBytes();
+        long overhead = threads.getCurrentThreadAllocatedBytes() - before;
+        int failures = 0;
+        for (Map.Entry<String, Probe> e : probes.entrySet()) {
+            Probe p = e.getValue();
+            for (int i = 0; i < WARMUP; ++i) {
+                p.prepare(i);
+                p.call(i);
+            }
+            long bytes = 0;
+            for (int i = WARMUP; i < WARMUP + CALLS; ++i) {
+                p.prepare(i);
+                before = threads.getCurrentThreadAllocatedBytes();
+                p.call(i);
+                bytes += threads.getCurrentThreadAllocatedBytes() - before
+                        - overhead;
+            }
+            double perCall = (double) Math.max(0, bytes) / CALLS;
+            System.out.printf("  %s: %.1f%n", e.getKey(), perCall);
+            if (bytes > 0)
+                ++failures;
+        }
+        return failures;
+    }
+
+    /**
+     * Makes a probe that steps a controller through a maze, one call per
+     * controller step. Only the controller step is measured; the simulation
+     * runs between calls.
+     * @param c The controller.
+     * @return The probe.
+     */
+    private static Probe controller(final Controller c) {
+        final Maze maze = Maze.generate(3, 3, Tuner.CELL_CM, Tuner.LOOPS, 1);
+        return new Probe() {
+            SimRobot robot;
+            int t, wait;
+            float left, right;
+
+            void prepare(int i) {
+                if (i == 0 || maze.reached(robot)) {
+                    robot = maze.start();
+                    c.reset();
+                } else {
+                    robot.setSpeeds(c.leftCommand(), c.rightCommand());
+                    robot.step(wait);
+                    t += wait;
+                }
+                left = robot.range(Motor.LEFT);
+                right = robot.range(Motor.RIGHT);
+            }
+
+            void call(int i) {
+                wait = Math.max(c.step(t, left, right), Tuner.MIN_STEP);
+            }
+        };
+    }
+}
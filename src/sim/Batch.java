@@ -0,0 +1,291 @@
+package sim;
+
+import api.Controller;
+import api.MazeExplorer;
+import api.Motor;
+import api.RangeTable;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs {@link Scenario} files on a simulated Cactus, as fast as the host
+ * allows, and prints how each run went as JSON. Scenarios run in parallel,
+ * one per thread.
+ * <p>
+ * The cactus programs themselves need the IntelliBrain to load, so a
+ * scenario runs the controller a program drives with, stepped the same way
+ * as in {@link Tuner}. Each range reading gets the scenario's noise before
+ * the controller sees it; a reading pushed out of the sensor's range is
+ * lost, as on Cactus. A scenario with a calibration converts each reading
+ * through it. The front sensors and the tachometers, which only
+ * {@code maze} reads, are fed too: the front sensors with the same noise,
+ * turned into samples on the stock GP2D12 curve.
+ * <p>
+ * Usage: {@code Batch [--threads count] [--out file] scenario...}
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Batch {
+    /** How a run went. */
+    static final class Result {
+        /** The number of entries of {@code inputs} per step. */
+        static final int INPUTS = 7;
+
+        /** The scenario. */
+        final Scenario scenario;
+        /** Whether the goal was reached. */
+        boolean reached;
+        /** The simulated time (in ms) the run took. */
+        int time;
+        /** The number of controller steps. */
+        int steps;
+        /**
+         * The time (in ms), the left and right readings, the left and right
+         * front samples and the left and right tick counts the controller
+         * was given at each step, {@code INPUTS} entries per step.
+         */
+        float[] inputs = new float[INPUTS * 256];
+        /** The number of range readings lost to dropout or noise. */
+        int lost;
+        /** The distance (in cm) driven. */
+        double distance;
+        /** The robot at the end of the run. */
+        SimRobot robot;
+        /** The host time (in ms) the run took. */
+        long wall;
+
+        Result(Scenario scenario) {
+            this.scenario = scenario;
+        }
+    }
+
+    public static void main(String args[]) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = null;
+        List<Scenario> scenarios = new ArrayList<Scenario>();
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--out") && i + 1 < args.length)
+                out = args[++i];
+            else if (args[i].startsWith("--"))
+                usage();
+            else
+                scenarios.add(Scenario.load(args[i]));
+        }
+        if (scenarios.isEmpty() || threads < 1)
+            usage();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> done;
+        long start = System.currentTimeMillis();
+        try {
+            List<Callable<Result>> tasks = new ArrayList<Callable<Result>>();
+            for (final Scenario s : scenarios) {
+                tasks.add(new Callable<Result>() {
+                    public Result call() {
+                        return run(s);
+                    }
+                });
+            }
+            done = pool.invokeAll(tasks);
+        } finally {
+            pool.shutdown();
+        }
+        PrintStream json = out == null ? System.out : new PrintStream(out);
+        json.println("[");
+        for (int i = 0; i < done.size(); ++i) {
+            print(json, done.get(i).get());
+            json.println(i + 1 < done.size() ? "," : "");
+        }
+        json.println("]");
+        if (json != System.out)
+            json.close();
+        System.err.println(scenarios.size() + " scenarios with " + threads
+                + " threads in " + (System.currentTimeMillis() - start)
+                + "ms");
+    }
+
+    /** Prints how to run the batch and exits. */
+    private static void usage() {
+        System.err.println("Usage: Batch [--threads count] [--out file]"
+                + " scenario...");
+        System.exit(1);
+    }
+
+    /**
+     * Runs a scenario.
+     * @param s The scenario.
+     * @return How it went.
+     */
+    static Result run(Scenario s) {
+        long start = System.currentTimeMillis();
+        Result r = new Result(s);
+        Random random = new Random(s.seed());
+        // A stream of its own, so the side readings do not depend on it
+        Random frontNoise = new Random(~s.seed());
+        SimAnalogInput[] front = {new SimAnalogInput(), new SimAnalogInput()};
+        Controller c = s.controller(front);
+        MazeExplorer explorer = c instanceof MazeExplorer
+                ? (MazeExplorer) c : null;
+        SimRobot robot = s.robot();
+        c.reset();
+        int t = 0;
+        while (t < s.duration() && !r.reached) {
+            float left = sense(robot, Motor.LEFT, s, random, r);
+            float right = sense(robot, Motor.RIGHT, s, random, r);
+            if (explorer != null) {
+                front[Motor.LEFT].set(sample(robot, Motor.LEFT, s,
+                        frontNoise, r));
+                front[Motor.RIGHT].set(sample(robot, Motor.RIGHT, s,
+                        frontNoise, r));
+                explorer.wheelTicks(robot.ticks(Motor.LEFT),
+                        robot.ticks(Motor.RIGHT));
+            }
+            int i = Result.INPUTS * r.steps;
+            if (i + Result.INPUTS > r.inputs.length)
+                r.inputs = Arrays.copyOf(r.inputs, 2 * r.inputs.length);
+            r.inputs[i] = t;
+            r.inputs[i + 1] = left;
+            r.inputs[i + 2] = right;
+            r.inputs[i + 3] = front[Motor.LEFT].sample();
+            r.inputs[i + 4] = front[Motor.RIGHT].sample();
+            r.inputs[i + 5] = robot.ticks(Motor.LEFT);
+            r.inputs[i + 6] = robot.ticks(Motor.RIGHT);
+            int wait = c.step(t, left, right);
+            ++r.steps;
+            robot.setSpeeds(c.leftCommand(), c.rightCommand());
+            wait = Math.max(wait, Tuner.MIN_STEP);
+            while (wait > 0 && t < s.duration()) {
+                int dt = Math.min(wait, Tuner.STEP);
+                double x = robot.x(), y = robot.y();
+                robot.step(dt);
+                r.distance += Math.hypot(robot.x() - x, robot.y() - y);
+                t += dt;
+                wait -= dt;
+                if (s.reached(robot)) {
+                    r.reached = true;
+                    break;
+                }
+            }
+        }
+        r.time = t;
+        r.robot = robot;
+        r.wall = System.currentTimeMillis() - start;
+        return r;
+    }
+
+    /**
+     * Reads an IR range sensor through the scenario's noise and
+     * calibration.
+     * @param robot The robot.
+     * @param side The side of the sensor.
+     * @param s The scenario.
+     * @param random The noise source.
+     * @param r The result, to count lost readings.
+     * @return The distance (in cm), or -1 if there is no reading.
+     */
+    private static float sense(SimRobot robot, int side, Scenario s,
+            Random random, Result r) {
+        float d = noisy(robot.range(side), s, random, r);
+        if (d < 0)
+            return d;
+        RangeTable table = s.calibration() == null ? null
+                : s.calibration().table(side);
+        if (table != null) {
+            d = table.cm(RangeTable.stock().sample(d));
+            if (d < 0)
+                ++r.lost;
+        }
+        return d;
+    }
+
+    /**
+     * Reads a front IR range sensor through the scenario's noise.
+     * @param robot The robot.
+     * @param side The side of the sensor.
+     * @param s The scenario.
+     * @param random The noise source.
+     * @param r The result, to count lost readings.
+     * @return The raw sample, or 0 if there is no reading.
+     */
+    private static int sample(SimRobot robot, int side, Scenario s,
+            Random random, Result r) {
+        float d = noisy(robot.front(side), s, random, r);
+        return d < 0 ? 0 : RangeTable.stock().sample(d);
+    }
+
+    /**
+     * Adds the scenario's noise and dropout to a range reading.
+     * @param d The true distance (in cm), or -1 if it is out of range.
+     * @param s The scenario.
+     * @param random The noise source.
+     * @param r The result, to count lost readings.
+     * @return The distance (in cm), or -1 if there is no reading.
+     */
+    private static float noisy(float d, Scenario s, Random random,
+            Result r) {
+        if (d < 0)
+            return d;
+        if (s.dropout() > 0 && random.nextDouble() < s.dropout()) {
+            ++r.lost;
+            return -1;
+        }
+        if (s.noise() > 0) {
+            d += (float) (random.nextGaussian() * s.noise());
+            if (d < SimRobot.IR_MIN || d > SimRobot.IR_MAX) {
+                ++r.lost;
+                return -1;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Prints a result as a JSON object, without a newline. Numbers use
+     * {@code Locale.ROOT}, as JSON wants a dot before the decimals.
+     * @param out Where to print it.
+     * @param r The result.
+     */
+    private static void print(PrintStream out, Result r) {
+        Scenario s = r.scenario;
+        out.printf(Locale.ROOT, "  {\"name\": \"%s\", \"program\": \"%s\","
+                + " \"reached\": %b, \"goal\": %b, \"timeMs\": %d,"
+                + " \"steps\": %d, \"bumps\": %d, \"collisions\": %d,"
+                + " \"distanceCm\": %.1f, \"lostReadings\": %d,"
+                + " \"final\": {\"x\": %.1f, \"y\": %.1f, \"heading\": %.1f},"
+                + " \"wallMs\": %d}", escape(s.name()), escape(s.program()),
+                r.reached, s.hasGoal(), r.time, r.steps, r.robot.bumps(),
+                r.robot.collisions(), r.distance, r.lost, r.robot.x(),
+                r.robot.y(), Math.toDegrees(r.robot.heading()), r.wall);
+    }
+
+    /**
+     * Escapes a string for JSON.
+     * @param s The string.
+     * @return The string, with quotes, backslashes and control characters
+     * escaped.
+     */
+    private static String escape(String s) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < s.length(); ++i) {
+            char ch = s.charAt(i);
+            if (ch == '"' || ch == '\\')
+                b.append('\\').append(ch);
+            else if (ch < ' ')
+                b.append(String.format(Locale.ROOT, "\\u%04x", (int) ch));
+            else
+                b.append(ch);
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package sim;
+
+import api.BeaconHoming;
+import api.Blob;
+import api.IRCamera;
+import api.Motor;
+
+/**
+ * Runs {@link BeaconHoming} against a simulated camera and robot in a room
+ * with an obstacle between Cactus and the beacon, and prints how it went.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class BeaconHomingSim {
+    /** The number of simulated ms per camera frame. */
+    public static final int FRAME_INTERVAL = 20;
+    /** The longest simulated run (in ms). */
+    public static final int TIMEOUT = 180000;
+
+    public static void main(String args[]) throws Exception {
+        World world = new World()
+                .box(0, 0, 300, 200)
+                .box(130, 60, 170, 140)
+                .beacon(290, 100);
+        SimRobot robot = new SimRobot(world, 30, 100, Math.PI / 2);
+        IRCamera camera = new IRCamera(new SimulatedCamera(robot));
+        BeaconHoming homing = new BeaconHoming();
+        Blob[] blobs = {new Blob(), new Blob(), new Blob(), new Blob()};
+
+        int mode = -1;
+        long t;
+        for (t = 0; t < TIMEOUT; t += FRAME_INTERVAL) {
+            camera.detect(blobs);
+            int m = homing.step(blobs, t,
+                    robot.range(Motor.LEFT), robot.range(Motor.RIGHT));
+            if (m != mode) {
+                mode = m;
+                System.out.printf("%6dms %-9s (%.0f, %.0f)%n", t,
+                        BeaconHoming.name(m), robot.x(), robot.y());
+            }
+            if (m == BeaconHoming.ARRIVED)
+                break;
+            robot.setSpeeds(homing.leftCommand(), homing.rightCommand());
+            robot.step(FRAME_INTERVAL);
+        }
+        double dx = world.beaconX() - robot.x();
+        double dy = world.beaconY() - robot.y();
+        System.out.printf("%s after %dms, %.0fcm from the beacon, "
+                + "%d collisions%n",
+                mode == BeaconHoming.ARRIVED ? "Arrived" : "Gave up", t,
+                Math.sqrt(dx * dx + dy * dy), robot.collisions());
+    }
+}
@@ -0,0 +1,283 @@
+package sim;
+
+import api.Controller;
+import api.MazeExplorer;
+import api.Motor;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Runs a fixed corpus of {@link Scenario} mazes and compares how each went
+ * with a stored baseline, to tell whether a change made Cactus faster or
+ * slower.
+ * <p>
+ * For each scenario it records whether the goal was reached, the simulated
+ * time it took, the distance driven, the bumps (the times Cactus ran into a
+ * wall, however long it then pushed against it) and the host time of a
+ * controller step. The maze scenarios run {@link MazeExplorer}, the way
+ * {@code MouseMaze} explores, front sensors and all. The sensor noise is
+ * seeded, so everything but the step time comes out the same on every run
+ * of the same code. A single step takes about as long as reading the clock,
+ * so the step time is measured by feeding a fresh controller the readings
+ * of the whole run again, with the clock read only around all of them. It
+ * is the fastest of a few such replays. Run it with {@code -Xint}, as the
+ * {@code benchmark} target of the build does and as the baseline was made:
+ * RoboJDE only interprets, and under the JIT the step times wander too much
+ * from run to run to compare.
+ * <p>
+ * A scenario regresses if it no longer reaches its goal, or takes more than
+ * {@code --threshold} percent longer or further than its baseline, or has
+ * that many percent more bumps and more than {@code BUMP_SLACK} more. Step
+ * time varies from host to host, so it has its own, looser
+ * {@code --cpu-threshold}. Exits with status 1 if anything regressed.
+ * {@code --update} stores the results as the new baseline instead.
+ * <p>
+ * Without scenarios, runs every {@code .properties} file in
+ * {@code src/sim/benchmarks}: corridors, dead ends, loops and open areas.
+ * <p>
+ * Usage: {@code Benchmark [--baseline file] [--threshold percent]
+ * [--cpu-threshold percent] [--runs count] [--update] [scenario...]}
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Benchmark {
+    /** The directory of the corpus. */
+    public static final String CORPUS = "src/sim/benchmarks";
+    /** The file the baseline is kept in. */
+    public static final String BASELINE = CORPUS + "/baseline.txt";
+    /** The default allowed worsening (in percent) of time and distance. */
+    public static final double THRESHOLD = 10;
+    /** The default allowed worsening (in percent) of the step time. */
+    public static final double CPU_THRESHOLD = 50;
+    /** The default number of replays timed for each scenario. */
+    public static final int RUNS = 10;
+    /** The bumps a scenario may gain on its baseline, whatever the share. */
+    public static final int BUMP_SLACK = 1;
+
+    public static void main(String args[]) throws IOException {
+        String baseline = BASELINE;
+        double threshold = THRESHOLD;
+        double cpuThreshold = CPU_THRESHOLD;
+        int runs = RUNS;
+        boolean update = false;
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--baseline") && i + 1 < args.length)
+                baseline = args[++i];
+            else if (args[i].equals("--threshold") && i + 1 < args.length)
+                threshold = Double.parseDouble(args[++i]);
+            else if (args[i].equals("--cpu-threshold")
+                    && i + 1 < args.length)
+                cpuThreshold = Double.parseDouble(args[++i]);
+            else if (args[i].equals("--runs") && i + 1 < args.length)
+                runs = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--update"))
+                update = true;
+            else if (args[i].startsWith("--"))
+                usage();
+            else
+                paths.add(args[i]);
+        }
+        if (runs < 1 || threshold < 0 || cpuThreshold < 0)
+            usage();
+        if (paths.isEmpty())
+            paths = corpus();
+        if (!ManagementFactory.getRuntimeMXBean().getInputArguments()
+                .contains("-Xint"))
+            System.out.println("Not run with -Xint; step times will not"
+                    + " match the baseline");
+
+        List<Scenario> scenarios = new ArrayList<Scenario>();
+        for (String path : paths)
+            scenarios.add(Scenario.load(path));
+        List<Batch.Result> results = new ArrayList<Batch.Result>();
+        for (Scenario s : scenarios)
+            results.add(Batch.run(s));
+        Properties now = new Properties();
+        for (Batch.Result r : results) {
+            Scenario s = r.scenario;
+            long cpu = stepTime(r, runs);
+            String n = s.name() + ".";
+            now.setProperty(n + "reached", Boolean.toString(r.reached));
+            now.setProperty(n + "timeMs", Integer.toString(r.time));
+            now.setProperty(n + "distanceCm",
+                    String.format(Locale.ROOT, "%.1f", r.distance));
+            now.setProperty(n + "bumps", Integer.toString(r.robot.bumps()));
+            now.setProperty(n + "cpuNsPerStep", Long.toString(cpu));
+            System.out.printf("%-13s %-8s %6dms %8.1fcm %3d bumps"
+                    + " %6dns/step%n", s.name(), r.reached ? "reached"
+                    : "lost", r.time, r.distance, r.robot.bumps(), cpu);
+        }
+
+        if (update) {
+            // Sorted and undated, so the baseline diffs cleanly
+            PrintStream out = new PrintStream(baseline);
+            try {
+                out.println("# Benchmark baseline, made with java -Xint"
+                        + " sim.Benchmark --update");
+                for (String key : new TreeSet<String>(
+                        now.stringPropertyNames()))
+                    out.println(key + "=" + now.getProperty(key));
+            } finally {
+                out.close();
+            }
+            System.out.println("Baseline written to " + baseline);
+            return;
+        }
+        Properties base = new Properties();
+        try {
+            InputStream in = new FileInputStream(baseline);
+            try {
+                base.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            System.out.println("No baseline in " + baseline
+                    + "; run with --update to make one");
+            return;
+        }
+        int regressions = 0;
+        for (Scenario s : scenarios) {
+            String n = s.name() + ".";
+            if (base.getProperty(n + "timeMs") == null) {
+                System.out.println(s.name() + " is new; no baseline");
+                continue;
+            }
+            if (Boolean.parseBoolean(base.getProperty(n + "reached"))
+                    && !Boolean.parseBoolean(now.getProperty(n + "reached"))) {
+                System.out.println("REGRESSION " + n + "reached: true"
+                        + " -> false");
+                ++regressions;
+            }
+            regressions += compare(base, now, n + "timeMs", threshold, 0);
+            regressions += compare(base, now, n + "distanceCm", threshold,
+                    0);
+            regressions += compare(base, now, n + "bumps", threshold,
+                    BUMP_SLACK);
+            regressions += compare(base, now, n + "cpuNsPerStep",
+                    cpuThreshold, 0);
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " regressions");
+            System.exit(1);
+        }
+        System.out.println("No regressions");
+    }
+
+    /** Prints how to run the benchmark and exits. */
+    private static void usage() {
+        System.err.println("Usage: Benchmark [--baseline file]"
+                + " [--threshold percent] [--cpu-threshold percent]"
+                + " [--runs count] [--update] [scenario...]");
+        System.exit(1);
+    }
+
+    /**
+     * Times the steps of the controller of a run, by feeding a fresh
+     * controller the run's readings again.
+     * @param r The run.
+     * @param runs The number of times to feed them.
+     * @return The shortest time (in ns) of a step over the runs.
+     */
+    private static long stepTime(Batch.Result r, int runs) {
+        if (r.steps == 0)
+            return 0;
+        float[] in = r.inputs;
+        int end = Batch.Result.INPUTS * r.steps;
+        SimAnalogInput[] front = {new SimAnalogInput(), new SimAnalogInput()};
+        long best = Long.MAX_VALUE;
+        int sink = 0;
+        for (int run = 0; run < runs; ++run) {
+            Controller c = r.scenario.controller(front);
+            c.reset();
+            long start = System.nanoTime();
+            for (int i = 0; i < end; i += Batch.Result.INPUTS) {
+                front[Motor.LEFT].set((int) in[i + 3]);
+                front[Motor.RIGHT].set((int) in[i + 4]);
+                if (c instanceof MazeExplorer)
+                    ((MazeExplorer) c).wheelTicks((int) in[i + 5],
+                            (int) in[i + 6]);
+                sink += c.step((long) in[i], in[i + 1], in[i + 2]);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        // Keeps the JIT from dropping the steps as unused
+        if (sink == 42)
+            System.out.print("");
+        return best / r.steps;
+    }
+
+    /**
+     * Lists the scenarios of the corpus.
+     * @return Their paths, in order.
+     * @throws IOException If the corpus has no scenarios.
+     */
+    private static List<String> corpus() throws IOException {
+        String[] names = new File(CORPUS).list();
+        List<String> paths = new ArrayList<String>();
+        if (names != null) {
+            Arrays.sort(names);
+            for (String name : names) {
+                if (name.endsWith(".properties"))
+                    paths.add(CORPUS + "/" + name);
+            }
+        }
+        if (paths.isEmpty())
+            throw new IOException("No scenarios in " + CORPUS);
+        return paths;
+    }
+
+    /**
+     * Compares a metric with its baseline, where less is better, and prints
+     * it if it got worse by more than the threshold or better by more than
+     * it.
+     * @param base The baseline.
+     * @param now The results.
+     * @param key The metric.
+     * @param threshold The allowed worsening (in percent).
+     * @param slack The worsening always allowed, however small the baseline.
+     * @return 1 if the metric regressed, 0 otherwise.
+     */
+    private static int compare(Properties base, Properties now, String key,
+            double threshold, double slack) {
+        String was = base.getProperty(key);
+        if (was == null)
+            return 0;
+        double before = Double.parseDouble(was);
+        double after = Double.parseDouble(now.getProperty(key));
+        double limit = Math.max(before * (1 + threshold / 100),
+                before + slack);
+        if (after > limit) {
+            System.out.printf("REGRESSION %s: %s -> %s (%+.1f%%)%n", key, was,
+                    now.getProperty(key), change(before, after));
+            return 1;
+        }
+        if (after < before * (1 - threshold / 100))
+            System.out.printf("improved   %s: %s -> %s (%+.1f%%)%n", key,
+                    was, now.getProperty(key), change(before, after));
+        return 0;
+    }
+
+    /**
+     * Gives the change from a baseline.
+     * @param before The baseline.
+     * @param after The new value.
+     * @return The change (in percent).
+     */
+    private static double change(double before, double after) {
+        return before == 0 ? (after == 0 ? 0 : 100)
+                : (after - before) * 100 / before;
+    }
+}
@@ -0,0 +1,84 @@
+package sim;
+
+import api.Blob;
+import api.IRCamera;
+import java.util.Random;
+
+/**
+ * Times decoding camera frames into {@link Blob}s against decoding them into
+ * flat arrays (see {@link IRCamera#decode(byte[], byte[], int[], int[],
+ * int[])}), after checking that both give the same blobs. Frames are random,
+ * with about a quarter of the slots empty as on a real camera.
+ * <p>
+ * The host JVM compiles both paths to much the same code, so run with
+ * {@code -Xint} to get closer to the robot, whose interpreter pays for
+ * every bytecode.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class DecodeBench {
+    /** The number of distinct frames decoded in turn. */
+    public static final int FRAMES = 1024;
+    /** The number of frames decoded per timed round. */
+    public static final int DECODES = 2000000;
+    /** The number of timed rounds of each path. */
+    public static final int ROUNDS = 5;
+
+    public static void main(String args[]) {
+        Random random = new Random(1);
+        byte[][] firsts = new byte[FRAMES][18];
+        byte[][] seconds = new byte[FRAMES][18];
+        for (int f = 0; f < FRAMES; ++f) {
+            for (int i = 0; i < IRCamera.BLOBS; ++i) {
+                byte[] buf = i < 3 ? firsts[f] : seconds[f];
+                int off = i < 3 ? i * 3 : 0;
+                boolean empty = random.nextInt(4) == 0;
+                int x = empty ? IRCamera.EMPTY : random.nextInt(IRCamera.WIDTH - 1);
+                int y = empty ? IRCamera.EMPTY : random.nextInt(IRCamera.HEIGHT);
+                int size = empty ? 0x0F : random.nextInt(16);
+                buf[off] = (byte) x;
+                buf[off + 1] = (byte) y;
+                buf[off + 2] = (byte) (((y >> 8) & 3) << 6
+                        | ((x >> 8) & 3) << 4 | size);
+            }
+        }
+
+        Blob[] blobs = {new Blob(), new Blob(), new Blob(), new Blob()};
+        int[] x = new int[IRCamera.BLOBS];
+        int[] y = new int[IRCamera.BLOBS];
+        int[] size = new int[IRCamera.BLOBS];
+        for (int f = 0; f < FRAMES; ++f) {
+            IRCamera.decode(firsts[f], seconds[f], blobs);
+            int valid = IRCamera.decode(firsts[f], seconds[f], x, y, size);
+            for (int i = 0; i < IRCamera.BLOBS; ++i) {
+                if (blobs[i].x != x[i] || blobs[i].y != y[i]
+                        || blobs[i].size != size[i]
+                        || ((valid >> i & 1) == 1) != (x[i] != IRCamera.EMPTY))
+                    throw new AssertionError("Frame " + f + " blob " + i
+                            + " decoded differently");
+            }
+        }
+
+        for (int r = 0; r < ROUNDS; ++r) {
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int n = 0; n < DECODES; ++n) {
+                int f = n & (FRAMES - 1);
+                IRCamera.decode(firsts[f], seconds[f], blobs);
+                sink += blobs[n & 3].x;
+            }
+            long blobTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int n = 0; n < DECODES; ++n) {
+                int f = n & (FRAMES - 1);
+                sink += IRCamera.decode(firsts[f], seconds[f], x, y, size);
+                sink += x[n & 3];
+            }
+            long flatTime = System.nanoTime() - start;
+            System.out.printf("Round %d: blobs %.1fns/frame, flat %.1fns/frame"
+                    + " (%d)%n", r + 1, (double) blobTime / DECODES,
+                    (double) flatTime / DECODES, sink & 1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package sim;
+
+import com.ridgesoft.io.EEPROM;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * An EEPROM backed by a file on the host, so that data the robot would keep
+ * in EEPROM (such as its {@link api.Calibration}) persists between simulated
+ * runs. A {@link Scenario} reads its calibration from one. Unwritten bytes
+ * read as 0xFF, like erased EEPROM.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public class FileEEPROM extends EEPROM {
+    /** The size of the IntelliBrain's CPU EEPROM (in bytes). */
+    public static final int DEFAULT_SIZE = 4096;
+
+    /** The file holding the contents of the EEPROM. */
+    private final RandomAccessFile file;
+    /** The size of the EEPROM (in bytes). */
+    private final int size;
+
+    /**
+     * Opens (or creates) a file-backed EEPROM of the default size.
+     * @param path The file holding the contents of the EEPROM.
+     * @throws IOException If the file cannot be opened.
+     */
+    public FileEEPROM(File path) throws IOException {
+        this(path, DEFAULT_SIZE);
+    }
+
+    /**
+     * Opens (or creates) a file-backed EEPROM.
+     * @param path The file holding the contents of the EEPROM.
+     * @param size The size of the EEPROM (in bytes).
+     * @throws IOException If the file cannot be opened.
+     */
+    public FileEEPROM(File path, int size) throws IOException {
+        if (size <= 0)
+            throw new IllegalArgumentException("Size must be positive");
+        this.size = size;
+        this.file = new RandomAccessFile(path, "rw");
+        long length = file.length();
+        if (length < size) {
+            file.seek(length);
+            for (long i = length; i < size; ++i)
+                file.write(0xFF);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized byte readByte(int address) throws IOException {
+        check(address);
+        file.seek(address);
+        return (byte) file.read();
+    }
+
+    @Override
+    public synchronized void write(int address, byte value)
+            throws IOException {
+        check(address);
+        file.seek(address);
+        file.write(value);
+    }
+
+    /**
+     * Closes the backing file.
+     * @throws IOException If the file cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Checks that an address is within the EEPROM.
+     * @param address The address to check.
+     * @throws IOException If the address is out of range.
+     */
+    private void check(int address) throws IOException {
+        if (address < 0 || address >= size)
+            throw new IOException("EEPROM address out of range: " + address);
+    }
+}
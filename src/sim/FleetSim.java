@@ -0,0 +1,179 @@
+package sim;
+
+import api.Fleet;
+import api.Link;
+import api.SharedMap;
+import java.util.Random;
+
+/**
+ * Has several simulated robots split up the exploration of a random maze
+ * over a {@link Loopback} link, and prints how long it took and how many
+ * bytes went over the link.
+ * <p>
+ * Each robot claims the nearest cell nobody has explored or claimed, drives
+ * there (one tick per cell of distance), and records its walls. The run ends
+ * when every robot's map is complete.
+ * <p>
+ * Usage: {@code FleetSim [robots] [byte error rate]}
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class FleetSim {
+    /** The number of simulated ms per tick. */
+    public static final int TICK = 100;
+    /** The longest simulated run (in ticks). */
+    public static final int TIMEOUT = 5000;
+    /** The size (in cm) of a maze cell. */
+    public static final float CELL_CM = 18;
+    /**
+     * The number of ticks a robot waits with nothing to claim before it
+     * explores cells claimed by others, in case their walls were lost.
+     */
+    public static final int IDLE_TICKS = 20;
+
+    public static void main(String args[]) throws Exception {
+        int robots = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        Loopback wire = new Loopback();
+        if (args.length > 1)
+            wire.setErrorRate(Double.parseDouble(args[1]));
+        int[] maze = maze(new Random(42));
+
+        Fleet[] fleet = new Fleet[robots];
+        int[] position = new int[robots];
+        int[] target = new int[robots];
+        int[] busy = new int[robots];
+        int[] explored = new int[robots];
+        int[] idle = new int[robots];
+        boolean[] fallback = new boolean[robots];
+        for (int r = 0; r < robots; ++r) {
+            Loopback.Endpoint e = wire.connect();
+            fleet[r] = new Fleet(new Link(r, e.input(), e.output()),
+                    new SharedMap());
+            // Start in different corners
+            position[r] = SharedMap.cell((r & 1) * (SharedMap.SIZE - 1),
+                    ((r >> 1) & 1) * (SharedMap.SIZE - 1));
+            target[r] = -1;
+        }
+
+        int tick;
+        for (tick = 0; tick < TIMEOUT; ++tick) {
+            long now = (long) tick * TICK;
+            boolean complete = true;
+            for (int r = 0; r < robots; ++r) {
+                Fleet f = fleet[r];
+                SharedMap map = f.map();
+                int t = target[r];
+                if (t >= 0 && !fallback[r] && map.owner(t) != r) {
+                    // A robot with a lower id claimed it too; find another
+                    target[r] = -1;
+                    busy[r] = 0;
+                } else if (busy[r] > 0) {
+                    --busy[r];
+                } else {
+                    if (t >= 0 && !map.known(t)) {
+                        map.explore(t, maze[t]);
+                        ++explored[r];
+                    }
+                    if (t >= 0)
+                        position[r] = t;
+                    t = nearest(map, position[r], false);
+                    fallback[r] = t < 0 && ++idle[r] > IDLE_TICKS;
+                    if (fallback[r])
+                        t = nearest(map, position[r], true);
+                    if (t >= 0) {
+                        idle[r] = 0;
+                        f.claim(t);
+                        busy[r] = distance(position[r], t);
+                    }
+                    target[r] = t;
+                }
+                f.setPose(SharedMap.x(position[r]) * CELL_CM,
+                        SharedMap.y(position[r]) * CELL_CM, 0);
+                f.update(now);
+                complete &= map.knownCount() == SharedMap.CELLS;
+            }
+            if (complete)
+                break;
+            // Let the links' tasks move the bytes
+            Thread.sleep(5);
+        }
+
+        System.out.println(robots + " robots, " + tick + " ticks ("
+                + tick * TICK / 1000 + "s simulated)");
+        for (int r = 0; r < robots; ++r) {
+            Link l = fleet[r].link();
+            System.out.println("robot " + r + ": explored " + explored[r]
+                    + ", knows " + fleet[r].map().knownCount() + "/"
+                    + SharedMap.CELLS + ", sent " + l.framesSent()
+                    + " frames (" + l.bytesSent() + " bytes), "
+                    + l.framesReceived() + " received, " + l.corrupt() + " corrupt, "
+                    + (l.sendOverruns() + l.receiveOverruns()) + " overruns");
+        }
+        System.out.println("link: " + wire.bytes() + " bytes, "
+                + wire.corrupted() + " corrupted");
+    }
+
+    /**
+     * Finds the nearest cell nobody has explored.
+     * @param map The map.
+     * @param from The cell to measure from.
+     * @param claimed Whether to include cells other robots have claimed.
+     * @return The index of the cell, or -1 if there is none.
+     */
+    private static int nearest(SharedMap map, int from, boolean claimed) {
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int c = 0; c < SharedMap.CELLS; ++c) {
+            if (map.known(c) || (!claimed && map.owner(c) != SharedMap.NOBODY))
+                continue;
+            int d = distance(from, c);
+            if (d < bestDistance) {
+                best = c;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gives the Manhattan distance between two cells.
+     * @param a One cell.
+     * @param b The other cell.
+     * @return The distance (in cells).
+     */
+    private static int distance(int a, int b) {
+        return Math.abs(SharedMap.x(a) - SharedMap.x(b))
+                + Math.abs(SharedMap.y(a) - SharedMap.y(b));
+    }
+
+    /**
+     * Makes a random maze whose walls agree between neighbouring cells.
+     * @param random The source of randomness.
+     * @return The wall bits of each cell.
+     */
+    private static int[] maze(Random random) {
+        int n = SharedMap.SIZE;
+        int[] walls = new int[SharedMap.CELLS];
+        for (int x = 0; x < n; ++x) {
+            for (int y = 0; y < n; ++y) {
+                int c = SharedMap.cell(x, y);
+                if (x == 0)
+                    walls[c] |= SharedMap.WEST;
+                if (y == 0)
+                    walls[c] |= SharedMap.SOUTH;
+                if (x == n - 1 || random.nextInt(3) == 0) {
+                    walls[c] |= SharedMap.EAST;
+                    if (x < n - 1)
+                        walls[SharedMap.cell(x + 1, y)] |= SharedMap.WEST;
+                }
+                if (y == n - 1 || random.nextInt(3) == 0) {
+                    walls[c] |= SharedMap.NORTH;
+                    if (y < n - 1)
+                        walls[SharedMap.cell(x, y + 1)] |= SharedMap.SOUTH;
+                }
+            }
+        }
+        return walls;
+    }
+}
@@ -0,0 +1,157 @@
+package sim;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An in-process stand-in for a shared serial radio link: every byte one
+ * endpoint writes is heard by every other endpoint. Bytes can be corrupted
+ * at random to exercise the receivers' error handling.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public class Loopback {
+    /** The number of bytes each endpoint can buffer before dropping. */
+    public static final int BUFFER_SIZE = 4096;
+
+    /** The endpoints on the link. */
+    private final List<Endpoint> endpoints = new ArrayList<Endpoint>();
+    /** The source of corruption. */
+    private final Random random = new Random(1);
+    /** The probability of any byte being corrupted. */
+    private double errorRate = 0;
+    /** The number of bytes written to the link. */
+    private long bytes = 0;
+    /** The number of bytes corrupted. */
+    private long corrupted = 0;
+
+    /**
+     * Adds an endpoint to the link.
+     * @return The endpoint.
+     */
+    public synchronized Endpoint connect() {
+        Endpoint e = new Endpoint();
+        endpoints.add(e);
+        return e;
+    }
+
+    /**
+     * Sets the probability of each byte being corrupted as it is delivered.
+     * @param rate The probability (0-1).
+     */
+    public synchronized void setErrorRate(double rate) {
+        errorRate = rate;
+    }
+
+    /**
+     * Gives the number of bytes written to the link.
+     * @return The number of bytes.
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Gives the number of bytes corrupted.
+     * @return The number of bytes.
+     */
+    public synchronized long corrupted() {
+        return corrupted;
+    }
+
+    /**
+     * Delivers a byte to every endpoint but its sender.
+     * @param from The sender.
+     * @param b The byte.
+     */
+    private synchronized void broadcast(Endpoint from, int b) {
+        ++bytes;
+        for (Endpoint e : endpoints) {
+            if (e == from)
+                continue;
+            int d = b;
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                d ^= 1 << random.nextInt(8);
+                ++corrupted;
+            }
+            e.deliver(d);
+        }
+    }
+
+    /** One robot's connection to the link. */
+    public class Endpoint {
+        /** The bytes waiting to be read. */
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        /** The index of the next byte to read. */
+        private int head;
+        /** The number of bytes waiting. */
+        private int count;
+
+        /** The stream bytes from other endpoints are read from. */
+        private final InputStream in = new InputStream() {
+            public int read() throws IOException {
+                synchronized (Endpoint.this) {
+                    if (count == 0)
+                        return -1;
+                    int b = buffer[head] & 0xFF;
+                    head = (head + 1) % BUFFER_SIZE;
+                    --count;
+                    return b;
+                }
+            }
+
+            public int available() {
+                synchronized (Endpoint.this) {
+                    return count;
+                }
+            }
+        };
+
+        /** The stream bytes to other endpoints are written to. */
+        private final OutputStream out = new OutputStream() {
+            public void write(int b) {
+                broadcast(Endpoint.this, b & 0xFF);
+            }
+
+            public void write(byte[] b, int off, int len) {
+                // A write goes out whole, like a packet from a radio modem
+                synchronized (Loopback.this) {
+                    for (int i = 0; i < len; ++i)
+                        broadcast(Endpoint.this, b[off + i] & 0xFF);
+                }
+            }
+        };
+
+        /**
+         * Gives the stream bytes from the other endpoints arrive on.
+         * @return The input stream.
+         */
+        public InputStream input() {
+            return in;
+        }
+
+        /**
+         * Gives the stream that sends bytes to the other endpoints.
+         * @return The output stream.
+         */
+        public OutputStream output() {
+            return out;
+        }
+
+        /**
+         * Buffers a byte for reading, dropping it if the buffer is full.
+         * @param b The byte.
+         */
+        private synchronized void deliver(int b) {
+            if (count == BUFFER_SIZE)
+                return;
+            buffer[(head + count) % BUFFER_SIZE] = (byte) b;
+            ++count;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package sim;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A random maze of square cells to test navigation in, built as a
+ * {@link World}. Cactus starts in the corner cell at (0, 0) and the goal is
+ * the opposite corner cell.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public class Maze {
+    /** The number of columns of cells. */
+    private final int cols;
+    /** The number of rows of cells. */
+    private final int rows;
+    /** The size (in cm) of a cell. */
+    private final double cellCm;
+    /** The walls of the maze. */
+    private final World world = new World();
+    /** The direction (in radians) of the open side of the start cell. */
+    private double startHeading;
+    /** The inside walls, one character each, to tell mazes apart. */
+    private String layout;
+
+    /**
+     * Creates an empty maze.
+     * @param cols The number of columns of cells.
+     * @param rows The number of rows of cells.
+     * @param cellCm The size (in cm) of a cell.
+     */
+    private Maze(int cols, int rows, double cellCm) {
+        this.cols = cols;
+        this.rows = rows;
+        this.cellCm = cellCm;
+    }
+
+    /**
+     * Generates a maze with a single path between any two cells, and then
+     * knocks out some walls to make loops.
+     * @param cols The number of columns of cells.
+     * @param rows The number of rows of cells.
+     * @param cellCm The size (in cm) of a cell.
+     * @param loops The fraction of the remaining inside walls to remove.
+     * @param seed The seed of the maze.
+     * @return The maze.
+     */
+    public static Maze generate(int cols, int rows, double cellCm,
+            double loops, long seed) {
+        if (cols < 1 || rows < 1)
+            throw new IllegalArgumentException("Maze must have cells");
+        Random random = new Random(seed);
+        // east[x][y] and north[x][y] are the walls on those sides of (x, y)
+        boolean[][] east = new boolean[cols][rows];
+        boolean[][] north = new boolean[cols][rows];
+        for (int x = 0; x < cols; ++x) {
+            for (int y = 0; y < rows; ++y) {
+                east[x][y] = true;
+                north[x][y] = true;
+            }
+        }
+
+        // Depth-first carve
+        boolean[][] visited = new boolean[cols][rows];
+        int[] stack = new int[cols * rows];
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0][0] = true;
+        int[] dx = {1, 0, -1, 0};
+        int[] dy = {0, 1, 0, -1};
+        while (depth > 0) {
+            int c = stack[depth - 1];
+            int x = c / rows, y = c % rows;
+            int options = 0;
+            int[] open = new int[4];
+            for (int d = 0; d < 4; ++d) {
+                int nx = x + dx[d], ny = y + dy[d];
+                if (nx >= 0 && nx < cols && ny >= 0 && ny < rows
+                        && !visited[nx][ny])
+                    open[options++] = d;
+            }
+            if (options == 0) {
+                --depth;
+                continue;
+            }
+            int d = open[random.nextInt(options)];
+            int nx = x + dx[d], ny = y + dy[d];
+            if (d == 0)
+                east[x][y] = false;
+            else if (d == 1)
+                north[x][y] = false;
+            else if (d == 2)
+                east[nx][ny] = false;
+            else
+                north[nx][ny] = false;
+            visited[nx][ny] = true;
+            stack[depth++] = nx * rows + ny;
+        }
+
+        for (int x = 0; x < cols; ++x) {
+            for (int y = 0; y < rows; ++y) {
+                if (x < cols - 1 && random.nextDouble() < loops)
+                    east[x][y] = false;
+                if (y < rows - 1 && random.nextDouble() < loops)
+                    north[x][y] = false;
+            }
+        }
+
+        Maze m = new Maze(cols, rows, cellCm);
+        m.world.box(0, 0, cols * cellCm, rows * cellCm);
+        for (int x = 0; x < cols; ++x) {
+            for (int y = 0; y < rows; ++y) {
+                double x1 = x * cellCm, y1 = y * cellCm;
+                if (east[x][y] && x < cols - 1)
+                    m.world.wall(x1 + cellCm, y1, x1 + cellCm, y1 + cellCm);
+                if (north[x][y] && y < rows - 1)
+                    m.world.wall(x1, y1 + cellCm, x1 + cellCm, y1 + cellCm);
+            }
+        }
+        m.startHeading = cols > 1 && !east[0][0] ? 0 : Math.PI / 2;
+        StringBuilder layout = new StringBuilder();
+        for (int x = 0; x < cols; ++x)
+            for (int y = 0; y < rows; ++y)
+                layout.append(east[x][y] ? '1' : '0')
+                        .append(north[x][y] ? '1' : '0');
+        m.layout = layout.toString();
+        return m;
+    }
+
+    /**
+     * Generates a corpus of different mazes of the same size. The seed of
+     * each maze is drawn from one random stream: consecutive seeds start
+     * {@code java.util.Random} off with nearly the same draws, and gave the
+     * same small maze more than once. A maze laid out like one already in
+     * the corpus is drawn again.
+     * @param count The number of mazes.
+     * @param cols The number of columns of cells.
+     * @param rows The number of rows of cells.
+     * @param cellCm The size (in cm) of a cell.
+     * @param loops The fraction of the remaining inside walls to remove.
+     * @param seed The seed of the corpus.
+     * @return The mazes.
+     */
+    public static Maze[] corpus(int count, int cols, int rows, double cellCm,
+            double loops, long seed) {
+        Random seeds = new Random(seed);
+        Maze[] mazes = new Maze[count];
+        Set<String> layouts = new HashSet<String>();
+        int tries = 0;
+        for (int i = 0; i < count; ++i) {
+            Maze m;
+            do {
+                if (++tries > 100 * count)
+                    throw new IllegalArgumentException("Cannot find " + count
+                            + " different " + cols + "x" + rows + " mazes");
+                m = generate(cols, rows, cellCm, loops, seeds.nextLong());
+            } while (!layouts.add(m.layout));
+            mazes[i] = m;
+        }
+        return mazes;
+    }
+
+    /**
+     * Gives the walls of the maze.
+     * @return The world.
+     */
+    public World world() {
+        return world;
+    }
+
+    /**
+     * Places a robot at the start, facing an open side.
+     * @return The robot.
+     */
+    public SimRobot start() {
+        return new SimRobot(world, cellCm / 2, cellCm / 2, startHeading);
+    }
+
+    /**
+     * Gives whether a robot has reached the goal.
+     * @param robot The robot.
+     * @return {@code true} if the robot is in the goal cell.
+     */
+    public boolean reached(SimRobot robot) {
+        return robot.x() >= (cols - 1) * cellCm
+                && robot.y() >= (rows - 1) * cellCm;
+    }
+
+    /**
+     * Gives the size of a cell.
+     * @return The size (in cm).
+     */
+    public double cellCm() {
+        return cellCm;
+    }
+}
@@ -0,0 +1,118 @@
+package sim;
+
+import api.FollowController;
+import api.Motor;
+import api.PathRecorder;
+import api.PathReplay;
+
+/**
+ * Solves mazes with {@link FollowController} while recording the path, then
+ * puts Cactus back at the start and drives the shortened path again with a
+ * {@link PathReplay}, and prints how the two runs compare. A replay counts
+ * as a repeat if it ends within {@code TOLERANCE_CM} of where the
+ * exploration reached the goal.
+ * <p>
+ * Usage: {@code ReplaySim [mazes] [seed]}
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class ReplaySim {
+    /** The number of simulated ms per replay step. */
+    public static final int PERIOD = 20;
+    /** How close (in cm) a replay must end to where exploring ended. */
+    public static final double TOLERANCE_CM = 15;
+
+    public static void main(String args[]) {
+        int mazes = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        FollowController walls = new FollowController(
+                FollowController.DEFAULTS);
+        int solved = 0, repeated = 0;
+        long exploreTotal = 0, replayTotal = 0;
+        Maze[] corpus = Maze.corpus(mazes, Tuner.SIZE, Tuner.SIZE,
+                Tuner.CELL_CM, Tuner.LOOPS, seed);
+        for (int i = 0; i < mazes; ++i) {
+            Maze maze = corpus[i];
+            PathRecorder path = new PathRecorder();
+            SimRobot explorer = maze.start();
+            int explore = explore(walls, maze, explorer, path);
+            if (explore >= Tuner.TIMEOUT) {
+                System.out.printf("Maze %2d: not solved%n", i);
+                continue;
+            }
+            ++solved;
+            int recorded = path.segments();
+            path.shorten();
+
+            SimRobot robot = maze.start();
+            PathReplay replay = new PathReplay(path);
+            replay.start(0, robot.ticks(Motor.LEFT), robot.ticks(Motor.RIGHT));
+            int t = 0;
+            int mode = PathReplay.REPLAYING;
+            while (mode == PathReplay.REPLAYING && t < Tuner.TIMEOUT) {
+                mode = replay.step(t, robot.ticks(Motor.LEFT),
+                        robot.ticks(Motor.RIGHT), robot.range(Motor.LEFT),
+                        robot.range(Motor.RIGHT));
+                robot.setSpeeds(replay.leftCommand(), replay.rightCommand());
+                robot.step(PERIOD);
+                t += PERIOD;
+            }
+            double dx = robot.x() - explorer.x();
+            double dy = robot.y() - explorer.y();
+            double off = Math.sqrt(dx * dx + dy * dy);
+            if (mode == PathReplay.DONE && off < TOLERANCE_CM) {
+                ++repeated;
+                exploreTotal += explore;
+                replayTotal += t;
+            }
+            System.out.printf("Maze %2d: explored in %6dms (%3d segments%s),"
+                    + " replayed %3d in %6dms, %s %.0fcm off, %d bumps%n",
+                    i, explore, recorded, path.full() ? ", full" : "",
+                    path.segments(), t, PathReplay.name(mode), off,
+                    robot.bumps());
+        }
+        System.out.printf("Solved %d/%d, repeated %d/%d", solved, mazes,
+                repeated, solved);
+        if (repeated > 0)
+            System.out.printf(" in %.0f%% of the exploring time",
+                    100.0 * replayTotal / exploreTotal);
+        System.out.println();
+    }
+
+    /**
+     * Solves a maze like {@link Tuner} does, recording every step.
+     * @param walls The controller.
+     * @param maze The maze.
+     * @param robot The robot, at the start of the maze.
+     * @param path The recorder.
+     * @return The time (in ms) to reach the goal, or {@code Tuner.TIMEOUT}.
+     */
+    private static int explore(FollowController walls, Maze maze,
+            SimRobot robot, PathRecorder path) {
+        walls.reset();
+        path.start(robot.ticks(Motor.LEFT), robot.ticks(Motor.RIGHT));
+        int t = 0;
+        while (t < Tuner.TIMEOUT) {
+            int wait = walls.step(t, robot.range(Motor.LEFT),
+                    robot.range(Motor.RIGHT));
+            path.record(walls.leftCommand(), walls.rightCommand(),
+                    robot.ticks(Motor.LEFT), robot.ticks(Motor.RIGHT),
+                    robot.range(Motor.LEFT), robot.range(Motor.RIGHT));
+            robot.setSpeeds(walls.leftCommand(), walls.rightCommand());
+            wait = Math.max(wait, Tuner.MIN_STEP);
+            while (wait > 0 && t < Tuner.TIMEOUT) {
+                int dt = Math.min(wait, Tuner.STEP);
+                robot.step(dt);
+                t += dt;
+                wait -= dt;
+                if (maze.reached(robot)) {
+                    path.finish(robot.ticks(Motor.LEFT),
+                            robot.ticks(Motor.RIGHT));
+                    return t;
+                }
+            }
+        }
+        return Tuner.TIMEOUT;
+    }
+}
@@ -0,0 +1,338 @@
+package sim;
+
+import api.AvoidController;
+import api.Calibration;
+import api.Controller;
+import api.FollowController;
+import api.MazeExplorer;
+import api.WallController;
+import com.ridgesoft.robotics.AnalogInput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * A run of a simulated Cactus to evaluate, read from a properties file: the
+ * controller, the world it drives in, where it starts, how noisy its IR
+ * sensors are and how long it may take.
+ * <p>
+ * The keys are:
+ * <ul>
+ * <li>{@code program}: the controller to run: {@code maze} (default), the
+ * {@link MazeExplorer} {@code MouseMaze} explores with, front sensors and
+ * all; {@code follow}, its bare {@link FollowController}; {@code avoid},
+ * the {@link AvoidController} {@code MouseSong} wanders with; or
+ * {@code wall}. Only the controller runs, not the rest of the program
+ * around it.</li>
+ * <li>{@code params}: parameters for the controller, replacing its
+ * defaults, separated by spaces. {@code maze} takes those of
+ * {@code follow}.</li>
+ * <li>{@code maze}: the size of a random {@link Maze}, as
+ * {@code COLSxROWS}, with {@code cell} (in cm, default
+ * {@code Tuner.CELL_CM}), {@code loops} (default {@code Tuner.LOOPS}) and
+ * {@code seed}. The goal is the far corner cell.</li>
+ * <li>{@code walls}: instead of a maze, walls as {@code x1 y1 x2 y2}
+ * separated by semicolons, and {@code goal} as the rectangle
+ * {@code x1 y1 x2 y2} to reach. Without a goal the run lasts the whole
+ * duration.</li>
+ * <li>{@code start}: the starting pose as {@code x y heading} (in cm and
+ * degrees). Required with {@code walls}; a maze starts at its own
+ * start.</li>
+ * <li>{@code noise}: the standard deviation (in cm) of the Gaussian noise
+ * added to each range reading (default 0).</li>
+ * <li>{@code dropout}: the chance that a reading in range is lost
+ * (default 0).</li>
+ * <li>{@code duration}: the longest the run may take (in ms, default
+ * {@code Tuner.TIMEOUT}).</li>
+ * <li>{@code eeprom}: a {@link FileEEPROM} holding a {@link Calibration}, as
+ * written by {@link Calibration#save}. The robot then reads its IR sensors
+ * through the calibrated tables, as Cactus would with that calibration in
+ * its EEPROM: each distance is turned into the sample the stock GP2D12
+ * curve gives for it and converted back with the table. Without it, the
+ * readings are the true distances.</li>
+ * </ul>
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Scenario {
+    /** The name of the scenario. */
+    private final String name;
+    /** The controller, as named in the file. */
+    private final String program;
+    /** The controller parameters. */
+    private final float[] params;
+    /** The random maze, or {@code null} if the walls were given. */
+    private final Maze maze;
+    /** The world to drive in. */
+    private final World world;
+    /** The goal as {x1, y1, x2, y2}, or {@code null} if there is none. */
+    private final double[] goal;
+    /** The starting pose as {x, y, heading in radians}. */
+    private final double[] start;
+    /** The standard deviation (in cm) of the range noise. */
+    private final double noise;
+    /** The chance that a range reading is lost. */
+    private final double dropout;
+    /** The longest the run may take (in ms). */
+    private final int duration;
+    /** The seed of the sensor noise. */
+    private final long seed;
+    /** The calibration read from {@code eeprom}, or {@code null}. */
+    private final Calibration calibration;
+
+    /**
+     * Reads a scenario.
+     * @param name The name of the scenario.
+     * @param p The properties.
+     * @throws IOException If the EEPROM file cannot be read.
+     */
+    public Scenario(String name, Properties p) throws IOException {
+        this.name = name;
+        program = p.getProperty("program", "maze").trim();
+        if (!program.equals("maze") && !program.equals("follow")
+                && !program.equals("avoid") && !program.equals("wall"))
+            throw new IllegalArgumentException(name + ": unknown program "
+                    + program);
+        float[] defaults = defaults(program);
+        String list = p.getProperty("params");
+        if (list == null) {
+            params = defaults.clone();
+        } else {
+            double[] v = numbers(list, defaults.length, "params");
+            params = new float[v.length];
+            for (int i = 0; i < v.length; ++i)
+                params[i] = (float) v[i];
+        }
+
+        seed = Long.parseLong(p.getProperty("seed", "1").trim());
+        String size = p.getProperty("maze");
+        String walls = p.getProperty("walls");
+        if (size != null) {
+            String[] dims = size.trim().split("x");
+            if (dims.length != 2)
+                throw new IllegalArgumentException(name
+                        + ": maze must be COLSxROWS");
+            maze = Maze.generate(Integer.parseInt(dims[0]),
+                    Integer.parseInt(dims[1]), number(p, "cell",
+                    Tuner.CELL_CM), number(p, "loops", Tuner.LOOPS), seed);
+            world = maze.world();
+            goal = null;
+        } else if (walls != null) {
+            maze = null;
+            world = new World();
+            for (String w : walls.split(";")) {
+                if (w.trim().length() == 0)
+                    continue;
+                double[] c = numbers(w, 4, "walls");
+                world.wall(c[0], c[1], c[2], c[3]);
+            }
+            String g = p.getProperty("goal");
+            goal = g == null ? null : numbers(g, 4, "goal");
+        } else {
+            throw new IllegalArgumentException(name
+                    + ": needs either maze or walls");
+        }
+
+        String pose = p.getProperty("start");
+        if (pose != null) {
+            start = numbers(pose, 3, "start");
+            start[2] = Math.toRadians(start[2]);
+        } else if (maze != null) {
+            SimRobot r = maze.start();
+            start = new double[] {r.x(), r.y(), r.heading()};
+        } else {
+            throw new IllegalArgumentException(name
+                    + ": walls need a start");
+        }
+
+        noise = number(p, "noise", 0);
+        dropout = number(p, "dropout", 0);
+        duration = (int) number(p, "duration", Tuner.TIMEOUT);
+        if (noise < 0 || dropout < 0 || dropout > 1 || duration <= 0)
+            throw new IllegalArgumentException(name
+                    + ": bad noise, dropout or duration");
+
+        String eeprom = p.getProperty("eeprom");
+        if (eeprom == null) {
+            calibration = null;
+        } else {
+            File file = new File(eeprom.trim());
+            if (!file.isFile())
+                throw new IOException(name + ": no EEPROM file " + file);
+            FileEEPROM e = new FileEEPROM(file);
+            try {
+                calibration = Calibration.load(e);
+            } finally {
+                e.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a scenario file. The scenario is named after the file.
+     * @param path The path of the file.
+     * @return The scenario.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Scenario load(String path) throws IOException {
+        Properties p = new Properties();
+        InputStream in = new FileInputStream(path);
+        try {
+            p.load(in);
+        } finally {
+            in.close();
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return new Scenario(dot > 0 ? name.substring(0, dot) : name, p);
+    }
+
+    /**
+     * Creates a fresh controller for a run.
+     * @param front The inputs of the front sensors, left then right. Only
+     * {@code maze} reads them.
+     * @return The controller.
+     */
+    public Controller controller(AnalogInput[] front) {
+        if (program.equals("maze"))
+            return new MazeExplorer(params, front);
+        if (program.equals("avoid"))
+            return new AvoidController(params);
+        if (program.equals("wall"))
+            return new WallController(params);
+        return new FollowController(params);
+    }
+
+    /**
+     * Places a robot at the start.
+     * @return The robot.
+     */
+    public SimRobot robot() {
+        return new SimRobot(world, start[0], start[1], start[2]);
+    }
+
+    /**
+     * Gives whether the scenario has a goal to reach.
+     * @return {@code true} if a run can end early.
+     */
+    public boolean hasGoal() {
+        return maze != null || goal != null;
+    }
+
+    /**
+     * Gives whether a robot has reached the goal.
+     * @param robot The robot.
+     * @return {@code true} if the robot is in the goal.
+     */
+    public boolean reached(SimRobot robot) {
+        if (maze != null)
+            return maze.reached(robot);
+        return goal != null
+                && robot.x() >= Math.min(goal[0], goal[2])
+                && robot.x() <= Math.max(goal[0], goal[2])
+                && robot.y() >= Math.min(goal[1], goal[3])
+                && robot.y() <= Math.max(goal[1], goal[3]);
+    }
+
+    /**
+     * Gives the name of the scenario.
+     * @return The name of the scenario.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Gives the controller being run.
+     * @return {@code maze}, {@code follow}, {@code avoid} or {@code wall}.
+     */
+    public String program() {
+        return program;
+    }
+
+    /**
+     * Gives the standard deviation (in cm) of the range noise.
+     * @return The standard deviation (in cm) of the range noise.
+     */
+    public double noise() {
+        return noise;
+    }
+
+    /**
+     * Gives the chance that a range reading is lost.
+     * @return The chance that a range reading is lost.
+     */
+    public double dropout() {
+        return dropout;
+    }
+
+    /**
+     * Gives the longest the run may take (in ms).
+     * @return The longest the run may take (in ms).
+     */
+    public int duration() {
+        return duration;
+    }
+
+    /**
+     * Gives the calibration the robot reads its IR sensors with.
+     * @return The calibration, or {@code null} to read true distances.
+     */
+    public Calibration calibration() {
+        return calibration;
+    }
+
+    /**
+     * Gives the seed of the sensor noise.
+     * @return The seed of the sensor noise.
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Gives the default parameters of a controller.
+     * @param program The controller.
+     * @return The defaults.
+     */
+    private static float[] defaults(String program) {
+        if (program.equals("avoid"))
+            return AvoidController.DEFAULTS;
+        if (program.equals("wall"))
+            return WallController.DEFAULTS;
+        return FollowController.DEFAULTS;
+    }
+
+    /**
+     * Reads an optional number.
+     * @param p The properties.
+     * @param key The key.
+     * @param otherwise The value if the key is missing.
+     * @return The value.
+     */
+    private static double number(Properties p, String key, double otherwise) {
+        String v = p.getProperty(key);
+        return v == null ? otherwise : Double.parseDouble(v.trim());
+    }
+
+    /**
+     * Reads a list of numbers separated by spaces.
+     * @param s The list.
+     * @param count The number of numbers there must be.
+     * @param key The key, for the error message.
+     * @return The numbers.
+     */
+    private double[] numbers(String s, int count, String key) {
+        String[] parts = s.trim().split("\\s+");
+        if (parts.length != count)
+            throw new IllegalArgumentException(name + ": " + key + " needs "
+                    + count + " numbers");
+        double[] v = new double[count];
+        for (int i = 0; i < count; ++i)
+            v[i] = Double.parseDouble(parts[i]);
+        return v;
+    }
+}
@@ -0,0 +1,32 @@
+package sim;
+
+import api.RangeTable;
+import com.ridgesoft.robotics.AnalogInput;
+
+/**
+ * An analog input whose samples the simulator sets, so code that reads
+ * sensors of its own, like {@link api.RangeArray}, runs on the host.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class SimAnalogInput implements AnalogInput {
+    /** The sample given until the next one is set. */
+    private int sample;
+
+    /**
+     * Sets the sample.
+     * @param sample The sample, 0 to {@code RangeTable.MAX_SAMPLE}.
+     */
+    public void set(int sample) {
+        this.sample = sample;
+    }
+
+    public int sample() {
+        return sample;
+    }
+
+    public int getMaximum() {
+        return RangeTable.MAX_SAMPLE;
+    }
+}
@@ -0,0 +1,213 @@
+package sim;
+
+import api.Motor;
+
+/**
+ * A simulated Cactus: a differential-drive robot with two GP2D12 IR range
+ * sensors angled to the sides and two looking straight ahead, driving
+ * around a {@link World}.
+ * <p>
+ * Wheel speeds are given in percent, like {@link Motor#setSpeed(int)}, and
+ * full speed is {@link Motor#MAX_CM_PER_SECOND}. The robot does not move
+ * into walls; each blocked step is counted as a collision, and each time
+ * the robot runs into a wall it was not already touching is counted as a
+ * bump. While the robot pushes against a wall its wheels slip, and turn
+ * (and count ticks) at only {@code SLIP} of their speed.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public class SimRobot {
+    /** The distance (in cm) between the wheels. */
+    public static final double WHEEL_BASE = 13.0;
+    /** The radius (in cm) of the robot. */
+    public static final double RADIUS = 9.0;
+    /** The angle (in radians) of each IR sensor off the heading. */
+    public static final double IR_ANGLE = 0.4;
+    /** The distance (in cm) of each front sensor off the centre line. */
+    public static final double FRONT_OFFSET = 4;
+    /** The closest distance (in cm) the IR sensors can read. */
+    public static final double IR_MIN = 10;
+    /** The farthest distance (in cm) the IR sensors can read. */
+    public static final double IR_MAX = 80;
+    /** The share of its speed a wheel keeps against a wall. */
+    public static final double SLIP = 0.25;
+
+    /** The world the robot drives in. */
+    private final World world;
+
+    /** The x-coordinate (in cm) of the robot. */
+    private double x;
+    /** The y-coordinate (in cm) of the robot. */
+    private double y;
+    /** The heading (in radians) of the robot. */
+    private double heading;
+    /** The speed (in percent) of the left wheel. */
+    private int leftSpeed;
+    /** The speed (in percent) of the right wheel. */
+    private int rightSpeed;
+    /** The distance (in cm) travelled by each wheel, negative backward. */
+    private final double[] travelled = new double[2];
+    /** The number of steps that were blocked by a wall. */
+    private int collisions;
+    /** The number of times the robot has run into a wall. */
+    private int bumps;
+    /** Whether the last step was blocked by a wall. */
+    private boolean touching;
+
+    /**
+     * Places a robot in a world.
+     * @param world The world to drive in.
+     * @param x The starting x-coordinate (in cm).
+     * @param y The starting y-coordinate (in cm).
+     * @param heading The starting heading (in radians).
+     */
+    public SimRobot(World world, double x, double y, double heading) {
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+    }
+
+    /**
+     * Picks the robot up and puts it down somewhere else, stopped. The tick
+     * counts carry on from where they were.
+     * @param x The new x-coordinate (in cm).
+     * @param y The new y-coordinate (in cm).
+     * @param heading The new heading (in radians).
+     */
+    public void place(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        leftSpeed = 0;
+        rightSpeed = 0;
+        touching = false;
+    }
+
+    /**
+     * Sets the wheel speeds.
+     * @param left The speed (in percent) of the left wheel.
+     * @param right The speed (in percent) of the right wheel.
+     */
+    public void setSpeeds(int left, int right) {
+        leftSpeed = left;
+        rightSpeed = right;
+    }
+
+    /**
+     * Advances the simulation.
+     * @param ms The number of ms to advance by.
+     */
+    public void step(int ms) {
+        double dt = ms / 1000.0;
+        double l = leftSpeed / 100.0 * Motor.MAX_CM_PER_SECOND * dt;
+        double r = rightSpeed / 100.0 * Motor.MAX_CM_PER_SECOND * dt;
+        double d = (l + r) / 2;
+        double h = heading + (r - l) / WHEEL_BASE;
+        double nx = x + d * Math.cos((heading + h) / 2);
+        double ny = y + d * Math.sin((heading + h) / 2);
+        heading = Math.atan2(Math.sin(h), Math.cos(h));
+        if (world.blocked(nx, ny, RADIUS)) {
+            // The wheels slip, but the tachometers still count
+            travelled[Motor.LEFT] += l * SLIP;
+            travelled[Motor.RIGHT] += r * SLIP;
+            ++collisions;
+            if (!touching)
+                ++bumps;
+            touching = true;
+            return;
+        }
+        travelled[Motor.LEFT] += l;
+        travelled[Motor.RIGHT] += r;
+        touching = false;
+        x = nx;
+        y = ny;
+    }
+
+    /**
+     * Reads an IR range sensor.
+     * @param side The side of the sensor ({@code Motor.LEFT} or
+     * {@code Motor.RIGHT}).
+     * @return The distance (in cm), or -1 if it is out of range, like
+     * {@code RangeFinder.getDistanceCm()}.
+     */
+    public float range(int side) {
+        double angle = heading + (side == Motor.LEFT ? IR_ANGLE : -IR_ANGLE);
+        double d = world.raycast(x, y, angle) - RADIUS;
+        return d < IR_MIN || d > IR_MAX ? -1 : (float) d;
+    }
+
+    /**
+     * Reads a front IR range sensor, looking straight ahead from
+     * {@code FRONT_OFFSET} to its side of the centre line.
+     * @param side The side of the sensor ({@code Motor.LEFT} or
+     * {@code Motor.RIGHT}).
+     * @return The distance (in cm), or -1 if it is out of range.
+     */
+    public float front(int side) {
+        double o = side == Motor.LEFT ? FRONT_OFFSET : -FRONT_OFFSET;
+        double d = world.raycast(x - o * Math.sin(heading),
+                y + o * Math.cos(heading), heading) - RADIUS;
+        return d < IR_MIN || d > IR_MAX ? -1 : (float) d;
+    }
+
+    /**
+     * Gives the number of tachometer ticks a wheel has made, counted
+     * backward while the wheel turns backward as on {@link Motor#ticks()}.
+     * @param side The side of the wheel.
+     * @return The number of ticks.
+     */
+    public int ticks(int side) {
+        return (int) (travelled[side] / Motor.CM_PER_TICK);
+    }
+
+    /**
+     * Gives the x-coordinate of the robot.
+     * @return The x-coordinate (in cm).
+     */
+    public double x() {
+        return x;
+    }
+
+    /**
+     * Gives the y-coordinate of the robot.
+     * @return The y-coordinate (in cm).
+     */
+    public double y() {
+        return y;
+    }
+
+    /**
+     * Gives the heading of the robot.
+     * @return The heading (in radians, -pi to pi).
+     */
+    public double heading() {
+        return heading;
+    }
+
+    /**
+     * Gives the world the robot drives in.
+     * @return The world.
+     */
+    public World world() {
+        return world;
+    }
+
+    /**
+     * Gives the number of steps that were blocked by a wall.
+     * @return The number of collisions.
+     */
+    public int collisions() {
+        return collisions;
+    }
+
+    /**
+     * Gives the number of times the robot has run into a wall, however long
+     * it stayed against it.
+     * @return The number of bumps.
+     */
+    public int bumps() {
+        return bumps;
+    }
+}
@@ -0,0 +1,116 @@
+package sim;
+
+import api.IRCamera;
+import com.ridgesoft.io.I2CMaster;
+import java.io.IOException;
+
+/**
+ * Stands in for the PixArt camera on the I2C bus, so that an
+ * {@link IRCamera} can be used off the robot. The camera sees the beacon of
+ * the {@link World} from the pose of a {@link SimRobot}.
+ * <p>
+ * Initialization writes are accepted and ignored. Writing the frame request
+ * (0x37) captures a frame; the next read returns blobs 0-2 and the read after
+ * that returns blob 3, in the layout {@link IRCamera#detect(api.Blob[])}
+ * decodes. Only the beacon is ever seen, in blob 0; the other slots are
+ * empty.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public class SimulatedCamera implements I2CMaster {
+    /** The farthest (in cm) the camera can see the beacon from. */
+    public static final double MAX_RANGE = 400;
+    /** The blob size times the distance (in cm) to the beacon. */
+    public static final double SIZE_CM = 400;
+
+    /** The robot carrying the camera. */
+    private final SimRobot robot;
+
+    /** The captured frame, as {x, y, size} for each of the 4 blobs. */
+    private final int[][] frame = new int[4][3];
+    /** The number of reads since the frame was captured. */
+    private int reads = 2;
+    /** The number of frames captured. */
+    private int frames = 0;
+
+    /**
+     * Creates a camera carried by a simulated robot.
+     * @param robot The robot carrying the camera.
+     */
+    public SimulatedCamera(SimRobot robot) {
+        this.robot = robot;
+    }
+
+    public void setFrequency(int frequency) {
+    }
+
+    public synchronized void transfer(int address, byte[] write, byte[] read)
+            throws IOException {
+        if (write != null && write.length == 1 && write[0] == 0x37) {
+            capture();
+            reads = 0;
+        }
+        if (read == null)
+            return;
+        if (reads == 0)
+            for (int i = 0; i < 3; ++i)
+                encode(frame[i], read, i * 3);
+        else if (reads == 1)
+            encode(frame[3], read, 0);
+        else
+            throw new IOException("No frame requested");
+        ++reads;
+    }
+
+    /**
+     * Gives the number of frames captured.
+     * @return The number of frame requests.
+     */
+    public synchronized int frames() {
+        return frames;
+    }
+
+    /** Captures a frame from the current pose of the robot. */
+    private void capture() {
+        ++frames;
+        for (int i = 0; i < frame.length; ++i) {
+            frame[i][0] = IRCamera.EMPTY;
+            frame[i][1] = IRCamera.EMPTY;
+            frame[i][2] = 0x0F;
+        }
+        World world = robot.world();
+        if (!world.hasBeacon())
+            return;
+        double dx = world.beaconX() - robot.x();
+        double dy = world.beaconY() - robot.y();
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        double angle = Math.atan2(dy, dx);
+        double bearing = Math.atan2(Math.sin(angle - robot.heading()),
+                Math.cos(angle - robot.heading()));
+        if (distance > MAX_RANGE
+                || Math.abs(bearing) > IRCamera.FIELD_OF_VIEW / 2
+                || world.raycast(robot.x(), robot.y(), angle) < distance)
+            return;
+        int size = (int) (SIZE_CM / distance);
+        int x = (int) (IRCamera.WIDTH / 2
+                - bearing * IRCamera.WIDTH / IRCamera.FIELD_OF_VIEW);
+        // Keep clear of the coordinate that marks an empty slot
+        frame[0][0] = x < 0 ? 0 : x >= IRCamera.EMPTY ? IRCamera.EMPTY - 1 : x;
+        frame[0][1] = IRCamera.HEIGHT / 2;
+        frame[0][2] = size < 1 ? 1 : size > 15 ? 15 : size;
+    }
+
+    /**
+     * Packs a blob into 3 bytes.
+     * @param blob The blob, as {x, y, size}.
+     * @param buf The buffer to write to.
+     * @param off The offset to write at.
+     */
+    private static void encode(int[] blob, byte[] buf, int off) {
+        buf[off] = (byte) blob[0];
+        buf[off + 1] = (byte) blob[1];
+        buf[off + 2] = (byte) (((blob[1] >> 8) & 3) << 6
+                | ((blob[0] >> 8) & 3) << 4 | (blob[2] & 0x0F));
+    }
+}
@@ -0,0 +1,402 @@
+package sim;
+
+import api.FrameCodec;
+import api.Message;
+import api.Telemetry;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Plots the telemetry stream from Cactus (see {@link Telemetry}) live on the
+ * host: IR distances, wheel tick rates, motor commands and loop times.
+ * <p>
+ * A reader thread decodes the stream as it arrives into fixed ring buffers,
+ * and the window repaints from them on a timer. Each pixel column draws the
+ * range of the samples that fall in it, so painting costs the same however
+ * fast samples arrive and the reader never waits for the screen.
+ * <p>
+ * Usage: {@code TelemetryDashboard <host:port | device> [--text]}
+ * <br>
+ * A device is read as a file, so set its baud rate first, e.g.
+ * {@code stty -F /dev/ttyUSB0 115200 raw}. With {@code --text} a summary is
+ * printed every second instead of opening a window.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class TelemetryDashboard extends JComponent implements Runnable {
+    /** The version of the serialized form. */
+    private static final long serialVersionUID = 1L;
+
+    /** The number of samples kept. */
+    public static final int HISTORY = 8192;
+    /** The span of time (in ms) shown. */
+    public static final int WINDOW_MS = 10000;
+    /** The number of ms between repaints. */
+    public static final int REPAINT_MS = 40;
+    /** The span of time (in ms) tick rates are measured over. */
+    public static final int RATE_WINDOW_MS = 250;
+
+    /** Channel: left IR distance (in cm). */
+    private static final int LEFT_CM = 0;
+    /** Channel: right IR distance (in cm). */
+    private static final int RIGHT_CM = 1;
+    /** Channel: left tick rate (in ticks/s). */
+    private static final int LEFT_RATE = 2;
+    /** Channel: right tick rate (in ticks/s). */
+    private static final int RIGHT_RATE = 3;
+    /** Channel: left motor command (in percent). */
+    private static final int LEFT_COMMAND = 4;
+    /** Channel: right motor command (in percent). */
+    private static final int RIGHT_COMMAND = 5;
+    /** Channel: control loop time (in ms). */
+    private static final int LOOP = 6;
+    /** The number of channels. */
+    private static final int CHANNELS = 7;
+
+    /** The titles of the plots. */
+    private static final String[] TITLES = {
+        "IR distance (cm)", "Tick rate (ticks/s)", "Motor command (%)",
+        "Loop time (ms)"
+    };
+    /** The channels drawn on each plot, as {first, second or -1}. */
+    private static final int[][] PLOTS = {
+        {LEFT_CM, RIGHT_CM}, {LEFT_RATE, RIGHT_RATE},
+        {LEFT_COMMAND, RIGHT_COMMAND}, {LOOP, -1}
+    };
+    /** The fixed range of each plot, or null to scale to fit. */
+    private static final float[][] RANGES = {
+        {0, 80}, null, {-100, 100}, null
+    };
+
+    /** The stream being read. */
+    private final InputStream in;
+    /** The frame decoder. */
+    private final FrameCodec codec = new FrameCodec();
+    /** The message being decoded. */
+    private final Message message = new Message();
+
+    /** The time (in ms) of each sample. */
+    private final long[] time = new long[HISTORY];
+    /** The value of each channel for each sample. */
+    private final float[][] values = new float[CHANNELS][HISTORY];
+    /** The index the next sample goes in. */
+    private int head;
+    /** The number of samples kept. */
+    private int count;
+
+    /** The total number of samples received. */
+    private long samples;
+    /** The number of samples lost, from gaps in the sequence numbers. */
+    private long lost;
+    /** The sequence number of the last sample. */
+    private int lastSequence = -1;
+    /** The tick counts of each wheel for each sample. */
+    private final int[][] ticks = new int[2][HISTORY];
+    /** The reason the stream ended, or {@code null} if it has not. */
+    private volatile String ended;
+
+    /**
+     * Creates a dashboard reading from a stream.
+     * @param in The telemetry stream.
+     */
+    public TelemetryDashboard(InputStream in) {
+        this.in = in;
+        setPreferredSize(new Dimension(900, 640));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+    }
+
+    public static void main(String args[]) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: TelemetryDashboard "
+                    + "<host:port | device> [--text]");
+            System.exit(2);
+        }
+        final TelemetryDashboard d = new TelemetryDashboard(open(args[0]));
+        Thread reader = new Thread(d, "Telemetry reader");
+        reader.setDaemon(true);
+        reader.start();
+        if (args.length > 1 && args[1].equals("--text")) {
+            d.printSummaries();
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                JFrame f = new JFrame("Cactus telemetry");
+                f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                f.add(d);
+                f.pack();
+                f.setVisible(true);
+                new Timer(REPAINT_MS, new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        d.repaint();
+                    }
+                }).start();
+            }
+        });
+    }
+
+    /**
+     * Opens a telemetry source.
+     * @param source {@code host:port} for a socket, or a file name.
+     * @return The stream.
+     * @throws IOException If the source cannot be opened.
+     */
+    static InputStream open(String source) throws IOException {
+        int colon = source.lastIndexOf(':');
+        if (colon > 0 && !source.startsWith("/")) {
+            Socket s = new Socket(source.substring(0, colon),
+                    Integer.parseInt(source.substring(colon + 1)));
+            s.setTcpNoDelay(true);
+            return s.getInputStream();
+        }
+        return new FileInputStream(source);
+    }
+
+    /** Reads and decodes the stream until it ends. */
+    public void run() {
+        byte[] buf = new byte[4096];
+        try {
+            int n;
+            while ((n = in.read(buf)) >= 0)
+                for (int i = 0; i < n; ++i)
+                    if (codec.feed(buf[i]))
+                        decoded();
+            ended = "end of stream";
+        } catch (IOException ex) {
+            ended = ex.getMessage();
+        }
+    }
+
+    /** Records the frame just decoded, if it is a sample. */
+    private void decoded() {
+        codec.read(message);
+        if (message.type() != Telemetry.SAMPLE
+                || message.length() < Telemetry.LENGTH)
+            return;
+        long t = message.getInt(Telemetry.TIME) & 0xFFFFFFFFL;
+        int leftTicks = message.getShort(Telemetry.LEFT_TICKS) & 0xFFFF;
+        int rightTicks = message.getShort(Telemetry.RIGHT_TICKS) & 0xFFFF;
+        synchronized (this) {
+            if (lastSequence >= 0)
+                lost += (message.sequence() - lastSequence - 1) & 0x0F;
+            lastSequence = message.sequence();
+            time[head] = t;
+            ticks[0][head] = leftTicks;
+            ticks[1][head] = rightTicks;
+            values[LEFT_CM][head] = cm(Telemetry.LEFT_RANGE);
+            values[RIGHT_CM][head] = cm(Telemetry.RIGHT_RANGE);
+            values[LEFT_RATE][head] = rate(0);
+            values[RIGHT_RATE][head] = rate(1);
+            values[LEFT_COMMAND][head] = (byte) message.getByte(
+                    Telemetry.LEFT_COMMAND);
+            values[RIGHT_COMMAND][head] = (byte) message.getByte(
+                    Telemetry.RIGHT_COMMAND);
+            values[LOOP][head] = message.getShort(Telemetry.LOOP_TIME);
+            head = (head + 1) % HISTORY;
+            if (count < HISTORY)
+                ++count;
+            ++samples;
+        }
+    }
+
+    /**
+     * Measures the tick rate of a wheel at the newest sample (at
+     * {@code head}) over the last {@code RATE_WINDOW_MS}.
+     * @param side The wheel (0 for left, 1 for right).
+     * @return The tick rate (in ticks/s).
+     */
+    private float rate(int side) {
+        long t = time[head];
+        int k = head;
+        for (int i = 1; i <= count; ++i) {
+            k = (head + HISTORY - i) % HISTORY;
+            if (t - time[k] >= RATE_WINDOW_MS)
+                break;
+        }
+        long dt = t - time[k];
+        if (dt <= 0)
+            return 0;
+        int delta = (ticks[side][head] - ticks[side][k]) & 0xFFFF;
+        if (delta > 0x7FFF)
+            delta -= 0x10000;
+        return delta * 1000.0f / dt;
+    }
+
+    /**
+     * Decodes a distance from the current message.
+     * @param offset The offset of the distance.
+     * @return The distance (in cm), or NaN if there was no reading.
+     */
+    private float cm(int offset) {
+        int tenths = message.getShort(offset);
+        return tenths < 0 ? Float.NaN : tenths / 10.0f;
+    }
+
+    /** Prints a summary of the stream every second until it ends. */
+    private void printSummaries() throws InterruptedException {
+        long lastSamples = 0;
+        while (ended == null) {
+            Thread.sleep(1000);
+            synchronized (this) {
+                int last = (head + HISTORY - 1) % HISTORY;
+                System.out.printf("%5d samples/s  lost %d  corrupt %d  "
+                        + "IR %5.1f %5.1f  rate %5.1f %5.1f  cmd %4.0f %4.0f"
+                        + "  loop %3.0fms%n",
+                        samples - lastSamples, lost, codec.corrupt(),
+                        values[LEFT_CM][last], values[RIGHT_CM][last],
+                        values[LEFT_RATE][last], values[RIGHT_RATE][last],
+                        values[LEFT_COMMAND][last], values[RIGHT_COMMAND][last],
+                        values[LOOP][last]);
+                lastSamples = samples;
+            }
+        }
+        System.out.println("Stream ended: " + ended);
+    }
+
+    protected synchronized void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics;
+        int w = getWidth();
+        int h = getHeight();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, w, h);
+        g.setColor(Color.BLACK);
+        g.drawString(samples + " samples, " + lost + " lost, "
+                + codec.corrupt() + " corrupt"
+                + (ended != null ? "  (" + ended + ")" : ""), 8, 14);
+        if (count == 0)
+            return;
+        long end = time[(head + HISTORY - 1) % HISTORY];
+        int top = 20;
+        int plotHeight = (h - top) / PLOTS.length;
+        for (int p = 0; p < PLOTS.length; ++p)
+            plot(g, p, 50, top + p * plotHeight + 16, w - 60,
+                    plotHeight - 28, end - WINDOW_MS, end);
+    }
+
+    /**
+     * Draws one plot.
+     * @param g The graphics to draw with.
+     * @param p The index of the plot.
+     * @param x The left edge of the plot area.
+     * @param y The top edge of the plot area.
+     * @param w The width of the plot area.
+     * @param h The height of the plot area.
+     * @param start The time (in ms) at the left edge.
+     * @param end The time (in ms) at the right edge.
+     */
+    private void plot(Graphics2D g, int p, int x, int y, int w, int h,
+            long start, long end) {
+        float lo, hi;
+        if (RANGES[p] != null) {
+            lo = RANGES[p][0];
+            hi = RANGES[p][1];
+        } else {
+            lo = Float.POSITIVE_INFINITY;
+            hi = Float.NEGATIVE_INFINITY;
+            for (int c : PLOTS[p]) {
+                if (c < 0)
+                    continue;
+                for (int i = 0; i < count; ++i) {
+                    int k = (head + HISTORY - 1 - i) % HISTORY;
+                    if (time[k] < start)
+                        break;
+                    float v = values[c][k];
+                    if (v < lo)
+                        lo = v;
+                    if (v > hi)
+                        hi = v;
+                }
+            }
+            if (!(hi > lo)) {
+                lo -= 1;
+                hi += 1;
+            }
+        }
+        g.setColor(Color.LIGHT_GRAY);
+        g.drawRect(x, y, w, h);
+        g.setColor(Color.BLACK);
+        g.drawString(TITLES[p], x, y - 3);
+        g.drawString(String.format("%.0f", hi), 4, y + 10);
+        g.drawString(String.format("%.0f", lo), 4, y + h);
+        Color[] colors = {new Color(0, 90, 200), new Color(220, 60, 0)};
+        g.setStroke(new BasicStroke(1.2f));
+        for (int s = 0; s < 2; ++s) {
+            int c = PLOTS[p][s];
+            if (c < 0)
+                continue;
+            g.setColor(colors[s]);
+            column(g, c, x, y, w, h, start, end, lo, hi);
+        }
+    }
+
+    /**
+     * Draws a channel as one vertical span per pixel column, covering the
+     * samples in that column, joined to the next column.
+     * @param g The graphics to draw with.
+     * @param c The channel.
+     * @param x The left edge of the plot area.
+     * @param y The top edge of the plot area.
+     * @param w The width of the plot area.
+     * @param h The height of the plot area.
+     * @param start The time (in ms) at the left edge.
+     * @param end The time (in ms) at the right edge.
+     * @param lo The value at the bottom edge.
+     * @param hi The value at the top edge.
+     */
+    private void column(Graphics2D g, int c, int x, int y, int w, int h,
+            long start, long end, float lo, float hi) {
+        float scale = h / (hi - lo);
+        int col = -1;
+        float min = 0, max = 0;
+        int lastX = -1, lastY = 0;
+        // Oldest to newest
+        int first = count - 1;
+        while (first > 0
+                && time[(head + HISTORY - 1 - first) % HISTORY] < start)
+            --first;
+        for (int i = first; i >= -1; --i) {
+            int k = (head + HISTORY - 1 - i) % HISTORY;
+            int px = i < 0 ? -2
+                    : (int) ((time[k] - start) * (w - 1) / (end - start));
+            float v = i < 0 ? Float.NaN : values[c][k];
+            if (px != col && col >= 0 && !Float.isNaN(min)) {
+                int y1 = y + h - (int) ((max - lo) * scale);
+                int y2 = y + h - (int) ((min - lo) * scale);
+                y1 = y1 < y ? y : y1 > y + h ? y + h : y1;
+                y2 = y2 < y ? y : y2 > y + h ? y + h : y2;
+                g.drawLine(x + col, y1, x + col, y2);
+                if (lastX >= 0)
+                    g.drawLine(x + lastX, lastY, x + col, (y1 + y2) / 2);
+                lastX = col;
+                lastY = (y1 + y2) / 2;
+            }
+            if (px != col) {
+                col = px;
+                min = v;
+                max = v;
+            } else if (!Float.isNaN(v)) {
+                if (Float.isNaN(min) || v < min)
+                    min = v;
+                if (Float.isNaN(max) || v > max)
+                    max = v;
+            }
+            if (Float.isNaN(v))
+                lastX = -1; // Break the line where there is no reading
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package sim;
+
+import api.BeaconHoming;
+import api.Blob;
+import api.IRCamera;
+import api.Link;
+import api.Motor;
+import api.Telemetry;
+import java.io.ByteArrayInputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serves a live telemetry stream from a simulated Cactus, so the
+ * {@link TelemetryDashboard} can be run without the robot. The robot runs
+ * {@link BeaconHoming} in the room from {@link BeaconHomingSim}, in real
+ * time, and starts over each time it arrives. One robot and camera serve
+ * every connection in turn, put back at the start each time.
+ * <p>
+ * Usage: {@code TelemetrySim [port] [samples per second]}, then
+ * {@code TelemetryDashboard localhost:port}.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class TelemetrySim {
+    /** The default port to serve on. */
+    public static final int DEFAULT_PORT = 5555;
+    /** The default number of samples per second. */
+    public static final int DEFAULT_RATE = 200;
+    /** The starting x-coordinate (in cm) of the robot. */
+    private static final double START_X = 30;
+    /** The starting y-coordinate (in cm) of the robot. */
+    private static final double START_Y = 100;
+    /** The starting heading (in radians) of the robot. */
+    private static final double START_HEADING = Math.PI / 2;
+
+    public static void main(String args[]) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RATE;
+        World world = new World()
+                .box(0, 0, 300, 200)
+                .box(130, 60, 170, 140)
+                .beacon(290, 100);
+        SimRobot robot = new SimRobot(world, START_X, START_Y, START_HEADING);
+        // Each camera starts an I2C bus thread, so there is only ever one
+        IRCamera camera = new IRCamera(new SimulatedCamera(robot));
+        ServerSocket server = new ServerSocket(port);
+        System.out.println("Serving telemetry on port " + port);
+        while (true) {
+            Socket s = server.accept();
+            s.setTcpNoDelay(true);
+            System.out.println("Connected to " + s.getRemoteSocketAddress());
+            Link link = new Link(0, new ByteArrayInputStream(new byte[0]),
+                    s.getOutputStream());
+            try {
+                robot.place(START_X, START_Y, START_HEADING);
+                serve(new Telemetry(link), link, robot, camera, rate);
+                System.out.println("Disconnected: "
+                        + link.error().getMessage());
+            } finally {
+                link.close();
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the simulation and streams it until the connection fails.
+     * @param telemetry The telemetry stream.
+     * @param link The link under the stream.
+     * @param robot The robot, at the start.
+     * @param camera The camera on the robot.
+     * @param rate The number of samples per second.
+     * @throws Exception If the simulation fails.
+     */
+    private static void serve(Telemetry telemetry, Link link, SimRobot robot,
+            IRCamera camera, int rate) throws Exception {
+        BeaconHoming homing = new BeaconHoming();
+        Blob[] blobs = {new Blob(), new Blob(), new Blob(), new Blob()};
+
+        long period = 1000 / rate > 0 ? 1000 / rate : 1;
+        long start = System.currentTimeMillis();
+        long next = start;
+        int loopMs = 0;
+        while (link.error() == null) {
+            long t = System.currentTimeMillis();
+            camera.detect(blobs);
+            float left = robot.range(Motor.LEFT);
+            float right = robot.range(Motor.RIGHT);
+            if (homing.step(blobs, t, left, right) == BeaconHoming.ARRIVED) {
+                robot.place(START_X, START_Y, START_HEADING);
+                homing.reset();
+            }
+            robot.setSpeeds(homing.leftCommand(), homing.rightCommand());
+            robot.step((int) period);
+            telemetry.send(t - start, left, right,
+                    robot.ticks(Motor.LEFT), robot.ticks(Motor.RIGHT),
+                    homing.leftCommand(), homing.rightCommand(), loopMs);
+            loopMs = (int) (System.currentTimeMillis() - t);
+            next += period;
+            long wait = next - System.currentTimeMillis();
+            if (wait > 0)
+                Thread.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,633 @@
+package sim;
+
+import api.AvoidController;
+import api.Controller;
+import api.FollowController;
+import api.Motor;
+import api.WallController;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes the parameters of a navigation {@link Controller} by running it on a
+ * simulated Cactus through a corpus of random {@link Maze}s. Candidates are
+ * chosen by a grid sweep, uniform random sampling or CMA-ES, and evaluated
+ * in parallel on all cores. Each candidate scores its mean time to reach the
+ * goal (a timed out run counts the full time) and its mean number of bumps
+ * into walls; the candidates that no other beats on both are printed as the
+ * Pareto front.
+ * <p>
+ * Usage: {@code Tuner [--controller avoid|wall|follow] [--search grid|random|cmaes]
+ * [--budget candidates] [--mazes count] [--size cells] [--threads count]
+ * [--seed seed] [--weight seconds per bump] [--csv file]}.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public final class Tuner {
+    /** The size (in cm) of a maze cell. */
+    public static final double CELL_CM = 60;
+    /** The fraction of inside walls knocked out of each maze. */
+    public static final double LOOPS = 0.3;
+    /** The default number of cells along each side of a maze. */
+    public static final int SIZE = 4;
+    /** The longest a run may take (in ms) before it counts as failed. */
+    public static final int TIMEOUT = 300000;
+    /** The longest the simulation advances (in ms) without a goal check. */
+    public static final int STEP = 10;
+    /** The shortest time (in ms) a controller step takes on Cactus. */
+    public static final int MIN_STEP = 5;
+
+    /** A controller and the range of its parameters. */
+    private static abstract class Family {
+        /** The names of the parameters. */
+        final String[] names;
+        /** The default value of each parameter. */
+        final float[] defaults;
+        /** The smallest value of each parameter. */
+        final float[] min;
+        /** The largest value of each parameter. */
+        final float[] max;
+
+        Family(String[] names, float[] defaults, float[] min, float[] max) {
+            this.names = names;
+            this.defaults = defaults;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Creates a controller.
+         * @param params The parameters.
+         * @return The controller.
+         */
+        abstract Controller create(float[] params);
+
+        /**
+         * Maps a point of the unit cube onto the parameter ranges.
+         * @param u The point, clipped to [0, 1] in each dimension.
+         * @return The parameters.
+         */
+        float[] params(double[] u) {
+            float[] p = new float[u.length];
+            for (int i = 0; i < u.length; ++i) {
+                double v = Math.max(0, Math.min(1, u[i]));
+                p[i] = (float) (min[i] + v * (max[i] - min[i]));
+            }
+            return p;
+        }
+
+        /**
+         * Maps parameters onto the unit cube.
+         * @param p The parameters.
+         * @return The point.
+         */
+        double[] unit(float[] p) {
+            double[] u = new double[p.length];
+            for (int i = 0; i < p.length; ++i)
+                u[i] = (p[i] - min[i]) / (max[i] - min[i]);
+            return u;
+        }
+    }
+
+    /** The obstacle-avoiding wander from {@code MouseSong}. */
+    private static final Family AVOID = new Family(AvoidController.NAMES,
+            AvoidController.DEFAULTS, AvoidController.MIN,
+            AvoidController.MAX) {
+        Controller create(float[] params) {
+            return new AvoidController(params);
+        }
+    };
+
+    /** The maze navigator from {@code MouseMaze}. */
+    private static final Family WALL = new Family(WallController.NAMES,
+            WallController.DEFAULTS, WallController.MIN,
+            WallController.MAX) {
+        Controller create(float[] params) {
+            return new WallController(params);
+        }
+    };
+
+    /** The wall follower with look-ahead. */
+    private static final Family FOLLOW = new Family(FollowController.NAMES,
+            FollowController.DEFAULTS, FollowController.MIN,
+            FollowController.MAX) {
+        Controller create(float[] params) {
+            return new FollowController(params);
+        }
+    };
+
+    /** The score of a set of parameters over the corpus. */
+    private static final class Result {
+        /** The parameters. */
+        final float[] params;
+        /** The mean time (in s) to reach the goal. */
+        double time;
+        /** The mean number of bumps into walls. */
+        double bumps;
+        /** The number of mazes solved in time. */
+        int solved;
+
+        Result(float[] params) {
+            this.params = params;
+        }
+
+        /**
+         * Gives whether this result is at least as good as another on both
+         * objectives and better on one.
+         * @param o The other result.
+         * @return {@code true} if this result dominates the other.
+         */
+        boolean dominates(Result o) {
+            return time <= o.time && bumps <= o.bumps
+                    && (time < o.time || bumps < o.bumps);
+        }
+    }
+
+    /** The controller being tuned. */
+    private final Family family;
+    /** The mazes to run in. */
+    private final Maze[] mazes;
+    /** The threads that run the simulations. */
+    private final ExecutorService pool;
+    /** The cost (in s) of one bump when a single score is needed. */
+    private final double weight;
+    /** Every result so far, in the order evaluated. */
+    private final List<Result> results = new ArrayList<Result>();
+
+    private Tuner(Family family, Maze[] mazes, int threads, double weight) {
+        this.family = family;
+        this.mazes = mazes;
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.weight = weight;
+    }
+
+    public static void main(String args[]) throws Exception {
+        Family family = AVOID;
+        String search = "cmaes";
+        int budget = 200;
+        int count = 12;
+        int size = SIZE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        double weight = 5;
+        String csv = null;
+        for (int i = 0; i < args.length; ++i) {
+            String a = args[i];
+            if (i + 1 >= args.length)
+                usage();
+            String v = args[++i];
+            if (a.equals("--controller")) {
+                if (v.equals("avoid"))
+                    family = AVOID;
+                else if (v.equals("wall"))
+                    family = WALL;
+                else if (v.equals("follow"))
+                    family = FOLLOW;
+                else
+                    usage();
+            } else if (a.equals("--search"))
+                search = v;
+            else if (a.equals("--budget"))
+                budget = Integer.parseInt(v);
+            else if (a.equals("--mazes"))
+                count = Integer.parseInt(v);
+            else if (a.equals("--size"))
+                size = Integer.parseInt(v);
+            else if (a.equals("--threads"))
+                threads = Integer.parseInt(v);
+            else if (a.equals("--seed"))
+                seed = Long.parseLong(v);
+            else if (a.equals("--weight"))
+                weight = Double.parseDouble(v);
+            else if (a.equals("--csv"))
+                csv = v;
+            else
+                usage();
+        }
+
+        Maze[] mazes = Maze.corpus(count, size, size, CELL_CM, LOOPS, seed);
+        Tuner tuner = new Tuner(family, mazes, threads, weight);
+        try {
+            long start = System.currentTimeMillis();
+            Result baseline = tuner.evaluate(
+                    Collections.singletonList(family.defaults)).get(0);
+            System.out.println("Defaults: " + tuner.format(baseline));
+            Random random = new Random(seed);
+            if (search.equals("grid"))
+                tuner.grid(budget);
+            else if (search.equals("random"))
+                tuner.random(budget, random);
+            else if (search.equals("cmaes"))
+                tuner.cmaes(budget, random);
+            else
+                usage();
+            System.out.println(tuner.results.size() + " candidates on "
+                    + count + " mazes with " + threads + " threads in "
+                    + (System.currentTimeMillis() - start) + "ms");
+            tuner.report(System.out);
+            if (csv != null) {
+                PrintStream out = new PrintStream(csv);
+                tuner.csv(out);
+                out.close();
+            }
+        } finally {
+            tuner.pool.shutdown();
+        }
+    }
+
+    /** Prints how to run the tuner and exits. */
+    private static void usage() {
+        System.err.println("Usage: Tuner [--controller avoid|wall|follow]"
+                + " [--search grid|random|cmaes] [--budget candidates]"
+                + " [--mazes count] [--size cells] [--threads count]"
+                + " [--seed seed] [--weight seconds per bump] [--csv file]");
+        System.exit(2);
+    }
+
+    /**
+     * Runs a controller through a maze.
+     * @param c The controller.
+     * @param maze The maze.
+     * @return The time (in ms) to reach the goal, or {@link #TIMEOUT}, and
+     * the number of bumps.
+     */
+    static int[] run(Controller c, Maze maze) {
+        SimRobot robot = maze.start();
+        c.reset();
+        int t = 0;
+        while (t < TIMEOUT) {
+            int wait = c.step(t, robot.range(Motor.LEFT),
+                    robot.range(Motor.RIGHT));
+            robot.setSpeeds(c.leftCommand(), c.rightCommand());
+            wait = Math.max(wait, MIN_STEP);
+            while (wait > 0 && t < TIMEOUT) {
+                int dt = Math.min(wait, STEP);
+                robot.step(dt);
+                t += dt;
+                wait -= dt;
+                if (maze.reached(robot))
+                    return new int[] {t, robot.bumps()};
+            }
+        }
+        return new int[] {TIMEOUT, robot.bumps()};
+    }
+
+    /**
+     * Scores each set of parameters over every maze, in parallel.
+     * @param batch The sets of parameters.
+     * @return The results, in the same order.
+     * @throws Exception If a simulation fails.
+     */
+    private List<Result> evaluate(List<float[]> batch) throws Exception {
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+        for (final float[] p : batch) {
+            for (final Maze m : mazes) {
+                tasks.add(new Callable<int[]>() {
+                    public int[] call() {
+                        return run(family.create(p), m);
+                    }
+                });
+            }
+        }
+        List<Future<int[]>> done = pool.invokeAll(tasks);
+        List<Result> scored = new ArrayList<Result>();
+        int k = 0;
+        for (float[] p : batch) {
+            Result r = new Result(p);
+            for (int i = 0; i < mazes.length; ++i) {
+                int[] run = done.get(k++).get();
+                r.time += run[0] / 1000.0;
+                r.bumps += run[1];
+                if (run[0] < TIMEOUT)
+                    ++r.solved;
+            }
+            r.time /= mazes.length;
+            r.bumps /= mazes.length;
+            scored.add(r);
+        }
+        results.addAll(scored);
+        return scored;
+    }
+
+    /**
+     * Sweeps an even grid over every parameter.
+     * @param budget The most candidates to try.
+     * @throws Exception If a simulation fails.
+     */
+    private void grid(int budget) throws Exception {
+        int d = family.names.length;
+        int levels = Math.max(2, (int) Math.floor(
+                Math.pow(budget, 1.0 / d) + 1e-9));
+        int total = (int) Math.min(budget, Math.pow(levels, d));
+        List<float[]> batch = new ArrayList<float[]>();
+        for (int n = 0; n < total; ++n) {
+            double[] u = new double[d];
+            int k = n;
+            for (int i = 0; i < d; ++i) {
+                u[i] = (k % levels) / (double) (levels - 1);
+                k /= levels;
+            }
+            batch.add(family.params(u));
+        }
+        evaluate(batch);
+    }
+
+    /**
+     * Samples parameters uniformly over their ranges.
+     * @param budget The number of candidates to try.
+     * @param random The source of samples.
+     * @throws Exception If a simulation fails.
+     */
+    private void random(int budget, Random random) throws Exception {
+        int d = family.names.length;
+        List<float[]> batch = new ArrayList<float[]>();
+        for (int n = 0; n < budget; ++n) {
+            double[] u = new double[d];
+            for (int i = 0; i < d; ++i)
+                u[i] = random.nextDouble();
+            batch.add(family.params(u));
+        }
+        evaluate(batch);
+    }
+
+    /**
+     * Minimizes {@code time + weight * bumps} with CMA-ES over the unit cube,
+     * starting from the defaults. Each generation is evaluated as one
+     * parallel batch.
+     * @param budget The most candidates to try.
+     * @param random The source of samples.
+     * @throws Exception If a simulation fails.
+     */
+    private void cmaes(int budget, Random random) throws Exception {
+        int n = family.names.length;
+        int lambda = 4 + (int) (3 * Math.log(n));
+        int mu = lambda / 2;
+        double[] w = new double[mu];
+        double sum = 0;
+        for (int i = 0; i < mu; ++i)
+            sum += w[i] = Math.log(mu + 0.5) - Math.log(i + 1);
+        double sq = 0;
+        for (int i = 0; i < mu; ++i) {
+            w[i] /= sum;
+            sq += w[i] * w[i];
+        }
+        double mueff = 1 / sq;
+        double cc = (4 + mueff / n) / (n + 4 + 2 * mueff / n);
+        double cs = (mueff + 2) / (n + mueff + 5);
+        double c1 = 2 / ((n + 1.3) * (n + 1.3) + mueff);
+        double cmu = Math.min(1 - c1,
+                2 * (mueff - 2 + 1 / mueff) / ((n + 2) * (n + 2) + mueff));
+        double damps = 1 + 2 * Math.max(0,
+                Math.sqrt((mueff - 1) / (n + 1)) - 1) + cs;
+        double chiN = Math.sqrt(n) * (1 - 1.0 / (4 * n) + 1.0 / (21 * n * n));
+
+        double[] mean = family.unit(family.defaults);
+        double sigma = 0.3;
+        double[][] c = identity(n);
+        double[][] b = identity(n);
+        double[] diag = new double[n];
+        Arrays.fill(diag, 1);
+        double[] pc = new double[n];
+        double[] ps = new double[n];
+
+        for (int gen = 0; budget >= lambda; ++gen, budget -= lambda) {
+            final double[][] x = new double[lambda][n];
+            double[][] y = new double[lambda][n];
+            List<float[]> batch = new ArrayList<float[]>();
+            for (int k = 0; k < lambda; ++k) {
+                double[] z = new double[n];
+                for (int i = 0; i < n; ++i)
+                    z[i] = diag[i] * random.nextGaussian();
+                for (int i = 0; i < n; ++i) {
+                    double v = 0;
+                    for (int j = 0; j < n; ++j)
+                        v += b[i][j] * z[j];
+                    // Sample in the cube so the update sees what was scored
+                    x[k][i] = Math.max(0, Math.min(1, mean[i] + sigma * v));
+                    y[k][i] = (x[k][i] - mean[i]) / sigma;
+                }
+                batch.add(family.params(x[k]));
+            }
+            final List<Result> scored = evaluate(batch);
+            Integer[] order = new Integer[lambda];
+            for (int k = 0; k < lambda; ++k)
+                order[k] = k;
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer i, Integer j) {
+                    return Double.compare(cost(scored.get(i)),
+                            cost(scored.get(j)));
+                }
+            });
+
+            double[] ymean = new double[n];
+            for (int k = 0; k < mu; ++k) {
+                for (int i = 0; i < n; ++i)
+                    ymean[i] += w[k] * y[order[k]][i];
+            }
+            for (int i = 0; i < n; ++i)
+                mean[i] += sigma * ymean[i];
+
+            // C^-1/2 * ymean = B * D^-1 * B^T * ymean
+            double[] t = new double[n];
+            for (int j = 0; j < n; ++j) {
+                double v = 0;
+                for (int i = 0; i < n; ++i)
+                    v += b[i][j] * ymean[i];
+                t[j] = v / diag[j];
+            }
+            double norm = 0;
+            for (int i = 0; i < n; ++i) {
+                double v = 0;
+                for (int j = 0; j < n; ++j)
+                    v += b[i][j] * t[j];
+                ps[i] = (1 - cs) * ps[i]
+                        + Math.sqrt(cs * (2 - cs) * mueff) * v;
+                norm += ps[i] * ps[i];
+            }
+            norm = Math.sqrt(norm);
+            boolean hsig = norm / Math.sqrt(1 - Math.pow(1 - cs, 2 * gen + 2))
+                    / chiN < 1.4 + 2.0 / (n + 1);
+            for (int i = 0; i < n; ++i)
+                pc[i] = (1 - cc) * pc[i] + (hsig
+                        ? Math.sqrt(cc * (2 - cc) * mueff) * ymean[i] : 0);
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j <= i; ++j) {
+                    double rankMu = 0;
+                    for (int k = 0; k < mu; ++k)
+                        rankMu += w[k] * y[order[k]][i] * y[order[k]][j];
+                    double v = (1 - c1 - cmu) * c[i][j]
+                            + c1 * (pc[i] * pc[j]
+                            + (hsig ? 0 : cc * (2 - cc) * c[i][j]))
+                            + cmu * rankMu;
+                    c[i][j] = v;
+                    c[j][i] = v;
+                }
+            }
+            sigma *= Math.exp((cs / damps) * (norm / chiN - 1));
+            sigma = Math.min(sigma, 1);
+
+            double[] eig = eigen(c, b);
+            for (int i = 0; i < n; ++i)
+                diag[i] = Math.sqrt(Math.max(eig[i], 1e-20));
+        }
+    }
+
+    /**
+     * Combines both objectives into one score for CMA-ES.
+     * @param r The result.
+     * @return The score (lower is better).
+     */
+    private double cost(Result r) {
+        return r.time + weight * r.bumps;
+    }
+
+    /**
+     * Creates an identity matrix.
+     * @param n The size.
+     * @return The matrix.
+     */
+    private static double[][] identity(int n) {
+        double[][] m = new double[n][n];
+        for (int i = 0; i < n; ++i)
+            m[i][i] = 1;
+        return m;
+    }
+
+    /**
+     * Finds the eigenvalues and eigenvectors of a symmetric matrix by cyclic
+     * Jacobi rotations.
+     * @param m The matrix, which is not changed.
+     * @param v Set to the eigenvectors, as columns.
+     * @return The eigenvalues.
+     */
+    private static double[] eigen(double[][] m, double[][] v) {
+        int n = m.length;
+        double[][] a = new double[n][];
+        for (int i = 0; i < n; ++i) {
+            a[i] = m[i].clone();
+            Arrays.fill(v[i], 0);
+            v[i][i] = 1;
+        }
+        for (int sweep = 0; sweep < 50; ++sweep) {
+            double off = 0;
+            for (int p = 0; p < n; ++p) {
+                for (int q = p + 1; q < n; ++q)
+                    off += a[p][q] * a[p][q];
+            }
+            if (off < 1e-30)
+                break;
+            for (int p = 0; p < n; ++p) {
+                for (int q = p + 1; q < n; ++q) {
+                    if (a[p][q] == 0)
+                        continue;
+                    double theta = (a[q][q] - a[p][p]) / (2 * a[p][q]);
+                    double t = Math.signum(theta) / (Math.abs(theta)
+                            + Math.sqrt(theta * theta + 1));
+                    if (theta == 0)
+                        t = 1;
+                    double cos = 1 / Math.sqrt(t * t + 1);
+                    double sin = t * cos;
+                    for (int k = 0; k < n; ++k) {
+                        double akp = a[k][p], akq = a[k][q];
+                        a[k][p] = cos * akp - sin * akq;
+                        a[k][q] = sin * akp + cos * akq;
+                    }
+                    for (int k = 0; k < n; ++k) {
+                        double apk = a[p][k], aqk = a[q][k];
+                        a[p][k] = cos * apk - sin * aqk;
+                        a[q][k] = sin * apk + cos * aqk;
+                    }
+                    for (int k = 0; k < n; ++k) {
+                        double vkp = v[k][p], vkq = v[k][q];
+                        v[k][p] = cos * vkp - sin * vkq;
+                        v[k][q] = sin * vkp + cos * vkq;
+                    }
+                }
+            }
+        }
+        double[] eig = new double[n];
+        for (int i = 0; i < n; ++i)
+            eig[i] = a[i][i];
+        return eig;
+    }
+
+    /**
+     * Gives the results that no other result dominates, fastest first.
+     * @return The Pareto front.
+     */
+    private List<Result> front() {
+        List<Result> front = new ArrayList<Result>();
+        for (Result r : results) {
+            boolean dominated = false;
+            for (Result o : results) {
+                if (o.dominates(r)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated)
+                front.add(r);
+        }
+        Collections.sort(front, new Comparator<Result>() {
+            public int compare(Result a, Result b) {
+                return a.time != b.time ? Double.compare(a.time, b.time)
+                        : Double.compare(a.bumps, b.bumps);
+            }
+        });
+        return front;
+    }
+
+    /**
+     * Prints the Pareto front.
+     * @param out Where to print it.
+     */
+    private void report(PrintStream out) {
+        List<Result> front = front();
+        out.println("Pareto front (" + front.size() + "):");
+        for (Result r : front)
+            out.println("  " + format(r));
+    }
+
+    /**
+     * Describes a result.
+     * @param r The result.
+     * @return The scores and parameters.
+     */
+    private String format(Result r) {
+        StringBuilder s = new StringBuilder(String.format(
+                "time %6.1fs  bumps %5.2f  solved %d/%d ", r.time, r.bumps,
+                r.solved, mazes.length));
+        for (int i = 0; i < r.params.length; ++i)
+            s.append(String.format(" %s=%.0f", family.names[i], r.params[i]));
+        return s.toString();
+    }
+
+    /**
+     * Writes every result as comma separated values.
+     * @param out Where to write them.
+     */
+    private void csv(PrintStream out) {
+        StringBuilder head = new StringBuilder("time,bumps,solved");
+        for (String name : family.names)
+            head.append(',').append(name);
+        out.println(head);
+        for (Result r : results) {
+            StringBuilder s = new StringBuilder();
+            s.append(r.time).append(',').append(r.bumps).append(',')
+                    .append(r.solved);
+            for (float p : r.params)
+                s.append(',').append(p);
+            out.println(s);
+        }
+    }
+}
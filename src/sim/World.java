@@ -0,0 +1,138 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A flat world of straight walls for simulated runs, with an optional IR
+ * beacon. Distances are in cm and angles in radians, counterclockwise from
+ * the x-axis.
+ * @author Jacob Van Buren
+ * @version 1.0.0
+ * @since 2.2.0
+ */
+public class World {
+    /** The walls, as {x1, y1, x2, y2}. */
+    private final List<double[]> walls = new ArrayList<double[]>();
+
+    /** Whether the world has a beacon. */
+    private boolean hasBeacon = false;
+    /** The x-coordinate of the beacon. */
+    private double beaconX;
+    /** The y-coordinate of the beacon. */
+    private double beaconY;
+
+    /**
+     * Adds a wall.
+     * @param x1 The x-coordinate of one end.
+     * @param y1 The y-coordinate of one end.
+     * @param x2 The x-coordinate of the other end.
+     * @param y2 The y-coordinate of the other end.
+     * @return This world.
+     */
+    public World wall(double x1, double y1, double x2, double y2) {
+        walls.add(new double[] {x1, y1, x2, y2});
+        return this;
+    }
+
+    /**
+     * Adds the four walls of an axis-aligned box.
+     * @param x1 The smallest x-coordinate.
+     * @param y1 The smallest y-coordinate.
+     * @param x2 The largest x-coordinate.
+     * @param y2 The largest y-coordinate.
+     * @return This world.
+     */
+    public World box(double x1, double y1, double x2, double y2) {
+        return wall(x1, y1, x2, y1).wall(x2, y1, x2, y2)
+                .wall(x2, y2, x1, y2).wall(x1, y2, x1, y1);
+    }
+
+    /**
+     * Places the beacon.
+     * @param x The x-coordinate of the beacon.
+     * @param y The y-coordinate of the beacon.
+     * @return This world.
+     */
+    public World beacon(double x, double y) {
+        hasBeacon = true;
+        beaconX = x;
+        beaconY = y;
+        return this;
+    }
+
+    /**
+     * Gives whether the world has a beacon.
+     * @return {@code true} if a beacon has been placed.
+     */
+    public boolean hasBeacon() {
+        return hasBeacon;
+    }
+
+    /**
+     * Gives the x-coordinate of the beacon.
+     * @return The x-coordinate (in cm).
+     */
+    public double beaconX() {
+        return beaconX;
+    }
+
+    /**
+     * Gives the y-coordinate of the beacon.
+     * @return The y-coordinate (in cm).
+     */
+    public double beaconY() {
+        return beaconY;
+    }
+
+    /**
+     * Gives the distance along a ray to the nearest wall.
+     * @param x The x-coordinate of the start of the ray.
+     * @param y The y-coordinate of the start of the ray.
+     * @param angle The direction of the ray.
+     * @return The distance (in cm), or {@code Double.POSITIVE_INFINITY} if
+     * the ray hits nothing.
+     */
+    public double raycast(double x, double y, double angle) {
+        double dx = Math.cos(angle);
+        double dy = Math.sin(angle);
+        double best = Double.POSITIVE_INFINITY;
+        for (double[] w : walls) {
+            double ex = w[2] - w[0];
+            double ey = w[3] - w[1];
+            double denom = dx * ey - dy * ex;
+            if (Math.abs(denom) < 1e-12)
+                continue;
+            double qx = w[0] - x;
+            double qy = w[1] - y;
+            double t = (qx * ey - qy * ex) / denom; // along the ray
+            double u = (qx * dy - qy * dx) / denom; // along the wall
+            if (t >= 0 && u >= 0 && u <= 1 && t < best)
+                best = t;
+        }
+        return best;
+    }
+
+    /**
+     * Gives whether a circle overlaps any wall.
+     * @param x The x-coordinate of the center.
+     * @param y The y-coordinate of the center.
+     * @param radius The radius.
+     * @return {@code true} if a wall passes within radius of the center.
+     */
+    public boolean blocked(double x, double y, double radius) {
+        for (double[] w : walls) {
+            double ex = w[2] - w[0];
+            double ey = w[3] - w[1];
+            double len2 = ex * ex + ey * ey;
+            double u = len2 == 0 ? 0
+                    : ((x - w[0]) * ex + (y - w[1]) * ey) / len2;
+            u = u < 0 ? 0 : u > 1 ? 1 : u;
+            double px = w[0] + u * ex - x;
+            double py = w[1] + u * ey - y;
+            if (px * px + py * py < radius * radius)
+                return true;
+        }
+        return false;
+    }
+}